@@ -22,6 +22,7 @@
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.stream.Collectors;
 import java.sql.Connection;
@@ -54,9 +55,8 @@ abstract class AbstractSqlEamDb implements EamDb {
 
     protected final List<CorrelationAttribute.Type> defaultCorrelationTypes;
 
-    private int bulkArtifactsCount;
-    protected int bulkArtifactsThreshold;
-    private final Map<String, Collection<CorrelationAttribute>> bulkArtifacts;
+    protected volatile int bulkArtifactsThreshold;
+    private final BulkArtifactWriter bulkArtifactWriter;
 
     // Maximum length for the value column in the instance tables
     static final int MAX_VALUE_LENGTH = 256;
@@ -65,19 +65,21 @@ abstract class AbstractSqlEamDb implements EamDb {
     // Update Test code if this changes.  It's hard coded there.
     static final int DEFAULT_BULK_THRESHHOLD = 1000;
 
+    // Maximum number of values in one IN list. SQLite allows 999 parameters.
+    private static final int MAX_VALUES_PER_QUERY = 500;
+
+    // Number of rows to fetch at a time when reading all of a reference set
+    private static final int REFERENCE_SET_FETCH_SIZE = 10000;
+
     /**
      * Connect to the DB and initialize it.
      *
      * @throws UnknownHostException, EamDbException
      */
     protected AbstractSqlEamDb() throws EamDbException {
-        bulkArtifactsCount = 0;
-        bulkArtifacts = new HashMap<>();
+        bulkArtifactWriter = new BulkArtifactWriter(this::insertBulkArtifacts, () -> bulkArtifactsThreshold);
 
         defaultCorrelationTypes = CorrelationAttribute.getDefaultCorrelationTypes();
-        defaultCorrelationTypes.forEach((type) -> {
-            bulkArtifacts.put(type.getDbTableName(), new ArrayList<>());
-        });
     }
 
     /**
@@ -686,6 +688,9 @@ public void addArtifact(CorrelationAttribute eamArtifact) throws EamDbException
                     }
 
                     preparedStatement.executeUpdate();
+                    if (eamInstance.getKnownStatus() == TskData.FileKnown.BAD) {
+                        EamDbValueFilters.addKnownBad(eamArtifact.getCorrelationType(), eamArtifact.getCorrelationValue());
+                    }
                 }
             }
         } catch (SQLException ex) {
@@ -1000,9 +1005,11 @@ public Long getCountArtifactInstancesByCaseDataSource(String caseUUID, String da
     }
 
     /**
-     * Adds an eamArtifact to an internal list to be later added to DB. Artifact
-     * can have 1 or more Artifact Instances. Insert will be triggered by a
-     * threshold or a call to bulkInsertArtifacts().
+     * Adds an eamArtifact to an internal queue to be later added to DB. Artifact
+     * can have 1 or more Artifact Instances. Insert will be done in the
+     * background when a threshold is reached or the queued artifacts have
+     * waited for a few seconds, or by a call to bulkInsertArtifacts(). Only
+     * blocks if the background inserts have fallen far behind.
      *
      * @param eamArtifact The artifact to add
      */
@@ -1013,14 +1020,13 @@ public void prepareBulkArtifact(CorrelationAttribute eamArtifact) throws EamDbEx
             throw new EamDbException("Correlation type is null");
         }
 
-        synchronized (bulkArtifacts) {
-            bulkArtifacts.get(eamArtifact.getCorrelationType().getDbTableName()).add(eamArtifact);
-            bulkArtifactsCount++;
-
-            if (bulkArtifactsCount >= bulkArtifactsThreshold) {
-                bulkInsertArtifacts();
+        for (CorrelationAttributeInstance eamInstance : eamArtifact.getInstances()) {
+            if (eamInstance.getKnownStatus() == TskData.FileKnown.BAD) {
+                EamDbValueFilters.addKnownBad(eamArtifact.getCorrelationType(), eamArtifact.getCorrelationValue());
             }
         }
+
+        bulkArtifactWriter.add(eamArtifact);
     }
 
     /**
@@ -1032,108 +1038,150 @@ public void prepareBulkArtifact(CorrelationAttribute eamArtifact) throws EamDbEx
 
     /**
      * Executes a bulk insert of the eamArtifacts added from the
-     * prepareBulkArtifact() method
+     * prepareBulkArtifact() method, waiting until they have been written
      */
     @Override
     public void bulkInsertArtifacts() throws EamDbException {
-        List<CorrelationAttribute.Type> artifactTypes = getDefinedCorrelationTypes();
+        bulkArtifactWriter.flush();
+    }
+
+    /**
+     * Writes the eamArtifacts added from the prepareBulkArtifact() method and
+     * stops the thread that writes them, which is started again if more are
+     * added. Called before the connections are shut down.
+     *
+     * @throws EamDbException
+     */
+    protected void shutdownBulkArtifactWriter() throws EamDbException {
+        bulkArtifactWriter.shutDown();
+    }
 
+    /**
+     * Inserts batches of artifacts prepared for a bulk insert. Called on the
+     * bulk artifact writer thread.
+     *
+     * @param batches The batches, each of which has artifacts of a single
+     *                correlation type.
+     *
+     * @throws EamDbException
+     */
+    protected void insertBulkArtifacts(List<List<CorrelationAttribute>> batches) throws EamDbException {
         Connection conn = connect();
-        PreparedStatement bulkPs = null;
 
         try {
-            synchronized (bulkArtifacts) {
-                if (bulkArtifactsCount == 0) {
-                    return;
-                }
+            TimingMetric timingMetric = HealthMonitor.getTimingMetric("Correlation Engine: Bulk insert");
+            for (List<CorrelationAttribute> eamArtifacts : batches) {
+                bulkInsertArtifactInstances(conn, eamArtifacts.get(0).getCorrelationType(), eamArtifacts);
+            }
+            HealthMonitor.submitTimingMetric(timingMetric);
+        } catch (SQLException ex) {
+            throw new EamDbException("Error inserting bulk artifacts.", ex); // NON-NLS
+        } finally {
+            EamDbUtil.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Inserts the instances of a collection of artifacts of one correlation
+     * type into the instances table for the type.
+     *
+     * @param conn         The connection to use.
+     * @param type         The correlation type of the artifacts.
+     * @param eamArtifacts The artifacts.
+     *
+     * @throws SQLException
+     * @throws EamDbException If an instance is missing required data.
+     */
+    protected void bulkInsertArtifactInstances(Connection conn, CorrelationAttribute.Type type, Collection<CorrelationAttribute> eamArtifacts) throws SQLException, EamDbException {
+        String tableName = EamDbUtil.correlationTypeToInstanceTableName(type);
+        String sql
+                = "INSERT INTO "
+                + tableName
+                + " (case_id, data_source_id, value, file_path, known_status, comment) "
+                + "VALUES ((SELECT id FROM cases WHERE case_uid=? LIMIT 1), "
+                + "(SELECT id FROM data_sources WHERE device_id=? AND case_id=? LIMIT 1), ?, ?, ?, ?) "
+                + getConflictClause();
 
-                for (CorrelationAttribute.Type type : artifactTypes) {
-
-                    String tableName = EamDbUtil.correlationTypeToInstanceTableName(type);
-                    String sql
-                            = "INSERT INTO "
-                            + tableName
-                            + " (case_id, data_source_id, value, file_path, known_status, comment) "
-                            + "VALUES ((SELECT id FROM cases WHERE case_uid=? LIMIT 1), "
-                            + "(SELECT id FROM data_sources WHERE device_id=? AND case_id=? LIMIT 1), ?, ?, ?, ?) "
-                            + getConflictClause();
-
-                    bulkPs = conn.prepareStatement(sql);
-
-                    Collection<CorrelationAttribute> eamArtifacts = bulkArtifacts.get(type.getDbTableName());
-                    for (CorrelationAttribute eamArtifact : eamArtifacts) {
-                        List<CorrelationAttributeInstance> eamInstances = eamArtifact.getInstances();
-
-                        for (CorrelationAttributeInstance eamInstance : eamInstances) {
-                            if (!eamArtifact.getCorrelationValue().isEmpty()) {
-
-                                if (eamInstance.getCorrelationCase() == null) {
-                                    throw new EamDbException("CorrelationAttributeInstance case is null for: "
-                                            + "\n\tCorrelationArtifact ID: " + eamArtifact.getID()
-                                            + "\n\tCorrelationArtifact Type: " + eamArtifact.getCorrelationType().getDisplayName()
-                                            + "\n\tCorrelationArtifact Value: " + eamArtifact.getCorrelationValue());
-                                }
-                                if (eamInstance.getCorrelationDataSource() == null) {
-                                    throw new EamDbException("CorrelationAttributeInstance data source is null for: "
-                                            + "\n\tCorrelationArtifact ID: " + eamArtifact.getID()
-                                            + "\n\tCorrelationArtifact Type: " + eamArtifact.getCorrelationType().getDisplayName()
-                                            + "\n\tCorrelationArtifact Value: " + eamArtifact.getCorrelationValue());
-                                }
-                                if (eamInstance.getKnownStatus() == null) {
-                                    throw new EamDbException("CorrelationAttributeInstance known status is null for: "
-                                            + "\n\tCorrelationArtifact ID: " + eamArtifact.getID()
-                                            + "\n\tCorrelationArtifact Type: " + eamArtifact.getCorrelationType().getDisplayName()
-                                            + "\n\tCorrelationArtifact Value: " + eamArtifact.getCorrelationValue() 
-                                            + "\n\tEam Instance: "
-                                            + "\n\t\tCaseId: " + eamInstance.getCorrelationDataSource().getCaseID()
-                                            + "\n\t\tDeviceID: " + eamInstance.getCorrelationDataSource().getDeviceID());
-                                }
-
-                                if (eamArtifact.getCorrelationValue().length() < MAX_VALUE_LENGTH) {
-                                    bulkPs.setString(1, eamInstance.getCorrelationCase().getCaseUUID());
-                                    bulkPs.setString(2, eamInstance.getCorrelationDataSource().getDeviceID());
-                                    bulkPs.setInt(3, eamInstance.getCorrelationDataSource().getCaseID());
-                                    bulkPs.setString(4, eamArtifact.getCorrelationValue());
-                                    bulkPs.setString(5, eamInstance.getFilePath());
-                                    bulkPs.setByte(6, eamInstance.getKnownStatus().getFileKnownValue());
-                                    if ("".equals(eamInstance.getComment())) {
-                                        bulkPs.setNull(7, Types.INTEGER);
-                                    } else {
-                                        bulkPs.setString(7, eamInstance.getComment());
-                                    }
-                                    bulkPs.addBatch();
-                                } else {
-                                    logger.log(Level.WARNING, ("Artifact value too long for central repository."
-                                            + "\n\tCorrelationArtifact ID: " + eamArtifact.getID()
-                                            + "\n\tCorrelationArtifact Type: " + eamArtifact.getCorrelationType().getDisplayName()
-                                            + "\n\tCorrelationArtifact Value: " + eamArtifact.getCorrelationValue())
-                                            + "\n\tEam Instance: "
-                                            + "\n\t\tCaseId: " + eamInstance.getCorrelationDataSource().getCaseID()
-                                            + "\n\t\tDeviceID: " + eamInstance.getCorrelationDataSource().getDeviceID()
-                                            + "\n\t\tFilePath: " + eamInstance.getFilePath());
-                                }
-                            }
+        PreparedStatement bulkPs = null;
+        try {
+            bulkPs = conn.prepareStatement(sql);
+            for (CorrelationAttribute eamArtifact : eamArtifacts) {
+                for (CorrelationAttributeInstance eamInstance : eamArtifact.getInstances()) {
+                    if (isInsertableBulkInstance(eamArtifact, eamInstance)) {
+                        bulkPs.setString(1, eamInstance.getCorrelationCase().getCaseUUID());
+                        bulkPs.setString(2, eamInstance.getCorrelationDataSource().getDeviceID());
+                        bulkPs.setInt(3, eamInstance.getCorrelationDataSource().getCaseID());
+                        bulkPs.setString(4, eamArtifact.getCorrelationValue());
+                        bulkPs.setString(5, eamInstance.getFilePath());
+                        bulkPs.setByte(6, eamInstance.getKnownStatus().getFileKnownValue());
+                        if ("".equals(eamInstance.getComment())) {
+                            bulkPs.setNull(7, Types.INTEGER);
+                        } else {
+                            bulkPs.setString(7, eamInstance.getComment());
                         }
+                        bulkPs.addBatch();
                     }
-
-                    bulkPs.executeBatch();
-                    bulkArtifacts.get(type.getDbTableName()).clear();
                 }
-
-                TimingMetric timingMetric = HealthMonitor.getTimingMetric("Correlation Engine: Bulk insert");
-                HealthMonitor.submitTimingMetric(timingMetric);
-
-                // Reset state
-                bulkArtifactsCount = 0;
             }
-        } catch (SQLException ex) {
-            throw new EamDbException("Error inserting bulk artifacts.", ex); // NON-NLS
+            bulkPs.executeBatch();
         } finally {
             EamDbUtil.closeStatement(bulkPs);
-            EamDbUtil.closeConnection(conn);
         }
     }
 
+    /**
+     * Checks whether an artifact instance prepared for a bulk insert should be
+     * inserted. Instances with empty values are skipped, and instances with
+     * values that are too long are logged and skipped.
+     *
+     * @param eamArtifact The artifact.
+     * @param eamInstance The instance of the artifact.
+     *
+     * @return True if the instance should be inserted.
+     *
+     * @throws EamDbException If the instance is missing required data.
+     */
+    protected static boolean isInsertableBulkInstance(CorrelationAttribute eamArtifact, CorrelationAttributeInstance eamInstance) throws EamDbException {
+        if (eamArtifact.getCorrelationValue().isEmpty()) {
+            return false;
+        }
+
+        if (eamInstance.getCorrelationCase() == null) {
+            throw new EamDbException("CorrelationAttributeInstance case is null for: "
+                    + "\n\tCorrelationArtifact ID: " + eamArtifact.getID()
+                    + "\n\tCorrelationArtifact Type: " + eamArtifact.getCorrelationType().getDisplayName()
+                    + "\n\tCorrelationArtifact Value: " + eamArtifact.getCorrelationValue());
+        }
+        if (eamInstance.getCorrelationDataSource() == null) {
+            throw new EamDbException("CorrelationAttributeInstance data source is null for: "
+                    + "\n\tCorrelationArtifact ID: " + eamArtifact.getID()
+                    + "\n\tCorrelationArtifact Type: " + eamArtifact.getCorrelationType().getDisplayName()
+                    + "\n\tCorrelationArtifact Value: " + eamArtifact.getCorrelationValue());
+        }
+        if (eamInstance.getKnownStatus() == null) {
+            throw new EamDbException("CorrelationAttributeInstance known status is null for: "
+                    + "\n\tCorrelationArtifact ID: " + eamArtifact.getID()
+                    + "\n\tCorrelationArtifact Type: " + eamArtifact.getCorrelationType().getDisplayName()
+                    + "\n\tCorrelationArtifact Value: " + eamArtifact.getCorrelationValue() 
+                    + "\n\tEam Instance: "
+                    + "\n\t\tCaseId: " + eamInstance.getCorrelationDataSource().getCaseID()
+                    + "\n\t\tDeviceID: " + eamInstance.getCorrelationDataSource().getDeviceID());
+        }
+
+        if (eamArtifact.getCorrelationValue().length() >= MAX_VALUE_LENGTH) {
+            logger.log(Level.WARNING, ("Artifact value too long for central repository."
+                    + "\n\tCorrelationArtifact ID: " + eamArtifact.getID()
+                    + "\n\tCorrelationArtifact Type: " + eamArtifact.getCorrelationType().getDisplayName()
+                    + "\n\tCorrelationArtifact Value: " + eamArtifact.getCorrelationValue())
+                    + "\n\tEam Instance: "
+                    + "\n\t\tCaseId: " + eamInstance.getCorrelationDataSource().getCaseID()
+                    + "\n\t\tDeviceID: " + eamInstance.getCorrelationDataSource().getDeviceID()
+                    + "\n\t\tFilePath: " + eamInstance.getFilePath());
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Executes a bulk insert of the cases
      */
@@ -1379,6 +1427,10 @@ public void setArtifactInstanceKnownStatus(CorrelationAttribute eamArtifact, Tsk
             throw new EamDbException("Correlation data source is null");
         }
 
+        if (knownStatus == TskData.FileKnown.BAD) {
+            EamDbValueFilters.addKnownBad(eamArtifact.getCorrelationType(), eamArtifact.getCorrelationValue());
+        }
+
         Connection conn = connect();
 
         PreparedStatement preparedUpdate = null;
@@ -1612,6 +1664,42 @@ public Long getCountArtifactInstancesKnownBad(CorrelationAttribute.Type aType, S
         return badInstances;
     }
 
+    /**
+     * Count all of the eamArtifact instances of a type that have knownStatus =
+     * "Bad".
+     *
+     * @param aType EamArtifact.Type to count
+     *
+     * @return Number of notable eamArtifacts
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public long getCountArtifactInstancesKnownBad(CorrelationAttribute.Type aType) throws EamDbException {
+        if (aType == null) {
+            throw new EamDbException("Correlation type is null");
+        }
+
+        Connection conn = connect();
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        String sql = "SELECT count(*) FROM %s WHERE known_status=?";
+
+        try {
+            preparedStatement = conn.prepareStatement(String.format(sql, EamDbUtil.correlationTypeToInstanceTableName(aType)));
+            preparedStatement.setByte(1, TskData.FileKnown.BAD.getFileKnownValue());
+            resultSet = preparedStatement.executeQuery();
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException ex) {
+            throw new EamDbException("Error getting count of notable artifact instances.", ex); // NON-NLS
+        } finally {
+            EamDbUtil.closeStatement(preparedStatement);
+            EamDbUtil.closeResultSet(resultSet);
+            EamDbUtil.closeConnection(conn);
+        }
+    }
+
     /**
      * Gets list of distinct case display names, where each case has 1+ Artifact
      * Instance matching eamArtifact with knownStatus = "Bad".
@@ -1668,6 +1756,79 @@ public List<String> getListCasesHavingArtifactInstancesKnownBad(CorrelationAttri
         return caseNames.stream().collect(Collectors.toList());
     }
 
+    /**
+     * Gets the distinct case display names of the cases that have 1+ Artifact
+     * Instance with knownStatus = "Bad" for each of a collection of values,
+     * using one query per several hundred values.
+     *
+     * @param aType  EamArtifact.Type to search for
+     * @param values Values to search for
+     *
+     * @return Map of each value that has instances marked as bad to the list
+     *         of cases containing those instances
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public Map<String, List<String>> getCasesHavingArtifactInstancesKnownBad(CorrelationAttribute.Type aType, Collection<String> values) throws EamDbException {
+        if (aType == null) {
+            throw new EamDbException("Correlation type is null");
+        }
+
+        Map<String, Collection<String>> caseNamesByValue = new HashMap<>();
+        List<String> distinctValues = new ArrayList<>(new LinkedHashSet<>(values));
+        if (distinctValues.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Connection conn = connect();
+
+        String tableName = EamDbUtil.correlationTypeToInstanceTableName(aType);
+        try {
+            for (int start = 0; start < distinctValues.size(); start += MAX_VALUES_PER_QUERY) {
+                List<String> batch = distinctValues.subList(start, Math.min(start + MAX_VALUES_PER_QUERY, distinctValues.size()));
+                String sql
+                        = "SELECT DISTINCT value, case_name FROM "
+                        + tableName
+                        + " INNER JOIN cases ON "
+                        + tableName
+                        + ".case_id=cases.id WHERE "
+                        + tableName
+                        + ".value IN ("
+                        + String.join(",", Collections.nCopies(batch.size(), "?"))
+                        + ") AND "
+                        + tableName
+                        + ".known_status=?";
+
+                PreparedStatement preparedStatement = null;
+                ResultSet resultSet = null;
+                try {
+                    preparedStatement = conn.prepareStatement(sql);
+                    int index = 1;
+                    for (String value : batch) {
+                        preparedStatement.setString(index++, value);
+                    }
+                    preparedStatement.setByte(index, TskData.FileKnown.BAD.getFileKnownValue());
+                    resultSet = preparedStatement.executeQuery();
+                    while (resultSet.next()) {
+                        caseNamesByValue.computeIfAbsent(resultSet.getString("value"), value -> new LinkedHashSet<>()).add(resultSet.getString("case_name"));
+                    }
+                } finally {
+                    EamDbUtil.closeStatement(preparedStatement);
+                    EamDbUtil.closeResultSet(resultSet);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new EamDbException("Error getting notable artifact instances.", ex); // NON-NLS
+        } finally {
+            EamDbUtil.closeConnection(conn);
+        }
+
+        Map<String, List<String>> result = new HashMap<>();
+        caseNamesByValue.forEach((value, caseNames) -> result.put(value, new ArrayList<>(caseNames)));
+        return result;
+    }
+
     /**
      * Remove a reference set and all entries contained in it.
      *
@@ -1679,6 +1840,7 @@ public List<String> getListCasesHavingArtifactInstancesKnownBad(CorrelationAttri
     public void deleteReferenceSet(int referenceSetID) throws EamDbException {
         deleteReferenceSetEntries(referenceSetID);
         deleteReferenceSetEntry(referenceSetID);
+        EamDbValueFilters.removeReferenceSet(referenceSetID);
     }
 
     /**
@@ -1942,6 +2104,90 @@ public void processInstanceTableWhere(CorrelationAttribute.Type type, String whe
     }
     
 
+    /**
+     * Get the number of values in a reference set
+     *
+     * @param type           Correlation type of the reference set
+     * @param referenceSetID ID of the reference set
+     *
+     * @return Number of values in the reference set
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public long getCountReferenceSetValues(CorrelationAttribute.Type type, int referenceSetID) throws EamDbException {
+        if (type == null) {
+            throw new EamDbException("Correlation type is null");
+        }
+
+        Connection conn = connect();
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        String sql = "SELECT count(*) FROM %s WHERE reference_set_id=?";
+
+        try {
+            preparedStatement = conn.prepareStatement(String.format(sql, EamDbUtil.correlationTypeToReferenceTableName(type)));
+            preparedStatement.setInt(1, referenceSetID);
+            resultSet = preparedStatement.executeQuery();
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException ex) {
+            throw new EamDbException("Error counting values in reference set " + referenceSetID, ex); // NON-NLS
+        } finally {
+            EamDbUtil.closeStatement(preparedStatement);
+            EamDbUtil.closeResultSet(resultSet);
+            EamDbUtil.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Process the values of a reference set
+     *
+     * @param type           Correlation type of the reference set
+     * @param referenceSetID ID of the reference set
+     * @param callback       callback to process the result set of the value
+     *                       column of the reference set entries
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public void processReferenceSetValues(CorrelationAttribute.Type type, int referenceSetID, InstanceTableCallback callback) throws EamDbException {
+        if (type == null) {
+            throw new EamDbException("Correlation type is null");
+        }
+
+        if (callback == null) {
+            throw new EamDbException("Callback interface is null");
+        }
+
+        Connection conn = connect();
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        String sql = "SELECT value FROM %s WHERE reference_set_id=?";
+
+        try {
+            // Stream large reference sets instead of loading them into memory,
+            // which PostgreSQL only does outside of auto-commit mode
+            conn.setAutoCommit(false);
+            preparedStatement = conn.prepareStatement(String.format(sql, EamDbUtil.correlationTypeToReferenceTableName(type)));
+            preparedStatement.setInt(1, referenceSetID);
+            preparedStatement.setFetchSize(REFERENCE_SET_FETCH_SIZE);
+            resultSet = preparedStatement.executeQuery();
+            callback.process(resultSet);
+        } catch (SQLException ex) {
+            throw new EamDbException("Error getting values of reference set " + referenceSetID, ex); // NON-NLS
+        } finally {
+            EamDbUtil.closeStatement(preparedStatement);
+            EamDbUtil.closeResultSet(resultSet);
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ex) {
+                logger.log(Level.WARNING, "Error restoring auto-commit mode", ex); // NON-NLS
+            }
+            EamDbUtil.closeConnection(conn);
+        }
+    }
+
     @Override
     public EamOrganization newOrganization(EamOrganization eamOrg) throws EamDbException {
         if (eamOrg == null) {
@@ -2315,6 +2561,7 @@ public void addReferenceInstance(EamGlobalFileInstance eamGlobalFileInstance, Co
             preparedStatement.setByte(3, eamGlobalFileInstance.getKnownStatus().getFileKnownValue());
             preparedStatement.setString(4, eamGlobalFileInstance.getComment());
             preparedStatement.executeUpdate();
+            EamDbValueFilters.addReferenceSetValue(eamGlobalFileInstance.getGlobalSetID(), eamGlobalFileInstance.getMD5Hash());
         } catch (SQLException ex) {
             throw new EamDbException("Error inserting new reference instance into reference_ table.", ex); // NON-NLS
         } finally {
@@ -2374,23 +2621,54 @@ public void bulkInsertReferenceTypeEntries(Set<EamGlobalFileInstance> globalInst
             throw new EamDbException("Null set of EamGlobalFileInstance");
         }
 
+        for (EamGlobalFileInstance globalInstance : globalInstances) {
+            if (globalInstance.getKnownStatus() == null) {
+                throw new EamDbException("EamGlobalFileInstance with value " + globalInstance.getMD5Hash() + " has null known status");
+            }
+        }
+
         Connection conn = connect();
 
-        PreparedStatement bulkPs = null;
         try {
             conn.setAutoCommit(false);
+            bulkInsertReferenceInstances(conn, globalInstances, contentType);
+            conn.commit();
+            for (EamGlobalFileInstance globalInstance : globalInstances) {
+                EamDbValueFilters.addReferenceSetValue(globalInstance.getGlobalSetID(), globalInstance.getMD5Hash());
+            }
+        } catch (SQLException | EamDbException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex2) {
+                // We're alredy in an error state
+            }
+            throw new EamDbException("Error inserting bulk artifacts.", ex); // NON-NLS           
+        } finally {
+            EamDbUtil.closeConnection(conn);
+        }
+    }
 
-            // FUTURE: have a separate global_files table for each Type.
-            String sql = "INSERT INTO %s(reference_set_id, value, known_status, comment) VALUES (?, ?, ?, ?) "
-                    + getConflictClause();
+    /**
+     * Inserts a collection of reference set entries into the reference table
+     * for their correlation type, as part of the current transaction.
+     *
+     * @param conn            The connection to use.
+     * @param globalInstances The entries, all of which have a known status.
+     * @param contentType     The correlation type of the entries.
+     *
+     * @throws SQLException
+     * @throws EamDbException
+     */
+    protected void bulkInsertReferenceInstances(Connection conn, Set<EamGlobalFileInstance> globalInstances, CorrelationAttribute.Type contentType) throws SQLException, EamDbException {
+        // FUTURE: have a separate global_files table for each Type.
+        String sql = "INSERT INTO %s(reference_set_id, value, known_status, comment) VALUES (?, ?, ?, ?) "
+                + getConflictClause();
 
+        PreparedStatement bulkPs = null;
+        try {
             bulkPs = conn.prepareStatement(String.format(sql, EamDbUtil.correlationTypeToReferenceTableName(contentType)));
 
             for (EamGlobalFileInstance globalInstance : globalInstances) {
-                if (globalInstance.getKnownStatus() == null) {
-                    throw new EamDbException("EamGlobalFileInstance with value " + globalInstance.getMD5Hash() + " has null known status");
-                }
-
                 bulkPs.setInt(1, globalInstance.getGlobalSetID());
                 bulkPs.setString(2, globalInstance.getMD5Hash());
                 bulkPs.setByte(3, globalInstance.getKnownStatus().getFileKnownValue());
@@ -2399,20 +2677,36 @@ public void bulkInsertReferenceTypeEntries(Set<EamGlobalFileInstance> globalInst
             }
 
             bulkPs.executeBatch();
-            conn.commit();
-        } catch (SQLException | EamDbException ex) {
-            try {
-                conn.rollback();
-            } catch (SQLException ex2) {
-                // We're alredy in an error state
-            }
-            throw new EamDbException("Error inserting bulk artifacts.", ex); // NON-NLS           
         } finally {
             EamDbUtil.closeStatement(bulkPs);
-            EamDbUtil.closeConnection(conn);
         }
     }
 
+    /**
+     * Prepares the reference table for a correlation type for the import of a
+     * large number of entries. The default implementation does nothing.
+     *
+     * @param contentType The correlation type of the entries to be imported.
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public void startReferenceSetImport(CorrelationAttribute.Type contentType) throws EamDbException {
+    }
+
+    /**
+     * Restores the reference table for a correlation type after an import
+     * started with startReferenceSetImport. The default implementation does
+     * nothing.
+     *
+     * @param contentType The correlation type of the imported entries.
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public void finishReferenceSetImport(CorrelationAttribute.Type contentType) throws EamDbException {
+    }
+
     /**
      * Get all reference entries having a given correlation type and value
      *
@@ -0,0 +1,303 @@
+/*
+ * Central Repository
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.datamodel;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Writes the artifacts prepared for a bulk insert to the central repository on
+ * a dedicated thread, so that the ingest threads that prepare them do not wait
+ * for the inserts.
+ *
+ * The artifacts are added to a lock-free queue per correlation type. The
+ * writer moves the queued artifacts of each type into a batch of its own and
+ * inserts the batches while the ingest threads keep adding to the queues.
+ * Batches are written when the number of queued artifacts reaches the bulk
+ * threshold, in batches of the threshold size, or when the oldest queued
+ * artifact has waited for a few seconds. The number of queued artifacts is
+ * bounded; adding an artifact only blocks if the writer has fallen that far
+ * behind.
+ *
+ * Failed inserts are logged, and the first failure since the last flush is
+ * thrown by the next flush.
+ *
+ * The writer thread runs until the writer is shut down, which writes the
+ * queued artifacts first. It is started again if more artifacts are added.
+ */
+@ThreadSafe
+final class BulkArtifactWriter {
+
+    private static final Logger logger = Logger.getLogger(BulkArtifactWriter.class.getName());
+    private static final String WRITER_THREAD_NAME = "central-repo-bulk-writer-%d"; //NON-NLS
+    private static final int MAX_QUEUED_ARTIFACTS = 50000;
+    private static final long MAX_BATCH_AGE_MS = 5000;
+    private final BatchInserter inserter;
+    private final IntSupplier thresholdSupplier;
+    private final Map<String, Queue<CorrelationAttribute>> queuesByTable = new ConcurrentHashMap<>();
+    private final Semaphore queueCapacity = new Semaphore(MAX_QUEUED_ARTIFACTS);
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final Queue<CountDownLatch> flushRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<EamDbException> failure = new AtomicReference<>();
+    private volatile long oldestQueuedTime;
+    private volatile Thread writerThread;
+
+    /**
+     * Inserts batches of artifacts into the central repository.
+     */
+    @FunctionalInterface
+    interface BatchInserter {
+
+        /**
+         * Inserts batches of artifacts.
+         *
+         * @param batches The batches, each of which has artifacts of a single
+         *                correlation type.
+         *
+         * @throws EamDbException
+         */
+        void insert(List<List<CorrelationAttribute>> batches) throws EamDbException;
+    }
+
+    /**
+     * Creates a writer. The writer thread is started when the first artifact
+     * is added.
+     *
+     * @param inserter          Inserts the batches.
+     * @param thresholdSupplier Supplies the current bulk threshold.
+     */
+    BulkArtifactWriter(BatchInserter inserter, IntSupplier thresholdSupplier) {
+        this.inserter = inserter;
+        this.thresholdSupplier = thresholdSupplier;
+    }
+
+    /**
+     * Queues an artifact to be written, blocking only if the queue is full.
+     *
+     * @param eamArtifact The artifact.
+     *
+     * @throws EamDbException If interrupted while waiting for the queue.
+     */
+    void add(CorrelationAttribute eamArtifact) throws EamDbException {
+        if (!queueCapacity.tryAcquire()) {
+            logger.log(Level.FINE, "Central repository bulk artifact queue is full, waiting for the writer"); //NON-NLS
+            try {
+                queueCapacity.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new EamDbException("Interrupted while waiting to queue artifact.", ex); // NON-NLS
+            }
+        }
+        queuesByTable.computeIfAbsent(eamArtifact.getCorrelationType().getDbTableName(), table -> new ConcurrentLinkedQueue<>()).add(eamArtifact);
+        int count = queuedCount.incrementAndGet();
+        if (count == 1) {
+            oldestQueuedTime = System.currentTimeMillis();
+        }
+        Thread writer = writerThread;
+        if (null == writer) {
+            writer = startWriterThread();
+        }
+        if (count >= thresholdSupplier.getAsInt()) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Waits for all of the artifacts queued before this call to be written.
+     *
+     * @throws EamDbException If an insert failed since the last flush, or if
+     *                        interrupted while waiting.
+     */
+    void flush() throws EamDbException {
+        Thread writer = writerThread;
+        if (null != writer) {
+            CountDownLatch flushed = new CountDownLatch(1);
+            flushRequests.add(flushed);
+            LockSupport.unpark(writer);
+            try {
+                /*
+                 * If the writer was shut down after the request was added, it
+                 * may not have taken the request, but it wrote the queue, and
+                 * any artifacts added since started a new writer thread, which
+                 * takes the request.
+                 */
+                Thread waitedOn = writer;
+                while (!flushed.await(MAX_BATCH_AGE_MS, TimeUnit.MILLISECONDS)) {
+                    Thread current = writerThread;
+                    if (null != current) {
+                        waitedOn = current;
+                        LockSupport.unpark(current);
+                    } else if (!waitedOn.isAlive()) {
+                        flushRequests.remove(flushed);
+                        break;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new EamDbException("Interrupted while waiting for bulk artifacts to be written.", ex); // NON-NLS
+            }
+        }
+        EamDbException ex = failure.getAndSet(null);
+        if (null != ex) {
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes all of the queued artifacts and stops the writer thread, waiting
+     * for it to end.
+     *
+     * @throws EamDbException If an insert failed since the last flush, or if
+     *                        interrupted while waiting.
+     */
+    void shutDown() throws EamDbException {
+        Thread writer;
+        synchronized (this) {
+            writer = writerThread;
+            writerThread = null;
+        }
+        if (null != writer) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new EamDbException("Interrupted while waiting for the bulk artifact writer to stop.", ex); // NON-NLS
+            }
+        }
+        EamDbException ex = failure.getAndSet(null);
+        if (null != ex) {
+            throw ex;
+        }
+    }
+
+    /**
+     * Starts the writer thread if it has not been started.
+     *
+     * @return The writer thread.
+     */
+    private synchronized Thread startWriterThread() {
+        if (null == writerThread) {
+            writerThread = new ThreadFactoryBuilder().setNameFormat(WRITER_THREAD_NAME).setDaemon(true).build().newThread(this::writeBatches);
+            writerThread.start();
+        }
+        return writerThread;
+    }
+
+    /**
+     * Writes batches as they become due, and completes flush requests, until
+     * the writer is shut down, and then writes the rest of the queue.
+     */
+    private void writeBatches() {
+        while (Thread.currentThread() == writerThread) {
+            List<CountDownLatch> requests = takeFlushRequests();
+            if (!requests.isEmpty()) {
+                /*
+                 * Every artifact queued before the requests is taken, since
+                 * the queues are drained until they are empty, and this ends
+                 * because the number of queued artifacts is bounded.
+                 */
+                writeBatch(Integer.MAX_VALUE);
+                requests.forEach(CountDownLatch::countDown);
+            }
+
+            int threshold = Math.max(1, thresholdSupplier.getAsInt());
+            while (queuedCount.get() >= threshold) {
+                writeBatch(threshold);
+            }
+            if (queuedCount.get() > 0 && System.currentTimeMillis() - oldestQueuedTime >= MAX_BATCH_AGE_MS) {
+                writeBatch(Integer.MAX_VALUE);
+            }
+
+            if (flushRequests.isEmpty() && Thread.currentThread() == writerThread) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_AGE_MS / 5));
+            }
+        }
+
+        List<CountDownLatch> requests = takeFlushRequests();
+        writeBatch(Integer.MAX_VALUE);
+        requests.forEach(CountDownLatch::countDown);
+    }
+
+    /**
+     * Takes the pending flush requests.
+     *
+     * @return The requests.
+     */
+    private List<CountDownLatch> takeFlushRequests() {
+        List<CountDownLatch> requests = new ArrayList<>();
+        for (CountDownLatch request = flushRequests.poll(); null != request; request = flushRequests.poll()) {
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    /**
+     * Takes up to a maximum number of queued artifacts and inserts them.
+     *
+     * @param maxArtifacts The maximum number of artifacts.
+     */
+    private void writeBatch(int maxArtifacts) {
+        Map<String, List<CorrelationAttribute>> batchesByTable = new LinkedHashMap<>();
+        int taken = 0;
+        for (Map.Entry<String, Queue<CorrelationAttribute>> entry : queuesByTable.entrySet()) {
+            Queue<CorrelationAttribute> queue = entry.getValue();
+            while (taken < maxArtifacts) {
+                CorrelationAttribute eamArtifact = queue.poll();
+                if (null == eamArtifact) {
+                    break;
+                }
+                batchesByTable.computeIfAbsent(entry.getKey(), table -> new ArrayList<>()).add(eamArtifact);
+                ++taken;
+            }
+        }
+        if (queuedCount.addAndGet(-taken) > 0) {
+            // The remaining artifacts were queued after the ones taken.
+            oldestQueuedTime = System.currentTimeMillis();
+        }
+
+        try {
+            if (!batchesByTable.isEmpty()) {
+                inserter.insert(new ArrayList<>(batchesByTable.values()));
+            }
+        } catch (EamDbException | RuntimeException ex) {
+            logger.log(Level.SEVERE, String.format("Error inserting %d bulk artifacts.", taken), ex); // NON-NLS
+            failure.compareAndSet(null, (ex instanceof EamDbException) ? (EamDbException) ex : new EamDbException("Error inserting bulk artifacts.", ex)); // NON-NLS
+        } finally {
+            queueCapacity.release(taken);
+        }
+    }
+
+}
@@ -19,7 +19,9 @@
 package org.sleuthkit.autopsy.centralrepository.datamodel;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.sleuthkit.datamodel.TskData;
 import org.sleuthkit.autopsy.casemodule.Case;
@@ -313,9 +315,11 @@ static boolean isEnabled() {
     Long getCountArtifactInstancesByCaseDataSource(String caseUUID, String dataSourceID) throws EamDbException;
 
     /**
-     * Adds an eamArtifact to an internal list to be later added to DB. Artifact
-     * can have 1 or more Artifact Instances. Insert will be triggered by a
-     * threshold or a call to bulkInsertArtifacts().
+     * Adds an eamArtifact to an internal queue to be later added to DB. Artifact
+     * can have 1 or more Artifact Instances. Insert will be done in the
+     * background when a threshold is reached or the queued artifacts have
+     * waited for a few seconds, or by a call to bulkInsertArtifacts(). Only
+     * blocks if the background inserts have fallen far behind.
      *
      * @param eamArtifact The artifact to add
      */
@@ -323,7 +327,10 @@ static boolean isEnabled() {
 
     /**
      * Executes a bulk insert of the eamArtifacts added from the
-     * prepareBulkArtifact() method
+     * prepareBulkArtifact() method, waiting until they have been written.
+     *
+     * @throws EamDbException if writing any of the artifacts added since the
+     *                        last call failed
      */
     void bulkInsertArtifacts() throws EamDbException;
 
@@ -399,6 +406,18 @@ CorrelationAttribute getCorrelationAttribute(CorrelationAttribute.Type type, Cor
      */
     Long getCountArtifactInstancesKnownBad(CorrelationAttribute.Type aType, String value) throws EamDbException;
 
+    /**
+     * Count all of the eamArtifact instances of a type that have knownStatus =
+     * "Bad".
+     *
+     * @param aType EamArtifact.Type to count
+     *
+     * @return Number of notable eamArtifacts
+     *
+     * @throws EamDbException
+     */
+    long getCountArtifactInstancesKnownBad(CorrelationAttribute.Type aType) throws EamDbException;
+
     /**
      * Gets list of distinct case display names, where each case has 1+ Artifact
      * Instance matching eamArtifact with knownStatus = "Bad".
@@ -413,6 +432,21 @@ CorrelationAttribute getCorrelationAttribute(CorrelationAttribute.Type type, Cor
      */
     List<String> getListCasesHavingArtifactInstancesKnownBad(CorrelationAttribute.Type aType, String value) throws EamDbException;
 
+    /**
+     * Gets the distinct case display names of the cases that have 1+ Artifact
+     * Instance with knownStatus = "Bad" for each of a collection of values,
+     * using one query per several hundred values.
+     *
+     * @param aType  EamArtifact.Type to search for
+     * @param values Values to search for
+     *
+     * @return Map of each value that has instances marked as bad to the list
+     *         of cases containing those instances
+     *
+     * @throws EamDbException
+     */
+    Map<String, List<String>> getCasesHavingArtifactInstancesKnownBad(CorrelationAttribute.Type aType, Collection<String> values) throws EamDbException;
+
     /**
      * Remove a reference set and all values contained in it.
      *
@@ -601,6 +635,28 @@ CorrelationAttribute getCorrelationAttribute(CorrelationAttribute.Type type, Cor
      */
     void bulkInsertReferenceTypeEntries(Set<EamGlobalFileInstance> globalInstances, CorrelationAttribute.Type contentType) throws EamDbException;
 
+    /**
+     * Prepares the reference table for a type for the import of a large
+     * number of entries with bulkInsertReferenceTypeEntries. Each call must be
+     * followed by a call to finishReferenceSetImport, whether or not the
+     * import succeeds.
+     *
+     * @param contentType the Type of the entries to be imported
+     *
+     * @throws EamDbException
+     */
+    void startReferenceSetImport(CorrelationAttribute.Type contentType) throws EamDbException;
+
+    /**
+     * Restores the reference table for a type after an import started with
+     * startReferenceSetImport.
+     *
+     * @param contentType the Type of the imported entries
+     *
+     * @throws EamDbException
+     */
+    void finishReferenceSetImport(CorrelationAttribute.Type contentType) throws EamDbException;
+
     /**
      * Get all reference entries having a given correlation type and value
      *
@@ -716,4 +772,28 @@ CorrelationAttribute getCorrelationAttribute(CorrelationAttribute.Type type, Cor
      */
     void processInstanceTableWhere(CorrelationAttribute.Type type, String whereClause, InstanceTableCallback instanceTableCallback) throws EamDbException;
 
+    /**
+     * Get the number of values in a reference set
+     *
+     * @param type           Correlation type of the reference set
+     * @param referenceSetID ID of the reference set
+     *
+     * @return Number of values in the reference set
+     *
+     * @throws EamDbException
+     */
+    long getCountReferenceSetValues(CorrelationAttribute.Type type, int referenceSetID) throws EamDbException;
+
+    /**
+     * Process the values of a reference set
+     *
+     * @param type           Correlation type of the reference set
+     * @param referenceSetID ID of the reference set
+     * @param callback       callback to process the result set of the value
+     *                       column of the reference set entries
+     *
+     * @throws EamDbException
+     */
+    void processReferenceSetValues(CorrelationAttribute.Type type, int referenceSetID, InstanceTableCallback callback) throws EamDbException;
+
 }
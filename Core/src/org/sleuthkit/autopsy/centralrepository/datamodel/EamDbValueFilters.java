@@ -0,0 +1,354 @@
+/*
+ * Central Repository
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.datamodel;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * In-process Bloom filters of the values of the central repository reference
+ * sets and of the values with instances marked as notable, so that lookups of
+ * values that are in neither, which is most of them, do not have to go to the
+ * database. Only values that the filters report as possibly present need to
+ * be looked up.
+ *
+ * A filter is built in the background the first time it is used, and until
+ * it is ready, every value is reported as possibly present, so that lookups
+ * never wait for a build. Values added to the central repository through this
+ * process are added to the existing filters. Since other processes may add
+ * values too, invalidate() should be called when an ingest job starts: the
+ * notable value filters are then rebuilt, and the reference set filters are
+ * rebuilt if the number of values in their sets has changed. The filters may therefore miss values added by other processes
+ * while a job runs, so they are meant for ingest; other callers should query
+ * the central repository directly.
+ */
+@ThreadSafe
+public final class EamDbValueFilters {
+
+    private static final Logger logger = Logger.getLogger(EamDbValueFilters.class.getName());
+    private static final Map<Integer, FilterEntry> knownBadFilters = new ConcurrentHashMap<>();
+    private static final Map<Integer, FilterEntry> referenceSetFilters = new ConcurrentHashMap<>();
+    private static final ExecutorService filterBuilder = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("central-repo-value-filter-builder-%d").setDaemon(true).build()); //NON-NLS
+
+    /**
+     * Queries whether or not a value may have instances marked as notable in
+     * the central repository.
+     *
+     * @param type  The correlation type.
+     * @param value The value.
+     *
+     * @return False if the value definitely has no notable instances, true
+     *         otherwise, including while the filter is being built.
+     *
+     * @throws EamDbException If the central repository cannot be accessed.
+     */
+    public static boolean mightBeKnownBad(CorrelationAttribute.Type type, String value) throws EamDbException {
+        EamDb dbManager = EamDb.getInstance();
+        FilterEntry entry = knownBadFilters.computeIfAbsent(type.getId(), id -> new FilterEntry());
+        ValueBloomFilter filter = entry.getFilter(dbManager, () -> buildKnownBadFilter(dbManager, type), null);
+        return null == filter || filter.mightContain(value);
+    }
+
+    /**
+     * Queries whether or not a value may be in a central repository reference
+     * set.
+     *
+     * @param referenceSetID The id of the reference set.
+     * @param type           The correlation type of the reference set.
+     * @param value          The value.
+     *
+     * @return False if the value is definitely not in the set, true
+     *         otherwise, including while the filter is being built.
+     *
+     * @throws EamDbException If the central repository cannot be accessed.
+     */
+    public static boolean mightBeInReferenceSet(int referenceSetID, CorrelationAttribute.Type type, String value) throws EamDbException {
+        EamDb dbManager = EamDb.getInstance();
+        FilterEntry entry = referenceSetFilters.computeIfAbsent(referenceSetID, id -> new FilterEntry());
+        ValueBloomFilter filter = entry.getFilter(dbManager,
+                () -> buildReferenceSetFilter(dbManager, referenceSetID, type),
+                () -> dbManager.getCountReferenceSetValues(type, referenceSetID));
+        return null == filter || filter.mightContain(value);
+    }
+
+    /**
+     * Marks all of the filters for checking against the central repository
+     * the next time they are used, so that values added by other processes
+     * are found.
+     */
+    public static void invalidate() {
+        knownBadFilters.values().forEach(entry -> entry.invalidate(true));
+        referenceSetFilters.values().forEach(entry -> entry.invalidate(false));
+    }
+
+    /**
+     * Adds a value with an instance that was marked as notable to the filter
+     * for its type, if the filter has been built.
+     *
+     * @param type  The correlation type.
+     * @param value The value.
+     */
+    static void addKnownBad(CorrelationAttribute.Type type, String value) {
+        FilterEntry entry = knownBadFilters.get(type.getId());
+        if (null != entry) {
+            entry.add(value);
+        }
+    }
+
+    /**
+     * Adds a value that was added to a reference set to the filter for the
+     * set, if the filter has been built.
+     *
+     * @param referenceSetID The id of the reference set.
+     * @param value          The value.
+     */
+    static void addReferenceSetValue(int referenceSetID, String value) {
+        FilterEntry entry = referenceSetFilters.get(referenceSetID);
+        if (null != entry) {
+            entry.add(value);
+        }
+    }
+
+    /**
+     * Discards the filter for a reference set that was deleted.
+     *
+     * @param referenceSetID The id of the reference set.
+     */
+    static void removeReferenceSet(int referenceSetID) {
+        referenceSetFilters.remove(referenceSetID);
+    }
+
+    private static FilterBuild buildKnownBadFilter(EamDb dbManager, CorrelationAttribute.Type type) throws EamDbException {
+        long count = dbManager.getCountArtifactInstancesKnownBad(type);
+        ValueBloomFilter filter = new ValueBloomFilter(count);
+        SQLException[] callbackException = new SQLException[1];
+        dbManager.processInstanceTableWhere(type, "known_status=" + TskData.FileKnown.BAD.getFileKnownValue(), resultSet -> { //NON-NLS
+            try {
+                while (resultSet.next()) {
+                    filter.add(resultSet.getString("value")); //NON-NLS
+                }
+            } catch (SQLException ex) {
+                callbackException[0] = ex;
+            }
+        });
+        if (null != callbackException[0]) {
+            throw new EamDbException("Error reading notable artifact instances.", callbackException[0]); // NON-NLS
+        }
+        logger.log(Level.INFO, "Built notable value filter for correlation type {0} from {1} instances", new Object[]{type.getDisplayName(), count}); //NON-NLS
+        return new FilterBuild(filter, count);
+    }
+
+    private static FilterBuild buildReferenceSetFilter(EamDb dbManager, int referenceSetID, CorrelationAttribute.Type type) throws EamDbException {
+        long count = dbManager.getCountReferenceSetValues(type, referenceSetID);
+        ValueBloomFilter filter = new ValueBloomFilter(count);
+        SQLException[] callbackException = new SQLException[1];
+        dbManager.processReferenceSetValues(type, referenceSetID, resultSet -> {
+            try {
+                while (resultSet.next()) {
+                    filter.add(resultSet.getString("value")); //NON-NLS
+                }
+            } catch (SQLException ex) {
+                callbackException[0] = ex;
+            }
+        });
+        if (null != callbackException[0]) {
+            throw new EamDbException("Error reading reference set values.", callbackException[0]); // NON-NLS
+        }
+        logger.log(Level.INFO, "Built value filter for reference set {0} from {1} values", new Object[]{referenceSetID, count}); //NON-NLS
+        return new FilterBuild(filter, count);
+    }
+
+    private EamDbValueFilters() {
+    }
+
+    /**
+     * Builds a filter from the central repository.
+     */
+    @FunctionalInterface
+    private interface FilterBuilder {
+
+        FilterBuild build() throws EamDbException;
+    }
+
+    /**
+     * Counts the values a filter was built from in the central repository.
+     */
+    @FunctionalInterface
+    private interface ValueCounter {
+
+        long count() throws EamDbException;
+    }
+
+    /**
+     * A filter and the number of values it was built from.
+     */
+    private static final class FilterBuild {
+
+        private final ValueBloomFilter filter;
+        private final long valueCount;
+
+        FilterBuild(ValueBloomFilter filter, long valueCount) {
+            this.filter = filter;
+            this.valueCount = valueCount;
+        }
+    }
+
+    /**
+     * A filter that is built in the background when it is first used, and
+     * what is needed to check whether it is still up to date.
+     */
+    @ThreadSafe
+    private static final class FilterEntry {
+
+        private volatile ValueBloomFilter filter;
+        private volatile EamDb builtFrom;
+        private volatile boolean ready;
+        private volatile Queue<String> addsDuringBuild;
+        @GuardedBy("this")
+        private long valueCount;
+        @GuardedBy("this")
+        private boolean needsRebuild;
+        @GuardedBy("this")
+        private boolean updating;
+        @GuardedBy("this")
+        private boolean updateFailed;
+        @GuardedBy("this")
+        private long invalidations;
+
+        /**
+         * Gets the filter if it is ready. Otherwise, starts building it in the
+         * background if it has not been built, if it was built from a
+         * different central repository, or if it has been invalidated and is
+         * out of date. A failed build is not retried until the filter is
+         * invalidated again.
+         *
+         * @param dbManager The current central repository.
+         * @param builder   Builds the filter.
+         * @param counter   Counts the values of the filter in the central
+         *                  repository, or null if an invalidated filter is
+         *                  always rebuilt.
+         *
+         * @return The filter, or null if it is not ready.
+         */
+        ValueBloomFilter getFilter(EamDb dbManager, FilterBuilder builder, ValueCounter counter) {
+            if (ready && builtFrom == dbManager) {
+                return filter;
+            }
+            synchronized (this) {
+                if (!updating && (!updateFailed || builtFrom != dbManager)) {
+                    updating = true;
+                    long invalidationsAtStart = invalidations;
+                    filterBuilder.submit(() -> update(dbManager, builder, counter, invalidationsAtStart));
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Checks the filter against the central repository and rebuilds it if
+         * it is out of date. Runs in the background.
+         */
+        private void update(EamDb dbManager, FilterBuilder builder, ValueCounter counter, long invalidationsAtStart) {
+            boolean succeeded = false;
+            try {
+                boolean rebuild;
+                long builtValueCount;
+                synchronized (this) {
+                    rebuild = null == filter || builtFrom != dbManager || needsRebuild;
+                    needsRebuild = false;
+                    builtValueCount = valueCount;
+                }
+                if (!rebuild && null != counter) {
+                    rebuild = counter.count() != builtValueCount;
+                }
+                if (rebuild) {
+                    /*
+                     * Values added while the filter is being built may be
+                     * missed by the build, so they are added again after it.
+                     * The new filter replaces the old one before the values
+                     * stop being collected, so no value is missed.
+                     */
+                    Queue<String> adds = new ConcurrentLinkedQueue<>();
+                    addsDuringBuild = adds;
+                    FilterBuild build;
+                    try {
+                        build = builder.build();
+                        synchronized (this) {
+                            filter = build.filter;
+                            valueCount = build.valueCount;
+                            builtFrom = dbManager;
+                        }
+                    } finally {
+                        addsDuringBuild = null;
+                    }
+                    adds.forEach(build.filter::add);
+                }
+                succeeded = true;
+            } catch (EamDbException ex) {
+                logger.log(Level.SEVERE, "Error building central repository value filter, all values will be looked up", ex); //NON-NLS
+            } finally {
+                synchronized (this) {
+                    updating = false;
+                    updateFailed = !succeeded;
+                    /*
+                     * If the filter was invalidated during the update, it is
+                     * checked again the next time it is used.
+                     */
+                    ready = succeeded && invalidations == invalidationsAtStart;
+                }
+            }
+        }
+
+        /**
+         * Marks the filter for checking the next time it is used.
+         *
+         * @param rebuild Whether the filter should be rebuilt rather than
+         *                checked.
+         */
+        synchronized void invalidate(boolean rebuild) {
+            needsRebuild |= rebuild;
+            ready = false;
+            updateFailed = false;
+            ++invalidations;
+        }
+
+        void add(String value) {
+            Queue<String> adds = addsDuringBuild;
+            if (null != adds) {
+                adds.add(value);
+            }
+            ValueBloomFilter current = filter;
+            if (null != current) {
+                current.add(value);
+            }
+        }
+    }
+
+}
@@ -19,8 +19,11 @@
 package org.sleuthkit.autopsy.centralrepository.datamodel;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import org.apache.commons.dbcp2.BasicDataSource;
@@ -38,6 +41,21 @@ final class PostgresEamDb extends AbstractSqlEamDb {
 
     private final static String CONFLICT_CLAUSE = "ON CONFLICT DO NOTHING";
 
+    /*
+     * Bulk inserts are copied into session-local staging tables, which are
+     * emptied at the end of each transaction, and then merged into the real
+     * tables with a single statement.
+     */
+    private final static String STAGING_TABLE_PREFIX = "bulk_"; // NON-NLS
+    private final static String INSTANCES_STAGING_TABLE_TEMPLATE = "CREATE TEMPORARY TABLE IF NOT EXISTS %s "
+            + "(case_uid text, device_id text, case_id integer, value text, file_path text, known_status integer, comment text) "
+            + "ON COMMIT DELETE ROWS"; // NON-NLS
+    private final static String INSTANCES_STAGING_COLUMNS = "case_uid, device_id, case_id, value, file_path, known_status, comment"; // NON-NLS
+    private final static String REFERENCE_STAGING_TABLE_TEMPLATE = "CREATE TEMPORARY TABLE IF NOT EXISTS %s "
+            + "(reference_set_id integer, value text, known_status integer, comment text) "
+            + "ON COMMIT DELETE ROWS"; // NON-NLS
+    private final static String REFERENCE_STAGING_COLUMNS = "reference_set_id, value, known_status, comment"; // NON-NLS
+
     private static PostgresEamDb instance;
 
     private static final int CONN_POOL_SIZE = 10;
@@ -73,14 +91,19 @@ private PostgresEamDb() throws EamDbException {
     @Override
     public void shutdownConnections() throws EamDbException {
         try {
-            synchronized(this) {
-                if(connectionPool != null){
-                    connectionPool.close();
-                    connectionPool = null; // force it to be re-created on next connect()
+            // Write the queued bulk artifacts while the connections are open.
+            shutdownBulkArtifactWriter();
+        } finally {
+            try {
+                synchronized(this) {
+                    if(connectionPool != null){
+                        connectionPool.close();
+                        connectionPool = null; // force it to be re-created on next connect()
+                    }
                 }
+            } catch (SQLException ex) {
+                throw new EamDbException("Failed to close existing database connections.", ex); // NON-NLS
             }
-        } catch (SQLException ex) {
-            throw new EamDbException("Failed to close existing database connections.", ex); // NON-NLS
         }
     }
 
@@ -188,6 +211,194 @@ protected Connection connect() throws EamDbException {
     protected String getConflictClause() {
         return CONFLICT_CLAUSE;
     }
+
+    /**
+     * Inserts the instances of a collection of artifacts of one correlation
+     * type by copying them into a staging table and merging them into the
+     * instances table for the type.
+     *
+     * @param conn         The connection to use.
+     * @param type         The correlation type of the artifacts.
+     * @param eamArtifacts The artifacts.
+     *
+     * @throws SQLException
+     * @throws EamDbException If an instance is missing required data.
+     */
+    @Override
+    protected void bulkInsertArtifactInstances(Connection conn, CorrelationAttribute.Type type, Collection<CorrelationAttribute> eamArtifacts) throws SQLException, EamDbException {
+        String tableName = EamDbUtil.correlationTypeToInstanceTableName(type);
+        String stagingTableName = STAGING_TABLE_PREFIX + tableName;
+        boolean autoCommit = conn.getAutoCommit();
+        Statement statement = null;
+        try {
+            conn.setAutoCommit(false);
+            statement = conn.createStatement();
+            statement.execute(String.format(INSTANCES_STAGING_TABLE_TEMPLATE, stagingTableName));
+
+            try (PostgresCopyWriter writer = new PostgresCopyWriter(conn, stagingTableName, INSTANCES_STAGING_COLUMNS)) {
+                for (CorrelationAttribute eamArtifact : eamArtifacts) {
+                    for (CorrelationAttributeInstance eamInstance : eamArtifact.getInstances()) {
+                        if (isInsertableBulkInstance(eamArtifact, eamInstance)) {
+                            writer.startRow(7);
+                            writer.writeText(eamInstance.getCorrelationCase().getCaseUUID());
+                            writer.writeText(eamInstance.getCorrelationDataSource().getDeviceID());
+                            writer.writeInt(eamInstance.getCorrelationDataSource().getCaseID());
+                            writer.writeText(eamArtifact.getCorrelationValue());
+                            writer.writeText(eamInstance.getFilePath());
+                            writer.writeInt(eamInstance.getKnownStatus().getFileKnownValue());
+                            writer.writeText("".equals(eamInstance.getComment()) ? null : eamInstance.getComment());
+                        }
+                    }
+                }
+                writer.finish();
+            }
+
+            statement.executeUpdate("INSERT INTO " + tableName
+                    + " (case_id, data_source_id, value, file_path, known_status, comment) "
+                    + "SELECT (SELECT id FROM cases WHERE case_uid=staged.case_uid LIMIT 1), "
+                    + "(SELECT id FROM data_sources WHERE device_id=staged.device_id AND case_id=staged.case_id LIMIT 1), "
+                    + "staged.value, staged.file_path, staged.known_status, staged.comment "
+                    + "FROM " + stagingTableName + " staged "
+                    + getConflictClause());
+            conn.commit();
+        } catch (SQLException | EamDbException ex) {
+            rollbackQuietly(conn);
+            throw ex;
+        } finally {
+            EamDbUtil.closeStatement(statement);
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Inserts a collection of reference set entries by copying them into a
+     * staging table and merging them into the reference table for their
+     * correlation type, as part of the current transaction.
+     *
+     * @param conn            The connection to use.
+     * @param globalInstances The entries, all of which have a known status.
+     * @param contentType     The correlation type of the entries.
+     *
+     * @throws SQLException
+     * @throws EamDbException
+     */
+    @Override
+    protected void bulkInsertReferenceInstances(Connection conn, Set<EamGlobalFileInstance> globalInstances, CorrelationAttribute.Type contentType) throws SQLException, EamDbException {
+        String tableName = EamDbUtil.correlationTypeToReferenceTableName(contentType);
+        String stagingTableName = STAGING_TABLE_PREFIX + tableName;
+        Statement statement = null;
+        try {
+            statement = conn.createStatement();
+            statement.execute(String.format(REFERENCE_STAGING_TABLE_TEMPLATE, stagingTableName));
+
+            try (PostgresCopyWriter writer = new PostgresCopyWriter(conn, stagingTableName, REFERENCE_STAGING_COLUMNS)) {
+                for (EamGlobalFileInstance globalInstance : globalInstances) {
+                    writer.startRow(4);
+                    writer.writeInt(globalInstance.getGlobalSetID());
+                    writer.writeText(globalInstance.getMD5Hash());
+                    writer.writeInt(globalInstance.getKnownStatus().getFileKnownValue());
+                    writer.writeText(globalInstance.getComment());
+                }
+                writer.finish();
+            }
+
+            statement.executeUpdate("INSERT INTO " + tableName + " (" + REFERENCE_STAGING_COLUMNS + ") "
+                    + "SELECT " + REFERENCE_STAGING_COLUMNS + " FROM " + stagingTableName + " "
+                    + getConflictClause());
+        } finally {
+            EamDbUtil.closeStatement(statement);
+        }
+    }
+
+    /**
+     * Prepares the reference table for a correlation type for the import of a
+     * large number of entries. If the table is empty, its value indexes are
+     * dropped so that they are built once at the end of the import instead of
+     * being updated for every entry. Otherwise, any value indexes left
+     * dropped by an import that did not finish are rebuilt.
+     *
+     * @param contentType The correlation type of the entries to be imported.
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public void startReferenceSetImport(CorrelationAttribute.Type contentType) throws EamDbException {
+        String tableName = EamDbUtil.correlationTypeToReferenceTableName(contentType);
+        Connection conn = connect();
+        Statement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = conn.createStatement();
+            resultSet = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM " + tableName + ")");
+            resultSet.next();
+            if (resultSet.getBoolean(1)) {
+                createReferenceValueIndexes(statement, tableName);
+            } else {
+                statement.execute("DROP INDEX IF EXISTS " + tableName + "_value");
+                statement.execute("DROP INDEX IF EXISTS " + tableName + "_value_known_status");
+                LOGGER.log(Level.INFO, "Deferred building the value indexes of {0} until the end of the import", tableName); // NON-NLS
+            }
+        } catch (SQLException ex) {
+            throw new EamDbException("Error preparing " + tableName + " for import.", ex); // NON-NLS
+        } finally {
+            EamDbUtil.closeResultSet(resultSet);
+            EamDbUtil.closeStatement(statement);
+            EamDbUtil.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Restores the reference table for a correlation type after an import,
+     * building any value indexes that were dropped for the import and
+     * updating the planner statistics of the table.
+     *
+     * @param contentType The correlation type of the imported entries.
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public void finishReferenceSetImport(CorrelationAttribute.Type contentType) throws EamDbException {
+        String tableName = EamDbUtil.correlationTypeToReferenceTableName(contentType);
+        Connection conn = connect();
+        Statement statement = null;
+        try {
+            statement = conn.createStatement();
+            createReferenceValueIndexes(statement, tableName);
+            statement.execute("ANALYZE " + tableName);
+        } catch (SQLException ex) {
+            throw new EamDbException("Error restoring " + tableName + " after import.", ex); // NON-NLS
+        } finally {
+            EamDbUtil.closeStatement(statement);
+            EamDbUtil.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Creates the value indexes of a reference table, if they do not exist.
+     *
+     * @param statement The statement to use.
+     * @param tableName The name of the reference table.
+     *
+     * @throws SQLException
+     */
+    private static void createReferenceValueIndexes(Statement statement, String tableName) throws SQLException {
+        statement.execute(String.format(PostgresEamDbSettings.REFERENCE_TYPES_VALUE_INDEX_TEMPLATE, tableName, tableName));
+        statement.execute(String.format(PostgresEamDbSettings.REFERENCE_TYPES_VALUE_KNOWN_STATUS_INDEX_TEMPLATE, tableName, tableName));
+    }
+
+    /**
+     * Rolls back the current transaction of a connection that is already in
+     * an error state.
+     *
+     * @param conn The connection.
+     */
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "Error rolling back transaction.", ex); // NON-NLS
+        }
+    }
     
     /**
      * Gets an exclusive lock (if applicable).
@@ -51,6 +51,9 @@ public final class PostgresEamDbSettings {
     private final String JDBC_DRIVER = "org.postgresql.Driver"; // NON-NLS
     private final String DB_NAMES_REGEX = "[a-z][a-z0-9_]*"; // only lower case
     private final String DB_USER_NAMES_REGEX = "[a-zA-Z]\\w*";
+    // Each "%s" will be replaced with the relevant reference_TYPE table name.
+    static final String REFERENCE_TYPES_VALUE_INDEX_TEMPLATE = "CREATE INDEX IF NOT EXISTS %s_value ON %s (value)"; // NON-NLS
+    static final String REFERENCE_TYPES_VALUE_KNOWN_STATUS_INDEX_TEMPLATE = "CREATE INDEX IF NOT EXISTS %s_value_known_status ON %s (value, known_status)"; // NON-NLS
     private String host;
     private int port;
     private String dbName;
@@ -377,9 +380,8 @@ public boolean initializeDatabaseSchema() {
         createReferenceTypesTableTemplate.append("foreign key (reference_set_id) references reference_sets(id) ON UPDATE SET NULL ON DELETE SET NULL");
         createReferenceTypesTableTemplate.append(")");
 
-        // Each "%s" will be replaced with the relevant reference_TYPE table name.
-        String referenceTypesIdx1 = "CREATE INDEX IF NOT EXISTS %s_value ON %s (value)";
-        String referenceTypesIdx2 = "CREATE INDEX IF NOT EXISTS %s_value_known_status ON %s (value, known_status)";
+        String referenceTypesIdx1 = REFERENCE_TYPES_VALUE_INDEX_TEMPLATE;
+        String referenceTypesIdx2 = REFERENCE_TYPES_VALUE_KNOWN_STATUS_INDEX_TEMPLATE;
 
         StringBuilder createCorrelationTypesTable = new StringBuilder();
         createCorrelationTypesTable.append("CREATE TABLE IF NOT EXISTS correlation_types (");
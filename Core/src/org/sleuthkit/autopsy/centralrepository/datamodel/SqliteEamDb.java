@@ -21,9 +21,13 @@
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import org.apache.commons.dbcp2.BasicDataSource;
@@ -36,6 +40,12 @@
  * Sqlite implementation of the Central Repository database. All methods in
  * AbstractSqlEamDb that read or write to the database should be overriden here
  * and use appropriate locking.
+ *
+ * The database is used in WAL mode, in which reads do not wait for writes.
+ * Methods that only read use query-only connections from a pool of reader
+ * connections, and run concurrently with each other and with a write. Methods
+ * that write are serialized, and use the writer connections, as do any reads
+ * they make.
  */
 final class SqliteEamDb extends AbstractSqlEamDb {
 
@@ -43,13 +53,24 @@ final class SqliteEamDb extends AbstractSqlEamDb {
 
     private static SqliteEamDb instance;
 
-    private BasicDataSource connectionPool = null;
+    // Connection settings shared by the reader and writer connections
+    private static final List<String> CONNECTION_INIT_SQLS = Arrays.asList(
+            "PRAGMA foreign_keys = ON", // NON-NLS
+            "PRAGMA synchronous = NORMAL"); // NON-NLS
+    private static final String PRAGMA_JOURNAL_WAL = "PRAGMA journal_mode = WAL"; // NON-NLS
+    private static final String PRAGMA_QUERY_ONLY = "PRAGMA query_only = ON"; // NON-NLS
+
+    private BasicDataSource readerConnectionPool = null;
+    private BasicDataSource writerConnectionPool = null;
 
     private final SqliteEamDbSettings dbSettings;
 
     // While the Sqlite database should only be used for single users, it is still
     // possible for multiple threads to attempt to write to the database simultaneously. 
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true);
+    // Writes are serialized by the writer lock. Reads and writes share the schema
+    // lock, which is only held exclusively while the whole database is changed.
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private final ReentrantReadWriteLock schemaLock = new ReentrantReadWriteLock(true);
 
     /**
      * Get the singleton instance of SqliteEamDb
@@ -80,14 +101,23 @@ private SqliteEamDb() throws EamDbException {
     @Override
     public void shutdownConnections() throws EamDbException {
         try {
-            synchronized (this) {
-                if (null != connectionPool) {
-                    connectionPool.close();
-                    connectionPool = null; // force it to be re-created on next connect()
+            // Write the queued bulk artifacts while the connections are open.
+            shutdownBulkArtifactWriter();
+        } finally {
+            try {
+                synchronized (this) {
+                    if (null != readerConnectionPool) {
+                        readerConnectionPool.close();
+                        readerConnectionPool = null; // force it to be re-created on next connect()
+                    }
+                    if (null != writerConnectionPool) {
+                        writerConnectionPool.close();
+                        writerConnectionPool = null;
+                    }
                 }
+            } catch (SQLException ex) {
+                throw new EamDbException("Failed to close existing database connections.", ex); // NON-NLS
             }
-        } catch (SQLException ex) {
-            throw new EamDbException("Failed to close existing database connections.", ex); // NON-NLS
         }
     }
 
@@ -109,7 +139,7 @@ public void saveSettings() {
     @Override
     public void reset() throws EamDbException {
         try {
-            acquireExclusiveLock();
+            acquireSchemaLock();
 
             Connection conn = connect();
 
@@ -142,12 +172,14 @@ public void reset() throws EamDbException {
 
             dbSettings.insertDefaultDatabaseContent();
         } finally {
-            releaseExclusiveLock();
+            releaseSchemaLock();
         }
     }
 
     /**
-     * Setup a connection pool for db connections.
+     * Setup the reader and writer connection pools for db connections. The
+     * database is switched to WAL mode, if it is not already in it, before any
+     * reader connections are made.
      *
      */
     private void setupConnectionPool() throws EamDbException {
@@ -156,21 +188,53 @@ private void setupConnectionPool() throws EamDbException {
             throw new EamDbException("Central repository database missing");
         }
 
-        connectionPool = new BasicDataSource();
+        List<String> writerInitSqls = new ArrayList<>(CONNECTION_INIT_SQLS);
+        writerInitSqls.add(PRAGMA_JOURNAL_WAL);
+        writerConnectionPool = createConnectionPool(1, writerInitSqls);
+        try {
+            EamDbUtil.closeConnection(writerConnectionPool.getConnection());
+        } catch (SQLException ex) {
+            try {
+                writerConnectionPool.close();
+            } catch (SQLException ex2) {
+                // We're already in an error state
+            }
+            writerConnectionPool = null;
+            throw new EamDbException("Error switching central repository database to WAL mode.", ex); // NON-NLS
+        }
+
+        List<String> readerInitSqls = new ArrayList<>(CONNECTION_INIT_SQLS);
+        readerInitSqls.add(PRAGMA_QUERY_ONLY);
+        readerConnectionPool = createConnectionPool(10, readerInitSqls);
+    }
+
+    /**
+     * Create a connection pool for db connections.
+     *
+     * @param initialSize The initial number of connections.
+     * @param initSqls    The statements to run on each new connection.
+     *
+     * @return The connection pool.
+     */
+    private BasicDataSource createConnectionPool(int initialSize, List<String> initSqls) {
+        BasicDataSource connectionPool = new BasicDataSource();
         connectionPool.setDriverClassName(dbSettings.getDriver());
         connectionPool.setUrl(dbSettings.getConnectionURL());
 
         // tweak pool configuration
-        connectionPool.setInitialSize(50);
+        connectionPool.setInitialSize(initialSize);
         connectionPool.setMaxTotal(-1);
         connectionPool.setMaxIdle(-1);
         connectionPool.setMaxWaitMillis(1000);
         connectionPool.setValidationQuery(dbSettings.getValidationQuery());
-        connectionPool.setConnectionInitSqls(Arrays.asList("PRAGMA foreign_keys = ON"));
+        connectionPool.setConnectionInitSqls(initSqls);
+        return connectionPool;
     }
 
     /**
-     * Lazily setup Singleton connection on first request.
+     * Lazily setup Singleton connection on first request. Threads that hold
+     * the writer lock get a writer connection, and other threads get a reader
+     * connection.
      *
      * @return A connection from the connection pool.
      *
@@ -178,20 +242,23 @@ private void setupConnectionPool() throws EamDbException {
      */
     @Override
     protected Connection connect() throws EamDbException {
+        BasicDataSource connectionPool;
         synchronized (this) {
             if (!EamDb.isEnabled()) {
                 throw new EamDbException("Central Repository module is not enabled"); // NON-NLS
             }
 
-            if (connectionPool == null) {
+            if (readerConnectionPool == null) {
                 setupConnectionPool();
             }
 
-            try {
-                return connectionPool.getConnection();
-            } catch (SQLException ex) {
-                throw new EamDbException("Error getting connection from connection pool.", ex); // NON-NLS
-            }
+            connectionPool = writerLock.isHeldByCurrentThread() ? writerConnectionPool : readerConnectionPool;
+        }
+
+        try {
+            return connectionPool.getConnection();
+        } catch (SQLException ex) {
+            throw new EamDbException("Error getting connection from connection pool.", ex); // NON-NLS
         }
     }
 
@@ -561,14 +628,19 @@ public Long getCountArtifactInstancesByCaseDataSource(String caseUUID, String da
     }
 
     /**
-     * Executes a bulk insert of the eamArtifacts added from the
-     * prepareBulkArtifact() method
+     * Inserts batches of artifacts prepared for a bulk insert. Called on the
+     * bulk artifact writer thread.
+     *
+     * @param batches The batches, each of which has artifacts of a single
+     *                correlation type.
+     *
+     * @throws EamDbException
      */
     @Override
-    public void bulkInsertArtifacts() throws EamDbException {
+    protected void insertBulkArtifacts(List<List<CorrelationAttribute>> batches) throws EamDbException {
         try {
             acquireExclusiveLock();
-            super.bulkInsertArtifacts();
+            super.insertBulkArtifacts(batches);
         } finally {
             releaseExclusiveLock();
         }
@@ -607,6 +679,25 @@ public void setArtifactInstanceKnownStatus(CorrelationAttribute eamArtifact, Tsk
         }
     }
 
+    /**
+     * Update a correlation attribute instance comment in the database with
+     * that in the associated CorrelationAttribute object.
+     *
+     * @param eamArtifact The correlation attribute whose database instance
+     *                    will be updated.
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public void updateAttributeInstanceComment(CorrelationAttribute eamArtifact) throws EamDbException {
+        try {
+            acquireExclusiveLock();
+            super.updateAttributeInstanceComment(eamArtifact);
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
     /**
      * Gets list of matching eamArtifact instances that have knownStatus =
      * "Bad".
@@ -663,6 +754,26 @@ public Long getCountArtifactInstancesKnownBad(CorrelationAttribute.Type aType, S
         }
     }
 
+    /**
+     * Count all of the eamArtifact instances of a type that have knownStatus =
+     * "Bad".
+     *
+     * @param aType EamArtifact.Type to count
+     *
+     * @return Number of notable eamArtifacts
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public long getCountArtifactInstancesKnownBad(CorrelationAttribute.Type aType) throws EamDbException {
+        try {
+            acquireSharedLock();
+            return super.getCountArtifactInstancesKnownBad(aType);
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
     /**
      * Gets list of distinct case display names, where each case has 1+ Artifact
      * Instance matching eamArtifact with knownStatus = "Bad".
@@ -685,6 +796,68 @@ public List<String> getListCasesHavingArtifactInstancesKnownBad(CorrelationAttri
         }
     }
 
+    /**
+     * Gets the distinct case display names of the cases that have 1+ Artifact
+     * Instance with knownStatus = "Bad" for each of a collection of values.
+     *
+     * @param aType  EamArtifact.Type to search for
+     * @param values Values to search for
+     *
+     * @return Map of each value that has instances marked as bad to the list
+     *         of cases containing those instances
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public Map<String, List<String>> getCasesHavingArtifactInstancesKnownBad(CorrelationAttribute.Type aType, Collection<String> values) throws EamDbException {
+        try {
+            acquireSharedLock();
+            return super.getCasesHavingArtifactInstancesKnownBad(aType, values);
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    /**
+     * Get the number of values in a reference set
+     *
+     * @param type           Correlation type of the reference set
+     * @param referenceSetID ID of the reference set
+     *
+     * @return Number of values in the reference set
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public long getCountReferenceSetValues(CorrelationAttribute.Type type, int referenceSetID) throws EamDbException {
+        try {
+            acquireSharedLock();
+            return super.getCountReferenceSetValues(type, referenceSetID);
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    /**
+     * Process the values of a reference set
+     *
+     * @param type           Correlation type of the reference set
+     * @param referenceSetID ID of the reference set
+     * @param callback       callback to process the result set of the value
+     *                       column of the reference set entries
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public void processReferenceSetValues(CorrelationAttribute.Type type, int referenceSetID, InstanceTableCallback callback) throws EamDbException {
+        try {
+            acquireSharedLock();
+            super.processReferenceSetValues(type, referenceSetID, callback);
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
     /**
      * Remove a reference set and all values contained in it.
      *
@@ -904,6 +1077,47 @@ public EamGlobalSet getReferenceSetByID(int referenceSetID) throws EamDbExceptio
         }
     }
 
+    /**
+     * Check whether a reference set with the given parameters exists in the
+     * central repository.
+     *
+     * @param referenceSetID
+     * @param setName
+     * @param version
+     *
+     * @return true if a matching entry exists in the central repository
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public boolean referenceSetIsValid(int referenceSetID, String setName, String version) throws EamDbException {
+        try {
+            acquireSharedLock();
+            return super.referenceSetIsValid(referenceSetID, setName, version);
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    /**
+     * Get the organization associated with the given reference set.
+     *
+     * @param referenceSetID ID of the reference set
+     *
+     * @return The organization object
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public EamOrganization getReferenceSetOrganization(int referenceSetID) throws EamDbException {
+        try {
+            acquireSharedLock();
+            return super.getReferenceSetOrganization(referenceSetID);
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
     /**
      * Get all reference sets
      *
@@ -1096,10 +1310,10 @@ public CorrelationAttribute.Type getCorrelationTypeById(int typeId) throws EamDb
     @Override
     public void upgradeSchema() throws EamDbException, SQLException {
         try {
-            acquireExclusiveLock();
+            acquireSchemaLock();
             super.upgradeSchema();
         } finally {
-            releaseExclusiveLock();
+            releaseSchemaLock();
         }
     }
 
@@ -1120,21 +1334,24 @@ public CoordinationService.Lock getExclusiveMultiUserDbLock() throws EamDbExcept
     }
 
     /**
-     * Acquire the lock that provides exclusive access to the case database.
-     * Call this method in a try block with a call to the lock release method in
-     * an associated finally block.
+     * Acquire the lock that provides exclusive write access to the case
+     * database. Reads by other threads are not blocked. Call this method in a
+     * try block with a call to the lock release method in an associated
+     * finally block.
      */
     private void acquireExclusiveLock() {
-        rwLock.writeLock().lock();
+        schemaLock.readLock().lock();
+        writerLock.lock();
     }
 
     /**
-     * Release the lock that provides exclusive access to the database. This
-     * method should always be called in the finally block of a try block in
-     * which the lock was acquired.
+     * Release the lock that provides exclusive write access to the database.
+     * This method should always be called in the finally block of a try block
+     * in which the lock was acquired.
      */
     private void releaseExclusiveLock() {
-        rwLock.writeLock().unlock();
+        writerLock.unlock();
+        schemaLock.readLock().unlock();
     }
 
     /**
@@ -1143,7 +1360,7 @@ private void releaseExclusiveLock() {
      * associated finally block.
      */
     private void acquireSharedLock() {
-        rwLock.readLock().lock();
+        schemaLock.readLock().lock();
     }
 
     /**
@@ -1152,7 +1369,28 @@ private void acquireSharedLock() {
      * lock was acquired.
      */
     private void releaseSharedLock() {
-        rwLock.readLock().unlock();
+        schemaLock.readLock().unlock();
+    }
+
+    /**
+     * Acquire the lock that provides exclusive access to the whole case
+     * database, blocking both reads and writes, for changes such as resets and
+     * schema upgrades. Call this method in a try block with a call to the lock
+     * release method in an associated finally block.
+     */
+    private void acquireSchemaLock() {
+        schemaLock.writeLock().lock();
+        writerLock.lock();
+    }
+
+    /**
+     * Release the lock that provides exclusive access to the whole database.
+     * This method should always be called in the finally block of a try block
+     * in which the lock was acquired.
+     */
+    private void releaseSchemaLock() {
+        writerLock.unlock();
+        schemaLock.writeLock().unlock();
     }
 
 }
@@ -0,0 +1,111 @@
+/*
+ * Central Repository
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.datamodel;
+
+import com.google.common.hash.Hashing;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A Bloom filter of correlation values, with its bits in a direct buffer
+ * outside of the Java heap. A value that was added is always reported as
+ * possibly present; a value that was not added is reported as possibly present
+ * with a small false positive probability.
+ *
+ * Values may be added while other threads query the filter. Adds are
+ * serialized, and each add is published to the querying threads by a volatile
+ * write.
+ */
+@ThreadSafe
+final class ValueBloomFilter {
+
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+    private static final long MAX_BITS = 8L * Integer.MAX_VALUE - 64;
+    private final LongBuffer bits;
+    private final long numBits;
+    private final int numHashFunctions;
+    private volatile long addCount;
+
+    /**
+     * Creates an empty filter sized for a number of values.
+     *
+     * @param expectedValues The expected number of values.
+     */
+    ValueBloomFilter(long expectedValues) {
+        long values = Math.max(expectedValues, 1024);
+        long optimalBits = (long) Math.ceil(-values * Math.log(FALSE_POSITIVE_PROBABILITY) / (Math.log(2) * Math.log(2)));
+        long words = (Math.min(optimalBits, MAX_BITS) + 63) / 64;
+        this.numBits = words * 64;
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / values * Math.log(2)));
+        this.bits = ByteBuffer.allocateDirect((int) (words * 8)).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    /**
+     * Adds a value to the filter.
+     *
+     * @param value The value.
+     */
+    synchronized void add(String value) {
+        long[] hashes = hash(value);
+        long combined = hashes[0];
+        for (int i = 0; i < numHashFunctions; ++i) {
+            long bit = (combined & Long.MAX_VALUE) % numBits;
+            int word = (int) (bit >>> 6);
+            bits.put(word, bits.get(word) | (1L << bit));
+            combined += hashes[1];
+        }
+        ++addCount;
+    }
+
+    /**
+     * Queries whether or not a value may have been added to the filter.
+     *
+     * @param value The value.
+     *
+     * @return False if the value was definitely not added, true otherwise.
+     */
+    boolean mightContain(String value) {
+        if (addCount == 0) {
+            return false;
+        }
+        long[] hashes = hash(value);
+        long combined = hashes[0];
+        for (int i = 0; i < numHashFunctions; ++i) {
+            long bit = (combined & Long.MAX_VALUE) % numBits;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += hashes[1];
+        }
+        return true;
+    }
+
+    /**
+     * Gets the two 64 bit hashes of a value from which the bit positions for
+     * the value are derived.
+     */
+    private static long[] hash(String value) {
+        ByteBuffer hash = ByteBuffer.wrap(Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8).asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        return new long[]{hash.getLong(), hash.getLong()};
+    }
+
+}
@@ -41,6 +41,7 @@
 import org.sleuthkit.autopsy.centralrepository.datamodel.CorrelationAttribute;
 import org.sleuthkit.autopsy.centralrepository.datamodel.EamArtifactUtil;
 import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbException;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbValueFilters;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardAttribute;
@@ -261,7 +262,8 @@ public void run() {
                             // query db for artifact instances having this TYPE/VALUE and knownStatus = "Bad".
                             // if gettKnownStatus() is "Unknown" and this artifact instance was marked bad in a previous case, 
                             // create TSK_INTERESTING_ARTIFACT_HIT artifact on BB.
-                            if (flagNotableItemsEnabled) {
+                            if (flagNotableItemsEnabled
+                                    && EamDbValueFilters.mightBeKnownBad(eamArtifact.getCorrelationType(), eamArtifact.getCorrelationValue())) {
                                 List<String> caseDisplayNames = dbManager.getListCasesHavingArtifactInstancesKnownBad(eamArtifact.getCorrelationType(), eamArtifact.getCorrelationValue());
                                 if (!caseDisplayNames.isEmpty()) {
                                     postCorrelatedBadArtifactToBlackboard(bbArtifact,
@@ -0,0 +1,45 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.ingestmodule;
+
+import org.openide.util.lookup.ServiceProvider;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDb;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbException;
+import org.sleuthkit.autopsy.ingest.IngestResultsCommitter;
+
+/**
+ * Finishes the lookups of files previously tagged as notable and writes the
+ * artifacts waiting to be added to the central repository, so that ingest
+ * jobs can record the files they belong to as analyzed.
+ */
+@ServiceProvider(service = IngestResultsCommitter.class)
+public class CentralRepoResultsCommitter implements IngestResultsCommitter {
+
+    @Override
+    public void commitResults() throws IngestResultsCommitterException {
+        try {
+            NotableFileLookup.flushAll();
+            if (EamDb.isEnabled()) {
+                EamDb.getInstance().bulkInsertArtifacts();
+            }
+        } catch (EamDbException ex) {
+            throw new IngestResultsCommitterException("Failed to commit the central repository results", ex); //NON-NLS
+        }
+    }
+}
@@ -20,6 +20,7 @@
 
 import org.sleuthkit.autopsy.centralrepository.datamodel.CorrelationCase;
 import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbException;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbValueFilters;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -49,8 +50,6 @@
 import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskData;
 import org.sleuthkit.autopsy.centralrepository.eventlisteners.IngestEventsListener;
-import org.sleuthkit.autopsy.healthmonitor.HealthMonitor;
-import org.sleuthkit.autopsy.healthmonitor.TimingMetric;
 
 /**
  * Ingest module for inserting entries into the Central Repository database on
@@ -71,6 +70,7 @@ final class IngestModule implements FileIngestModule {
     private CorrelationDataSource eamDataSource;
     private Blackboard blackboard;
     private CorrelationAttribute.Type filesType;
+    private NotableFileLookup notableFileLookup;
 
     private final boolean flagTaggedNotableItems;
 
@@ -131,20 +131,13 @@ public ProcessResult process(AbstractFile abstractFile) {
 
         /*
          * Search the central repo to see if this file was previously marked as
-         * being bad. Create artifact if it was.
+         * being bad. Create artifact if it was. The search is done in batches
+         * of files, so the artifact is created after this method returns. The
+         * ingest job checkpoint waits for the search before recording the
+         * file as analyzed, and a failed search is reported to the user.
          */
         if (abstractFile.getKnown() != TskData.FileKnown.KNOWN && flagTaggedNotableItems) {
-            try {
-                TimingMetric timingMetric = HealthMonitor.getTimingMetric("Correlation Engine: Notable artifact query");
-                List<String> caseDisplayNamesList = dbManager.getListCasesHavingArtifactInstancesKnownBad(filesType, md5);
-                HealthMonitor.submitTimingMetric(timingMetric);
-                if (!caseDisplayNamesList.isEmpty()) {
-                    postCorrelatedBadFileToBlackboard(abstractFile, caseDisplayNamesList);
-                }
-            } catch (EamDbException ex) {
-                logger.log(Level.SEVERE, "Error searching database for artifact.", ex); // NON-NLS
-                return ProcessResult.ERROR;
-            }
+            notableFileLookup.add(abstractFile, md5, this::postCorrelatedBadFileToBlackboard);
         }
 
         // insert this file into the central repository
@@ -171,6 +164,10 @@ public ProcessResult process(AbstractFile abstractFile) {
     public void shutDown() {
         IngestEventsListener.decrementCorrelationEngineModuleCount();
 
+        if (null != notableFileLookup) {
+            notableFileLookup.shutDown(jobId);
+        }
+
         if ((EamDb.isEnabled() == false) || (eamCase == null) || (eamDataSource == null)) {
             return;
         }
@@ -296,6 +293,9 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
         // and image exist in the DB before we associate artifacts with it.
         if (refCounter.incrementAndGet(jobId)
                 == 1) {
+            // pick up notable and reference set values added by other processes
+            EamDbValueFilters.invalidate();
+
             // ensure we have this data source in the EAM DB
             try {
                 if (null == centralRepoDb.getDataSource(eamCase, eamDataSource.getDeviceID())) {
@@ -307,6 +307,10 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
             }
 
         }
+
+        if (flagTaggedNotableItems) {
+            notableFileLookup = NotableFileLookup.startUp(jobId, filesType);
+        }
     }
 
     private void postCorrelatedBadFileToBlackboard(AbstractFile abstractFile, List<String> caseDisplayNames) {
@@ -0,0 +1,309 @@
+/*
+ * Central Repository
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.ingestmodule;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.openide.util.NbBundle.Messages;
+import org.sleuthkit.autopsy.centralrepository.datamodel.CorrelationAttribute;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDb;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbException;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbValueFilters;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
+import org.sleuthkit.autopsy.healthmonitor.HealthMonitor;
+import org.sleuthkit.autopsy.healthmonitor.TimingMetric;
+import org.sleuthkit.datamodel.AbstractFile;
+
+/**
+ * Looks up whether the files of an ingest job were previously tagged as
+ * notable in the central repository, in batches of files. The Correlation
+ * Engine ingest module instances of a job share a lookup, and add files to it
+ * instead of querying the central repository once per file. A batch is looked
+ * up with one query per several hundred hashes on a thread of the lookup, and
+ * the notable files in it are passed to the handlers they were added with.
+ *
+ * A batch is looked up when it is full, when it has been waiting for a few
+ * seconds, even if no more files are added, when the results of ingest are
+ * committed for an ingest job checkpoint, or when the last module instance of
+ * the job shuts down. The last two wait for all of the lookups of the job to
+ * be done.
+ *
+ * If a lookup fails, the user is notified, and every later commit fails, so
+ * that the checkpoint of the job does not record the files of the failed
+ * lookup as analyzed.
+ */
+@ThreadSafe
+final class NotableFileLookup {
+
+    private static final Logger logger = Logger.getLogger(NotableFileLookup.class.getName());
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final long MAX_BATCH_AGE_MS = 5000;
+    private static final String LOOKUP_THREAD_NAME = "central-repo-notable-lookup-%d"; //NON-NLS
+    @GuardedBy("NotableFileLookup.class")
+    private static final Map<Long, NotableFileLookup> lookupsByJob = new HashMap<>();
+    private final CorrelationAttribute.Type filesType;
+    private final ScheduledThreadPoolExecutor lookupExecutor;
+    @GuardedBy("NotableFileLookup.class")
+    private int moduleCount;
+    @GuardedBy("this")
+    private List<PendingFile> batch = new ArrayList<>();
+    private volatile EamDbException lookupFailure;
+
+    /**
+     * Receives the files that were previously tagged as notable.
+     */
+    interface NotableFileHandler {
+
+        /**
+         * Handles a file that was previously tagged as notable.
+         *
+         * @param file             The file.
+         * @param caseDisplayNames The display names of the cases in which
+         *                         files with the same hash were tagged as
+         *                         notable.
+         */
+        void handleNotableFile(AbstractFile file, List<String> caseDisplayNames);
+    }
+
+    /**
+     * Gets the lookup for an ingest job, creating it for the first module
+     * instance of the job. Each call must be matched by a call to shutDown.
+     *
+     * @param jobId     The ingest job id.
+     * @param filesType The correlation type for files.
+     *
+     * @return The lookup.
+     */
+    static synchronized NotableFileLookup startUp(long jobId, CorrelationAttribute.Type filesType) {
+        NotableFileLookup lookup = lookupsByJob.computeIfAbsent(jobId, id -> new NotableFileLookup(filesType));
+        ++lookup.moduleCount;
+        return lookup;
+    }
+
+    /**
+     * Releases the lookup for an ingest job. When the last module instance of
+     * the job releases it, the remaining files are looked up, and this method
+     * waits for all of the lookups to be done.
+     *
+     * @param jobId The ingest job id.
+     */
+    void shutDown(long jobId) {
+        synchronized (NotableFileLookup.class) {
+            if (--moduleCount > 0) {
+                return;
+            }
+            lookupsByJob.remove(jobId);
+        }
+        submitBatch();
+        lookupExecutor.shutdown();
+        try {
+            while (!lookupExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.log(Level.INFO, "Waiting for notable file lookups for job {0}", jobId); //NON-NLS
+            }
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, String.format("Interrupted while waiting for notable file lookups for job %d", jobId), ex); //NON-NLS
+            lookupExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Looks up the files waiting to be looked up for all of the ingest jobs,
+     * and waits for all of the lookups to be done.
+     *
+     * @throws EamDbException If a lookup of any of the jobs has failed.
+     */
+    static void flushAll() throws EamDbException {
+        List<NotableFileLookup> lookups;
+        synchronized (NotableFileLookup.class) {
+            lookups = new ArrayList<>(lookupsByJob.values());
+        }
+        for (NotableFileLookup lookup : lookups) {
+            lookup.flush();
+        }
+    }
+
+    /**
+     * Looks up the files waiting to be looked up, and waits for all of the
+     * lookups to be done.
+     *
+     * @throws EamDbException If a lookup has failed.
+     */
+    private void flush() throws EamDbException {
+        submitBatch();
+        try {
+            /*
+             * The lookup thread runs the lookups in the order they were
+             * submitted, so all of them are done when this one is.
+             */
+            Future<?> lastLookup = lookupExecutor.submit(() -> {
+            });
+            lastLookup.get();
+        } catch (RejectedExecutionException ex) {
+            /*
+             * The lookup is shutting down, which waits for the lookups to be
+             * done.
+             */
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new EamDbException("Interrupted while waiting for notable file lookups", ex); //NON-NLS
+        } catch (ExecutionException ex) {
+            throw new EamDbException("Error waiting for notable file lookups", ex); //NON-NLS
+        }
+        EamDbException failure = lookupFailure;
+        if (null != failure) {
+            throw new EamDbException("Notable file lookup failed", failure); //NON-NLS
+        }
+    }
+
+    private NotableFileLookup(CorrelationAttribute.Type filesType) {
+        this.filesType = filesType;
+        this.lookupExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat(LOOKUP_THREAD_NAME).build());
+        // The batch is submitted on shut down, so pending age checks are moot.
+        this.lookupExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Adds a file to be looked up.
+     *
+     * @param file    The file.
+     * @param md5     The MD5 hash of the file.
+     * @param handler The handler to pass the file to if it was previously
+     *                tagged as notable.
+     */
+    void add(AbstractFile file, String md5, NotableFileHandler handler) {
+        boolean submit;
+        synchronized (this) {
+            if (batch.isEmpty()) {
+                List<PendingFile> newBatch = batch;
+                lookupExecutor.schedule(() -> lookUpIfWaiting(newBatch), MAX_BATCH_AGE_MS, TimeUnit.MILLISECONDS);
+            }
+            batch.add(new PendingFile(file, md5, handler));
+            submit = batch.size() >= MAX_BATCH_SIZE;
+        }
+        if (submit) {
+            submitBatch();
+        }
+    }
+
+    /**
+     * Looks up a batch that has been waiting for too long, unless it was
+     * already submitted. Runs on the thread of the lookup.
+     *
+     * @param agedBatch The batch.
+     */
+    private void lookUpIfWaiting(List<PendingFile> agedBatch) {
+        synchronized (this) {
+            if (batch != agedBatch) {
+                return;
+            }
+            batch = new ArrayList<>();
+        }
+        lookUp(agedBatch);
+    }
+
+    /**
+     * Submits the current batch for lookup.
+     */
+    private void submitBatch() {
+        List<PendingFile> files;
+        synchronized (this) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            files = batch;
+            batch = new ArrayList<>();
+        }
+        lookupExecutor.submit(() -> lookUp(files));
+    }
+
+    /**
+     * Looks up a batch of files, and passes the notable ones to their
+     * handlers.
+     *
+     * @param files The files.
+     */
+    @Messages({
+        "NotableFileLookup.lookupFailed.title=Correlation Engine Error",
+        "NotableFileLookup.lookupFailed.message=Failed to look up whether files were previously tagged as notable in the central repository. See the log for details."
+    })
+    private void lookUp(List<PendingFile> files) {
+        Map<String, List<String>> caseDisplayNamesByMd5;
+        try {
+            /*
+             * Most files have never been tagged as notable, so only the hashes
+             * that the notable value filter may contain are queried.
+             */
+            List<String> md5s = new ArrayList<>();
+            for (PendingFile file : files) {
+                if (EamDbValueFilters.mightBeKnownBad(filesType, file.md5)) {
+                    md5s.add(file.md5);
+                }
+            }
+            if (md5s.isEmpty()) {
+                return;
+            }
+            TimingMetric timingMetric = HealthMonitor.getTimingMetric("Correlation Engine: Notable artifact query");
+            caseDisplayNamesByMd5 = EamDb.getInstance().getCasesHavingArtifactInstancesKnownBad(filesType, md5s);
+            HealthMonitor.submitTimingMetric(timingMetric);
+        } catch (EamDbException ex) {
+            logger.log(Level.SEVERE, String.format("Error searching database for %d artifacts.", files.size()), ex); // NON-NLS
+            if (null == lookupFailure) {
+                lookupFailure = ex;
+                MessageNotifyUtil.Notify.error(Bundle.NotableFileLookup_lookupFailed_title(), Bundle.NotableFileLookup_lookupFailed_message());
+            }
+            return;
+        }
+        for (PendingFile file : files) {
+            List<String> caseDisplayNames = caseDisplayNamesByMd5.get(file.md5);
+            if (null != caseDisplayNames && !caseDisplayNames.isEmpty()) {
+                file.handler.handleNotableFile(file.file, caseDisplayNames);
+            }
+        }
+    }
+
+    /**
+     * A file waiting to be looked up.
+     */
+    private static final class PendingFile {
+
+        private final AbstractFile file;
+        private final String md5;
+        private final NotableFileHandler handler;
+
+        PendingFile(AbstractFile file, String md5, NotableFileHandler handler) {
+            this.file = file;
+            this.md5 = md5;
+            this.handler = handler;
+        }
+    }
+
+}
@@ -46,6 +46,13 @@ public final class UserPreferences {
     public static final String HIDE_SLACK_FILES_IN_VIEWS_TREE = "HideSlackFilesInViewsTree"; //NON-NLS 
     public static final String DISPLAY_TIMES_IN_LOCAL_TIME = "DisplayTimesInLocalTime"; //NON-NLS
     public static final String NUMBER_OF_FILE_INGEST_THREADS = "NumberOfFileIngestThreads"; //NON-NLS
+    public static final String NUMBER_OF_DATA_SOURCE_INGEST_THREADS = "NumberOfDataSourceIngestThreads"; //NON-NLS
+    public static final String AUTOSCALE_FILE_INGEST_THREADS = "AutoscaleFileIngestThreads"; //NON-NLS
+    public static final String SCHEDULE_LARGEST_FILE_INGEST_TASKS_FIRST = "ScheduleLargestFileIngestTasksFirst"; //NON-NLS
+    public static final String PROFILE_INGEST_MODULES = "ProfileIngestModules"; //NON-NLS
+    public static final String CHECKPOINT_INGEST_JOBS = "CheckpointIngestJobs"; //NON-NLS
+    public static final String CACHE_FILE_INGEST_CONTENT = "CacheFileIngestContent"; //NON-NLS
+    public static final String CALCULATE_SHA_HASHES = "CalculateShaHashes"; //NON-NLS
     public static final String IS_MULTI_USER_MODE_ENABLED = "IsMultiUserModeEnabled"; //NON-NLS
     public static final String EXTERNAL_DATABASE_HOSTNAME_OR_IP = "ExternalDatabaseHostnameOrIp"; //NON-NLS
     public static final String EXTERNAL_DATABASE_PORTNUMBER = "ExternalDatabasePortNumber"; //NON-NLS
@@ -189,6 +196,62 @@ public static void setNumberOfFileIngestThreads(int value) {
         preferences.putInt(NUMBER_OF_FILE_INGEST_THREADS, value);
     }
 
+    public static int numberOfDataSourceIngestThreads() {
+        return preferences.getInt(NUMBER_OF_DATA_SOURCE_INGEST_THREADS, 1);
+    }
+
+    public static void setNumberOfDataSourceIngestThreads(int value) {
+        preferences.putInt(NUMBER_OF_DATA_SOURCE_INGEST_THREADS, value);
+    }
+
+    public static boolean autoscaleFileIngestThreads() {
+        return preferences.getBoolean(AUTOSCALE_FILE_INGEST_THREADS, false);
+    }
+
+    public static void setAutoscaleFileIngestThreads(boolean value) {
+        preferences.putBoolean(AUTOSCALE_FILE_INGEST_THREADS, value);
+    }
+
+    public static boolean scheduleLargestFileIngestTasksFirst() {
+        return preferences.getBoolean(SCHEDULE_LARGEST_FILE_INGEST_TASKS_FIRST, false);
+    }
+
+    public static void setScheduleLargestFileIngestTasksFirst(boolean value) {
+        preferences.putBoolean(SCHEDULE_LARGEST_FILE_INGEST_TASKS_FIRST, value);
+    }
+
+    public static boolean profileIngestModules() {
+        return preferences.getBoolean(PROFILE_INGEST_MODULES, false);
+    }
+
+    public static void setProfileIngestModules(boolean value) {
+        preferences.putBoolean(PROFILE_INGEST_MODULES, value);
+    }
+
+    public static boolean checkpointIngestJobs() {
+        return preferences.getBoolean(CHECKPOINT_INGEST_JOBS, false);
+    }
+
+    public static void setCheckpointIngestJobs(boolean value) {
+        preferences.putBoolean(CHECKPOINT_INGEST_JOBS, value);
+    }
+
+    public static boolean cacheFileIngestContent() {
+        return preferences.getBoolean(CACHE_FILE_INGEST_CONTENT, false);
+    }
+
+    public static void setCacheFileIngestContent(boolean value) {
+        preferences.putBoolean(CACHE_FILE_INGEST_CONTENT, value);
+    }
+
+    public static boolean calculateShaHashes() {
+        return preferences.getBoolean(CALCULATE_SHA_HASHES, false);
+    }
+
+    public static void setCalculateShaHashes(boolean value) {
+        preferences.putBoolean(CALCULATE_SHA_HASHES, value);
+    }
+
     public static boolean groupItemsInTreeByDatasource() {
         return preferences.getBoolean(GROUP_ITEMS_IN_TREE_BY_DATASOURCE, false);
     }
@@ -0,0 +1,178 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * Loads the child files of many files at once, along with whether or not each
+ * child has children of its own, using a few set-based case database queries
+ * instead of a getChildren() query per parent and a hasChildren() query per
+ * child.
+ */
+final class ChildFilesBatchLoader {
+
+    /*
+     * The maximum number of object ids in a single IN clause. This keeps the
+     * queries well under the SQLite limit on the number of terms in a compound
+     * expression.
+     */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private ChildFilesBatchLoader() {
+    }
+
+    /**
+     * Loads the child files of a collection of parent files.
+     *
+     * @param parents The parent files.
+     *
+     * @return A mapping of parent file object ids to child files, in the
+     *         iteration order of the parents. Parents without child files are
+     *         omitted.
+     *
+     * @throws TskCoreException If there is an error querying the case
+     *                          database.
+     */
+    static Map<Long, List<ChildFile>> loadChildFiles(Collection<AbstractFile> parents) throws TskCoreException {
+        SleuthkitCase caseDb;
+        try {
+            caseDb = Case.getCurrentCaseThrows().getSleuthkitCase();
+        } catch (NoCurrentCaseException ex) {
+            throw new TskCoreException("No current case", ex); //NON-NLS
+        }
+
+        /*
+         * Get the object ids of the child files of the parents, with their
+         * parent ids and has children flags.
+         */
+        List<Long> parentIds = parents.stream().map(AbstractFile::getId).collect(Collectors.toList());
+        Map<Long, Long> parentIdsByChildId = new LinkedHashMap<>();
+        Set<Long> childIdsWithChildren = new HashSet<>();
+        for (List<Long> ids : partition(parentIds)) {
+            String query = "SELECT child.obj_id AS obj_id, child.par_obj_id AS par_obj_id, " //NON-NLS
+                    + "CASE WHEN EXISTS (SELECT 1 FROM tsk_objects grandchild WHERE grandchild.par_obj_id = child.obj_id) THEN 1 ELSE 0 END AS has_children " //NON-NLS
+                    + "FROM tsk_objects child WHERE child.par_obj_id IN (" + toInList(ids) + ") " //NON-NLS
+                    + "AND child.type = " + TskData.ObjectType.ABSTRACTFILE.getObjectType() //NON-NLS
+                    + " ORDER BY child.obj_id"; //NON-NLS
+            try (SleuthkitCase.CaseDbQuery dbQuery = caseDb.executeQuery(query)) {
+                ResultSet resultSet = dbQuery.getResultSet();
+                while (resultSet.next()) {
+                    long childId = resultSet.getLong("obj_id"); //NON-NLS
+                    parentIdsByChildId.put(childId, resultSet.getLong("par_obj_id")); //NON-NLS
+                    if (resultSet.getInt("has_children") != 0) { //NON-NLS
+                        childIdsWithChildren.add(childId);
+                    }
+                }
+            } catch (SQLException ex) {
+                throw new TskCoreException("Error querying child objects", ex); //NON-NLS
+            }
+        }
+
+        /*
+         * Get the child files themselves.
+         */
+        Map<Long, AbstractFile> childFilesById = new HashMap<>();
+        for (List<Long> ids : partition(new ArrayList<>(parentIdsByChildId.keySet()))) {
+            for (AbstractFile childFile : caseDb.findAllFilesWhere("obj_id IN (" + toInList(ids) + ")")) { //NON-NLS
+                childFilesById.put(childFile.getId(), childFile);
+            }
+        }
+
+        /*
+         * Group the child files by parent, in parent order.
+         */
+        Map<Long, List<ChildFile>> childFilesByParentId = new LinkedHashMap<>();
+        for (Long parentId : parentIds) {
+            childFilesByParentId.put(parentId, new ArrayList<>());
+        }
+        for (Map.Entry<Long, Long> entry : parentIdsByChildId.entrySet()) {
+            AbstractFile childFile = childFilesById.get(entry.getKey());
+            if (childFile != null) {
+                childFilesByParentId.get(entry.getValue()).add(new ChildFile(childFile, childIdsWithChildren.contains(entry.getKey())));
+            }
+        }
+        childFilesByParentId.values().removeIf(List::isEmpty);
+        return childFilesByParentId;
+    }
+
+    /**
+     * Splits a list of object ids into lists small enough for an IN clause.
+     *
+     * @param ids The object ids.
+     *
+     * @return The lists of object ids.
+     */
+    private static List<List<Long>> partition(List<Long> ids) {
+        List<List<Long>> partitions = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY) {
+            partitions.add(ids.subList(i, Math.min(i + MAX_IDS_PER_QUERY, ids.size())));
+        }
+        return partitions;
+    }
+
+    /**
+     * Formats a list of object ids as the contents of an IN clause.
+     *
+     * @param ids The object ids.
+     *
+     * @return The comma-separated ids.
+     */
+    private static String toInList(List<Long> ids) {
+        return ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    /**
+     * A child file and whether or not it has children of its own.
+     */
+    static final class ChildFile {
+
+        private final AbstractFile file;
+        private final boolean hasChildren;
+
+        private ChildFile(AbstractFile file, boolean hasChildren) {
+            this.file = file;
+            this.hasChildren = hasChildren;
+        }
+
+        AbstractFile getFile() {
+            return file;
+        }
+
+        boolean hasChildren() {
+            return hasChildren;
+        }
+    }
+}
@@ -18,7 +18,11 @@
  */
 package org.sleuthkit.autopsy.ingest;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -36,6 +40,7 @@
 import org.openide.windows.WindowManager;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
+import org.sleuthkit.autopsy.core.UserPreferences;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.NetworkUtils;
 import org.sleuthkit.autopsy.ingest.DataSourceIngestPipeline.PipelineModule;
@@ -72,6 +77,21 @@ public final class DataSourceIngestJob {
     private final Content dataSource;
     private final List<AbstractFile> files = new ArrayList<>();
 
+    /**
+     * If ingest module profiling is enabled, the time the ingest modules of
+     * this job spend on each kind of content is recorded, and written to the
+     * case log directory when the job finishes.
+     */
+    private final IngestModuleProfiler profiler;
+
+    /**
+     * If ingest job checkpoints are enabled and the job analyzes all of the
+     * files in the data source, the files each file level ingest module has
+     * analyzed are recorded so that an interrupted job can be resumed.
+     */
+    private volatile IngestJobCheckpoint checkpoint;
+    private String checkpointJobKey;
+
     /**
      * A data source ingest job runs in stages.
      */
@@ -122,6 +142,16 @@ private static enum Stages {
     private final LinkedBlockingQueue<FileIngestPipeline> fileIngestPipelinesQueue = new LinkedBlockingQueue<>();
     private final List<FileIngestPipeline> fileIngestPipelines = new ArrayList<>();
 
+    /**
+     * File level ingest modules with a concurrency limit, and the modules that
+     * follow them, are split off of the file level ingest pipelines of the
+     * file ingest threads into file ingest pipeline stages. Each limited
+     * module has a stage of its own, each stage has its own worker threads,
+     * and each stage feeds into the next.
+     */
+    private final List<FileIngestPipelineStage> fileIngestPipelineStages = new ArrayList<>();
+    private FileIngestPipelineStage firstFileIngestPipelineStage;
+
     /**
      * A data source ingest job supports cancellation of either the currently
      * running data source level ingest module or the entire ingest job.
@@ -212,6 +242,7 @@ private static enum Stages {
         this.settings = settings;
         this.doUI = runInteractively;
         this.createTime = new Date().getTime();
+        this.profiler = UserPreferences.profileIngestModules() ? new IngestModuleProfiler() : null;
         this.createIngestPipelines();
     }
 
@@ -262,13 +293,37 @@ private void createIngestPipelines() {
         this.firstStageDataSourceIngestPipeline = new DataSourceIngestPipeline(this, firstStageDataSourceModuleTemplates);
         this.secondStageDataSourceIngestPipeline = new DataSourceIngestPipeline(this, secondStageDataSourceModuleTemplates);
 
+        /**
+         * Split the file ingest module templates into the templates for the
+         * modules run by the file ingest threads and the templates for the
+         * file ingest pipeline stages, if any. Each module with a concurrency
+         * limit gets a stage of its own, and the modules after it go back to
+         * running with one copy per file ingest thread in the next stage.
+         */
+        int numberOfFileIngestThreads = IngestManager.getInstance().getNumberOfFileIngestThreads();
+        List<List<IngestModuleTemplate>> moduleTemplateSegments = FileIngestPipelineStage.splitModuleTemplates(fileIngestModuleTemplates);
+        List<IngestModuleTemplate> fileIngestThreadModuleTemplates = moduleTemplateSegments.get(0);
+
+        /**
+         * Construct the file ingest pipeline stages, last to first.
+         */
+        FileIngestPipelineStage nextStage = null;
+        for (int i = moduleTemplateSegments.size() - 1; i > 0; --i) {
+            List<IngestModuleTemplate> stageModuleTemplates = moduleTemplateSegments.get(i);
+            nextStage = new FileIngestPipelineStage(this, stageModuleTemplates, FileIngestPipelineStage.getConcurrencyLimit(stageModuleTemplates, numberOfFileIngestThreads), nextStage);
+            this.fileIngestPipelineStages.add(0, nextStage);
+        }
+        this.firstFileIngestPipelineStage = nextStage;
+        if (UserPreferences.checkpointIngestJobs()) {
+            this.checkpointJobKey = IngestJobCheckpoint.getJobKey(fileIngestModuleTemplates, this.getFileIngestFilter(), this.shouldProcessUnallocatedSpace());
+        }
+
         /**
          * Construct the file ingest pipelines, one per file ingest thread.
          */
         try {
-            int numberOfFileIngestThreads = IngestManager.getInstance().getNumberOfFileIngestThreads();
             for (int i = 0; i < numberOfFileIngestThreads; ++i) {
-                FileIngestPipeline pipeline = new FileIngestPipeline(this, fileIngestModuleTemplates);
+                FileIngestPipeline pipeline = new FileIngestPipeline(this, fileIngestThreadModuleTemplates, null == this.firstFileIngestPipelineStage);
                 this.fileIngestPipelinesQueue.put(pipeline);
                 this.fileIngestPipelines.add(pipeline);
             }
@@ -398,12 +453,33 @@ private boolean hasSecondStageDataSourceIngestPipeline() {
         return (this.secondStageDataSourceIngestPipeline.isEmpty() == false);
     }
 
+    /**
+     * Gets the ingest checkpoint of this job.
+     *
+     * @return The checkpoint, or null if this job is not checkpointed.
+     */
+    IngestJobCheckpoint getCheckpoint() {
+        return this.checkpoint;
+    }
+
+    /**
+     * Gets the ingest module profiler of this job.
+     *
+     * @return The profiler, or null if ingest module profiling is not enabled.
+     */
+    IngestModuleProfiler getProfiler() {
+        return this.profiler;
+    }
+
     /**
      * Checks to see if this job has a file level ingest pipeline.
      *
      * @return True or false.
      */
     private boolean hasFileIngestPipeline() {
+        if (!this.fileIngestPipelineStages.isEmpty()) {
+            return true;
+        }
         if (!this.fileIngestPipelines.isEmpty()) {
             return !this.fileIngestPipelines.get(0).isEmpty();
         }
@@ -423,6 +499,16 @@ List<IngestModuleError> start() {
             } catch (TskCoreException | NoCurrentCaseException ex) {
                 logger.log(Level.SEVERE, "Failed to add ingest job to database.", ex);
             }
+            if (this.hasFileIngestPipeline() && this.files.isEmpty() && null != this.checkpointJobKey) {
+                try {
+                    this.checkpoint = IngestJobCheckpoint.open(this.dataSource, this.checkpointJobKey);
+                    if (null != this.checkpoint) {
+                        this.checkpoint.start();
+                    }
+                } catch (NoCurrentCaseException ex) {
+                    logger.log(Level.SEVERE, String.format("Failed to open ingest checkpoint for %s (jobId=%d)", dataSource.getName(), this.id), ex); //NON-NLS
+                }
+            }
             if (this.hasFirstStageDataSourceIngestPipeline() || this.hasFileIngestPipeline()) {
                 logger.log(Level.INFO, "Starting first stage analysis for {0} (jobId={1})", new Object[]{dataSource.getName(), this.id}); //NON-NLS
                 this.startFirstStage();
@@ -458,30 +544,58 @@ private List<IngestModuleError> startUpIngestPipelines() {
             for (FileIngestPipeline pipeline : this.fileIngestPipelinesQueue) {
                 errors.addAll(pipeline.startUp());
                 if (!errors.isEmpty()) {
-                    /*
-                     * If there are start up errors, the ingest job will not
-                     * proceed, so shut down any file ingest pipelines that did
-                     * start up.
-                     */
-                    while (!this.fileIngestPipelinesQueue.isEmpty()) {
-                        FileIngestPipeline startedPipeline = this.fileIngestPipelinesQueue.poll();
-                        if (startedPipeline.isRunning()) {
-                            List<IngestModuleError> shutDownErrors = startedPipeline.shutDown();
-                            if (!shutDownErrors.isEmpty()) {
-                                /*
-                                 * The start up errors will ultimately be
-                                 * reported to the user for possible remedy, but
-                                 * the shut down errors are logged here.
-                                 */
-                                logIngestModuleErrors(shutDownErrors);
-                            }
-                        }
-                    }
                     break;
                 }
             }
         }
 
+        /*
+         * If the file-level ingest pipelines were successfully started, start
+         * the file ingest pipeline stages, if any.
+         */
+        if (errors.isEmpty()) {
+            for (FileIngestPipelineStage stage : this.fileIngestPipelineStages) {
+                errors.addAll(stage.startUp());
+                if (!errors.isEmpty()) {
+                    break;
+                }
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            /*
+             * If there are start up errors, the ingest job will not proceed,
+             * so shut down any file ingest pipelines that did start up. The
+             * start up errors will ultimately be reported to the user for
+             * possible remedy, but the shut down errors are logged here.
+             */
+            List<IngestModuleError> shutDownErrors = this.shutDownFileIngestPipelines();
+            if (!shutDownErrors.isEmpty()) {
+                logIngestModuleErrors(shutDownErrors);
+            }
+        }
+
+        return errors;
+    }
+
+    /**
+     * Shuts down the file level ingest pipelines of the file ingest threads
+     * and the file ingest pipeline stages, skipping any that were never
+     * started.
+     *
+     * @return A list of shut down errors, possibly empty.
+     */
+    private List<IngestModuleError> shutDownFileIngestPipelines() {
+        List<IngestModuleError> errors = new ArrayList<>();
+        while (!this.fileIngestPipelinesQueue.isEmpty()) {
+            FileIngestPipeline pipeline = fileIngestPipelinesQueue.poll();
+            if (pipeline.isRunning()) {
+                errors.addAll(pipeline.shutDown());
+            }
+        }
+        for (FileIngestPipelineStage stage : this.fileIngestPipelineStages) {
+            errors.addAll(stage.shutDown());
+        }
         return errors;
     }
 
@@ -621,9 +735,11 @@ public boolean cancel() {
 
     /**
      * Checks to see if the ingest tasks for the current stage of this job are
-     * completed and does a stage transition if they are.
+     * completed and does a stage transition if they are. Called by the ingest
+     * threads after each task, and by the ingest tasks scheduler when it
+     * finishes expanding the file tasks for this job.
      */
-    private void checkForStageCompleted() {
+    void checkForStageCompleted() {
         synchronized (this.stageCompletionCheckLock) {
             if (DataSourceIngestJob.taskScheduler.tasksForJobAreCompleted(this)) {
                 switch (this.stage) {
@@ -648,13 +764,7 @@ private void finishFirstStage() {
         // Shut down the file ingest pipelines. Note that no shut down is
         // required for the data source ingest pipeline because data source 
         // ingest modules do not have a shutdown() method.
-        List<IngestModuleError> errors = new ArrayList<>();
-        while (!this.fileIngestPipelinesQueue.isEmpty()) {
-            FileIngestPipeline pipeline = fileIngestPipelinesQueue.poll();
-            if (pipeline.isRunning()) {
-                errors.addAll(pipeline.shutDown());
-            }
-        }
+        List<IngestModuleError> errors = this.shutDownFileIngestPipelines();
         if (!errors.isEmpty()) {
             logIngestModuleErrors(errors);
         }
@@ -726,9 +836,30 @@ private void finish() {
                 logger.log(Level.SEVERE, "Failed to set end date for ingest job in database.", ex);
             }
         }
+        if (null != this.profiler) {
+            this.writeProfile();
+        }
+        if (null != this.checkpoint) {
+            this.checkpoint.close(!this.cancelled);
+        }
         this.parentJob.dataSourceJobFinished(this);
     }
 
+    /**
+     * Writes the ingest module profile of this job to a CSV file in the case
+     * log directory.
+     */
+    private void writeProfile() {
+        try {
+            String fileName = String.format("IngestModuleProfile_%d_%s.csv", this.id, new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date())); //NON-NLS
+            Path profilePath = Paths.get(Case.getCurrentCaseThrows().getLogDirectoryPath(), fileName);
+            this.profiler.writeCsv(profilePath);
+            logger.log(Level.INFO, "Wrote ingest module profile for {0} (jobId={1}) to {2}", new Object[]{dataSource.getName(), this.id, profilePath}); //NON-NLS
+        } catch (IOException | NoCurrentCaseException ex) {
+            logger.log(Level.SEVERE, String.format("Failed to write ingest module profile for %s (jobId=%d)", dataSource.getName(), this.id), ex); //NON-NLS
+        }
+    }
+
     /**
      * Passes the data source for this job through the currently active data
      * source level ingest pipeline.
@@ -768,7 +899,9 @@ void process(DataSourceIngestTask task) {
 
     /**
      * Passes a file from the data source for this job through the file level
-     * ingest pipeline.
+     * ingest pipeline. If this job has file ingest pipeline stages, the file
+     * is passed on to the first stage afterwards, and the task is completed by
+     * the last stage.
      *
      * @param task A file ingest task.
      *
@@ -778,10 +911,11 @@ void process(DataSourceIngestTask task) {
      *                              collection.
      */
     void process(FileIngestTask task) throws InterruptedException {
+        boolean passedToStage = false;
         try {
             if (!this.isCancelled()) {
                 FileIngestPipeline pipeline = this.fileIngestPipelinesQueue.take();
-                if (!pipeline.isEmpty()) {
+                if (this.hasFileIngestPipeline()) {
                     AbstractFile file = task.getFile();
 
                     synchronized (this.fileIngestProgressLock) {
@@ -824,11 +958,81 @@ void process(FileIngestTask task) throws InterruptedException {
                     }
                 }
                 this.fileIngestPipelinesQueue.put(pipeline);
+                passedToStage = this.passToFileIngestPipelineStage(task, this.firstFileIngestPipelineStage);
             }
         } finally {
-            DataSourceIngestJob.taskScheduler.notifyTaskCompleted(task);
-            this.checkForStageCompleted();
+            if (!passedToStage) {
+                DataSourceIngestJob.taskScheduler.notifyTaskCompleted(task);
+                this.checkForStageCompleted();
+            }
+        }
+    }
+
+    /**
+     * Passes a file from the data source for this job through the ingest
+     * modules of a file ingest pipeline stage, using one of the pipelines of
+     * the stage. Called by the stage worker threads.
+     *
+     * @param task      A file ingest task.
+     * @param pipeline  The pipeline of the stage to use.
+     * @param nextStage The next stage, may be null if this is the last stage.
+     */
+    void process(FileIngestTask task, FileIngestPipeline pipeline, FileIngestPipelineStage nextStage) {
+        boolean passedToStage = false;
+        try {
+            if (!this.isCancelled()) {
+                List<IngestModuleError> errors = new ArrayList<>();
+                errors.addAll(pipeline.process(task));
+                if (!errors.isEmpty()) {
+                    logIngestModuleErrors(errors);
+                }
+                passedToStage = this.passToFileIngestPipelineStage(task, nextStage);
+            } else {
+                task.getFile().close();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!passedToStage) {
+                DataSourceIngestJob.taskScheduler.notifyTaskCompleted(task);
+                this.checkForStageCompleted();
+            }
+        }
+    }
+
+    /**
+     * Passes a file task on to a file ingest pipeline stage, blocking if the
+     * stage is backed up, unless this job has been cancelled. Stages that the
+     * file does not need to go through are skipped, and if that includes the
+     * last stage, the ingest of the file is finished here instead.
+     *
+     * @param task  A file ingest task.
+     * @param stage The stage, may be null.
+     *
+     * @return True if the task was passed on, false if there is no stage the
+     *         file needs to go through or this job has been cancelled.
+     *
+     * @throws InterruptedException if the thread executing this code is
+     *                              interrupted while blocked on putting to the
+     *                              stage.
+     */
+    private boolean passToFileIngestPipelineStage(FileIngestTask task, FileIngestPipelineStage stage) throws InterruptedException {
+        if (null == stage) {
+            return false;
+        }
+        if (this.isCancelled()) {
+            task.getFile().close();
+            return false;
+        }
+        while (null != stage && !stage.isNeededFor(task.getFile())) {
+            stage = stage.getNextStage();
+        }
+        if (null == stage) {
+            FileIngestPipeline.finishFileIngest(this, task);
+            return false;
         }
+        stage.put(task);
+        return true;
     }
 
     /**
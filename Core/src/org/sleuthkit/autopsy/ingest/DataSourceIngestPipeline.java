@@ -100,7 +100,10 @@ synchronized List<IngestModuleError> process(DataSourceIngestTask task) {
         List<IngestModuleError> errors = new ArrayList<>();
         if (!this.job.isCancelled()) {
             Content dataSource = task.getDataSource();
+            IngestModuleProfiler profiler = this.job.getProfiler();
             for (PipelineModule module : modules) {
+                long startAllocatedBytes = (null != profiler) ? IngestModuleProfiler.getCurrentThreadAllocatedBytes() : -1L;
+                long startTime = System.nanoTime();
                 try {
                     this.currentModule = module;
                     String displayName = NbBundle.getMessage(this.getClass(),
@@ -120,6 +123,11 @@ synchronized List<IngestModuleError> process(DataSourceIngestTask task) {
                         msg = ex.toString();
                     }
                     MessageNotifyUtil.Notify.error(NbBundle.getMessage(this.getClass(), "DataSourceIngestPipeline.moduleError.title.text", module.getDisplayName()), msg);
+                } finally {
+                    if (null != profiler) {
+                        long allocatedBytes = (startAllocatedBytes >= 0) ? IngestModuleProfiler.getCurrentThreadAllocatedBytes() - startAllocatedBytes : -1L;
+                        profiler.record(module.getDisplayName(), IngestModuleProfiler.DATA_SOURCE_CONTENT_TYPE, System.nanoTime() - startTime, dataSource.getSize(), allocatedBytes);
+                    }
                 }
                 if (this.job.isCancelled()) {
                     break;
@@ -0,0 +1,294 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.ReadContentInputStream;
+import org.sleuthkit.datamodel.ReadContentInputStream.ReadContentInputStreamException;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * A cache of the content of the files that the file ingest pipelines are
+ * running through their modules, so that the content is read from the data
+ * source once per file instead of once per module. File ingest modules opt in
+ * by calling openStream() instead of constructing a ReadContentInputStream.
+ *
+ * The cache is keyed by file object id rather than bound to the pipeline
+ * thread, so that the threads a module hands work to, e.g., the text
+ * extraction threads of the keyword search module, share it. The content is
+ * read lazily, in blocks, as the modules read it, so only the ranges of a file
+ * that are actually read are cached, and the total size of the cached blocks
+ * is bounded. A block that cannot be read in full, e.g., because of a damaged
+ * image, is not cached, so that each module sees the read errors it would
+ * have seen without the cache.
+ */
+@ThreadSafe
+public final class FileContentCache {
+
+    private static final Logger logger = Logger.getLogger(FileContentCache.class.getName());
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final long MAX_CACHED_BYTES = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+    private static final AtomicLong cachedBytes = new AtomicLong();
+    private static final Map<Long, CachedFile> cachedFiles = new ConcurrentHashMap<>();
+
+    private FileContentCache() {
+    }
+
+    /**
+     * Opens a stream for reading the content of a file, from the cache if the
+     * file is one that a file ingest pipeline is running through its modules,
+     * or from the data source otherwise.
+     *
+     * @param file The file.
+     *
+     * @return The stream. The caller is responsible for closing it.
+     */
+    public static InputStream openStream(AbstractFile file) {
+        CachedFile cachedFile = cachedFiles.get(file.getId());
+        if (null != cachedFile) {
+            return new CachedFileInputStream(cachedFile);
+        }
+        return new ReadContentInputStream(file);
+    }
+
+    /**
+     * Starts caching the content of a file. Called by a file ingest pipeline
+     * before running a file through its modules.
+     *
+     * @param file The file.
+     */
+    static void beginFile(AbstractFile file) {
+        if (file.getSize() > 0) {
+            cachedFiles.compute(file.getId(), (fileId, cachedFile) -> (null != cachedFile) ? cachedFile.retain() : new CachedFile(file));
+        }
+    }
+
+    /**
+     * Stops caching the content of a file, releasing the cached content when
+     * no other file ingest pipeline is running the file through its modules.
+     * Called by a file ingest pipeline after running a file through its
+     * modules.
+     *
+     * @param file The file.
+     */
+    static void endFile(AbstractFile file) {
+        cachedFiles.computeIfPresent(file.getId(), (fileId, cachedFile) -> cachedFile.release() ? null : cachedFile);
+    }
+
+    /**
+     * The content of a file, read a block at a time on first use.
+     */
+    @ThreadSafe
+    private static final class CachedFile {
+
+        private final AbstractFile file;
+        @GuardedBy("this")
+        private final Map<Long, byte[]> blocks = new HashMap<>();
+        @GuardedBy("this")
+        private long blockBytes;
+        @GuardedBy("this")
+        private int referenceCount = 1;
+
+        CachedFile(AbstractFile file) {
+            this.file = file;
+        }
+
+        /**
+         * Adds a reference to this cached file.
+         *
+         * @return This cached file.
+         */
+        synchronized CachedFile retain() {
+            ++this.referenceCount;
+            return this;
+        }
+
+        /**
+         * Removes a reference to this cached file, and releases the cached
+         * blocks when it was the last one. Streams still reading the file
+         * after that read from the data source.
+         *
+         * @return True if the reference was the last one, false otherwise.
+         */
+        synchronized boolean release() {
+            if (--this.referenceCount > 0) {
+                return false;
+            }
+            this.blocks.clear();
+            cachedBytes.addAndGet(-this.blockBytes);
+            this.blockBytes = 0;
+            return true;
+        }
+
+        long getSize() {
+            return this.file.getSize();
+        }
+
+        /**
+         * Reads content at an offset, from a cached block if possible.
+         *
+         * @param buffer       The buffer to read into.
+         * @param bufferOffset The offset in the buffer.
+         * @param length       The maximum number of bytes to read.
+         * @param offset       The offset in the file.
+         *
+         * @return The number of bytes read, or -1 at the end of the content.
+         *
+         * @throws ReadContentInputStreamException If there is a problem reading
+         *                                          the file.
+         */
+        int read(byte[] buffer, int bufferOffset, int length, long offset) throws ReadContentInputStreamException {
+            if (offset >= getSize()) {
+                return -1;
+            }
+            long blockIndex = offset / BLOCK_SIZE;
+            int blockOffset = (int) (offset % BLOCK_SIZE);
+            byte[] block = getBlock(blockIndex);
+            if (null != block) {
+                int count = Math.min(length, block.length - blockOffset);
+                System.arraycopy(block, blockOffset, buffer, bufferOffset, count);
+                return count;
+            }
+            int count = (int) Math.min(length, getSize() - offset);
+            byte[] readBuffer = (0 == bufferOffset) ? buffer : new byte[count];
+            int bytesRead;
+            try {
+                bytesRead = this.file.read(readBuffer, offset, count);
+            } catch (TskCoreException ex) {
+                throw new ReadContentInputStreamException(String.format("Error reading file '%s' (id=%d) at offset %d.", this.file.getName(), this.file.getId(), offset), ex); //NON-NLS
+            }
+            if (bytesRead <= 0) {
+                return -1;
+            }
+            if (readBuffer != buffer) {
+                System.arraycopy(readBuffer, 0, buffer, bufferOffset, bytesRead);
+            }
+            return bytesRead;
+        }
+
+        /**
+         * Gets a block of the content, reading and caching it if this is the
+         * first time it is needed.
+         *
+         * @param blockIndex The index of the block.
+         *
+         * @return The block, or null if it is not cached, because the cache is
+         *         full, the file is no longer being ingested, or the block
+         *         could not be read in full.
+         */
+        private synchronized byte[] getBlock(long blockIndex) {
+            if (this.referenceCount <= 0) {
+                return null;
+            }
+            byte[] block = this.blocks.get(blockIndex);
+            if (null != block) {
+                return block;
+            }
+            int length = (int) Math.min(BLOCK_SIZE, getSize() - blockIndex * BLOCK_SIZE);
+            if (cachedBytes.addAndGet(length) > MAX_CACHED_BYTES) {
+                cachedBytes.addAndGet(-length);
+                return null;
+            }
+            block = new byte[length];
+            try {
+                if (this.file.read(block, blockIndex * BLOCK_SIZE, length) != length) {
+                    cachedBytes.addAndGet(-length);
+                    return null;
+                }
+            } catch (TskCoreException ex) {
+                logger.log(Level.FINE, String.format("Not caching block %d of %s (objId=%d)", blockIndex, this.file.getName(), this.file.getId()), ex); //NON-NLS
+                cachedBytes.addAndGet(-length);
+                return null;
+            }
+            this.blocks.put(blockIndex, block);
+            this.blockBytes += length;
+            return block;
+        }
+    }
+
+    /**
+     * An input stream over the content of a cached file.
+     */
+    private static final class CachedFileInputStream extends InputStream {
+
+        private final CachedFile cachedFile;
+        private final byte[] singleByte = new byte[1];
+        private long position;
+        private long markedPosition;
+
+        CachedFileInputStream(CachedFile cachedFile) {
+            this.cachedFile = cachedFile;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return (read(this.singleByte, 0, 1) > 0) ? (this.singleByte[0] & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int count = this.cachedFile.read(bytes, offset, length, this.position);
+            if (count > 0) {
+                this.position += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long count) {
+            long skipped = Math.max(0, Math.min(count, this.cachedFile.getSize() - this.position));
+            this.position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, this.cachedFile.getSize() - this.position));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            this.markedPosition = this.position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            this.position = this.markedPosition;
+        }
+    }
+
+}
@@ -25,6 +25,7 @@
 
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.core.UserPreferences;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
 import org.sleuthkit.datamodel.AbstractFile;
@@ -35,13 +36,17 @@
  * ingest job. It starts the modules, runs files through them, and shuts them
  * down when file level ingest is complete.
  * <p>
- * This class is thread-safe.
+ * A pipeline may be the whole sequence of file level ingest modules for a job,
+ * or only part of it, if the job has file ingest pipeline stages. A pipeline is
+ * used by one thread at a time.
  */
 final class FileIngestPipeline {
 
     private static final IngestManager ingestManager = IngestManager.getInstance();
     private final DataSourceIngestJob job;
     private final List<PipelineModule> modules = new ArrayList<>();
+    private final boolean finishesFileIngest;
+    private final boolean cacheFileContent;
     private Date startTime;
     private volatile boolean running;
 
@@ -55,13 +60,38 @@ final class FileIngestPipeline {
      *                        pipeline.
      */
     FileIngestPipeline(DataSourceIngestJob job, List<IngestModuleTemplate> moduleTemplates) {
+        this(job, moduleTemplates, true);
+    }
+
+    /**
+     * Constructs an object that manages a sequence of file level ingest
+     * modules. It starts the modules, runs files through them, and shuts them
+     * down when file level ingest is complete.
+     *
+     * @param job                The data source ingest job that owns the
+     *                           pipeline.
+     * @param moduleTemplates    The ingest module templates that define the
+     *                           pipeline.
+     * @param finishesFileIngest Whether or not the modules of this pipeline
+     *                           are the last ones a file goes through, in
+     *                           which case the pipeline saves the file and
+     *                           fires the file ingest done event.
+     */
+    FileIngestPipeline(DataSourceIngestJob job, List<IngestModuleTemplate> moduleTemplates, boolean finishesFileIngest) {
         this.job = job;
+        this.finishesFileIngest = finishesFileIngest;
         for (IngestModuleTemplate template : moduleTemplates) {
             if (template.isFileIngestModuleTemplate()) {
-                PipelineModule module = new PipelineModule(template.createFileIngestModule(), template.getModuleName());
+                PipelineModule module = new PipelineModule(template.createFileIngestModule(), template.getModuleName(), IngestJobCheckpoint.getModuleKey(template));
                 modules.add(module);
             }
         }
+
+        /*
+         * Caching the content of a file only pays off if more than one module
+         * may read it.
+         */
+        this.cacheFileContent = UserPreferences.cacheFileIngestContent() && this.modules.size() > 1;
     }
 
     /**
@@ -118,44 +148,123 @@ synchronized List<IngestModuleError> startUp() {
      *
      * @return A list of processing errors, possible empty.
      */
-    synchronized List<IngestModuleError> process(FileIngestTask task) {
+    List<IngestModuleError> process(FileIngestTask task) {
         List<IngestModuleError> errors = new ArrayList<>();
         if (!this.job.isCancelled()) {
             AbstractFile file = task.getFile();
-            for (PipelineModule module : this.modules) {
-                try {
-                    FileIngestPipeline.ingestManager.setIngestTaskProgress(task, module.getDisplayName());
-                    this.job.setCurrentFileIngestModule(module.getDisplayName(), task.getFile().getName());
-                    module.process(file);
-                } catch (Throwable ex) { // Catch-all exception firewall
-                    errors.add(new IngestModuleError(module.getDisplayName(), ex));
-                    String msg = ex.getMessage();
-                    // Jython run-time errors don't seem to have a message, but have details in toString.
-                    if (msg == null) {
-                        msg = ex.toString();
+            IngestJobCheckpoint checkpoint = this.job.getCheckpoint();
+            IngestModuleProfiler profiler = this.job.getProfiler();
+            long[] elapsedNanos = null;
+            long[] allocatedBytes = null;
+            if (null != profiler) {
+                elapsedNanos = new long[this.modules.size()];
+                allocatedBytes = new long[this.modules.size()];
+            }
+            int moduleIndex = 0;
+            if (this.cacheFileContent) {
+                FileContentCache.beginFile(file);
+            }
+            try {
+                for (PipelineModule module : this.modules) {
+                    if (null != checkpoint && checkpoint.isCompleted(module.getCheckpointKey(), file.getId())) {
+                        if (null != profiler) {
+                            elapsedNanos[moduleIndex] = -1L;
+                        }
+                        ++moduleIndex;
+                        continue;
+                    }
+                    long startTime = 0;
+                    long startAllocatedBytes = 0;
+                    if (null != profiler) {
+                        startAllocatedBytes = IngestModuleProfiler.getCurrentThreadAllocatedBytes();
+                        startTime = System.nanoTime();
+                    }
+                    try {
+                        FileIngestPipeline.ingestManager.setIngestTaskProgress(task, module.getDisplayName());
+                        this.job.setCurrentFileIngestModule(module.getDisplayName(), task.getFile().getName());
+                        IngestModule.ProcessResult result = module.process(file);
+                        if (null != checkpoint && IngestModule.ProcessResult.OK == result && null != module.getCheckpointKey()) {
+                            task.addCompletedModuleKey(module.getCheckpointKey());
+                        }
+                    } catch (Throwable ex) { // Catch-all exception firewall
+                        errors.add(new IngestModuleError(module.getDisplayName(), ex));
+                        String msg = ex.getMessage();
+                        // Jython run-time errors don't seem to have a message, but have details in toString.
+                        if (msg == null) {
+                            msg = ex.toString();
+                        }
+                        MessageNotifyUtil.Notify.error(NbBundle.getMessage(this.getClass(), "FileIngestPipeline.moduleError.title.text", module.getDisplayName()), msg);
+                    }
+                    if (null != profiler) {
+                        elapsedNanos[moduleIndex] = System.nanoTime() - startTime;
+                        allocatedBytes[moduleIndex] = (startAllocatedBytes >= 0) ? IngestModuleProfiler.getCurrentThreadAllocatedBytes() - startAllocatedBytes : -1L;
+                    }
+                    ++moduleIndex;
+                    if (this.job.isCancelled()) {
+                        break;
                     }
-                    MessageNotifyUtil.Notify.error(NbBundle.getMessage(this.getClass(), "FileIngestPipeline.moduleError.title.text", module.getDisplayName()), msg);
                 }
-                if (this.job.isCancelled()) {
-                    break;
+            } finally {
+                if (this.cacheFileContent) {
+                    FileContentCache.endFile(file);
                 }
             }
-            
-            if (!this.job.isCancelled()) {
-                // Save any properties that have not already been saved to the database
-                try{
-                    file.save();
-                } catch (TskCoreException ex){
-                    Logger.getLogger(FileIngestPipeline.class.getName()).log(Level.SEVERE, "Failed to save data for file " + file.getId(), ex); //NON-NLS
+
+            /*
+             * The runs of the modules are recorded after the file has been
+             * through all of them, since the MIME type of the file is usually
+             * not known until one of the modules has run.
+             */
+            if (null != profiler) {
+                String mimeType = file.getMIMEType();
+                for (int i = 0; i < moduleIndex; ++i) {
+                    if (elapsedNanos[i] < 0) {
+                        continue; // Skipped, per the checkpoint.
+                    }
+                    profiler.record(this.modules.get(i).getDisplayName(), mimeType, elapsedNanos[i], file.getSize(), allocatedBytes[i]);
                 }
-                IngestManager.getInstance().fireFileIngestDone(file);
             }
-            file.close();
+
+            if (this.finishesFileIngest) {
+                FileIngestPipeline.finishFileIngest(this.job, task);
+            }
         }
         FileIngestPipeline.ingestManager.setIngestTaskProgressCompleted(task);
         return errors;
     }
 
+    /**
+     * Finishes the ingest of a file, once it has been through the last of the
+     * file ingest modules that process it: saves the file, records the modules
+     * that analyzed it in the checkpoint of the job and fires the file ingest
+     * done event, unless the job has been cancelled, and closes the file.
+     *
+     * @param job  The data source ingest job that the file belongs to.
+     * @param task The file level ingest task for the file.
+     */
+    static void finishFileIngest(DataSourceIngestJob job, FileIngestTask task) {
+        AbstractFile file = task.getFile();
+        if (!job.isCancelled()) {
+            IngestJobCheckpoint checkpoint = job.getCheckpoint();
+            // Save any properties that have not already been saved to the database
+            try{
+                file.save();
+                /*
+                 * The modules that analyzed the file are recorded in the
+                 * checkpoint only now that the file is saved; the checkpoint
+                 * commits the rest of their results before it is saved.
+                 */
+                if (null != checkpoint && !task.getCompletedModuleKeys().isEmpty()) {
+                    checkpoint.markCompleted(task.getCompletedModuleKeys(), file.getId());
+                }
+            } catch (TskCoreException ex){
+                Logger.getLogger(FileIngestPipeline.class.getName()).log(Level.SEVERE, "Failed to save data for file " + file.getId(), ex); //NON-NLS
+            }
+            IngestManager.getInstance().fireFileIngestDone(file);
+        }
+        file.close();
+    }
+
     /**
      * Shuts down all of the modules in the pipeline.
      *
@@ -189,17 +298,29 @@ private static final class PipelineModule implements FileIngestModule {
 
         private final FileIngestModule module;
         private final String displayName;
+        private final String checkpointKey;
 
         /**
          * Constructs an object that decorates a file level ingest module with a
          * display name.
          *
-         * @param module      The file level ingest module to be decorated.
-         * @param displayName The display name.
+         * @param module        The file level ingest module to be decorated.
+         * @param displayName   The display name.
+         * @param checkpointKey The key for the module in ingest checkpoints.
          */
-        PipelineModule(FileIngestModule module, String displayName) {
+        PipelineModule(FileIngestModule module, String displayName, String checkpointKey) {
             this.module = module;
             this.displayName = displayName;
+            this.checkpointKey = checkpointKey;
+        }
+
+        /**
+         * Gets the key for the decorated ingest module in ingest checkpoints.
+         *
+         * @return The key.
+         */
+        String getCheckpointKey() {
+            return checkpointKey;
         }
 
         /**
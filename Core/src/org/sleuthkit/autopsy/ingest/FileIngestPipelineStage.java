@@ -0,0 +1,276 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sleuthkit.datamodel.AbstractFile;
+
+/**
+ * A stage of the file level ingest pipelines of a data source ingest job. A
+ * file ingest module that has a concurrency limit is run in a stage of its own,
+ * with as many copies of the module as the limit allows, and the modules that
+ * follow it are run in a stage with one copy per file ingest thread, so that
+ * only the limited module runs with less concurrency. Each copy of the modules
+ * of a stage is run by a worker thread of its own, and files flow into the
+ * stage through a bounded queue. This allows the file ingest threads to go on
+ * running other files through the modules that precede the stage while the
+ * stage is busy, until the queue is full. The files that the limited module
+ * does not need bypass its stage altogether.
+ */
+@ThreadSafe
+final class FileIngestPipelineStage {
+
+    private static final int QUEUED_TASKS_PER_WORKER = 4;
+    private final DataSourceIngestJob job;
+    private final FileIngestPipelineStage nextStage;
+    private final List<IngestModuleTemplate> moduleTemplates;
+    private final List<FileIngestPipeline> pipelines = new ArrayList<>();
+    private final BlockingQueue<FileIngestTask> tasks;
+    private final Set<Thread> workerThreads = ConcurrentHashMap.newKeySet();
+    private volatile ExecutorService workers;
+    private volatile boolean running;
+
+    /**
+     * Constructs a stage of the file level ingest pipelines of a data source
+     * ingest job.
+     *
+     * @param job              The data source ingest job that owns the stage.
+     * @param moduleTemplates  The ingest module templates that define the
+     *                         modules of the stage.
+     * @param concurrencyLimit The number of copies of the modules of the
+     *                         stage to create.
+     * @param nextStage        The stage that files go to after this stage, may
+     *                         be null if this is the last stage.
+     */
+    FileIngestPipelineStage(DataSourceIngestJob job, List<IngestModuleTemplate> moduleTemplates, int concurrencyLimit, FileIngestPipelineStage nextStage) {
+        this.job = job;
+        this.nextStage = nextStage;
+        this.moduleTemplates = new ArrayList<>(moduleTemplates);
+        for (int i = 0; i < concurrencyLimit; ++i) {
+            this.pipelines.add(new FileIngestPipeline(job, moduleTemplates, null == nextStage));
+        }
+        this.tasks = new LinkedBlockingQueue<>(concurrencyLimit * QUEUED_TASKS_PER_WORKER);
+    }
+
+    /**
+     * Splits the file ingest module templates of an ingest job into the
+     * templates for the modules run by the file ingest threads, followed by
+     * the templates for each file ingest pipeline stage. Each module with a
+     * concurrency limit gets a stage of its own, and the modules that follow
+     * it, up to the next module with a limit, share the next stage.
+     *
+     * @param moduleTemplates The file ingest module templates, in pipeline
+     *                        order.
+     *
+     * @return The templates for the file ingest threads, which may be empty
+     *         if the first module has a concurrency limit, followed by the
+     *         templates for each stage.
+     */
+    static List<List<IngestModuleTemplate>> splitModuleTemplates(List<IngestModuleTemplate> moduleTemplates) {
+        List<List<IngestModuleTemplate>> segments = new ArrayList<>();
+        List<IngestModuleTemplate> segment = new ArrayList<>();
+        segments.add(segment);
+        for (IngestModuleTemplate template : moduleTemplates) {
+            if (template.getMaxFileIngestModuleConcurrency() > 0) {
+                segments.add(Collections.singletonList(template));
+                segment = new ArrayList<>();
+                segments.add(segment);
+            } else {
+                segment.add(template);
+            }
+        }
+        if (segment.isEmpty() && segments.size() > 1) {
+            segments.remove(segments.size() - 1);
+        }
+        return segments;
+    }
+
+    /**
+     * Gets the number of copies of the modules of a file ingest pipeline stage
+     * to create.
+     *
+     * @param moduleTemplates           The ingest module templates that define
+     *                                  the modules of the stage.
+     * @param numberOfFileIngestThreads The number of file ingest threads.
+     *
+     * @return The concurrency limit of the module of the stage, if it has one
+     *         and it is less than the number of file ingest threads,
+     *         otherwise the number of file ingest threads.
+     */
+    static int getConcurrencyLimit(List<IngestModuleTemplate> moduleTemplates, int numberOfFileIngestThreads) {
+        int concurrencyLimit = numberOfFileIngestThreads;
+        for (IngestModuleTemplate template : moduleTemplates) {
+            int moduleLimit = template.getMaxFileIngestModuleConcurrency();
+            if (moduleLimit > 0) {
+                concurrencyLimit = Math.min(concurrencyLimit, moduleLimit);
+            }
+        }
+        return concurrencyLimit;
+    }
+
+    /**
+     * Starts up the ingest modules of this stage and, if they all start up,
+     * the worker threads of this stage.
+     *
+     * @return A list of start up errors, possibly empty.
+     */
+    synchronized List<IngestModuleError> startUp() {
+        List<IngestModuleError> errors = new ArrayList<>();
+        for (FileIngestPipeline pipeline : this.pipelines) {
+            errors.addAll(pipeline.startUp());
+            if (!errors.isEmpty()) {
+                return errors;
+            }
+        }
+        this.running = true;
+        this.workers = Executors.newFixedThreadPool(this.pipelines.size(), new ThreadFactoryBuilder().setNameFormat("IM-file-ingest-stage-%d").build()); //NON-NLS
+        for (FileIngestPipeline pipeline : this.pipelines) {
+            this.workers.submit(new StageWorker(pipeline));
+        }
+        return errors;
+    }
+
+    /**
+     * Gets the stage that files go to after this stage.
+     *
+     * @return The next stage, may be null if this is the last stage.
+     */
+    FileIngestPipelineStage getNextStage() {
+        return this.nextStage;
+    }
+
+    /**
+     * Determines whether or not a file needs to go through this stage. A file
+     * bypasses a stage for a module with a concurrency limit if the module
+     * does not need to process it.
+     *
+     * @param file The file.
+     *
+     * @return True if the file needs to go through the modules of this stage.
+     */
+    boolean isNeededFor(AbstractFile file) {
+        return FileIngestPipelineStage.isStageNeededFor(this.moduleTemplates, file);
+    }
+
+    /**
+     * Determines whether or not a file needs to go through a file ingest
+     * pipeline stage.
+     *
+     * @param moduleTemplates The ingest module templates that define the
+     *                        modules of the stage.
+     * @param file            The file.
+     *
+     * @return False if a module of the stage that has a concurrency limit does
+     *         not need to process the file, otherwise true.
+     */
+    static boolean isStageNeededFor(List<IngestModuleTemplate> moduleTemplates, AbstractFile file) {
+        for (IngestModuleTemplate template : moduleTemplates) {
+            if (template.getMaxFileIngestModuleConcurrency() > 0 && !template.isFileIngestModuleNeededFor(file)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a file task to the queue for this stage, blocking if the queue is
+     * full.
+     *
+     * @param task The file task.
+     *
+     * @throws InterruptedException If the thread adding the task is
+     *                              interrupted while blocked on a queue full
+     *                              condition.
+     */
+    void put(FileIngestTask task) throws InterruptedException {
+        this.tasks.put(task);
+    }
+
+    /**
+     * Stops the worker threads of this stage and shuts down its ingest modules.
+     * Must only be called when there are no file tasks left for the job, and
+     * may be called from one of the worker threads. The other worker threads
+     * are waiting for tasks, and are interrupted to make them exit.
+     *
+     * @return A list of shut down errors, possibly empty.
+     */
+    synchronized List<IngestModuleError> shutDown() {
+        this.running = false;
+        if (null != this.workers) {
+            this.workers.shutdown();
+            for (Thread workerThread : this.workerThreads) {
+                if (workerThread != Thread.currentThread()) {
+                    workerThread.interrupt();
+                }
+            }
+        }
+        List<IngestModuleError> errors = new ArrayList<>();
+        for (FileIngestPipeline pipeline : this.pipelines) {
+            if (pipeline.isRunning()) {
+                errors.addAll(pipeline.shutDown());
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Runs the files in the queue for this stage through one copy of the
+     * modules of this stage, then passes them on to the next stage.
+     */
+    private final class StageWorker implements Runnable {
+
+        private final FileIngestPipeline pipeline;
+
+        StageWorker(FileIngestPipeline pipeline) {
+            this.pipeline = pipeline;
+        }
+
+        @Override
+        public void run() {
+            long threadId = IngestManager.getInstance().registerIngestThread();
+            FileIngestPipelineStage.this.workerThreads.add(Thread.currentThread());
+            try {
+                while (FileIngestPipelineStage.this.running) {
+                    FileIngestTask task = FileIngestPipelineStage.this.tasks.take();
+                    task.setThreadId(threadId);
+                    FileIngestPipelineStage.this.job.process(task, this.pipeline, FileIngestPipelineStage.this.nextStage);
+                }
+            } catch (InterruptedException ex) {
+                /*
+                 * The stage has been shut down while this worker was waiting
+                 * for a task.
+                 */
+            } finally {
+                FileIngestPipelineStage.this.workerThreads.remove(Thread.currentThread());
+                IngestManager.getInstance().unregisterIngestThread(threadId);
+            }
+        }
+    }
+
+}
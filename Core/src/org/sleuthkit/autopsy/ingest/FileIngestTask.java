@@ -18,6 +18,8 @@
  */
 package org.sleuthkit.autopsy.ingest;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import org.sleuthkit.datamodel.AbstractFile;
 
@@ -28,6 +30,8 @@
 final class FileIngestTask extends IngestTask {
 
     private final AbstractFile file;
+    private volatile double estimatedCost = -1.0;
+    private final List<String> completedModuleKeys = new ArrayList<>();
 
     FileIngestTask(DataSourceIngestJob job, AbstractFile file) {
         super(job);
@@ -38,6 +42,42 @@ AbstractFile getFile() {
         return file;
     }
 
+    /**
+     * Gets the estimated relative cost of running the file through the file
+     * level ingest modules, which is computed the first time it is needed.
+     *
+     * @return The estimated cost, in arbitrary units.
+     */
+    double getEstimatedCost() {
+        double cost = estimatedCost;
+        if (cost < 0) {
+            cost = FileIngestTaskCostEstimator.estimateCost(file);
+            estimatedCost = cost;
+        }
+        return cost;
+    }
+
+    /**
+     * Records that a file level ingest module has analyzed the file of this
+     * task without errors. A task is run through one pipeline stage at a time,
+     * so the record is not shared by threads.
+     *
+     * @param moduleKey The checkpoint key of the module.
+     */
+    void addCompletedModuleKey(String moduleKey) {
+        completedModuleKeys.add(moduleKey);
+    }
+
+    /**
+     * Gets the checkpoint keys of the file level ingest modules that have
+     * analyzed the file of this task without errors.
+     *
+     * @return The keys.
+     */
+    List<String> getCompletedModuleKeys() {
+        return completedModuleKeys;
+    }
+
     @Override
     void execute(long threadId) throws InterruptedException {
         super.setThreadId(threadId);
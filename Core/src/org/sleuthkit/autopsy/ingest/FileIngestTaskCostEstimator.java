@@ -0,0 +1,116 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * Estimates the relative cost of running a file through the file level ingest
+ * modules of an ingest job, so that the most expensive files can be started
+ * first. The estimate is the size of the file, with a floor for the fixed
+ * per-file overhead, weighted by the kind of content. The MIME type is used to
+ * determine the kind of content when it is known, which is usually only when
+ * the data source has been analyzed before; otherwise the extension is used.
+ */
+final class FileIngestTaskCostEstimator {
+
+    private static final long MIN_COST_BYTES = 64 * 1024;
+    private static final double CONTAINER_WEIGHT = 4.0;
+    private static final double DOCUMENT_WEIGHT = 2.0;
+    private static final double UNSTRUCTURED_WEIGHT = 1.5;
+    private static final double MEDIA_WEIGHT = 0.5;
+    private static final Set<String> CONTAINER_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "zip", "7z", "rar", "gz", "tgz", "bz2", "tar", "cab", "iso", "pst", "ost", "mbox", "e01", "vhd", "vmdk", "jar")); //NON-NLS
+    private static final Set<String> DOCUMENT_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "rtf", "odt", "ods", "odp", "htm", "html", "xml", "txt", "csv", "eml", "msg", "db", "sqlite")); //NON-NLS
+    private static final Set<String> MEDIA_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "mp4", "avi", "mov", "mkv", "wmv", "mpg", "mpeg", "mp3", "wav", "wma", "flac", "m4a")); //NON-NLS
+
+    private FileIngestTaskCostEstimator() {
+    }
+
+    /**
+     * Estimates the relative cost of running a file through the file level
+     * ingest modules.
+     *
+     * @param file The file.
+     *
+     * @return The estimated cost, in arbitrary units.
+     */
+    static double estimateCost(AbstractFile file) {
+        return Math.max(file.getSize(), MIN_COST_BYTES) * getContentWeight(file);
+    }
+
+    /**
+     * Gets the cost weight for the kind of content in a file.
+     *
+     * @param file The file.
+     *
+     * @return The weight.
+     */
+    private static double getContentWeight(AbstractFile file) {
+        TskData.TSK_DB_FILES_TYPE_ENUM fileType = file.getType();
+        if (fileType == TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS
+                || fileType == TskData.TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS
+                || fileType == TskData.TSK_DB_FILES_TYPE_ENUM.SLACK) {
+            return UNSTRUCTURED_WEIGHT;
+        }
+
+        String mimeType = file.getMIMEType();
+        if (null != mimeType && !mimeType.isEmpty()) {
+            if (mimeType.startsWith("video/") || mimeType.startsWith("audio/") || mimeType.startsWith("image/")) { //NON-NLS
+                return MEDIA_WEIGHT;
+            }
+            if (mimeType.contains("zip") || mimeType.contains("compressed") || mimeType.contains("archive") //NON-NLS
+                    || mimeType.contains("outlook") || mimeType.contains("mbox") || mimeType.contains("tar")) { //NON-NLS
+                return CONTAINER_WEIGHT;
+            }
+            if (mimeType.startsWith("text/") || mimeType.contains("pdf") || mimeType.contains("officedocument") //NON-NLS
+                    || mimeType.contains("msword") || mimeType.contains("ms-excel") || mimeType.contains("ms-powerpoint") //NON-NLS
+                    || mimeType.contains("opendocument") || mimeType.contains("sqlite") || mimeType.contains("message/")) { //NON-NLS
+                return DOCUMENT_WEIGHT;
+            }
+            if (mimeType.equals("application/octet-stream")) { //NON-NLS
+                return UNSTRUCTURED_WEIGHT;
+            }
+            return 1.0;
+        }
+
+        String extension = file.getNameExtension();
+        if (null != extension) {
+            extension = extension.toLowerCase(Locale.ROOT);
+            if (CONTAINER_EXTENSIONS.contains(extension)) {
+                return CONTAINER_WEIGHT;
+            }
+            if (DOCUMENT_EXTENSIONS.contains(extension)) {
+                return DOCUMENT_WEIGHT;
+            }
+            if (MEDIA_EXTENSIONS.contains(extension)) {
+                return MEDIA_WEIGHT;
+            }
+        }
+        return 1.0;
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Adjusts the number of file ingest threads that take tasks from the file
+ * ingest threads queue while ingest is running. The ingest manager starts the
+ * configured number of file ingest threads, since the file ingest pipelines of
+ * an ingest job are created up front, one per thread, and the autoscaler parks
+ * the threads beyond the current active thread count. The configured number is
+ * the maximum.
+ *
+ * The active thread count is sampled periodically and adjusted one thread at a
+ * time using CPU utilization, heap usage after garbage collection, the depth
+ * of the file ingest threads queue and the fraction of time the active threads
+ * spend off the CPU, i.e., mostly waiting on I/O. Growth is done by hill
+ * climbing: a thread that is added is taken away again if file task throughput
+ * does not improve. The thread count is left alone when the CPU load is not
+ * known.
+ */
+@ThreadSafe
+final class FileIngestThreadAutoscaler {
+
+    private static final Logger logger = Logger.getLogger(FileIngestThreadAutoscaler.class.getName());
+    private static final long SAMPLE_INTERVAL_SECS = 10;
+    private static final double MAX_HEAP_USAGE = 0.85;
+    private static final double MAX_CPU_LOAD = 0.90;
+    private static final double GROWTH_CPU_LOAD = 0.75;
+    private static final double MIN_THROUGHPUT_GAIN = 1.05;
+    private static final double IO_BOUND_THREAD_CPU_FRACTION = 0.5;
+    private static final int BACK_OFF_SAMPLES = 3;
+    private static final int IO_BOUND_BACK_OFF_SAMPLES = 6;
+    private final IngestTasksScheduler scheduler;
+    private final int maxThreads;
+    private final ConcurrentHashMap<Integer, Long> threadIdsByIndex = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService samplingExecutor;
+    @GuardedBy("this")
+    private int activeThreads;
+    /*
+     * The remaining fields are only used by the sampling thread.
+     */
+    private long lastSampleTime;
+    private long lastCompletedTaskCount;
+    private long lastThreadsCpuTime = -1L;
+    private double throughputBeforeGrowth = -1.0;
+    private int backOffSamples;
+
+    /**
+     * Constructs an object that adjusts the number of file ingest threads that
+     * take tasks from the file ingest threads queue while ingest is running.
+     *
+     * @param scheduler      The ingest tasks scheduler.
+     * @param initialThreads The number of threads to start with.
+     * @param maxThreads     The number of file ingest threads.
+     */
+    FileIngestThreadAutoscaler(IngestTasksScheduler scheduler, int initialThreads, int maxThreads) {
+        this.scheduler = scheduler;
+        this.maxThreads = maxThreads;
+        this.activeThreads = Math.max(1, Math.min(initialThreads, maxThreads));
+        this.scheduler.setNumberOfActiveFileIngestThreads(this.activeThreads);
+        this.samplingExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("IM-file-ingest-autoscaler-%d").setDaemon(true).build()); //NON-NLS
+    }
+
+    /**
+     * Starts sampling the ingest metrics and adjusting the active thread
+     * count.
+     */
+    void start() {
+        this.lastSampleTime = System.nanoTime();
+        this.lastCompletedTaskCount = this.scheduler.getCompletedFileTaskCount();
+        this.samplingExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                sample();
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Unexpected error adjusting the number of file ingest threads", ex); //NON-NLS
+            }
+        }, SAMPLE_INTERVAL_SECS, SAMPLE_INTERVAL_SECS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records the Java thread id of a file ingest thread so that the CPU time
+     * of the active threads can be sampled.
+     *
+     * @param threadIndex The index of the file ingest thread, from zero to the
+     *                    number of file ingest threads less one.
+     * @param threadId    The Java thread id of the thread.
+     */
+    void registerThread(int threadIndex, long threadId) {
+        this.threadIdsByIndex.put(threadIndex, threadId);
+    }
+
+    /**
+     * Blocks a file ingest thread for as long as it is not one of the active
+     * threads.
+     *
+     * @param threadIndex The index of the file ingest thread, from zero to the
+     *                    number of file ingest threads less one.
+     *
+     * @throws InterruptedException If the thread is interrupted while blocked.
+     */
+    synchronized void awaitActive(int threadIndex) throws InterruptedException {
+        while (threadIndex >= this.activeThreads) {
+            wait();
+        }
+    }
+
+    /**
+     * Gets the number of file ingest threads currently taking tasks.
+     *
+     * @return The active thread count.
+     */
+    synchronized int getActiveThreads() {
+        return this.activeThreads;
+    }
+
+    /**
+     * Samples the ingest metrics and adjusts the active thread count.
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        long elapsedNanos = now - this.lastSampleTime;
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        long completedTaskCount = this.scheduler.getCompletedFileTaskCount();
+        double throughput = (completedTaskCount - this.lastCompletedTaskCount) * 1.0E9 / elapsedNanos;
+        int active = getActiveThreads();
+        double threadCpuFraction = getActiveThreadsCpuFraction(active, elapsedNanos);
+        double heapUsage = IngestMonitor.getHeapUsageAfterGc();
+        double cpuLoad = IngestMonitor.getSystemCpuLoad();
+        int queuedTasks = this.scheduler.getQueuedFileTaskCount();
+        this.lastSampleTime = now;
+        this.lastCompletedTaskCount = completedTaskCount;
+
+        if (heapUsage > MAX_HEAP_USAGE) {
+            this.throughputBeforeGrowth = -1.0;
+            setActiveThreads(active - 1, String.format("heap usage is %.2f", heapUsage)); //NON-NLS
+            return;
+        }
+
+        if (queuedTasks < active) {
+            /*
+             * The threads are running out of work, or ingest is not running,
+             * so more threads would not help and the metrics say nothing about
+             * the right thread count.
+             */
+            this.throughputBeforeGrowth = -1.0;
+            return;
+        }
+
+        if (cpuLoad < 0) {
+            /*
+             * The CPU load is not available on this platform, or not yet, so
+             * there is nothing to base a change on.
+             */
+            this.throughputBeforeGrowth = -1.0;
+            return;
+        }
+
+        if (cpuLoad > MAX_CPU_LOAD) {
+            this.throughputBeforeGrowth = -1.0;
+            setActiveThreads(active - 1, String.format("CPU load is %.2f", cpuLoad)); //NON-NLS
+            return;
+        }
+
+        if (this.throughputBeforeGrowth >= 0) {
+            /*
+             * A thread was added at the last sample, keep it only if it paid
+             * for itself. When the threads spend most of their time waiting on
+             * I/O, a failed probe most likely means the storage is saturated,
+             * so wait longer before probing again.
+             */
+            double throughputBeforeGrowth = this.throughputBeforeGrowth;
+            this.throughputBeforeGrowth = -1.0;
+            if (throughput < throughputBeforeGrowth * MIN_THROUGHPUT_GAIN) {
+                boolean ioBound = threadCpuFraction >= 0 && threadCpuFraction < IO_BOUND_THREAD_CPU_FRACTION;
+                this.backOffSamples = ioBound ? IO_BOUND_BACK_OFF_SAMPLES : BACK_OFF_SAMPLES;
+                setActiveThreads(active - 1, String.format("throughput went from %.1f to %.1f files/sec, thread CPU fraction is %.2f", throughputBeforeGrowth, throughput, threadCpuFraction)); //NON-NLS
+            }
+            return;
+        }
+
+        if (this.backOffSamples > 0) {
+            --this.backOffSamples;
+            return;
+        }
+
+        if (active < this.maxThreads && cpuLoad < GROWTH_CPU_LOAD) {
+            this.throughputBeforeGrowth = throughput;
+            setActiveThreads(active + 1, String.format("CPU load is %.2f, %d tasks queued, thread CPU fraction is %.2f", cpuLoad, queuedTasks, threadCpuFraction)); //NON-NLS
+        }
+    }
+
+    /**
+     * Gets the fraction of the elapsed time that the active file ingest
+     * threads spent on the CPU since the last sample. The CPU time of all of
+     * the threads is used, since parked threads do not use any, and the
+     * active thread count only changes when a sample is taken.
+     *
+     * @param active       The active thread count.
+     * @param elapsedNanos The time since the last sample.
+     *
+     * @return The fraction, or a negative value if thread CPU time is not
+     *         available.
+     */
+    private double getActiveThreadsCpuFraction(int active, long elapsedNanos) {
+        long threadsCpuTime = IngestMonitor.getThreadsCpuTime(this.threadIdsByIndex.values());
+        long lastThreadsCpuTime = this.lastThreadsCpuTime;
+        this.lastThreadsCpuTime = threadsCpuTime;
+        if (threadsCpuTime < 0 || lastThreadsCpuTime < 0 || threadsCpuTime < lastThreadsCpuTime) {
+            return -1.0;
+        }
+        return (double) (threadsCpuTime - lastThreadsCpuTime) / (elapsedNanos * active);
+    }
+
+    /**
+     * Sets the active thread count, within the bounds of one thread and the
+     * number of file ingest threads.
+     *
+     * @param count  The new active thread count.
+     * @param reason The reason for the change, for the log.
+     */
+    private void setActiveThreads(int count, String reason) {
+        int newCount = Math.max(1, Math.min(count, this.maxThreads));
+        synchronized (this) {
+            if (newCount == this.activeThreads) {
+                return;
+            }
+            this.activeThreads = newCount;
+            notifyAll();
+        }
+        this.scheduler.setNumberOfActiveFileIngestThreads(newCount);
+        logger.log(Level.INFO, String.format("Set number of active file ingest threads to %d, %s", newCount, reason)); //NON-NLS
+    }
+
+}
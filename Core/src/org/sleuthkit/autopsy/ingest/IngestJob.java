@@ -193,6 +193,24 @@ public ProgressSnapshot getSnapshot(boolean getIngestTasksSnapshot) {
         return new ProgressSnapshot(getIngestTasksSnapshot);
     }
 
+    /**
+     * Gets snapshots of the ingest module profiles of each of this ingest
+     * job's child data source ingest jobs, if ingest module profiling is
+     * enabled.
+     *
+     * @return A list of ingest module profile snapshots, possibly empty.
+     */
+    List<IngestModuleProfiler.Snapshot> getModuleProfiles() {
+        List<IngestModuleProfiler.Snapshot> profiles = new ArrayList<>();
+        this.dataSourceJobs.values().stream().forEach((dataSourceJob) -> {
+            IngestModuleProfiler profiler = dataSourceJob.getProfiler();
+            if (null != profiler) {
+                profiles.addAll(profiler.getSnapshots());
+            }
+        });
+        return profiles;
+    }
+
     /**
      * Gets snapshots of the progress of each of this ingest job's child data
      * source ingest jobs.
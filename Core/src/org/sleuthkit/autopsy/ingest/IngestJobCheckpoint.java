@@ -0,0 +1,394 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.openide.util.Lookup;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ * A record, persisted in the case directory, of the files each file level
+ * ingest module has finished analyzing during an ingest job for a data
+ * source. If the job is interrupted, e.g., by a crash or a restart, a later
+ * job for the same data source resumes from the checkpoint, skipping the
+ * modules that have already analyzed a file. The checkpoint is deleted when a
+ * job for the data source completes.
+ *
+ * Each module has a bit set of file object ids, keyed by the factory class
+ * name, version and settings of the module, so that new versions of a module,
+ * or the same module with different settings, analyze all of the files again.
+ * A file is recorded for a module only if the module processed it without
+ * error, and only once the results are durable: the file has been saved, and
+ * the results of the files recorded since the previous save that are held by
+ * services such as the keyword search index and the central repository have
+ * been committed by their IngestResultsCommitter implementations, which is
+ * done just before each save. The bit sets are saved periodically, compressed, and
+ * replaced atomically.
+ *
+ * A checkpoint also records a key for the file level settings of the job that
+ * wrote it. A job with different settings does not resume from it, and leaves
+ * it alone, so that a job for the same data source with other settings does
+ * not overwrite or delete it.
+ */
+@ThreadSafe
+final class IngestJobCheckpoint {
+
+    private static final Logger logger = Logger.getLogger(IngestJobCheckpoint.class.getName());
+    private static final String CHECKPOINTS_FOLDER = "IngestCheckpoints"; //NON-NLS
+    private static final int FILE_FORMAT_MAGIC = 0x494A4350; // "IJCP"
+    private static final int FILE_FORMAT_VERSION = 2;
+    private static final long SAVE_INTERVAL_SECS = 60;
+    private static final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("IM-ingest-checkpoints-%d").setDaemon(true).build()); //NON-NLS
+    private final Path path;
+    private final String jobKey;
+    private final Map<String, BitSet> completedFilesByModule = new ConcurrentHashMap<>();
+    @GuardedBy("this")
+    private Map<String, BitSet> pendingFilesByModule = new HashMap<>();
+    @GuardedBy("this")
+    private ScheduledFuture<?> saveTask;
+
+    /**
+     * Opens the checkpoint for a data source, loading the saved checkpoint of
+     * an earlier, interrupted ingest job for the data source if there is one.
+     *
+     * @param dataSource The data source.
+     * @param jobKey     The key for the file level settings of the job, from
+     *                   getJobKey().
+     *
+     * @return The checkpoint, or null if there is a saved checkpoint for the
+     *         data source that was written by a job with other settings.
+     *
+     * @throws NoCurrentCaseException If there is no current case.
+     */
+    static IngestJobCheckpoint open(Content dataSource, String jobKey) throws NoCurrentCaseException {
+        Path path = Paths.get(Case.getCurrentCaseThrows().getCaseDirectory(), CHECKPOINTS_FOLDER, dataSource.getId() + ".ckpt"); //NON-NLS
+        IngestJobCheckpoint checkpoint = new IngestJobCheckpoint(path, jobKey);
+        if (Files.exists(path)) {
+            try {
+                if (!checkpoint.load()) {
+                    logger.log(Level.INFO, "Not checkpointing ingest of {0}, the saved checkpoint is for other ingest settings", dataSource.getName()); //NON-NLS
+                    return null;
+                }
+                checkpoint.completedFilesByModule.forEach((moduleKey, completedFiles) -> {
+                    logger.log(Level.INFO, "Resuming ingest of {0} from checkpoint, {1} files already analyzed by {2}", new Object[]{dataSource.getName(), completedFiles.cardinality(), moduleKey}); //NON-NLS
+                });
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, String.format("Failed to load ingest checkpoint %s, analyzing all files", path), ex); //NON-NLS
+                checkpoint.completedFilesByModule.clear();
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Gets the key for the checkpoint of an ingest module, which identifies
+     * the module, its version and its settings.
+     *
+     * @param template The ingest module template for the module.
+     *
+     * @return The key, or null if the settings of the module cannot be
+     *         serialized, in which case the module cannot be checkpointed.
+     */
+    static String getModuleKey(IngestModuleTemplate template) {
+        IngestModuleFactory factory = template.getModuleFactory();
+        String settingsHash = getSettingsHash(template.getModuleSettings());
+        if (null == settingsHash) {
+            return null;
+        }
+        return FactoryClassNameNormalizer.normalize(factory.getClass().getCanonicalName()) + "-" + factory.getModuleVersionNumber() + "-" + settingsHash;
+    }
+
+    /**
+     * Gets the key for the file level settings of an ingest job: the file
+     * level ingest modules, with their settings, the file filter and whether
+     * or not unallocated space is analyzed.
+     *
+     * @param moduleTemplates         The file level ingest module templates of
+     *                                the job, in pipeline order.
+     * @param fileFilter              The file filter of the job.
+     * @param processUnallocatedSpace Whether or not unallocated space is
+     *                                analyzed.
+     *
+     * @return The key, or null if the settings cannot be serialized, in which
+     *         case the job cannot be checkpointed.
+     */
+    static String getJobKey(List<IngestModuleTemplate> moduleTemplates, FilesSet fileFilter, boolean processUnallocatedSpace) {
+        StringBuilder jobKey = new StringBuilder();
+        for (IngestModuleTemplate template : moduleTemplates) {
+            String moduleKey = getModuleKey(template);
+            if (null == moduleKey) {
+                return null;
+            }
+            jobKey.append(moduleKey).append(';');
+        }
+        String filterHash = getSettingsHash(fileFilter);
+        if (null == filterHash) {
+            return null;
+        }
+        return jobKey.append(filterHash).append(';').append(processUnallocatedSpace).toString();
+    }
+
+    /**
+     * Gets a hash of the serialized form of a settings object.
+     *
+     * @param settings The settings, may be null.
+     *
+     * @return The hash, as a hex string, or null if the settings cannot be
+     *         serialized.
+     */
+    private static String getSettingsHash(Serializable settings) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(settings);
+            }
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray()); //NON-NLS
+            StringBuilder hash = new StringBuilder();
+            for (int i = 0; i < 8; ++i) {
+                hash.append(String.format("%02x", digest[i])); //NON-NLS
+            }
+            return hash.toString();
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            logger.log(Level.WARNING, String.format("Failed to hash ingest settings of type %s, not checkpointing them", settings.getClass().getName()), ex); //NON-NLS
+            return null;
+        }
+    }
+
+    private IngestJobCheckpoint(Path path, String jobKey) {
+        this.path = path;
+        this.jobKey = jobKey;
+    }
+
+    /**
+     * Starts saving this checkpoint periodically.
+     */
+    synchronized void start() {
+        if (null == this.saveTask) {
+            this.saveTask = saveExecutor.scheduleWithFixedDelay(this::saveIfChanged, SAVE_INTERVAL_SECS, SAVE_INTERVAL_SECS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops saving this checkpoint periodically. If the ingest job completed,
+     * the checkpoint is deleted, otherwise it is saved one last time so that
+     * a later job can resume from it.
+     *
+     * @param jobCompleted Whether or not the ingest job completed.
+     */
+    synchronized void close(boolean jobCompleted) {
+        if (null != this.saveTask) {
+            this.saveTask.cancel(false);
+            this.saveTask = null;
+        }
+        if (jobCompleted) {
+            try {
+                Files.deleteIfExists(this.path);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, String.format("Failed to delete ingest checkpoint %s", this.path), ex); //NON-NLS
+            }
+        } else {
+            saveIfChanged();
+        }
+    }
+
+    /**
+     * Queries whether or not an ingest module has already analyzed a file, and
+     * the results are durable.
+     *
+     * @param moduleKey The checkpoint key of the module.
+     * @param fileId    The object id of the file.
+     *
+     * @return True or false.
+     */
+    boolean isCompleted(String moduleKey, long fileId) {
+        if (null == moduleKey) {
+            return false;
+        }
+        BitSet completedFiles = this.completedFilesByModule.get(moduleKey);
+        if (null == completedFiles || fileId < 0 || fileId > Integer.MAX_VALUE) {
+            return false;
+        }
+        synchronized (completedFiles) {
+            return completedFiles.get((int) fileId);
+        }
+    }
+
+    /**
+     * Records that ingest modules have analyzed a file, which has been saved.
+     * The file is recorded as completed for the modules when the results of
+     * the modules have been committed, just before the next save. Files with
+     * object ids too large for a bit set index are not recorded, so they are
+     * always analyzed again.
+     *
+     * @param moduleKeys The checkpoint keys of the modules.
+     * @param fileId     The object id of the file.
+     */
+    synchronized void markCompleted(Collection<String> moduleKeys, long fileId) {
+        if (fileId < 0 || fileId > Integer.MAX_VALUE) {
+            return;
+        }
+        for (String moduleKey : moduleKeys) {
+            this.pendingFilesByModule.computeIfAbsent(moduleKey, (key) -> new BitSet()).set((int) fileId);
+        }
+    }
+
+    /**
+     * Commits the analysis results of the files recorded since the last save
+     * and saves this checkpoint with them, if there are any. If the results
+     * cannot be committed, the files stay pending until the next save.
+     */
+    private synchronized void saveIfChanged() {
+        if (this.pendingFilesByModule.isEmpty()) {
+            return;
+        }
+        if (!commitAnalysisResults()) {
+            return;
+        }
+        this.pendingFilesByModule.forEach((moduleKey, pendingFiles) -> {
+            BitSet completedFiles = this.completedFilesByModule.computeIfAbsent(moduleKey, (key) -> new BitSet());
+            synchronized (completedFiles) {
+                completedFiles.or(pendingFiles);
+            }
+        });
+        this.pendingFilesByModule = new HashMap<>();
+        try {
+            save();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, String.format("Failed to save ingest checkpoint %s", this.path), ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Makes the results of the ingest modules durable by having each of the
+     * registered ingest results committers commit the results it holds.
+     *
+     * @return True if the results were committed, false otherwise.
+     */
+    private boolean commitAnalysisResults() {
+        try {
+            for (IngestResultsCommitter committer : Lookup.getDefault().lookupAll(IngestResultsCommitter.class)) {
+                committer.commitResults();
+            }
+            return true;
+        } catch (IngestResultsCommitter.IngestResultsCommitterException ex) {
+            logger.log(Level.WARNING, String.format("Failed to commit analysis results, not saving ingest checkpoint %s", this.path), ex); //NON-NLS
+            return false;
+        }
+    }
+
+    /**
+     * Writes this checkpoint to a temporary file and then moves the file into
+     * place, so that a crash during a save leaves the previous checkpoint
+     * intact.
+     *
+     * @throws IOException If there is a problem writing the file.
+     */
+    private void save() throws IOException {
+        Files.createDirectories(this.path.getParent());
+        Path tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp"); //NON-NLS
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempPath))))) {
+            out.writeInt(FILE_FORMAT_MAGIC);
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeUTF(this.jobKey);
+            out.writeInt(this.completedFilesByModule.size());
+            for (Map.Entry<String, BitSet> entry : this.completedFilesByModule.entrySet()) {
+                long[] words;
+                synchronized (entry.getValue()) {
+                    words = entry.getValue().toLongArray();
+                }
+                out.writeUTF(entry.getKey());
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        try {
+            Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempPath, this.path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads this checkpoint from its file, if it was written by a job with the
+     * same settings.
+     *
+     * @return True if the checkpoint was read, false if it was written by a
+     *         job with other settings.
+     *
+     * @throws IOException If there is a problem reading the file or the file
+     *                     is not a checkpoint.
+     */
+    private boolean load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(this.path))))) {
+            if (in.readInt() != FILE_FORMAT_MAGIC || in.readInt() != FILE_FORMAT_VERSION) {
+                throw new IOException("Not an ingest checkpoint file"); //NON-NLS
+            }
+            if (!this.jobKey.equals(in.readUTF())) {
+                return false;
+            }
+            int moduleCount = in.readInt();
+            for (int i = 0; i < moduleCount; ++i) {
+                String moduleKey = in.readUTF();
+                long[] words = new long[in.readInt()];
+                for (int j = 0; j < words.length; ++j) {
+                    words[j] = in.readLong();
+                }
+                this.completedFilesByModule.put(moduleKey, BitSet.valueOf(words));
+            }
+        }
+        return true;
+    }
+
+}
@@ -123,8 +123,10 @@ public class IngestManager implements IngestProgressSnapshotProvider {
     private final ExecutorService startIngestJobsExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("IM-start-ingest-jobs-%d").build()); //NON-NLS;
     private final Map<Long, Future<Void>> startIngestJobFutures = new ConcurrentHashMap<>();
     private final Map<Long, IngestJob> ingestJobsById = new HashMap<>();
-    private final ExecutorService dataSourceLevelIngestJobTasksExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("IM-data-source-ingest-%d").build()); //NON-NLS;
+    private final int numberOfDataSourceIngestThreads;
+    private final ExecutorService dataSourceLevelIngestJobTasksExecutor;
     private final ExecutorService fileLevelIngestJobTasksExecutor;
+    private final FileIngestThreadAutoscaler fileIngestThreadAutoscaler;
     private final ExecutorService eventPublishingExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("IM-ingest-events-%d").build()); //NON-NLS;
     private final IngestMonitor ingestMonitor = new IngestMonitor();
     private final ServicesMonitor servicesMonitor = ServicesMonitor.getInstance();
@@ -158,26 +160,44 @@ public synchronized static IngestManager getInstance() {
      */
     private IngestManager() {
         /*
-         * Submit a single Runnable ingest manager task for processing data
-         * source level ingest job tasks to the data source level ingest job
-         * tasks executor.
+         * Submit a configurable number of Runnable ingest manager tasks for
+         * processing data source level ingest job tasks to the data source
+         * level ingest job tasks executor. There is at most one data source
+         * level task per ingest job at a time, so additional threads allow the
+         * data source level analysis of different data sources to proceed in
+         * parallel.
          */
-        long threadId = nextIngestManagerTaskId.incrementAndGet();
-        dataSourceLevelIngestJobTasksExecutor.submit(new ExecuteIngestJobTasksTask(threadId, IngestTasksScheduler.getInstance().getDataSourceIngestTaskQueue()));
-        ingestThreadActivitySnapshots.put(threadId, new IngestThreadActivitySnapshot(threadId));
+        numberOfDataSourceIngestThreads = Math.max(1, UserPreferences.numberOfDataSourceIngestThreads());
+        dataSourceLevelIngestJobTasksExecutor = Executors.newFixedThreadPool(numberOfDataSourceIngestThreads, new ThreadFactoryBuilder().setNameFormat("IM-data-source-ingest-%d").build()); //NON-NLS
+        long threadId;
+        for (int i = 0; i < numberOfDataSourceIngestThreads; ++i) {
+            threadId = nextIngestManagerTaskId.incrementAndGet();
+            dataSourceLevelIngestJobTasksExecutor.submit(new ExecuteIngestJobTasksTask(threadId, IngestTasksScheduler.getInstance().getDataSourceIngestTaskQueue()));
+            ingestThreadActivitySnapshots.put(threadId, new IngestThreadActivitySnapshot(threadId));
+        }
 
         /*
          * Submit a configurable number of Runnable ingest manager tasks for
          * processing file level ingest job tasks to the file level ingest job
-         * tasks executor.
+         * tasks executor. If autoscaling is enabled, the autoscaler decides
+         * how many of the configured number of threads take tasks at any given
+         * time, starting with all of them.
          */
-        numberOfFileIngestThreads = UserPreferences.numberOfFileIngestThreads();
+        numberOfFileIngestThreads = Math.max(1, UserPreferences.numberOfFileIngestThreads());
+        if (UserPreferences.autoscaleFileIngestThreads()) {
+            fileIngestThreadAutoscaler = new FileIngestThreadAutoscaler(IngestTasksScheduler.getInstance(), numberOfFileIngestThreads, numberOfFileIngestThreads);
+        } else {
+            fileIngestThreadAutoscaler = null;
+        }
         fileLevelIngestJobTasksExecutor = Executors.newFixedThreadPool(numberOfFileIngestThreads, new ThreadFactoryBuilder().setNameFormat("IM-file-ingest-%d").build()); //NON-NLS
         for (int i = 0; i < numberOfFileIngestThreads; ++i) {
             threadId = nextIngestManagerTaskId.incrementAndGet();
-            fileLevelIngestJobTasksExecutor.submit(new ExecuteIngestJobTasksTask(threadId, IngestTasksScheduler.getInstance().getFileIngestTaskQueue()));
+            fileLevelIngestJobTasksExecutor.submit(new ExecuteIngestJobTasksTask(threadId, IngestTasksScheduler.getInstance().getFileIngestTaskQueue(), fileIngestThreadAutoscaler, i));
             ingestThreadActivitySnapshots.put(threadId, new IngestThreadActivitySnapshot(threadId));
         }
+        if (null != fileIngestThreadAutoscaler) {
+            fileIngestThreadAutoscaler.start();
+        }
     }
 
     /**
@@ -288,7 +308,8 @@ void handleCaseClosed() {
 
     /**
      * Gets the number of file ingest threads the ingest manager is using to do
-     * ingest jobs.
+     * ingest jobs. If file ingest thread autoscaling is enabled, this is the
+     * maximum number of threads that may be active.
      *
      * @return The number of file ingest threads.
      */
@@ -296,6 +317,20 @@ public int getNumberOfFileIngestThreads() {
         return numberOfFileIngestThreads;
     }
 
+    /**
+     * Gets the number of data source level ingest threads the ingest manager
+     * is using to do ingest jobs. Each ingest job has at most one data source
+     * level task at a time, and the data source ingest modules of a job run
+     * one after another, so extra threads only let the data source level
+     * modules of different jobs, i.e., of different data sources, run at the
+     * same time.
+     *
+     * @return The number of data source level ingest threads.
+     */
+    public int getNumberOfDataSourceIngestThreads() {
+        return numberOfDataSourceIngestThreads;
+    }
+
     /**
      * Queues an ingest job for for one or more data sources.
      *
@@ -765,6 +800,28 @@ public Map<String, Long> getModuleRunTimes() {
         }
     }
 
+    /**
+     * Registers a thread that runs ingest tasks outside of the ingest manager's
+     * own executors, e.g., a file ingest pipeline stage worker, so that its
+     * activity is included in the ingest thread activity snapshots.
+     *
+     * @return The ingest thread id assigned to the thread.
+     */
+    long registerIngestThread() {
+        long threadId = nextIngestManagerTaskId.incrementAndGet();
+        ingestThreadActivitySnapshots.put(threadId, new IngestThreadActivitySnapshot(threadId));
+        return threadId;
+    }
+
+    /**
+     * Unregisters a thread registered using registerIngestThread().
+     *
+     * @param threadId The ingest thread id assigned to the thread.
+     */
+    void unregisterIngestThread(long threadId) {
+        ingestThreadActivitySnapshots.remove(threadId);
+    }
+
     /**
      * Gets snapshots of the current state of each ingest manager ingest task
      * (ingest thread).
@@ -792,6 +849,23 @@ public List<DataSourceIngestJob.Snapshot> getIngestJobSnapshots() {
         return snapShots;
     }
 
+    /**
+     * Gets snapshots of the ingest module profiles of all running ingest jobs,
+     * combined by module and MIME type, if ingest module profiling is enabled.
+     *
+     * @return A list of ingest module profile snapshots, possibly empty.
+     */
+    @Override
+    public List<IngestModuleProfiler.Snapshot> getModuleProfiles() {
+        List<IngestModuleProfiler.Snapshot> profiles = new ArrayList<>();
+        synchronized (ingestJobsById) {
+            ingestJobsById.values().forEach((job) -> {
+                profiles.addAll(job.getModuleProfiles());
+            });
+        }
+        return IngestModuleProfiler.merge(profiles);
+    }
+
     /**
      * Gets the free disk space of the drive to which ingest data is being
      * written, as reported by the ingest monitor.
@@ -866,16 +940,40 @@ private final class ExecuteIngestJobTasksTask implements Runnable {
 
         private final long threadId;
         private final BlockingIngestTaskQueue tasks;
+        private final FileIngestThreadAutoscaler autoscaler;
+        private final int threadIndex;
 
         ExecuteIngestJobTasksTask(long threadId, BlockingIngestTaskQueue tasks) {
+            this(threadId, tasks, null, 0);
+        }
+
+        /**
+         * Constructs an ingest job tasks execution task whose thread may be
+         * parked by an autoscaler.
+         *
+         * @param threadId    The ingest manager task/thread id for the task.
+         * @param tasks       The ingest tasks queue.
+         * @param autoscaler  The autoscaler, may be null.
+         * @param threadIndex The index of the thread among the threads that
+         *                    share the autoscaler.
+         */
+        ExecuteIngestJobTasksTask(long threadId, BlockingIngestTaskQueue tasks, FileIngestThreadAutoscaler autoscaler, int threadIndex) {
             this.threadId = threadId;
             this.tasks = tasks;
+            this.autoscaler = autoscaler;
+            this.threadIndex = threadIndex;
         }
 
         @Override
         public void run() {
+            if (null != autoscaler) {
+                autoscaler.registerThread(threadIndex, Thread.currentThread().getId());
+            }
             while (true) {
                 try {
+                    if (null != autoscaler) {
+                        autoscaler.awaitActive(threadIndex); // Blocks.
+                    }
                     IngestTask task = tasks.getNextTask(); // Blocks.
                     task.execute(threadId);
                 } catch (InterruptedException ex) {
@@ -18,6 +18,8 @@
  */
 package org.sleuthkit.autopsy.ingest;
 
+import org.sleuthkit.datamodel.AbstractFile;
+
 /**
  * An interface that must be implemented by all providers of Autopsy ingest
  * modules. An ingest module factory is used to create instances of a type of
@@ -240,4 +242,39 @@ public interface IngestModuleFactory {
      * @return A file ingest module instance.
      */
     FileIngestModule createFileIngestModule(IngestModuleIngestJobSettings settings);
+
+    /**
+     * Gets the maximum number of file ingest module instances created by this
+     * factory that may process files at the same time for an ingest job. By
+     * default, there is one instance per file ingest thread and each file
+     * ingest thread runs a file through all of the file ingest modules in
+     * turn. A module that is effectively single-instance, for example because
+     * its instances serialize on shared state, should return a small limit
+     * instead. The ingest framework then runs the module in a separate stage
+     * with that many worker threads, fed by a bounded queue, so that the file
+     * ingest threads can keep running other files through the preceding
+     * modules. The modules that follow it in the pipeline are run with one
+     * instance per file ingest thread again.
+     *
+     * @return The concurrency limit, or zero for no limit.
+     */
+    default int getMaxFileIngestModuleConcurrency() {
+        return 0;
+    }
+
+    /**
+     * Queries the factory to determine whether or not the file ingest modules
+     * it creates need to process a given file. Only consulted for a module
+     * that has a concurrency limit: the files that the module does not need
+     * bypass its stage, so that they do not wait behind the files that it
+     * does process. A module that only processes some kinds of files should
+     * return false for the others.
+     *
+     * @param file The file.
+     *
+     * @return True if the file ingest modules need to process the file.
+     */
+    default boolean isFileIngestModuleNeededFor(AbstractFile file) {
+        return true;
+    }
 }
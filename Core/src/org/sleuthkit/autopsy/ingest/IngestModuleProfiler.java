@@ -0,0 +1,371 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Records how long each ingest module of an ingest job spends on each kind of
+ * content, with a latency histogram, the number of bytes of content presented
+ * to the module, and the number of bytes the module allocates, per module and
+ * MIME type. Data source level ingest modules are recorded with an empty MIME
+ * type.
+ *
+ * The histogram buckets are powers of two of microseconds: bucket i counts the
+ * module runs that took at least 2^i and less than 2^(i+1) microseconds, with
+ * the runs that took less than a microsecond in bucket zero.
+ */
+@ThreadSafe
+public final class IngestModuleProfiler {
+
+    static final String DATA_SOURCE_CONTENT_TYPE = "";
+    static final int HISTOGRAM_BUCKETS = 32;
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final ConcurrentHashMap<ProfileKey, ProfileStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an object that records how long each ingest module of an
+     * ingest job spends on each kind of content.
+     */
+    IngestModuleProfiler() {
+    }
+
+    /**
+     * Gets the number of bytes allocated so far by the current thread, for
+     * measuring the allocations made by an ingest module.
+     *
+     * @return The number of bytes, or -1 if it is not available on this
+     *         platform.
+     */
+    static long getCurrentThreadAllocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+            if (sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled()) {
+                return sunThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Records a run of an ingest module.
+     *
+     * @param moduleName     The display name of the module.
+     * @param contentType    The MIME type of the content, or
+     *                       DATA_SOURCE_CONTENT_TYPE for a data source.
+     * @param elapsedNanos   How long the module ran.
+     * @param bytes          The size of the content.
+     * @param allocatedBytes The number of bytes allocated by the module, or a
+     *                       negative value if not known.
+     */
+    void record(String moduleName, String contentType, long elapsedNanos, long bytes, long allocatedBytes) {
+        ProfileKey key = new ProfileKey(moduleName, null != contentType ? contentType : DATA_SOURCE_CONTENT_TYPE);
+        this.stats.computeIfAbsent(key, (k) -> new ProfileStats()).record(elapsedNanos, bytes, allocatedBytes);
+    }
+
+    /**
+     * Gets snapshots of the profile of each combination of module and MIME
+     * type recorded so far.
+     *
+     * @return The snapshots.
+     */
+    List<Snapshot> getSnapshots() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        this.stats.forEach((key, moduleStats) -> snapshots.add(moduleStats.getSnapshot(key)));
+        return snapshots;
+    }
+
+    /**
+     * Writes the profile to a CSV file with one row per combination of module
+     * and MIME type, including the histogram buckets.
+     *
+     * @param path The path of the file.
+     *
+     * @throws IOException If there is a problem writing the file.
+     */
+    void writeCsv(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            StringBuilder header = new StringBuilder("module,content_type,runs,total_ms,mean_ms,p50_ms,p95_ms,p99_ms,max_ms,bytes,allocated_bytes"); //NON-NLS
+            for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+                header.append(",lt_").append(1L << (i + 1)).append("_us"); //NON-NLS
+            }
+            writer.write(header.toString());
+            writer.newLine();
+            for (Snapshot snapshot : getSnapshots()) {
+                StringBuilder row = new StringBuilder();
+                row.append(toCsvField(snapshot.getModuleName())).append(',')
+                        .append(toCsvField(snapshot.getContentType())).append(',')
+                        .append(snapshot.getRuns()).append(',')
+                        .append(snapshot.getTotalNanos() / 1000000).append(',')
+                        .append(String.format(Locale.ROOT, "%.3f", snapshot.getMeanMillis())).append(',') //NON-NLS
+                        .append(String.format(Locale.ROOT, "%.3f", snapshot.getPercentileMillis(0.50))).append(',') //NON-NLS
+                        .append(String.format(Locale.ROOT, "%.3f", snapshot.getPercentileMillis(0.95))).append(',') //NON-NLS
+                        .append(String.format(Locale.ROOT, "%.3f", snapshot.getPercentileMillis(0.99))).append(',') //NON-NLS
+                        .append(String.format(Locale.ROOT, "%.3f", snapshot.getMaxNanos() / 1.0E6)).append(',') //NON-NLS
+                        .append(snapshot.getBytes()).append(',')
+                        .append(snapshot.getAllocatedBytes());
+                for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+                    row.append(',').append(snapshot.getHistogramBucket(i));
+                }
+                writer.write(row.toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Combines the snapshots for the same module and MIME type from several
+     * profiles, e.g., those of all of the running ingest jobs.
+     *
+     * @param snapshots The snapshots.
+     *
+     * @return The combined snapshots.
+     */
+    static List<Snapshot> merge(Collection<Snapshot> snapshots) {
+        Map<ProfileKey, Snapshot> merged = new LinkedHashMap<>();
+        for (Snapshot snapshot : snapshots) {
+            merged.merge(new ProfileKey(snapshot.getModuleName(), snapshot.getContentType()), snapshot, Snapshot::combine);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Quotes a CSV field if it needs quoting.
+     *
+     * @param value The field value.
+     *
+     * @return The field.
+     */
+    private static String toCsvField(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    /**
+     * Gets the histogram bucket for a module run.
+     *
+     * @param elapsedNanos How long the module ran.
+     *
+     * @return The bucket index.
+     */
+    private static int getBucket(long elapsedNanos) {
+        long micros = elapsedNanos / 1000;
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(HISTOGRAM_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * The key of the profile of a module for a MIME type.
+     */
+    @Immutable
+    private static final class ProfileKey {
+
+        private final String moduleName;
+        private final String contentType;
+
+        ProfileKey(String moduleName, String contentType) {
+            this.moduleName = moduleName;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ProfileKey)) {
+                return false;
+            }
+            ProfileKey other = (ProfileKey) obj;
+            return this.moduleName.equals(other.moduleName) && this.contentType.equals(other.contentType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.moduleName, this.contentType);
+        }
+    }
+
+    /**
+     * The profile of a module for a MIME type, updated without locking by the
+     * ingest threads.
+     */
+    @ThreadSafe
+    private static final class ProfileStats {
+
+        private final LongAdder runs = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        void record(long elapsedNanos, long contentBytes, long allocated) {
+            this.runs.increment();
+            this.totalNanos.add(elapsedNanos);
+            this.maxNanos.accumulate(elapsedNanos);
+            this.bytes.add(contentBytes);
+            if (allocated > 0) {
+                this.allocatedBytes.add(allocated);
+            }
+            this.histogram.incrementAndGet(getBucket(elapsedNanos));
+        }
+
+        Snapshot getSnapshot(ProfileKey key) {
+            long[] buckets = new long[HISTOGRAM_BUCKETS];
+            for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+                buckets[i] = this.histogram.get(i);
+            }
+            return new Snapshot(key.moduleName, key.contentType, this.runs.sum(), this.totalNanos.sum(), this.maxNanos.get(), this.bytes.sum(), this.allocatedBytes.sum(), buckets);
+        }
+    }
+
+    /**
+     * A snapshot of the profile of an ingest module for a MIME type.
+     */
+    @Immutable
+    public static final class Snapshot implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final String moduleName;
+        private final String contentType;
+        private final long runs;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long bytes;
+        private final long allocatedBytes;
+        private final long[] histogram;
+
+        private Snapshot(String moduleName, String contentType, long runs, long totalNanos, long maxNanos, long bytes, long allocatedBytes, long[] histogram) {
+            this.moduleName = moduleName;
+            this.contentType = contentType;
+            this.runs = runs;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.bytes = bytes;
+            this.allocatedBytes = allocatedBytes;
+            this.histogram = histogram;
+        }
+
+        /**
+         * Combines two snapshots for the same module and MIME type.
+         *
+         * @param first  The first snapshot.
+         * @param second The second snapshot.
+         *
+         * @return The combined snapshot.
+         */
+        private static Snapshot combine(Snapshot first, Snapshot second) {
+            long[] buckets = new long[HISTOGRAM_BUCKETS];
+            for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+                buckets[i] = first.histogram[i] + second.histogram[i];
+            }
+            return new Snapshot(first.moduleName, first.contentType, first.runs + second.runs, first.totalNanos + second.totalNanos,
+                    Math.max(first.maxNanos, second.maxNanos), first.bytes + second.bytes, first.allocatedBytes + second.allocatedBytes, buckets);
+        }
+
+        public String getModuleName() {
+            return moduleName;
+        }
+
+        /**
+         * Gets the MIME type of the content, empty for data sources or files
+         * with an unknown MIME type.
+         *
+         * @return The MIME type.
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getHistogramBucket(int bucket) {
+            return histogram[bucket];
+        }
+
+        public double getMeanMillis() {
+            return runs > 0 ? totalNanos / 1.0E6 / runs : 0.0;
+        }
+
+        /**
+         * Gets an estimate of a percentile of the run times, the upper bound
+         * of the histogram bucket the percentile falls in, capped by the
+         * maximum run time.
+         *
+         * @param fraction The percentile, as a fraction, e.g., 0.95.
+         *
+         * @return The estimate, in milliseconds.
+         */
+        public double getPercentileMillis(double fraction) {
+            if (runs == 0) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(fraction * runs);
+            long count = 0;
+            for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+                count += histogram[i];
+                if (count >= rank) {
+                    return Math.min((1L << (i + 1)) / 1000.0, maxNanos / 1.0E6);
+                }
+            }
+            return maxNanos / 1.0E6;
+        }
+    }
+
+}
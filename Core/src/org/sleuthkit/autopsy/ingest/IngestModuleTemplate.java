@@ -18,6 +18,8 @@
  */
 package org.sleuthkit.autopsy.ingest;
 
+import org.sleuthkit.datamodel.AbstractFile;
+
 /**
  * Combines an ingest module factory with ingest module settings and an enabled
  * flag to create a template for creating fully configured ingest modules.
@@ -81,6 +83,14 @@ public boolean isFileIngestModuleTemplate() {
         return moduleFactory.isFileIngestModuleFactory();
     }
 
+    public int getMaxFileIngestModuleConcurrency() {
+        return moduleFactory.getMaxFileIngestModuleConcurrency();
+    }
+
+    public boolean isFileIngestModuleNeededFor(AbstractFile file) {
+        return moduleFactory.isFileIngestModuleNeededFor(file);
+    }
+
     public FileIngestModule createFileIngestModule() {
         return moduleFactory.createFileIngestModule(settings);
     }
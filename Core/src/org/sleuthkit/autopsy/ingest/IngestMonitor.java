@@ -23,6 +23,12 @@
 import java.beans.PropertyChangeEvent;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
@@ -37,6 +43,8 @@
 
 /**
  * Monitors disk space and memory and cancels ingest if disk space runs low.
+ * Also provides the resource usage metrics used to scale the number of active
+ * file ingest threads.
  * <p>
  * Note: This should be a singleton and currently is used as such, with the only
  * instance residing in the IngestManager class.
@@ -117,6 +125,74 @@ long getFreeSpace() {
         }
     }
 
+    /**
+     * Gets the fraction of the maximum heap size of the JVM that was in use
+     * right after the most recent garbage collections of the heap memory
+     * pools. Unlike the current heap usage, which includes garbage that has
+     * not been collected yet, this reflects the memory that is actually live.
+     *
+     * @return The heap usage, from 0.0 to 1.0, or a negative value if the
+     *         usage after garbage collection is not available.
+     */
+    static double getHeapUsageAfterGc() {
+        long used = 0L;
+        boolean available = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                MemoryUsage collectionUsage = pool.getCollectionUsage();
+                if (null != collectionUsage) {
+                    used += collectionUsage.getUsed();
+                    available = true;
+                }
+            }
+        }
+        if (!available) {
+            return -1.0;
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : Runtime.getRuntime().maxMemory();
+        return (double) used / max;
+    }
+
+    /**
+     * Gets the recent CPU usage of the whole system.
+     *
+     * @return The CPU load, from 0.0 to 1.0, or a negative value if it is not
+     *         available on this platform.
+     */
+    static double getSystemCpuLoad() {
+        java.lang.management.OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osBean).getSystemCpuLoad();
+        }
+        return -1.0;
+    }
+
+    /**
+     * Gets the total CPU time used so far by a set of threads. Comparing the
+     * CPU time of the ingest threads with the elapsed time gives an estimate
+     * of how much of their time they spend waiting, e.g., on I/O.
+     *
+     * @param threadIds The ids of the threads.
+     *
+     * @return The CPU time in nanoseconds, or a negative value if thread CPU
+     *         time is not available on this platform.
+     */
+    static long getThreadsCpuTime(Collection<Long> threadIds) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!threadBean.isThreadCpuTimeSupported() || !threadBean.isThreadCpuTimeEnabled()) {
+            return -1L;
+        }
+        long cpuTime = 0L;
+        for (Long threadId : threadIds) {
+            long threadCpuTime = threadBean.getThreadCpuTime(threadId);
+            if (threadCpuTime > 0) {
+                cpuTime += threadCpuTime;
+            }
+        }
+        return cpuTime;
+    }
+
     /**
      * An action that is called every time the ingest monitor's timer expires.
      * It does the actual monitoring.
@@ -41,6 +41,7 @@ class IngestProgressSnapshotPanel extends javax.swing.JPanel {
     private final IngestThreadActivitySnapshotsTableModel threadActivityTableModel;
     private final IngestJobTableModel jobTableModel;
     private final ModuleTableModel moduleTableModel;
+    private final ModuleProfileTableModel moduleProfileTableModel;
 
     IngestProgressSnapshotPanel(JDialog parent, IngestProgressSnapshotProvider snapshotProvider) {
         this.parent = parent;
@@ -48,6 +49,7 @@ class IngestProgressSnapshotPanel extends javax.swing.JPanel {
         threadActivityTableModel = new IngestThreadActivitySnapshotsTableModel();
         jobTableModel = new IngestJobTableModel();
         moduleTableModel = new ModuleTableModel();
+        moduleProfileTableModel = new ModuleProfileTableModel();
         initComponents();
         customizeComponents();
     }
@@ -56,6 +58,7 @@ private void customizeComponents() {
         threadActivitySnapshotsTable.setModel(threadActivityTableModel);
         jobTable.setModel(jobTableModel);
         moduleTable.setModel(moduleTableModel);
+        moduleProfileTable.setModel(moduleProfileTableModel);
 
         int width = snapshotsScrollPane.getPreferredSize().width;
         for (int i = 0; i < threadActivitySnapshotsTable.getColumnCount(); ++i) {
@@ -348,6 +351,91 @@ public Object getValueAt(int rowIndex, int columnIndex) {
         }
     }
 
+    /**
+     * A table model for the ingest module profiles, one row per module and
+     * MIME type, with the most expensive combinations first. The table is
+     * empty unless ingest module profiling is enabled.
+     */
+    private class ModuleProfileTableModel extends AbstractTableModel {
+
+        private final String[] columnNames = {NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.colName.module"),
+            NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.colName.contentType"),
+            NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.colName.runs"),
+            NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.colName.total"),
+            NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.colName.mean"),
+            NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.colName.p95"),
+            NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.colName.max"),
+            NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.colName.bytes"),
+            NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.colName.allocated")};
+        private List<IngestModuleProfiler.Snapshot> profiles = new ArrayList<>();
+
+        private ModuleProfileTableModel() {
+            refresh();
+        }
+
+        private void refresh() {
+            profiles = new ArrayList<>(snapshotProvider.getModuleProfiles());
+            profiles.sort((p1, p2) -> Long.compare(p2.getTotalNanos(), p1.getTotalNanos()));
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return profiles.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        @Override
+        public String getColumnName(int col) {
+            return columnNames[col];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            IngestModuleProfiler.Snapshot profile = profiles.get(rowIndex);
+            Object cellValue;
+            switch (columnIndex) {
+                case 0:
+                    cellValue = profile.getModuleName();
+                    break;
+                case 1:
+                    cellValue = profile.getContentType().isEmpty()
+                            ? NbBundle.getMessage(this.getClass(), "ModuleProfileTableModel.dataSourceContentType")
+                            : profile.getContentType();
+                    break;
+                case 2:
+                    cellValue = profile.getRuns();
+                    break;
+                case 3:
+                    cellValue = DurationFormatUtils.formatDurationHMS(profile.getTotalNanos() / 1000000);
+                    break;
+                case 4:
+                    cellValue = String.format("%.1f", profile.getMeanMillis());
+                    break;
+                case 5:
+                    cellValue = String.format("%.1f", profile.getPercentileMillis(0.95));
+                    break;
+                case 6:
+                    cellValue = String.format("%.1f", profile.getMaxNanos() / 1.0E6);
+                    break;
+                case 7:
+                    cellValue = profile.getBytes();
+                    break;
+                case 8:
+                    cellValue = profile.getAllocatedBytes();
+                    break;
+                default:
+                    cellValue = null;
+                    break;
+            }
+            return cellValue;
+        }
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -365,6 +453,8 @@ private void initComponents() {
         closeButton = new javax.swing.JButton();
         moduleScrollPane = new javax.swing.JScrollPane();
         moduleTable = new javax.swing.JTable();
+        moduleProfileScrollPane = new javax.swing.JScrollPane();
+        moduleProfileTable = new javax.swing.JTable();
 
         threadActivitySnapshotsTable.setModel(new javax.swing.table.DefaultTableModel(
             new Object [][] {
@@ -410,6 +500,16 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
         ));
         moduleScrollPane.setViewportView(moduleTable);
 
+        moduleProfileTable.setModel(new javax.swing.table.DefaultTableModel(
+            new Object [][] {
+
+            },
+            new String [] {
+
+            }
+        ));
+        moduleProfileScrollPane.setViewportView(moduleProfileTable);
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -424,7 +524,8 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addComponent(closeButton))
                     .addComponent(jobScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 881, Short.MAX_VALUE)
-                    .addComponent(moduleScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 881, Short.MAX_VALUE))
+                    .addComponent(moduleScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 881, Short.MAX_VALUE)
+                    .addComponent(moduleProfileScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 881, Short.MAX_VALUE))
                 .addContainerGap())
         );
 
@@ -439,6 +540,8 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
                 .addComponent(jobScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 102, Short.MAX_VALUE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(moduleScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 100, Short.MAX_VALUE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(moduleProfileScrollPane, javax.swing.GroupLayout.DEFAULT_SIZE, 100, Short.MAX_VALUE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(refreshButton)
@@ -458,11 +561,14 @@ private void refreshButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN
         threadActivityTableModel.refresh();
         jobTableModel.refresh();
         moduleTableModel.refresh();
+        moduleProfileTableModel.refresh();
     }//GEN-LAST:event_refreshButtonActionPerformed
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton closeButton;
     private javax.swing.JScrollPane jobScrollPane;
     private javax.swing.JTable jobTable;
+    private javax.swing.JScrollPane moduleProfileScrollPane;
+    private javax.swing.JTable moduleProfileTable;
     private javax.swing.JScrollPane moduleScrollPane;
     private javax.swing.JTable moduleTable;
     private javax.swing.JButton refreshButton;
@@ -18,6 +18,7 @@
  */
 package org.sleuthkit.autopsy.ingest;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -46,4 +47,14 @@ public interface IngestProgressSnapshotProvider {
      * @return Map of module name to run time (in milliseconds)
      */
     Map<String, Long> getModuleRunTimes();
+
+    /**
+     * Gets the ingest module profiles, per module and MIME type, of the
+     * running ingest jobs, if ingest module profiling is enabled.
+     *
+     * @return A list of ingest module profile snapshots.
+     */
+    default List<IngestModuleProfiler.Snapshot> getModuleProfiles() {
+        return Collections.emptyList();
+    }
 }
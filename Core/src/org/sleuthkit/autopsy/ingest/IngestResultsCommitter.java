@@ -0,0 +1,58 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+/**
+ * An interface for services that hold on to the results of ingest modules
+ * before writing them out, such as the keyword search text index and the
+ * central repository. An ingest job records that its modules have finished
+ * analyzing files only after every such service has made the results it holds
+ * durable, so that a job that resumes after a crash does not skip files whose
+ * results were lost. You can find the implementations by using Lookup, such
+ * as:
+ *   Lookup.getDefault().lookupAll(IngestResultsCommitter.class)
+ */
+public interface IngestResultsCommitter {
+
+    /**
+     * Makes the results of ingest modules held by this service durable.
+     *
+     * @throws IngestResultsCommitterException if unable to commit.
+     */
+    public void commitResults() throws IngestResultsCommitterException;
+
+    /**
+     * An exception to be thrown by an ingest results committer.
+     */
+    public static class IngestResultsCommitterException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs an exception to be thrown by an ingest results
+         * committer.
+         *
+         * @param message Exception message.
+         * @param cause   Exception cause.
+         */
+        public IngestResultsCommitterException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -55,6 +55,15 @@ final class IngestSettingsPanel extends IngestModuleGlobalSettingsPanel {
             recommendedFileIngestThreadCount = 1;
         }
         numberOfFileIngestThreadsComboBox.setModel(new DefaultComboBoxModel<>(fileIngestThreadCountChoices));
+        Integer dataSourceIngestThreadCountChoices[];
+        if (availableProcessors >= 8) {
+            dataSourceIngestThreadCountChoices = new Integer[]{1, 2, 3, 4};
+        } else if (availableProcessors >= 4) {
+            dataSourceIngestThreadCountChoices = new Integer[]{1, 2};
+        } else {
+            dataSourceIngestThreadCountChoices = new Integer[]{1};
+        }
+        numberOfDataSourceIngestThreadsComboBox.setModel(new DefaultComboBoxModel<>(dataSourceIngestThreadCountChoices));
         restartRequiredLabel.setText(NbBundle.getMessage(IngestSettingsPanel.class, "IngestSettingsPanel.restartRequiredLabel.text", recommendedFileIngestThreadCount));
         // TODO listen to changes in form fields and call controller.changed()
         DocumentListener docListener = new DocumentListener() {
@@ -83,6 +92,7 @@ public void changedUpdate(DocumentEvent e) {
      */
     void load() {
         numberOfFileIngestThreadsComboBox.setSelectedItem(UserPreferences.numberOfFileIngestThreads());
+        numberOfDataSourceIngestThreadsComboBox.setSelectedItem(UserPreferences.numberOfDataSourceIngestThreads());
         if (UserPreferences.getIsTimeOutEnabled()) {
             // user specified time out
             jCheckBoxEnableProcTimeout.setSelected(true);
@@ -103,6 +113,7 @@ void load() {
      */
     void store() {
         UserPreferences.setNumberOfFileIngestThreads((Integer) numberOfFileIngestThreadsComboBox.getSelectedItem());
+        UserPreferences.setNumberOfDataSourceIngestThreads((Integer) numberOfDataSourceIngestThreadsComboBox.getSelectedItem());
 
         UserPreferences.setIsTimeOutEnabled(jCheckBoxEnableProcTimeout.isSelected());
         if (jCheckBoxEnableProcTimeout.isSelected()) {
@@ -123,6 +134,7 @@ boolean valid() {
      */
     void enableButtons(boolean isEnabled) {
         numberOfFileIngestThreadsComboBox.setEnabled(isEnabled);
+        numberOfDataSourceIngestThreadsComboBox.setEnabled(isEnabled);
         jFormattedTextFieldProcTimeOutHrs.setEnabled(isEnabled);
         jCheckBoxEnableProcTimeout.setEnabled(isEnabled);
         ingestWarningLabel.setVisible(!isEnabled);
@@ -141,6 +153,8 @@ private void initComponents() {
         jLabelNumThreads = new javax.swing.JLabel();
         numberOfFileIngestThreadsComboBox = new javax.swing.JComboBox<>();
         restartRequiredLabel = new javax.swing.JLabel();
+        jLabelNumDataSourceThreads = new javax.swing.JLabel();
+        numberOfDataSourceIngestThreadsComboBox = new javax.swing.JComboBox<>();
         jLabelSetProcessTimeOut = new javax.swing.JLabel();
         jCheckBoxEnableProcTimeout = new javax.swing.JCheckBox();
         jFormattedTextFieldProcTimeOutHrs = new JFormattedTextField(NumberFormat.getIntegerInstance());
@@ -164,6 +178,14 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
         restartRequiredLabel.setIcon(new javax.swing.ImageIcon(getClass().getResource("/org/sleuthkit/autopsy/corecomponents/warning16.png"))); // NOI18N
         org.openide.awt.Mnemonics.setLocalizedText(restartRequiredLabel, org.openide.util.NbBundle.getMessage(IngestSettingsPanel.class, "IngestSettingsPanel.restartRequiredLabel.text")); // NOI18N
 
+        org.openide.awt.Mnemonics.setLocalizedText(jLabelNumDataSourceThreads, org.openide.util.NbBundle.getMessage(IngestSettingsPanel.class, "IngestSettingsPanel.jLabelNumDataSourceThreads.text")); // NOI18N
+
+        numberOfDataSourceIngestThreadsComboBox.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                numberOfDataSourceIngestThreadsComboBoxActionPerformed(evt);
+            }
+        });
+
         org.openide.awt.Mnemonics.setLocalizedText(jLabelSetProcessTimeOut, org.openide.util.NbBundle.getMessage(IngestSettingsPanel.class, "IngestSettingsPanel.jLabelSetProcessTimeOut.text")); // NOI18N
 
         org.openide.awt.Mnemonics.setLocalizedText(jCheckBoxEnableProcTimeout, org.openide.util.NbBundle.getMessage(IngestSettingsPanel.class, "IngestSettingsPanel.jCheckBoxEnableProcTimeout.text")); // NOI18N
@@ -203,6 +225,10 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
                             .addGroup(jPanel1Layout.createSequentialGroup()
                                 .addGroup(jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                                     .addComponent(jLabelNumThreads)
+                                    .addComponent(jLabelNumDataSourceThreads)
+                                    .addGroup(jPanel1Layout.createSequentialGroup()
+                                        .addGap(10, 10, 10)
+                                        .addComponent(numberOfDataSourceIngestThreadsComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                                     .addComponent(jLabelSetProcessTimeOut)
                                     .addGroup(jPanel1Layout.createSequentialGroup()
                                         .addGap(10, 10, 10)
@@ -227,6 +253,10 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
                     .addComponent(numberOfFileIngestThreadsComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(restartRequiredLabel))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addComponent(jLabelNumDataSourceThreads)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(numberOfDataSourceIngestThreadsComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addComponent(jLabelSetProcessTimeOut)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
@@ -236,7 +266,7 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
                         .addComponent(jLabelProcessTimeOutUnits)))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(ingestWarningLabel)
-                .addContainerGap(257, Short.MAX_VALUE))
+                .addContainerGap(206, Short.MAX_VALUE))
         );
 
         jScrollPane1.setViewportView(jPanel1);
@@ -266,15 +296,21 @@ private void numberOfFileIngestThreadsComboBoxActionPerformed(java.awt.event.Act
         firePropertyChange(OptionsPanelController.PROP_CHANGED, null, null);
     }//GEN-LAST:event_numberOfFileIngestThreadsComboBoxActionPerformed
 
+    private void numberOfDataSourceIngestThreadsComboBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_numberOfDataSourceIngestThreadsComboBoxActionPerformed
+        firePropertyChange(OptionsPanelController.PROP_CHANGED, null, null);
+    }//GEN-LAST:event_numberOfDataSourceIngestThreadsComboBoxActionPerformed
+
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JLabel ingestWarningLabel;
     private javax.swing.JCheckBox jCheckBoxEnableProcTimeout;
     private javax.swing.JFormattedTextField jFormattedTextFieldProcTimeOutHrs;
+    private javax.swing.JLabel jLabelNumDataSourceThreads;
     private javax.swing.JLabel jLabelNumThreads;
     private javax.swing.JLabel jLabelProcessTimeOutUnits;
     private javax.swing.JLabel jLabelSetProcessTimeOut;
     private javax.swing.JPanel jPanel1;
     private javax.swing.JScrollPane jScrollPane1;
+    private javax.swing.JComboBox<Integer> numberOfDataSourceIngestThreadsComboBox;
     private javax.swing.JComboBox<Integer> numberOfFileIngestThreadsComboBox;
     private javax.swing.JLabel restartRequiredLabel;
     // End of variables declaration//GEN-END:variables
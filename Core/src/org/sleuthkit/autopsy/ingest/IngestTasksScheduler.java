@@ -18,23 +18,34 @@
  */
 package org.sleuthkit.autopsy.ingest;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.Immutable;
 import javax.annotation.concurrent.ThreadSafe;
+import org.sleuthkit.autopsy.core.UserPreferences;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.Content;
@@ -45,20 +56,33 @@
 /**
  * Creates ingest tasks for data source ingest jobs, queueing the tasks in
  * priority order for execution by the ingest manager's ingest threads.
+ *
+ * The root and pending file task queues are kept per data source ingest job,
+ * and directory expansion (the case database queries for the children of
+ * directories) is done by a dedicated expansion thread rather than by the file
+ * ingest threads, so that completing a file ingest task never waits on the
+ * case database or on a scheduler-wide lock.
  */
 @ThreadSafe
 final class IngestTasksScheduler {
 
     private static final int FAT_NTFS_FLAGS = TskData.TSK_FS_TYPE_ENUM.TSK_FS_TYPE_FAT12.getValue() | TskData.TSK_FS_TYPE_ENUM.TSK_FS_TYPE_FAT16.getValue() | TskData.TSK_FS_TYPE_ENUM.TSK_FS_TYPE_FAT32.getValue() | TskData.TSK_FS_TYPE_ENUM.TSK_FS_TYPE_NTFS.getValue();
+    private static final int QUEUED_FILE_TASKS_PER_THREAD = 4;
+    private static final int FILE_TASK_EXPANSION_BATCH_SIZE = 32;
+    private static final int READY_FILE_TASKS_LOOKAHEAD = 4096;
     private static final Logger logger = Logger.getLogger(IngestTasksScheduler.class.getName());
     @GuardedBy("IngestTasksScheduler.this")
     private static IngestTasksScheduler instance;
     private final IngestTaskTrackingQueue dataSourceIngestThreadQueue;
-    @GuardedBy("this")
-    private final TreeSet<FileIngestTask> rootFileTaskQueue;
-    @GuardedBy("this")
-    private final Deque<FileIngestTask> pendingFileTaskQueue;
+    private final ConcurrentHashMap<Long, FileTaskQueues> fileTaskQueuesByJob;
     private final IngestTaskTrackingQueue fileIngestThreadsQueue;
+    private final BlockingQueue<Boolean> expansionRequests;
+    private final ExecutorService fileTaskExpansionExecutor;
+    private final ExecutorService stageCompletionExecutor;
+    private final boolean scheduleLargestFilesFirst;
+    private final AtomicLong completedFileTaskCount;
+    private volatile int fileIngestThreadsQueueLowWaterMark;
+    private long lastExpandedJobId; // Only used by the file task expansion thread.
 
     /**
      * Gets the ingest tasks scheduler singleton that creates ingest tasks for
@@ -79,9 +103,15 @@ synchronized static IngestTasksScheduler getInstance() {
      */
     private IngestTasksScheduler() {
         this.dataSourceIngestThreadQueue = new IngestTaskTrackingQueue();
-        this.rootFileTaskQueue = new TreeSet<>(new RootDirectoryTaskComparator());
-        this.pendingFileTaskQueue = new LinkedList<>();
+        this.fileTaskQueuesByJob = new ConcurrentHashMap<>();
         this.fileIngestThreadsQueue = new IngestTaskTrackingQueue();
+        this.expansionRequests = new ArrayBlockingQueue<>(1);
+        this.completedFileTaskCount = new AtomicLong(0L);
+        this.scheduleLargestFilesFirst = UserPreferences.scheduleLargestFileIngestTasksFirst();
+        this.fileIngestThreadsQueueLowWaterMark = UserPreferences.numberOfFileIngestThreads() * QUEUED_FILE_TASKS_PER_THREAD;
+        this.fileTaskExpansionExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("IM-file-task-expansion-%d").build()); //NON-NLS
+        this.fileTaskExpansionExecutor.submit(new ExpandFileTasksTask());
+        this.stageCompletionExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("IM-stage-completion-%d").build()); //NON-NLS
     }
 
     /**
@@ -104,13 +134,44 @@ BlockingIngestTaskQueue getFileIngestTaskQueue() {
         return this.fileIngestThreadsQueue;
     }
 
+    /**
+     * Sets the number of file ingest threads that are taking tasks from the
+     * file level ingest tasks queue, so that the queue is kept deep enough to
+     * keep all of them busy.
+     *
+     * @param numberOfThreads The number of active file ingest threads.
+     */
+    void setNumberOfActiveFileIngestThreads(int numberOfThreads) {
+        this.fileIngestThreadsQueueLowWaterMark = numberOfThreads * QUEUED_FILE_TASKS_PER_THREAD;
+    }
+
+    /**
+     * Gets the number of tasks in the file level ingest tasks queue, for all
+     * jobs.
+     *
+     * @return The tasks count.
+     */
+    int getQueuedFileTaskCount() {
+        return this.fileIngestThreadsQueue.getQueuedTaskCount();
+    }
+
+    /**
+     * Gets the number of file level ingest tasks that have been completed
+     * since the ingest tasks scheduler was created.
+     *
+     * @return The tasks count.
+     */
+    long getCompletedFileTaskCount() {
+        return this.completedFileTaskCount.get();
+    }
+
     /**
      * Schedules a data source level ingest task and zero to many file level
      * ingest tasks for a data source ingest job.
      *
      * @param job The data source ingest job.
      */
-    synchronized void scheduleIngestTasks(DataSourceIngestJob job) {
+    void scheduleIngestTasks(DataSourceIngestJob job) {
         if (!job.isCancelled()) {
             /*
              * Scheduling of both the data source ingest task and the initial
@@ -118,10 +179,18 @@ synchronized void scheduleIngestTasks(DataSourceIngestJob job) {
              * Otherwise, the data source task might be completed before the
              * file tasks are scheduled, resulting in a potential false positive
              * when another thread checks whether or not all the tasks for the
-             * job are completed.
+             * job are completed. The file task queues for the job are held
+             * open (and count as having tasks) until both kinds of tasks are
+             * queued.
              */
-            this.scheduleDataSourceIngestTask(job);
-            this.scheduleFileIngestTasks(job, Collections.emptyList());
+            FileTaskQueues jobQueues = this.beginSchedulingFileTasks(job);
+            try {
+                this.scheduleDataSourceIngestTask(job);
+                this.scheduleFileIngestTasks(job, Collections.emptyList());
+            } finally {
+                jobQueues.endScheduling();
+                this.requestFileTaskExpansion();
+            }
         }
     }
 
@@ -130,7 +199,7 @@ synchronized void scheduleIngestTasks(DataSourceIngestJob job) {
      *
      * @param job The data source ingest job.
      */
-    synchronized void scheduleDataSourceIngestTask(DataSourceIngestJob job) {
+    void scheduleDataSourceIngestTask(DataSourceIngestJob job) {
         if (!job.isCancelled()) {
             DataSourceIngestTask task = new DataSourceIngestTask(job);
             try {
@@ -150,7 +219,7 @@ synchronized void scheduleDataSourceIngestTask(DataSourceIngestJob job) {
      * @param files A subset of the files for the data source; if empty, then
      *              file tasks for all files in the data source are scheduled.
      */
-    synchronized void scheduleFileIngestTasks(DataSourceIngestJob job, Collection<AbstractFile> files) {
+    void scheduleFileIngestTasks(DataSourceIngestJob job, Collection<AbstractFile> files) {
         if (!job.isCancelled()) {
             Collection<AbstractFile> candidateFiles;
             if (files.isEmpty()) {
@@ -158,13 +227,19 @@ synchronized void scheduleFileIngestTasks(DataSourceIngestJob job, Collection<Ab
             } else {
                 candidateFiles = files;
             }
+            List<FileIngestTask> rootTasks = new ArrayList<>();
             for (AbstractFile file : candidateFiles) {
                 FileIngestTask task = new FileIngestTask(job, file);
                 if (IngestTasksScheduler.shouldEnqueueFileTask(task)) {
-                    this.rootFileTaskQueue.add(task);
+                    rootTasks.add(task);
                 }
             }
-            shuffleFileTaskQueues();
+            this.fileTaskQueuesByJob.compute(job.getId(), (jobId, queues) -> {
+                FileTaskQueues jobQueues = (queues != null) ? queues : new FileTaskQueues(job, this.scheduleLargestFilesFirst);
+                jobQueues.addRootTasks(rootTasks);
+                return jobQueues;
+            });
+            this.requestFileTaskExpansion();
         }
     }
 
@@ -176,7 +251,7 @@ synchronized void scheduleFileIngestTasks(DataSourceIngestJob job, Collection<Ab
      * @param job   The data source ingest job.
      * @param files A set of files for the data source.
      */
-    synchronized void fastTrackFileIngestTasks(DataSourceIngestJob job, Collection<AbstractFile> files) {
+    void fastTrackFileIngestTasks(DataSourceIngestJob job, Collection<AbstractFile> files) {
         if (!job.isCancelled()) {
             /*
              * Put the files directly into the queue for the file ingest
@@ -207,19 +282,24 @@ synchronized void fastTrackFileIngestTasks(DataSourceIngestJob job, Collection<A
      *
      * @param task The completed task.
      */
-    synchronized void notifyTaskCompleted(DataSourceIngestTask task) {
+    void notifyTaskCompleted(DataSourceIngestTask task) {
         this.dataSourceIngestThreadQueue.taskCompleted(task);
     }
 
     /**
      * Allows an ingest thread to notify this ingest task scheduler that a file
-     * level task has been completed.
+     * level task has been completed. The file ingest threads queue is refilled
+     * asynchronously by the file task expansion thread, so this method does
+     * not block.
      *
      * @param task The completed task.
      */
-    synchronized void notifyTaskCompleted(FileIngestTask task) {
+    void notifyTaskCompleted(FileIngestTask task) {
         this.fileIngestThreadsQueue.taskCompleted(task);
-        shuffleFileTaskQueues();
+        this.completedFileTaskCount.incrementAndGet();
+        if (this.fileIngestThreadsQueue.getQueuedTaskCount() < this.fileIngestThreadsQueueLowWaterMark) {
+            this.requestFileTaskExpansion();
+        }
     }
 
     /**
@@ -230,11 +310,16 @@ synchronized void notifyTaskCompleted(FileIngestTask task) {
      *
      * @return True or false.
      */
-    synchronized boolean tasksForJobAreCompleted(DataSourceIngestJob job) {
+    boolean tasksForJobAreCompleted(DataSourceIngestJob job) {
         long jobId = job.getId();
+        /*
+         * The order of the checks matters: tasks only ever move from the job's
+         * file task queues to the file ingest threads queue, so the upstream
+         * queues must be checked first.
+         */
+        FileTaskQueues jobQueues = this.fileTaskQueuesByJob.get(jobId);
         return !(this.dataSourceIngestThreadQueue.hasTasksForJob(jobId)
-                || hasTasksForJob(this.rootFileTaskQueue, jobId)
-                || hasTasksForJob(this.pendingFileTaskQueue, jobId)
+                || (jobQueues != null && jobQueues.hasTasks())
                 || this.fileIngestThreadsQueue.hasTasksForJob(jobId));
     }
 
@@ -245,10 +330,39 @@ synchronized boolean tasksForJobAreCompleted(DataSourceIngestJob job) {
      *
      * @param job The data source ingest job.
      */
-    synchronized void cancelPendingTasksForIngestJob(DataSourceIngestJob job) {
-        long jobId = job.getId();
-        IngestTasksScheduler.removeTasksForJob(this.rootFileTaskQueue, jobId);
-        IngestTasksScheduler.removeTasksForJob(this.pendingFileTaskQueue, jobId);
+    void cancelPendingTasksForIngestJob(DataSourceIngestJob job) {
+        FileTaskQueues jobQueues = this.fileTaskQueuesByJob.get(job.getId());
+        if (jobQueues != null) {
+            jobQueues.clear();
+            this.requestFileTaskExpansion();
+        }
+    }
+
+    /**
+     * Gets the file task queues for a data source ingest job, creating them if
+     * they do not exist yet, and marks the queues as having tasks that are
+     * being scheduled so that the job cannot be seen as completed (or be
+     * discarded by the file task expansion thread) until endScheduling() is
+     * called on the queues.
+     *
+     * @param job The data source ingest job.
+     *
+     * @return The file task queues for the job.
+     */
+    private FileTaskQueues beginSchedulingFileTasks(DataSourceIngestJob job) {
+        return this.fileTaskQueuesByJob.compute(job.getId(), (jobId, queues) -> {
+            FileTaskQueues jobQueues = (queues != null) ? queues : new FileTaskQueues(job, this.scheduleLargestFilesFirst);
+            jobQueues.beginScheduling();
+            return jobQueues;
+        });
+    }
+
+    /**
+     * Asks the file task expansion thread to refill the file ingest threads
+     * queue. Requests are coalesced; this method never blocks.
+     */
+    private void requestFileTaskExpansion() {
+        this.expansionRequests.offer(Boolean.TRUE);
     }
 
     /**
@@ -297,97 +411,262 @@ private static List<AbstractFile> getTopLevelFiles(Content dataSource) {
      * by "shuffling" them through a sequence of three queues that allows for
      * the interleaving of tasks from different data source ingest jobs based on
      * priority, while limiting the number of queued tasks by only expanding
-     * directories one at a time. The sequence of queues is:
-     *
-     * 1. The root file tasks priority queue, which contains file tasks for the
-     * root objects of the data sources that are being analyzed. For example,
-     * the root tasks for a disk image data source are typically the tasks for
-     * the contents of the root directories of the file systems. This queue is a
-     * priority queue that attempts to ensure that user content is analyzed
-     * before general file system content. It feeds into the pending tasks
-     * queue.
-     *
-     * 2. The pending file tasks queue, which contains root file tasks shuffled
-     * out of the root tasks queue, plus tasks for files with children
-     * discovered in the descent from the root tasks to the final leaf tasks in
-     * the content trees that are being analyzed for the data source ingest
-     * jobs. This queue is a FIFO queue that attempts to throttle the total
-     * number of file tasks by deferring queueing tasks for the children of
-     * files until the queue for the file ingest threads is emptied. It feeds
-     * into the file tasks queue for the ingest manager's file ingest threads.
-     *
-     * 3. The file tasks queue for the ingest manager's file ingest threads.
+     * directories a small batch at a time. This is done on the file task
+     * expansion thread, until the file ingest threads queue is above its low
+     * water mark or there is nothing left to expand. The sequence of queues
+     * is:
+     *
+     * 1. The root file tasks priority queue for each job, which contains file
+     * tasks for the root objects of the data source that is being analyzed. For
+     * example, the root tasks for a disk image data source are typically the
+     * tasks for the contents of the root directories of the file systems. This
+     * queue is a priority queue that attempts to ensure that user content is
+     * analyzed before general file system content. It feeds into the pending
+     * tasks queue for the job.
+     *
+     * 2. The pending file tasks queue for each job, which contains root file
+     * tasks shuffled out of the root tasks queue, plus tasks for files with
+     * children discovered in the descent from the root tasks to the final leaf
+     * tasks in the content tree that is being analyzed for the job. This queue
+     * is a FIFO queue that attempts to throttle the total number of file tasks
+     * by deferring queueing tasks for the children of files until the queue
+     * for the file ingest threads runs low. The jobs take turns feeding the
+     * file ingest threads queue, one batch of pending tasks at a time.
+     *
+     * 3. If largest files first scheduling is enabled, the ready file tasks
+     * queue for each job, which holds the leaf tasks produced by expanding the
+     * pending tasks, up to a bounded look ahead. This queue is a priority
+     * queue ordered by the priority of the root directory a task descends
+     * from, and then by the estimated cost of the task, longest first, so
+     * that expensive files such as unallocated space and mail stores do not
+     * become a long tail that keeps a job running after the other file ingest
+     * threads have gone idle.
+     *
+     * 4. The file tasks queue for the ingest manager's file ingest threads.
      * This queue is a blocking deque that is FIFO during a shuffle to maintain
      * task prioritization, but LIFO when adding derived files to it directly
      * during ingest. The reason for the LIFO additions is to give priority to
      * files derived from prioritized files.
      */
-    synchronized private void shuffleFileTaskQueues() {
-        while (this.fileIngestThreadsQueue.isEmpty()) {
-            /*
-             * If the pending file task queue is empty, move the highest
-             * priority root file task, if there is one, into it.
-             */
-            if (this.pendingFileTaskQueue.isEmpty()) {
-                final FileIngestTask rootTask = this.rootFileTaskQueue.pollFirst();
-                if (rootTask != null) {
-                    this.pendingFileTaskQueue.addLast(rootTask);
-                }
+    private void shuffleFileTaskQueues() {
+        while (this.fileIngestThreadsQueue.getQueuedTaskCount() < this.fileIngestThreadsQueueLowWaterMark) {
+            FileTaskQueues jobQueues = getNextJobToExpand();
+            if (null == jobQueues) {
+                return;
             }
 
-            /*
-             * Try to move the next task from the pending task queue into the
-             * queue for the file ingest threads, if it passes the filter for
-             * the job.
-             */
-            final FileIngestTask pendingTask = this.pendingFileTaskQueue.pollFirst();
-            if (pendingTask == null) {
+            if (!this.scheduleLargestFilesFirst || jobQueues.getReadyQueueSize() < READY_FILE_TASKS_LOOKAHEAD) {
+                final List<FileIngestTask> pendingTasks = jobQueues.startExpansion(FILE_TASK_EXPANSION_BATCH_SIZE);
+                if (!pendingTasks.isEmpty()) {
+                    try {
+                        if (!expandFileTasks(pendingTasks, jobQueues)) {
+                            return;
+                        }
+                    } finally {
+                        jobQueues.endExpansion(pendingTasks.size());
+                    }
+                }
+            }
+            if (this.scheduleLargestFilesFirst && !dispatchReadyFileTasks(jobQueues)) {
                 return;
             }
-            if (shouldEnqueueFileTask(pendingTask)) {
-                try {
-                    /*
-                     * The task is added to the queue for the ingest threads
-                     * AFTER the higher priority tasks that preceded it.
-                     */
-                    this.fileIngestThreadsQueue.putLast(pendingTask);
-                } catch (InterruptedException ex) {
-                    IngestTasksScheduler.logger.log(Level.INFO, "Ingest tasks scheduler interrupted while blocked adding a task to the file level ingest task queue", ex);
-                    Thread.currentThread().interrupt();
-                    return;
+        }
+    }
+
+    /**
+     * Moves the highest ranked tasks in the ready queue for a job into the
+     * queue for the file ingest threads, enough of them to bring that queue up
+     * to its low water mark, but no more than a batch at a time so that the
+     * jobs continue to take turns.
+     *
+     * @param jobQueues The file task queues for the job.
+     *
+     * @return False if the expansion thread was interrupted, true otherwise.
+     */
+    private boolean dispatchReadyFileTasks(FileTaskQueues jobQueues) {
+        int deficit = this.fileIngestThreadsQueueLowWaterMark - this.fileIngestThreadsQueue.getQueuedTaskCount();
+        final List<FileIngestTask> readyTasks = jobQueues.startDispatch(Math.max(1, Math.min(deficit, FILE_TASK_EXPANSION_BATCH_SIZE)));
+        try {
+            for (FileIngestTask readyTask : readyTasks) {
+                if (!enqueueForFileIngestThreads(readyTask)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            jobQueues.endExpansion(readyTasks.size());
+        }
+    }
+
+    /**
+     * Moves a batch of pending file tasks into the queue for the file ingest
+     * threads, if they pass the filter for the job, and creates tasks for their
+     * children. The children of the whole batch, and whether or not each child
+     * has children of its own, are fetched with a few set-based case database
+     * queries. Each child task will go into either the pending queue for the
+     * job if it has children of its own, or into the queue for the file ingest
+     * threads, if it passes the filter for the job.
+     *
+     * @param pendingTasks The tasks to expand.
+     * @param jobQueues    The file task queues for the job of the tasks.
+     *
+     * @return False if the expansion thread was interrupted, true otherwise.
+     */
+    private boolean expandFileTasks(List<FileIngestTask> pendingTasks, FileTaskQueues jobQueues) {
+        Map<Long, List<ChildFilesBatchLoader.ChildFile>> childFilesByParentId;
+        try {
+            List<AbstractFile> parents = new ArrayList<>();
+            for (FileIngestTask pendingTask : pendingTasks) {
+                parents.add(pendingTask.getFile());
+            }
+            childFilesByParentId = ChildFilesBatchLoader.loadChildFiles(parents);
+        } catch (TskCoreException ex) {
+            logger.log(Level.WARNING, "Error getting the children of a batch of files, expanding the files one at a time", ex);  //NON-NLS
+            for (FileIngestTask pendingTask : pendingTasks) {
+                if (!expandFileTask(pendingTask, jobQueues)) {
+                    return false;
                 }
             }
+            return true;
+        }
 
-            /*
-             * If the task that was just queued for the file ingest threads has
-             * children, try to queue tasks for the children. Each child task
-             * will go into either the directory queue if it has children of its
-             * own, or into the queue for the file ingest threads, if it passes
-             * the filter for the job.
-             */
-            final AbstractFile file = pendingTask.getFile();
-            try {
-                for (Content child : file.getChildren()) {
-                    if (child instanceof AbstractFile) {
-                        AbstractFile childFile = (AbstractFile) child;
-                        FileIngestTask childTask = new FileIngestTask(pendingTask.getIngestJob(), childFile);
-                        if (childFile.hasChildren()) {
-                            this.pendingFileTaskQueue.add(childTask);
-                        } else if (shouldEnqueueFileTask(childTask)) {
-                            try {
-                                this.fileIngestThreadsQueue.putLast(childTask);
-                            } catch (InterruptedException ex) {
-                                IngestTasksScheduler.logger.log(Level.INFO, "Ingest tasks scheduler interrupted while blocked adding a task to the file level ingest task queue", ex);
-                                Thread.currentThread().interrupt();
-                                return;
-                            }
-                        }
+        for (FileIngestTask pendingTask : pendingTasks) {
+            if (shouldEnqueueFileTask(pendingTask) && !enqueueFileTask(pendingTask, jobQueues)) {
+                return false;
+            }
+            List<FileIngestTask> pendingChildTasks = new ArrayList<>();
+            for (ChildFilesBatchLoader.ChildFile child : childFilesByParentId.getOrDefault(pendingTask.getFile().getId(), Collections.emptyList())) {
+                FileIngestTask childTask = new FileIngestTask(pendingTask.getIngestJob(), child.getFile());
+                if (child.hasChildren()) {
+                    pendingChildTasks.add(childTask);
+                } else if (shouldEnqueueFileTask(childTask) && !enqueueFileTask(childTask, jobQueues)) {
+                    return false;
+                }
+            }
+            jobQueues.addPendingTasks(pendingChildTasks);
+        }
+        return true;
+    }
+
+    /**
+     * Moves a pending file task into the queue for the file ingest threads, if
+     * it passes the filter for the job, and creates tasks for its children,
+     * querying the case database for the children of the file and then for
+     * each child. Used when the batched queries fail.
+     *
+     * @param pendingTask The task to expand.
+     * @param jobQueues   The file task queues for the job of the task.
+     *
+     * @return False if the expansion thread was interrupted, true otherwise.
+     */
+    private boolean expandFileTask(FileIngestTask pendingTask, FileTaskQueues jobQueues) {
+        if (shouldEnqueueFileTask(pendingTask) && !enqueueFileTask(pendingTask, jobQueues)) {
+            return false;
+        }
+
+        final AbstractFile file = pendingTask.getFile();
+        try {
+            List<FileIngestTask> pendingChildTasks = new ArrayList<>();
+            for (Content child : file.getChildren()) {
+                if (child instanceof AbstractFile) {
+                    AbstractFile childFile = (AbstractFile) child;
+                    FileIngestTask childTask = new FileIngestTask(pendingTask.getIngestJob(), childFile);
+                    if (childFile.hasChildren()) {
+                        pendingChildTasks.add(childTask);
+                    } else if (shouldEnqueueFileTask(childTask) && !enqueueFileTask(childTask, jobQueues)) {
+                        return false;
                     }
                 }
-            } catch (TskCoreException ex) {
-                logger.log(Level.SEVERE, String.format("Error getting the children of %s (objId=%d)", file.getName(), file.getId()), ex);  //NON-NLS
             }
+            jobQueues.addPendingTasks(pendingChildTasks);
+        } catch (TskCoreException ex) {
+            logger.log(Level.SEVERE, String.format("Error getting the children of %s (objId=%d)", file.getName(), file.getId()), ex);  //NON-NLS
         }
+        return true;
+    }
+
+    /**
+     * Adds a file task produced by an expansion to the ready queue for its job
+     * if largest files first scheduling is enabled, or to the queue for the
+     * ingest threads otherwise.
+     *
+     * @param task      The task.
+     * @param jobQueues The file task queues for the job of the task.
+     *
+     * @return False if the expansion thread was interrupted, true otherwise.
+     */
+    private boolean enqueueFileTask(FileIngestTask task, FileTaskQueues jobQueues) {
+        if (this.scheduleLargestFilesFirst) {
+            jobQueues.addReadyTask(task);
+            return true;
+        }
+        return enqueueForFileIngestThreads(task);
+    }
+
+    /**
+     * Adds a file task to the queue for the ingest threads, AFTER the higher
+     * priority tasks that preceded it.
+     *
+     * @param task The task.
+     *
+     * @return False if the expansion thread was interrupted, true otherwise.
+     */
+    private boolean enqueueForFileIngestThreads(FileIngestTask task) {
+        try {
+            this.fileIngestThreadsQueue.putLast(task);
+            return true;
+        } catch (InterruptedException ex) {
+            IngestTasksScheduler.logger.log(Level.INFO, "Ingest tasks scheduler interrupted while blocked adding a task to the file level ingest task queue", ex);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Selects the next data source ingest job with file tasks to expand, taking
+     * the jobs in turn so that no job can starve the others. Jobs with empty
+     * file task queues are discarded from the scheduler, and given a chance to
+     * complete their current stage, since the expansion thread may have been
+     * the last to touch their tasks. The stage completion check is done on a
+     * thread of its own for the job, because completing a stage shuts down the
+     * job's ingest modules, which can take a long time, and expansion must not
+     * stall for the other jobs while it runs.
+     *
+     * @return The file task queues of the selected job, or null if there are
+     *         no file tasks to expand.
+     */
+    private FileTaskQueues getNextJobToExpand() {
+        List<Long> jobIds = new ArrayList<>(this.fileTaskQueuesByJob.keySet());
+        Collections.sort(jobIds);
+        FileTaskQueues firstCandidate = null;
+        FileTaskQueues nextCandidate = null;
+        for (Long jobId : jobIds) {
+            FileTaskQueues jobQueues = this.fileTaskQueuesByJob.get(jobId);
+            if (null == jobQueues) {
+                continue;
+            }
+            if (!jobQueues.hasTasks()) {
+                if (null == this.fileTaskQueuesByJob.computeIfPresent(jobId, (id, queues) -> queues.hasTasks() ? queues : null)) {
+                    DataSourceIngestJob job = jobQueues.getJob();
+                    this.stageCompletionExecutor.submit(job::checkForStageCompleted);
+                }
+                continue;
+            }
+            if (!jobQueues.hasTasksToExpand() && !jobQueues.hasReadyTasks()) {
+                continue;
+            }
+            if (null == firstCandidate) {
+                firstCandidate = jobQueues;
+            }
+            if (null == nextCandidate && jobId > this.lastExpandedJobId) {
+                nextCandidate = jobQueues;
+            }
+        }
+        FileTaskQueues selected = (null != nextCandidate) ? nextCandidate : firstCandidate;
+        if (null != selected) {
+            this.lastExpandedJobId = selected.getJob().getId();
+        }
+        return selected;
     }
 
     /**
@@ -494,73 +773,222 @@ private static boolean fileAcceptedByFilter(final FileIngestTask task) {
         return !(task.getIngestJob().getFileIngestFilter().fileIsMemberOf(task.getFile()) == null);
     }
 
+
     /**
-     * Checks whether or not a collection of ingest tasks includes a task for a
-     * given data source ingest job.
+     * Returns a snapshot of the states of the tasks in progress for an ingest
+     * job.
      *
-     * @param tasks The tasks.
-     * @param jobId The data source ingest job id.
+     * @param jobId The identifier assigned to the job.
      *
-     * @return True if there are no tasks for the job, false otherwise.
+     * @return
      */
-    synchronized private static boolean hasTasksForJob(Collection<? extends IngestTask> tasks, long jobId) {
-        for (IngestTask task : tasks) {
-            if (task.getIngestJob().getId() == jobId) {
-                return true;
-            }
+    IngestJobTasksSnapshot getTasksSnapshotForJob(long jobId) {
+        FileTaskQueues jobQueues = this.fileTaskQueuesByJob.get(jobId);
+        long rootQueueSize = 0;
+        long pendingQueueSize = 0;
+        long readyQueueSize = 0;
+        if (jobQueues != null) {
+            rootQueueSize = jobQueues.getRootQueueSize();
+            pendingQueueSize = jobQueues.getPendingQueueSize();
+            readyQueueSize = jobQueues.getReadyQueueSize();
         }
-        return false;
+        return new IngestJobTasksSnapshot(jobId, this.dataSourceIngestThreadQueue.countQueuedTasksForJob(jobId),
+                rootQueueSize,
+                pendingQueueSize,
+                this.fileIngestThreadsQueue.countQueuedTasksForJob(jobId) + readyQueueSize,
+                this.dataSourceIngestThreadQueue.countRunningTasksForJob(jobId) + this.fileIngestThreadsQueue.countRunningTasksForJob(jobId));
     }
 
     /**
-     * Removes all of the ingest tasks associated with a data source ingest job
-     * from a tasks collection.
-     *
-     * @param tasks The collection from which to remove the tasks.
-     * @param jobId The data source ingest job id.
+     * Refills the file ingest threads queue from the file task queues of the
+     * data source ingest jobs whenever it is asked to do so. This is the only
+     * code that queries the case database for the children of directories
+     * during ingest.
      */
-    private static void removeTasksForJob(Collection<? extends IngestTask> tasks, long jobId) {
-        Iterator<? extends IngestTask> iterator = tasks.iterator();
-        while (iterator.hasNext()) {
-            IngestTask task = iterator.next();
-            if (task.getIngestJob().getId() == jobId) {
-                iterator.remove();
+    private final class ExpandFileTasksTask implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    IngestTasksScheduler.this.expansionRequests.take(); // Blocks.
+                    IngestTasksScheduler.this.shuffleFileTaskQueues();
+                } catch (InterruptedException ex) {
+                    break;
+                } catch (RuntimeException ex) {
+                    logger.log(Level.SEVERE, "Unexpected error expanding file ingest tasks", ex); //NON-NLS
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
             }
         }
     }
 
     /**
-     * Counts the number of ingest tasks in a tasks collection for a given job.
-     *
-     * @param queue The queue for which to count tasks.
-     * @param jobId The id of the job for which the tasks are to be counted.
-     *
-     * @return The count.
+     * The root, pending and ready file task queues for a single data source
+     * ingest job, plus bookkeeping for tasks that are in the hands of the file task
+     * expansion thread or that are still being scheduled. Only the expansion
+     * thread takes tasks out of these queues.
      */
-    private static int countTasksForJob(Collection<? extends IngestTask> queue, long jobId) {
-        int count = 0;
-        for (IngestTask task : queue) {
-            if (task.getIngestJob().getId() == jobId) {
-                count++;
+    @ThreadSafe
+    private static final class FileTaskQueues {
+
+        private final DataSourceIngestJob job;
+        @GuardedBy("this")
+        private final TreeSet<FileIngestTask> rootFileTaskQueue;
+        @GuardedBy("this")
+        private final Deque<FileIngestTask> pendingFileTaskQueue = new LinkedList<>();
+        @GuardedBy("this")
+        private final PriorityQueue<RankedFileTask> readyFileTaskQueue = new PriorityQueue<>();
+        @GuardedBy("this")
+        private int expansionsInProgress;
+        @GuardedBy("this")
+        private int schedulingInProgress;
+
+        FileTaskQueues(DataSourceIngestJob job, boolean largestFilesFirst) {
+            this.job = job;
+            this.rootFileTaskQueue = new TreeSet<>(new RootDirectoryTaskComparator(largestFilesFirst));
+        }
+
+        DataSourceIngestJob getJob() {
+            return this.job;
+        }
+
+        synchronized void beginScheduling() {
+            ++this.schedulingInProgress;
+        }
+
+        synchronized void endScheduling() {
+            --this.schedulingInProgress;
+        }
+
+        synchronized void addRootTasks(Collection<FileIngestTask> tasks) {
+            this.rootFileTaskQueue.addAll(tasks);
+        }
+
+        synchronized void addPendingTasks(Collection<FileIngestTask> tasks) {
+            this.pendingFileTaskQueue.addAll(tasks);
+        }
+
+        /**
+         * Takes up to a given number of pending tasks out of the queues for
+         * expansion, moving the highest priority root task into the pending
+         * queue first if the pending queue is empty. The tasks continue to
+         * count as tasks for the job until endExpansion() is called.
+         *
+         * @param maxTasks The maximum number of tasks to take.
+         *
+         * @return The tasks, possibly empty.
+         */
+        synchronized List<FileIngestTask> startExpansion(int maxTasks) {
+            if (this.pendingFileTaskQueue.isEmpty()) {
+                final FileIngestTask rootTask = this.rootFileTaskQueue.pollFirst();
+                if (rootTask != null) {
+                    this.pendingFileTaskQueue.addLast(rootTask);
+                }
+            }
+            List<FileIngestTask> tasks = new ArrayList<>();
+            while (tasks.size() < maxTasks && !this.pendingFileTaskQueue.isEmpty()) {
+                tasks.add(this.pendingFileTaskQueue.pollFirst());
+            }
+            this.expansionsInProgress += tasks.size();
+            return tasks;
+        }
+
+        synchronized void endExpansion(int taskCount) {
+            this.expansionsInProgress -= taskCount;
+        }
+
+        synchronized void addReadyTask(FileIngestTask task) {
+            this.readyFileTaskQueue.add(new RankedFileTask(task));
+        }
+
+        /**
+         * Takes up to a given number of the highest ranked tasks out of the
+         * ready queue. The tasks continue to count as tasks for the job until
+         * endExpansion() is called.
+         *
+         * @param maxTasks The maximum number of tasks to take.
+         *
+         * @return The tasks, possibly empty.
+         */
+        synchronized List<FileIngestTask> startDispatch(int maxTasks) {
+            List<FileIngestTask> tasks = new ArrayList<>();
+            while (tasks.size() < maxTasks && !this.readyFileTaskQueue.isEmpty()) {
+                tasks.add(this.readyFileTaskQueue.poll().getTask());
             }
+            this.expansionsInProgress += tasks.size();
+            return tasks;
+        }
+
+        synchronized boolean hasReadyTasks() {
+            return !this.readyFileTaskQueue.isEmpty();
+        }
+
+        synchronized boolean hasTasksToExpand() {
+            return this.schedulingInProgress == 0
+                    && !(this.rootFileTaskQueue.isEmpty() && this.pendingFileTaskQueue.isEmpty());
+        }
+
+        synchronized boolean hasTasks() {
+            return this.schedulingInProgress > 0
+                    || this.expansionsInProgress > 0
+                    || !this.rootFileTaskQueue.isEmpty()
+                    || !this.pendingFileTaskQueue.isEmpty()
+                    || !this.readyFileTaskQueue.isEmpty();
+        }
+
+        synchronized void clear() {
+            this.rootFileTaskQueue.clear();
+            this.pendingFileTaskQueue.clear();
+            this.readyFileTaskQueue.clear();
+        }
+
+        synchronized int getRootQueueSize() {
+            return this.rootFileTaskQueue.size();
+        }
+
+        synchronized int getPendingQueueSize() {
+            return this.pendingFileTaskQueue.size();
+        }
+
+        synchronized int getReadyQueueSize() {
+            return this.readyFileTaskQueue.size();
         }
-        return count;
     }
 
     /**
-     * Returns a snapshot of the states of the tasks in progress for an ingest
-     * job.
-     *
-     * @param jobId The identifier assigned to the job.
-     *
-     * @return
+     * A file task in a ready file tasks queue, with its priority computed once.
+     * Tasks that descend from higher priority root directories come first,
+     * and within a priority, tasks with higher estimated costs come first.
      */
-    synchronized IngestJobTasksSnapshot getTasksSnapshotForJob(long jobId) {
-        return new IngestJobTasksSnapshot(jobId, this.dataSourceIngestThreadQueue.countQueuedTasksForJob(jobId),
-                countTasksForJob(this.rootFileTaskQueue, jobId),
-                countTasksForJob(this.pendingFileTaskQueue, jobId),
-                this.fileIngestThreadsQueue.countQueuedTasksForJob(jobId),
-                this.dataSourceIngestThreadQueue.countRunningTasksForJob(jobId) + this.fileIngestThreadsQueue.countRunningTasksForJob(jobId));
+    @Immutable
+    private static final class RankedFileTask implements Comparable<RankedFileTask> {
+
+        private final FileIngestTask task;
+        private final RootDirectoryTaskComparator.AbstractFilePriority.Priority priority;
+
+        RankedFileTask(FileIngestTask task) {
+            this.task = task;
+            this.priority = RootDirectoryTaskComparator.AbstractFilePriority.getPriority(task.getFile());
+        }
+
+        FileIngestTask getTask() {
+            return this.task;
+        }
+
+        @Override
+        public int compareTo(RankedFileTask other) {
+            if (this.priority != other.priority) {
+                return other.priority.ordinal() - this.priority.ordinal();
+            }
+            int result = Double.compare(other.task.getEstimatedCost(), this.task.getEstimatedCost());
+            if (result == 0) {
+                result = Long.compare(this.task.getFile().getId(), other.task.getFile().getId());
+            }
+            return result;
+        }
     }
 
     /**
@@ -569,11 +997,31 @@ synchronized IngestJobTasksSnapshot getTasksSnapshotForJob(long jobId) {
      */
     private static class RootDirectoryTaskComparator implements Comparator<FileIngestTask> {
 
+        private final boolean largestFirst;
+
+        /**
+         * Constructs a comparator that ranks root file tasks by the priority
+         * of the root directories and, optionally, by estimated cost within a
+         * priority.
+         *
+         * @param largestFirst Whether or not tasks with the same priority are
+         *                     ranked by estimated cost, longest first.
+         */
+        RootDirectoryTaskComparator(boolean largestFirst) {
+            this.largestFirst = largestFirst;
+        }
+
         @Override
         public int compare(FileIngestTask q1, FileIngestTask q2) {
             AbstractFilePriority.Priority p1 = AbstractFilePriority.getPriority(q1.getFile());
             AbstractFilePriority.Priority p2 = AbstractFilePriority.getPriority(q2.getFile());
             if (p1 == p2) {
+                if (largestFirst) {
+                    int result = Double.compare(q2.getEstimatedCost(), q1.getEstimatedCost());
+                    if (result != 0) {
+                        return result;
+                    }
+                }
                 return (int) (q2.getFile().getId() - q1.getFile().getId());
             } else {
                 return p2.ordinal() - p1.ordinal();
@@ -632,7 +1080,9 @@ enum Priority {
             }
 
             /**
-             * Get the enabled priority for a given file.
+             * Get the enabled priority for a given file. The priority of a
+             * file system file is the priority of the root directory it is in,
+             * or of the file itself if it is in the root directory.
              *
              * @param abstractFile
              *
@@ -644,8 +1094,8 @@ static AbstractFilePriority.Priority getPriority(final AbstractFile abstractFile
                     //non-fs virtual files and dirs, such as representing unalloc space
                     return AbstractFilePriority.Priority.LAST;
                 }
-                //determine the fs files priority by name
-                final String path = abstractFile.getName();
+                //determine the fs files priority by the name of its top level ancestor
+                final String path = getTopLevelName(abstractFile);
                 if (path == null) {
                     return AbstractFilePriority.Priority.MEDIUM;
                 }
@@ -676,21 +1126,42 @@ static AbstractFilePriority.Priority getPriority(final AbstractFile abstractFile
                 //default is medium
                 return AbstractFilePriority.Priority.MEDIUM;
             }
+
+            /**
+             * Gets the name of the root directory a file is in, or the name of
+             * the file itself if it is in the root directory.
+             *
+             * @param abstractFile
+             *
+             * @return The name, may be null.
+             */
+            private static String getTopLevelName(final AbstractFile abstractFile) {
+                final String parentPath = abstractFile.getParentPath();
+                if (parentPath == null) {
+                    return abstractFile.getName();
+                }
+                int start = parentPath.startsWith("/") ? 1 : 0;
+                if (start >= parentPath.length()) {
+                    return abstractFile.getName();
+                }
+                int end = parentPath.indexOf('/', start);
+                return parentPath.substring(start, end < 0 ? parentPath.length() : end);
+            }
         }
     }
 
     /**
      * A blocking ingest task queue for the ingest manager's ingest threads that
-     * keeps tracks of the tasks that are queued and in progress.
+     * keeps tracks of the number of tasks per job that are queued and in
+     * progress. The per-job counts are kept in lock-free counters so that
+     * taking, completing and checking tasks never contend on a shared monitor.
      */
     @ThreadSafe
-    private class IngestTaskTrackingQueue implements BlockingIngestTaskQueue {
+    private static final class IngestTaskTrackingQueue implements BlockingIngestTaskQueue {
 
         private final BlockingDeque<IngestTask> taskQueue = new LinkedBlockingDeque<>();
-        @GuardedBy("this")
-        private final List<IngestTask> queuedTasks = new LinkedList<>();
-        @GuardedBy("this")
-        private final List<IngestTask> tasksInProgress = new LinkedList<>();
+        private final ConcurrentHashMap<Long, AtomicInteger> queuedTaskCounts = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, AtomicInteger> runningTaskCounts = new ConcurrentHashMap<>();
 
         /**
          * Adds an ingest task to the front of the queue, blocking if the queue
@@ -703,15 +1174,11 @@ private class IngestTaskTrackingQueue implements BlockingIngestTaskQueue {
          *                              full condition.
          */
         void putFirst(IngestTask task) throws InterruptedException {
-            synchronized (this) {
-                this.queuedTasks.add(task);
-            }
+            getCounter(this.queuedTaskCounts, task).incrementAndGet();
             try {
                 this.taskQueue.putFirst(task);
             } catch (InterruptedException ex) {
-                synchronized (this) {
-                    this.queuedTasks.remove(task);
-                }
+                getCounter(this.queuedTaskCounts, task).decrementAndGet();
                 throw ex;
             }
         }
@@ -727,15 +1194,11 @@ void putFirst(IngestTask task) throws InterruptedException {
          *                              full condition.
          */
         void putLast(IngestTask task) throws InterruptedException {
-            synchronized (this) {
-                this.queuedTasks.add(task);
-            }
+            getCounter(this.queuedTaskCounts, task).incrementAndGet();
             try {
                 this.taskQueue.putLast(task);
             } catch (InterruptedException ex) {
-                synchronized (this) {
-                    this.queuedTasks.remove(task);
-                }
+                getCounter(this.queuedTaskCounts, task).decrementAndGet();
                 throw ex;
             }
         }
@@ -753,10 +1216,12 @@ void putLast(IngestTask task) throws InterruptedException {
         @Override
         public IngestTask getNextTask() throws InterruptedException {
             IngestTask task = taskQueue.takeFirst();
-            synchronized (this) {
-                this.queuedTasks.remove(task);
-                this.tasksInProgress.add(task);
-            }
+            /*
+             * Count the task as running before it stops being counted as
+             * queued so that the task is never invisible to hasTasksForJob().
+             */
+            getCounter(this.runningTaskCounts, task).incrementAndGet();
+            getCounter(this.queuedTaskCounts, task).decrementAndGet();
             return task;
         }
 
@@ -766,21 +1231,26 @@ public IngestTask getNextTask() throws InterruptedException {
          * @return True or false.
          */
         boolean isEmpty() {
-            synchronized (this) {
-                return this.queuedTasks.isEmpty();
-            }
+            return this.taskQueue.isEmpty();
+        }
+
+        /**
+         * Gets the number of tasks in the queue, for all jobs.
+         *
+         * @return The tasks count.
+         */
+        int getQueuedTaskCount() {
+            return this.taskQueue.size();
         }
 
         /**
          * Handles the completion of an ingest task by removing it from the
-         * running tasks list.
+         * running tasks count.
          *
          * @param task The completed task.
          */
         void taskCompleted(IngestTask task) {
-            synchronized (this) {
-                this.tasksInProgress.remove(task);
-            }
+            getCounter(this.runningTaskCounts, task).decrementAndGet();
         }
 
         /**
@@ -792,9 +1262,7 @@ void taskCompleted(IngestTask task) {
          * @return
          */
         boolean hasTasksForJob(long jobId) {
-            synchronized (this) {
-                return IngestTasksScheduler.hasTasksForJob(this.queuedTasks, jobId) || IngestTasksScheduler.hasTasksForJob(this.tasksInProgress, jobId);
-            }
+            return countQueuedTasksForJob(jobId) > 0 || countRunningTasksForJob(jobId) > 0;
         }
 
         /**
@@ -806,9 +1274,8 @@ boolean hasTasksForJob(long jobId) {
          * @return
          */
         int countQueuedTasksForJob(long jobId) {
-            synchronized (this) {
-                return IngestTasksScheduler.countTasksForJob(this.queuedTasks, jobId);
-            }
+            AtomicInteger count = this.queuedTaskCounts.get(jobId);
+            return count != null ? count.get() : 0;
         }
 
         /**
@@ -820,9 +1287,21 @@ int countQueuedTasksForJob(long jobId) {
          * @return
          */
         int countRunningTasksForJob(long jobId) {
-            synchronized (this) {
-                return IngestTasksScheduler.countTasksForJob(this.tasksInProgress, jobId);
-            }
+            AtomicInteger count = this.runningTaskCounts.get(jobId);
+            return count != null ? count.get() : 0;
+        }
+
+        /**
+         * Gets the task counter for the job of an ingest task, creating it if
+         * it does not exist yet.
+         *
+         * @param counts The counters by job id.
+         * @param task   The ingest task.
+         *
+         * @return The counter.
+         */
+        private static AtomicInteger getCounter(ConcurrentHashMap<Long, AtomicInteger> counts, IngestTask task) {
+            return counts.computeIfAbsent(task.getIngestJob().getId(), (jobId) -> new AtomicInteger());
         }
 
     }
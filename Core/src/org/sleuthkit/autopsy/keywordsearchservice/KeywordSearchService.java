@@ -71,4 +71,14 @@ public interface KeywordSearchService extends Closeable {
      */
     public void deleteTextIndex(CaseMetadata metadata) throws KeywordSearchServiceException;
 
+    /**
+     * Sends any content waiting to be indexed to the keyword search text index
+     * of the current case and commits the index, so that the content indexed
+     * so far is durable. Does nothing by default.
+     *
+     * @throws KeywordSearchServiceException if unable to commit.
+     */
+    default public void commit() throws KeywordSearchServiceException {
+    }
+
 }
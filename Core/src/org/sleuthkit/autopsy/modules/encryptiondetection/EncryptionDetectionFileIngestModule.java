@@ -28,7 +28,6 @@
 import java.io.IOException;
 import java.util.Collections;
 import java.util.logging.Level;
-import org.sleuthkit.datamodel.ReadContentInputStream;
 import java.io.BufferedInputStream;
 import java.io.InputStream;
 import org.apache.tika.exception.EncryptedDocumentException;
@@ -42,6 +41,7 @@
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
 import org.sleuthkit.autopsy.casemodule.services.Blackboard;
 import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.ingest.FileContentCache;
 import org.sleuthkit.autopsy.ingest.FileIngestModuleAdapter;
 import org.sleuthkit.autopsy.ingest.IngestJobContext;
 import org.sleuthkit.autopsy.ingest.IngestMessage;
@@ -277,7 +277,7 @@ private boolean isFilePasswordProtected(AbstractFile file) throws ReadContentInp
                 BufferedInputStream bin = null;
 
                 try {
-                    in = new ReadContentInputStream(file);
+                    in = FileContentCache.openStream(file);
                     bin = new BufferedInputStream(in);
                     ContentHandler handler = new BodyContentHandler(-1);
                     Metadata metadata = new Metadata();
@@ -312,7 +312,7 @@ private boolean isFilePasswordProtected(AbstractFile file) throws ReadContentInp
                 BufferedInputStream bin = null;
 
                 try {
-                    in = new ReadContentInputStream(file);
+                    in = FileContentCache.openStream(file);
                     bin = new BufferedInputStream(in);
                     MemFileChannel memFileChannel = MemFileChannel.newChannel(bin);
                     CodecProvider codecProvider = new CryptCodecProvider();
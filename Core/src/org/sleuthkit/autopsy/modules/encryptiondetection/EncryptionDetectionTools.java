@@ -22,7 +22,9 @@
 import java.io.IOException;
 import java.io.InputStream;
 import org.openide.util.NbBundle;
+import org.sleuthkit.autopsy.ingest.FileContentCache;
 import org.sleuthkit.autopsy.ingest.IngestModule;
+import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.ReadContentInputStream;
 import org.sleuthkit.datamodel.Content;
 
@@ -87,7 +89,11 @@ static double calculateEntropy(Content content) throws ReadContentInputStream.Re
         BufferedInputStream bin = null;
 
         try {
-            in = new ReadContentInputStream(content);
+            if (content instanceof AbstractFile) {
+                in = FileContentCache.openStream((AbstractFile) content);
+            } else {
+                in = new ReadContentInputStream(content);
+            }
             bin = new BufferedInputStream(in);
 
             /*
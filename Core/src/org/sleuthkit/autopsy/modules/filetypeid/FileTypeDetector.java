@@ -18,6 +18,7 @@
  */
 package org.sleuthkit.autopsy.modules.filetypeid;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -28,8 +29,8 @@
 import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.mime.MimeTypes;
 import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.ingest.FileContentCache;
 import org.sleuthkit.datamodel.AbstractFile;
-import org.sleuthkit.datamodel.ReadContentInputStream;
 import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskData;
 
@@ -221,7 +222,7 @@ public String getMIMEType(AbstractFile file) {
          * bytes to Tika.
          */
         if (null == mimeType) {
-            ReadContentInputStream stream = new ReadContentInputStream(file);
+            InputStream stream = FileContentCache.openStream(file);
 
             try (TikaInputStream tikaInputStream = TikaInputStream.get(stream)) {
                 String tikaType = tika.detect(tikaInputStream, file.getName());
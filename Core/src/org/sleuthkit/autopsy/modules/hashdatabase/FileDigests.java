@@ -0,0 +1,119 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.hashdatabase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.xml.bind.DatatypeConverter;
+import org.sleuthkit.autopsy.ingest.FileContentCache;
+import org.sleuthkit.datamodel.AbstractFile;
+
+/**
+ * The MD5, and optionally the SHA-1 and SHA-256, hashes of a file, calculated
+ * in a single pass over the content of the file. The content is read through
+ * the file ingest content cache into a read buffer that is reused by each
+ * thread.
+ */
+final class FileDigests {
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+    private static final ThreadLocal<byte[]> readBuffer = ThreadLocal.withInitial(() -> new byte[READ_BUFFER_SIZE]);
+    private final String md5Hash;
+    private final String sha1Hash;
+    private final String sha256Hash;
+
+    /**
+     * Calculates the hashes of a file.
+     *
+     * @param file               The file.
+     * @param calculateShaHashes Whether or not to calculate the SHA-1 and
+     *                           SHA-256 hashes as well as the MD5 hash.
+     *
+     * @return The hashes.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    static FileDigests calculate(AbstractFile file, boolean calculateShaHashes) throws IOException {
+        MessageDigest md5 = getDigest("MD5"); //NON-NLS
+        MessageDigest sha1 = calculateShaHashes ? getDigest("SHA-1") : null; //NON-NLS
+        MessageDigest sha256 = calculateShaHashes ? getDigest("SHA-256") : null; //NON-NLS
+        byte[] buffer = readBuffer.get();
+        try (InputStream in = FileContentCache.openStream(file)) {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                md5.update(buffer, 0, bytesRead);
+                if (calculateShaHashes) {
+                    sha1.update(buffer, 0, bytesRead);
+                    sha256.update(buffer, 0, bytesRead);
+                }
+            }
+        }
+        return new FileDigests(toHex(md5), calculateShaHashes ? toHex(sha1) : null, calculateShaHashes ? toHex(sha256) : null);
+    }
+
+    private static MessageDigest getDigest(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(String.format("%s digest not available", algorithm), ex); //NON-NLS
+        }
+    }
+
+    private static String toHex(MessageDigest digest) {
+        return DatatypeConverter.printHexBinary(digest.digest()).toLowerCase();
+    }
+
+    private FileDigests(String md5Hash, String sha1Hash, String sha256Hash) {
+        this.md5Hash = md5Hash;
+        this.sha1Hash = sha1Hash;
+        this.sha256Hash = sha256Hash;
+    }
+
+    /**
+     * Gets the MD5 hash.
+     *
+     * @return The hash, as a lower case hex string.
+     */
+    String getMd5Hash() {
+        return md5Hash;
+    }
+
+    /**
+     * Gets the SHA-1 hash.
+     *
+     * @return The hash, as a lower case hex string, or null if it was not
+     *         calculated.
+     */
+    String getSha1Hash() {
+        return sha1Hash;
+    }
+
+    /**
+     * Gets the SHA-256 hash.
+     *
+     * @return The hash, as a lower case hex string, or null if it was not
+     *         calculated.
+     */
+    String getSha256Hash() {
+        return sha256Hash;
+    }
+
+}
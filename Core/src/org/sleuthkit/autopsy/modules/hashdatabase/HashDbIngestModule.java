@@ -31,6 +31,8 @@
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
 import org.sleuthkit.autopsy.casemodule.services.Blackboard;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbValueFilters;
+import org.sleuthkit.autopsy.core.UserPreferences;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
 import org.sleuthkit.autopsy.healthmonitor.HealthMonitor;
@@ -47,7 +49,6 @@
 import org.sleuthkit.datamodel.BlackboardAttribute;
 import org.sleuthkit.datamodel.BlackboardAttribute.ATTRIBUTE_TYPE;
 import org.sleuthkit.datamodel.HashHitInfo;
-import org.sleuthkit.datamodel.HashUtility;
 import org.sleuthkit.datamodel.SleuthkitCase;
 import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskData;
@@ -66,6 +67,8 @@ public class HashDbIngestModule implements FileIngestModule {
 
     private static final Logger logger = Logger.getLogger(HashDbIngestModule.class.getName());
     private static final int MAX_COMMENT_SIZE = 500;
+    private static final String SHA1_ATTR_TYPE_NAME = "AUTOPSY_HASH_SHA1"; //NON-NLS
+    private static final String SHA256_ATTR_TYPE_NAME = "AUTOPSY_HASH_SHA256"; //NON-NLS
     private final IngestServices services = IngestServices.getInstance();
     private final SleuthkitCase skCase;
     private final HashDbManager hashDbManager = HashDbManager.getInstance();
@@ -76,6 +79,9 @@ public class HashDbIngestModule implements FileIngestModule {
     private static final HashMap<Long, IngestJobTotals> totalsForIngestJobs = new HashMap<>();
     private static final IngestModuleReferenceCounter refCounter = new IngestModuleReferenceCounter();
     private Blackboard blackboard;
+    private final boolean calculateShaHashes = UserPreferences.calculateShaHashes();
+    private BlackboardAttribute.Type sha1AttrType;
+    private BlackboardAttribute.Type sha256AttrType;
 
     /**
      * A container of values for storing ingest metrics for the job.
@@ -110,6 +116,10 @@ private static synchronized IngestJobTotals getTotalsForIngestJobs(long ingestJo
         skCase = Case.getCurrentCaseThrows().getSleuthkitCase();
     }
 
+    @Messages({
+        "HashDbIngestModule.sha1AttrType.displayName=SHA-1 Hash",
+        "HashDbIngestModule.sha256AttrType.displayName=SHA-256 Hash"
+    })
     @Override
     public void startUp(org.sleuthkit.autopsy.ingest.IngestJobContext context) throws IngestModuleException {
         jobId = context.getJobId();
@@ -119,10 +129,23 @@ public void startUp(org.sleuthkit.autopsy.ingest.IngestJobContext context) throw
         updateEnabledHashSets(hashDbManager.getKnownBadFileHashSets(), knownBadHashSets);
         updateEnabledHashSets(hashDbManager.getKnownFileHashSets(), knownHashSets);
 
+        if (calculateShaHashes) {
+            try {
+                Blackboard caseBlackboard = Case.getCurrentCaseThrows().getServices().getBlackboard();
+                sha1AttrType = caseBlackboard.getOrAddAttributeType(SHA1_ATTR_TYPE_NAME, BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, Bundle.HashDbIngestModule_sha1AttrType_displayName());
+                sha256AttrType = caseBlackboard.getOrAddAttributeType(SHA256_ATTR_TYPE_NAME, BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, Bundle.HashDbIngestModule_sha256AttrType_displayName());
+            } catch (NoCurrentCaseException | Blackboard.BlackboardException ex) {
+                throw new IngestModuleException("Could not get the SHA-1 and SHA-256 hash attribute types", ex); //NON-NLS
+            }
+        }
+
         if (refCounter.incrementAndGet(jobId) == 1) {
             // initialize job totals
             getTotalsForIngestJobs(jobId);
 
+            // pick up central repository reference set values added by other processes
+            EamDbValueFilters.invalidate();
+
             // if first module for this job then post error msgs if needed
             if (knownBadHashSets.isEmpty()) {
                 services.postMessage(IngestMessage.createWarningMessage(
@@ -204,11 +227,21 @@ public ProcessResult process(AbstractFile file) {
         String name = file.getName();
         long fileId = file.getId();
         String md5Hash = file.getMd5Hash();
-        if (md5Hash == null || md5Hash.isEmpty()) {
+        boolean md5HashNeeded = (md5Hash == null || md5Hash.isEmpty());
+        /*
+         * The SHA hashes are only saved once the file has an MD5 hash, so
+         * they are only looked up for files that already have one.
+         */
+        boolean shaHashesNeeded = calculateShaHashes && (md5HashNeeded || !hasShaHashes(file));
+        if (md5HashNeeded || shaHashesNeeded) {
             try {
                 TimingMetric metric = HealthMonitor.getTimingMetric("Disk Reads: Hash calculation");
                 long calcstart = System.currentTimeMillis();
-                md5Hash = HashUtility.calculateMd5Hash(file);
+                /*
+                 * All of the hashes are calculated in one pass over the file
+                 * content, so the SHA hashes do not cost another read.
+                 */
+                FileDigests digests = FileDigests.calculate(file, shaHashesNeeded);
                 if (file.getSize() > 0) {
                     // Surprisingly, the hash calculation does not seem to be correlated that
                     // strongly with file size until the files get large.
@@ -220,7 +253,13 @@ public ProcessResult process(AbstractFile file) {
                         HealthMonitor.submitNormalizedTimingMetric(metric, file.getSize() / 500000);
                     }
                 }
-                file.setMd5Hash(md5Hash);
+                if (md5HashNeeded) {
+                    md5Hash = digests.getMd5Hash();
+                    file.setMd5Hash(md5Hash);
+                }
+                if (shaHashesNeeded) {
+                    saveShaHashes(file, digests);
+                }
                 long delta = (System.currentTimeMillis() - calcstart);
                 totals.totalCalctime.addAndGet(delta);
 
@@ -327,6 +366,44 @@ public ProcessResult process(AbstractFile file) {
         return ret;
     }
 
+    /**
+     * Checks whether or not the SHA-1 and SHA-256 hashes of a file have
+     * already been saved, e.g., by an earlier ingest job, without creating a
+     * general info artifact for the file if it does not have one.
+     *
+     * @param file The file.
+     *
+     * @return True or false.
+     */
+    private boolean hasShaHashes(AbstractFile file) {
+        try {
+            BlackboardArtifact genInfoArtifact = file.getGenInfoArtifact(false);
+            return null != genInfoArtifact && null != genInfoArtifact.getAttribute(sha256AttrType);
+        } catch (TskCoreException ex) {
+            logger.log(Level.WARNING, String.format("Error looking up SHA hashes of file '%s' (id=%d).", file.getName(), file.getId()), ex); //NON-NLS
+            return false;
+        }
+    }
+
+    /**
+     * Saves the SHA-1 and SHA-256 hashes of a file as attributes of the
+     * general info artifact of the file, since the case database only has a
+     * column for the MD5 hash.
+     *
+     * @param file    The file.
+     * @param digests The hashes of the file.
+     */
+    private void saveShaHashes(AbstractFile file, FileDigests digests) {
+        try {
+            Collection<BlackboardAttribute> attributes = new ArrayList<>();
+            attributes.add(new BlackboardAttribute(sha1AttrType, HashLookupModuleFactory.getModuleName(), digests.getSha1Hash()));
+            attributes.add(new BlackboardAttribute(sha256AttrType, HashLookupModuleFactory.getModuleName(), digests.getSha256Hash()));
+            file.getGenInfoArtifact().addAttributes(attributes);
+        } catch (TskCoreException ex) {
+            logger.log(Level.SEVERE, String.format("Error saving SHA hashes of file '%s' (id=%d).", file.getName(), file.getId()), ex); //NON-NLS
+        }
+    }
+
     /**
      * Post a hash set hit to the blackboard.
      *
@@ -42,6 +42,7 @@
 import org.sleuthkit.autopsy.centralrepository.datamodel.CorrelationAttribute;
 import org.sleuthkit.autopsy.centralrepository.datamodel.EamDb;
 import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbException;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbValueFilters;
 import org.sleuthkit.autopsy.centralrepository.datamodel.EamGlobalFileInstance;
 import org.sleuthkit.autopsy.centralrepository.datamodel.EamGlobalSet;
 import org.sleuthkit.autopsy.core.RuntimeProperties;
@@ -1076,6 +1077,7 @@ class CentralRepoHashSet extends HashDb{
         private String orgName;
         private final boolean readOnly;
         private final PropertyChangeSupport propertyChangeSupport = new PropertyChangeSupport(this);
+        private transient volatile CorrelationAttribute.Type filesType;
 
         @Messages({"HashDbManager.CentralRepoHashDb.orgError=Error loading organization"})
         private CentralRepoHashSet(String hashSetName, String version, int referenceSetID, 
@@ -1294,7 +1296,7 @@ public boolean lookupMD5Quick(Content content) throws TskCoreException {
                 AbstractFile file = (AbstractFile) content;
                 if (null != file.getMd5Hash()) {
                     try{
-                        return EamDb.getInstance().isFileHashInReferenceSet(file.getMd5Hash(), this.referenceSetID);
+                        return isInReferenceSet(file.getMd5Hash());
                     } catch (EamDbException ex){
                         Logger.getLogger(SleuthkitHashSet.class.getName()).log(Level.SEVERE, "Error performing central reposiotry hash lookup for hash "
                                 + file.getMd5Hash() + " in reference set " + referenceSetID, ex); //NON-NLS
@@ -1323,7 +1325,7 @@ public HashHitInfo lookupMD5(Content content) throws TskCoreException {
                 AbstractFile file = (AbstractFile) content;
                 if (null != file.getMd5Hash()) {
                     try{
-                        if(EamDb.getInstance().isFileHashInReferenceSet(file.getMd5Hash(), this.referenceSetID)){
+                        if(isInReferenceSet(file.getMd5Hash())){
                             // Make a bare-bones HashHitInfo for now
                             result = new HashHitInfo(file.getMd5Hash(), "", "");
                         }
@@ -1336,6 +1338,46 @@ public HashHitInfo lookupMD5(Content content) throws TskCoreException {
             }
             return result;
         }
+
+        /**
+         * Checks whether a hash is in the reference set. During ingest, the
+         * central repository is only queried if the value filter of the set
+         * may contain the hash. The filter is only refreshed when an ingest
+         * job starts, so it is not used otherwise.
+         *
+         * @param md5Hash The MD5 hash.
+         *
+         * @return True if the hash is in the reference set.
+         *
+         * @throws EamDbException
+         */
+        private boolean isInReferenceSet(String md5Hash) throws EamDbException {
+            EamDb dbManager = EamDb.getInstance();
+            if (IngestManager.getInstance().isIngestRunning()
+                    && !EamDbValueFilters.mightBeInReferenceSet(this.referenceSetID, getFilesType(dbManager), md5Hash)) {
+                return false;
+            }
+            return dbManager.isFileHashInReferenceSet(md5Hash, this.referenceSetID);
+        }
+
+        /**
+         * Gets the files correlation type, looking it up in the central
+         * repository only the first time.
+         *
+         * @param dbManager The central repository.
+         *
+         * @return The files correlation type.
+         *
+         * @throws EamDbException
+         */
+        private CorrelationAttribute.Type getFilesType(EamDb dbManager) throws EamDbException {
+            CorrelationAttribute.Type type = this.filesType;
+            if (null == type) {
+                type = dbManager.getCorrelationTypeById(CorrelationAttribute.FILES_TYPE_ID);
+                this.filesType = type;
+            }
+            return type;
+        }
         
         /**
          * Returns whether this database can be enabled.
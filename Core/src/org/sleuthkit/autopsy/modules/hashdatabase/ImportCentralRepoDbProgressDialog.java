@@ -248,40 +248,45 @@ protected Void doInBackground() throws Exception {
                 // Holds the current batch of hashes that need to be written to the central repo
                 Set<EamGlobalFileInstance> globalInstances = new HashSet<>();
 
-                while (!hashSetParser.doneReading()) {
-                    if (isCancelled()) {
-                        return null;
-                    }
-
-                    String newHash = hashSetParser.getNextHash();
-
-                    if (newHash != null) {
-                        EamGlobalFileInstance eamGlobalFileInstance = new EamGlobalFileInstance(
-                                referenceSetID.get(),
-                                newHash,
-                                knownStatus,
-                                "");
-
-                        globalInstances.add(eamGlobalFileInstance);
-
-                        // If we've hit the threshold for writing the hashes, write them
-                        // all to the central repo
-                        if (hashCount.incrementAndGet() % HASH_IMPORT_THRESHOLD == 0) {
-                            dbManager.bulkInsertReferenceTypeEntries(globalInstances, contentType);
-                            globalInstances.clear();
+                dbManager.startReferenceSetImport(contentType);
+                try {
+                    while (!hashSetParser.doneReading()) {
+                        if (isCancelled()) {
+                            return null;
+                        }
 
-                            int progress = (int) (hashCount.get() * 100 / hashSetParser.getExpectedHashCount());
-                            if (progress < 100) {
-                                this.setProgress(progress);
-                            } else {
-                                this.setProgress(99);
+                        String newHash = hashSetParser.getNextHash();
+
+                        if (newHash != null) {
+                            EamGlobalFileInstance eamGlobalFileInstance = new EamGlobalFileInstance(
+                                    referenceSetID.get(),
+                                    newHash,
+                                    knownStatus,
+                                    "");
+
+                            globalInstances.add(eamGlobalFileInstance);
+
+                            // If we've hit the threshold for writing the hashes, write them
+                            // all to the central repo
+                            if (hashCount.incrementAndGet() % HASH_IMPORT_THRESHOLD == 0) {
+                                dbManager.bulkInsertReferenceTypeEntries(globalInstances, contentType);
+                                globalInstances.clear();
+
+                                int progress = (int) (hashCount.get() * 100 / hashSetParser.getExpectedHashCount());
+                                if (progress < 100) {
+                                    this.setProgress(progress);
+                                } else {
+                                    this.setProgress(99);
+                                }
                             }
                         }
                     }
-                }
 
-                // Add any remaining hashes to the central repo
-                dbManager.bulkInsertReferenceTypeEntries(globalInstances, contentType);
+                    // Add any remaining hashes to the central repo
+                    dbManager.bulkInsertReferenceTypeEntries(globalInstances, contentType);
+                } finally {
+                    dbManager.finishReferenceSetImport(contentType);
+                }
                 this.setProgress(100);
                 return null;
             } finally {
@@ -26,6 +26,8 @@
 import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettings;
 import org.sleuthkit.autopsy.ingest.IngestModuleIngestJobSettingsPanel;
 import org.sleuthkit.autopsy.ingest.NoIngestModuleIngestJobSettings;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskData;
 
 /**
  * A factory for creating instances of file ingest modules that carve
@@ -105,4 +107,32 @@ public IngestModuleIngestJobSettingsPanel getIngestJobSettingsPanel(IngestModule
         throw new IllegalArgumentException("Expected settings argument to be an instance of PhotoRecCarverIngestJobSettings");
     }
 
+    /**
+     * Each carve copies an unallocated space file to a temporary file and
+     * runs PhotoRec over it, both of which are bound by the disk, so carving
+     * more than one file at a time only slows all of them down. Carving one
+     * file at a time in a stage of its own also keeps the file ingest threads
+     * from waiting on the carver, since only unallocated space files are sent
+     * to the stage.
+     *
+     * @return One.
+     */
+    @Override
+    public int getMaxFileIngestModuleConcurrency() {
+        return 1;
+    }
+
+    /**
+     * Only unallocated space files are carved, so all other files bypass the
+     * single carver.
+     *
+     * @param file The file.
+     *
+     * @return True if the file is an unallocated space file.
+     */
+    @Override
+    public boolean isFileIngestModuleNeededFor(AbstractFile file) {
+        return file.getType() == TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS;
+    }
+
 }
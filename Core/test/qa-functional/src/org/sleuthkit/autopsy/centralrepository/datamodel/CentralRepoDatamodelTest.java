@@ -464,8 +464,7 @@ public void testBulkArtifacts() {
         // - Verify that nothing has been written to the database
         // - Make a list of artifacts equal to the threshold size
         // - Call prepareBulkArtifact on all of them
-        // - Verify that the bulk threshold number of them were written to the database
-        // - Call bulkInsertArtifacts to insert the remainder
+        // - Call bulkInsertArtifacts to wait for the inserts and insert the remainder
         // - Verify that the database now has all the artifacts
         try {
             // Make sure there are no artifacts in the database to start
@@ -508,13 +507,10 @@ public void testBulkArtifacts() {
                 EamDb.getInstance().prepareBulkArtifact(attr);
             }
 
-            // There should now be bulkThreshold artifacts in the database
-            long count = EamDb.getInstance().getCountArtifactInstancesByCaseDataSource(case1.getCaseUUID(), dataSource1fromCase1.getDeviceID());
-            assertTrue("Artifact count " + count + " does not match bulkThreshold " + DEFAULT_BULK_THRESHOLD, count == DEFAULT_BULK_THRESHOLD);
-
-            // Now call bulkInsertArtifacts() to insert the rest of queue
+            // The inserts are done in the background, so call bulkInsertArtifacts()
+            // to wait for them and insert the rest of the queue
             EamDb.getInstance().bulkInsertArtifacts();
-            count = EamDb.getInstance().getCountArtifactInstancesByCaseDataSource(case1.getCaseUUID(), dataSource1fromCase1.getDeviceID());
+            long count = EamDb.getInstance().getCountArtifactInstancesByCaseDataSource(case1.getCaseUUID(), dataSource1fromCase1.getDeviceID());
             int expectedCount = list1.size() + list2.size();
             assertTrue("Artifact count " + count + " does not match expected count " + expectedCount, count == expectedCount);
 
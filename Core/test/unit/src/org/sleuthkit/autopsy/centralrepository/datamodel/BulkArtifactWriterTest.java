@@ -0,0 +1,159 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.datamodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class BulkArtifactWriterTest {
+
+    private static final long WAIT_TIMEOUT_MS = 10000;
+
+    @Test
+    public void testFlushWritesQueuedArtifacts() throws EamDbException {
+        System.out.println("flushWritesQueuedArtifacts");
+        RecordingInserter inserter = new RecordingInserter();
+        BulkArtifactWriter writer = new BulkArtifactWriter(inserter, () -> 1000);
+        CorrelationAttribute.Type fileType = new CorrelationAttribute.Type("Files", "file", true, true);
+        CorrelationAttribute.Type domainType = new CorrelationAttribute.Type("Domains", "domain", true, true);
+        for (int i = 0; i < 10; ++i) {
+            writer.add(new CorrelationAttribute(fileType, "value" + i));
+        }
+        for (int i = 0; i < 5; ++i) {
+            writer.add(new CorrelationAttribute(domainType, "domain" + i));
+        }
+        writer.flush();
+        assertEquals(15, inserter.getInsertedCount());
+        for (List<CorrelationAttribute> batch : inserter.getBatches()) {
+            String tableName = batch.get(0).getCorrelationType().getDbTableName();
+            for (CorrelationAttribute eamArtifact : batch) {
+                assertEquals(tableName, eamArtifact.getCorrelationType().getDbTableName());
+            }
+        }
+    }
+
+    @Test
+    public void testFlushWithoutArtifacts() throws EamDbException {
+        System.out.println("flushWithoutArtifacts");
+        RecordingInserter inserter = new RecordingInserter();
+        BulkArtifactWriter writer = new BulkArtifactWriter(inserter, () -> 1000);
+        writer.flush();
+        assertEquals(0, inserter.getInsertedCount());
+    }
+
+    @Test
+    public void testThresholdTriggersWrite() throws EamDbException, InterruptedException {
+        System.out.println("thresholdTriggersWrite");
+        RecordingInserter inserter = new RecordingInserter();
+        BulkArtifactWriter writer = new BulkArtifactWriter(inserter, () -> 4);
+        CorrelationAttribute.Type fileType = new CorrelationAttribute.Type("Files", "file", true, true);
+        for (int i = 0; i < 8; ++i) {
+            writer.add(new CorrelationAttribute(fileType, "value" + i));
+        }
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT_MS;
+        while (inserter.getInsertedCount() < 8 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(8, inserter.getInsertedCount());
+        for (List<CorrelationAttribute> batch : inserter.getBatches()) {
+            assertTrue(batch.size() <= 4);
+        }
+    }
+
+    @Test
+    public void testFailureIsThrownByNextFlushOnly() throws EamDbException {
+        System.out.println("failureIsThrownByNextFlushOnly");
+        RecordingInserter inserter = new RecordingInserter();
+        inserter.failNextInsert();
+        BulkArtifactWriter writer = new BulkArtifactWriter(inserter, () -> 1000);
+        CorrelationAttribute.Type fileType = new CorrelationAttribute.Type("Files", "file", true, true);
+        writer.add(new CorrelationAttribute(fileType, "value"));
+        try {
+            writer.flush();
+            fail("Expected the failed insert to be reported");
+        } catch (EamDbException ex) {
+            // expected
+        }
+        writer.add(new CorrelationAttribute(fileType, "value"));
+        writer.flush();
+        assertEquals(1, inserter.getInsertedCount());
+    }
+
+    @Test
+    public void testShutDownWritesQueuedArtifacts() throws EamDbException {
+        System.out.println("shutDownWritesQueuedArtifacts");
+        RecordingInserter inserter = new RecordingInserter();
+        BulkArtifactWriter writer = new BulkArtifactWriter(inserter, () -> 1000);
+        CorrelationAttribute.Type fileType = new CorrelationAttribute.Type("Files", "file", true, true);
+        for (int i = 0; i < 10; ++i) {
+            writer.add(new CorrelationAttribute(fileType, "value" + i));
+        }
+        writer.shutDown();
+        assertEquals(10, inserter.getInsertedCount());
+
+        // The writer starts again when more artifacts are added.
+        writer.add(new CorrelationAttribute(fileType, "value"));
+        writer.flush();
+        assertEquals(11, inserter.getInsertedCount());
+        writer.shutDown();
+        writer.shutDown();
+    }
+
+    /**
+     * Records the batches it is asked to insert.
+     */
+    private static final class RecordingInserter implements BulkArtifactWriter.BatchInserter {
+
+        private final List<List<CorrelationAttribute>> batches = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean failNextInsert;
+
+        void failNextInsert() {
+            failNextInsert = true;
+        }
+
+        @Override
+        public void insert(List<List<CorrelationAttribute>> newBatches) throws EamDbException {
+            if (failNextInsert) {
+                failNextInsert = false;
+                throw new EamDbException("Insert failed");
+            }
+            batches.addAll(newBatches);
+        }
+
+        List<List<CorrelationAttribute>> getBatches() {
+            synchronized (batches) {
+                return new ArrayList<>(batches);
+            }
+        }
+
+        int getInsertedCount() {
+            int count = 0;
+            for (List<CorrelationAttribute> batch : getBatches()) {
+                count += batch.size();
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.sleuthkit.datamodel.AbstractFile;
+
+public class FileIngestPipelineStageTest {
+
+    @Test
+    public void testSplitWithoutLimits() {
+        System.out.println("splitWithoutLimits");
+        List<IngestModuleTemplate> templates = createTemplates("A:0", "B:0", "C:0");
+        List<List<IngestModuleTemplate>> segments = FileIngestPipelineStage.splitModuleTemplates(templates);
+        assertEquals(Collections.singletonList(Arrays.asList("A", "B", "C")), getNames(segments));
+    }
+
+    @Test
+    public void testSplitReturnsToFullConcurrencyAfterLimitedModule() {
+        System.out.println("splitReturnsToFullConcurrencyAfterLimitedModule");
+        List<IngestModuleTemplate> templates = createTemplates("A:0", "B:0", "L:1", "C:0", "D:0");
+        List<List<IngestModuleTemplate>> segments = FileIngestPipelineStage.splitModuleTemplates(templates);
+        assertEquals(Arrays.asList(Arrays.asList("A", "B"), Arrays.asList("L"), Arrays.asList("C", "D")), getNames(segments));
+        assertEquals(1, FileIngestPipelineStage.getConcurrencyLimit(segments.get(1), 8));
+        assertEquals(8, FileIngestPipelineStage.getConcurrencyLimit(segments.get(2), 8));
+    }
+
+    @Test
+    public void testSplitWithLimitedFirstAndLastModules() {
+        System.out.println("splitWithLimitedFirstAndLastModules");
+        List<IngestModuleTemplate> templates = createTemplates("L:2", "A:0", "M:1");
+        List<List<IngestModuleTemplate>> segments = FileIngestPipelineStage.splitModuleTemplates(templates);
+        assertEquals(Arrays.asList(Collections.emptyList(), Arrays.asList("L"), Arrays.asList("A"), Arrays.asList("M")), getNames(segments));
+    }
+
+    @Test
+    public void testSplitWithConsecutiveLimitedModules() {
+        System.out.println("splitWithConsecutiveLimitedModules");
+        List<IngestModuleTemplate> templates = createTemplates("A:0", "L:2", "M:1");
+        List<List<IngestModuleTemplate>> segments = FileIngestPipelineStage.splitModuleTemplates(templates);
+        assertEquals(Arrays.asList(Arrays.asList("A"), Arrays.asList("L"), Arrays.asList("M")), getNames(segments));
+    }
+
+    @Test
+    public void testConcurrencyLimitIsCappedByThreadCount() {
+        System.out.println("concurrencyLimitIsCappedByThreadCount");
+        assertEquals(2, FileIngestPipelineStage.getConcurrencyLimit(createTemplates("L:4"), 2));
+        assertEquals(3, FileIngestPipelineStage.getConcurrencyLimit(createTemplates("L:3"), 4));
+    }
+
+    @Test
+    public void testFilesBypassLimitedModuleThatDoesNotNeedThem() {
+        System.out.println("filesBypassLimitedModuleThatDoesNotNeedThem");
+        assertTrue(FileIngestPipelineStage.isStageNeededFor(createTemplates("L:1"), null));
+        assertFalse(FileIngestPipelineStage.isStageNeededFor(createTemplates("L:1:skip"), null));
+    }
+
+    @Test
+    public void testFilesDoNotBypassUnlimitedModules() {
+        System.out.println("filesDoNotBypassUnlimitedModules");
+        assertTrue(FileIngestPipelineStage.isStageNeededFor(createTemplates("A:0:skip", "B:0"), null));
+    }
+
+    /**
+     * Creates module templates from specs of the form "name:limit", or
+     * "name:limit:skip" for a module that does not need any files.
+     */
+    private static List<IngestModuleTemplate> createTemplates(String... specs) {
+        List<IngestModuleTemplate> templates = new ArrayList<>();
+        for (String spec : specs) {
+            String[] parts = spec.split(":");
+            boolean needsFiles = parts.length < 3;
+            templates.add(new IngestModuleTemplate(new TestModuleFactory(parts[0], Integer.parseInt(parts[1]), needsFiles), null));
+        }
+        return templates;
+    }
+
+    private static List<List<String>> getNames(List<List<IngestModuleTemplate>> segments) {
+        List<List<String>> names = new ArrayList<>();
+        for (List<IngestModuleTemplate> segment : segments) {
+            List<String> segmentNames = new ArrayList<>();
+            for (IngestModuleTemplate template : segment) {
+                segmentNames.add(template.getModuleName());
+            }
+            names.add(segmentNames);
+        }
+        return names;
+    }
+
+    private static final class TestModuleFactory extends IngestModuleFactoryAdapter {
+
+        private final String name;
+        private final int concurrencyLimit;
+        private final boolean needsFiles;
+
+        TestModuleFactory(String name, int concurrencyLimit, boolean needsFiles) {
+            this.name = name;
+            this.concurrencyLimit = concurrencyLimit;
+            this.needsFiles = needsFiles;
+        }
+
+        @Override
+        public String getModuleDisplayName() {
+            return name;
+        }
+
+        @Override
+        public String getModuleDescription() {
+            return name;
+        }
+
+        @Override
+        public String getModuleVersionNumber() {
+            return "1.0";
+        }
+
+        @Override
+        public boolean isFileIngestModuleFactory() {
+            return true;
+        }
+
+        @Override
+        public int getMaxFileIngestModuleConcurrency() {
+            return concurrencyLimit;
+        }
+
+        @Override
+        public boolean isFileIngestModuleNeededFor(AbstractFile file) {
+            return needsFiles;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.ingest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IngestModuleProfilerTest {
+
+    private static final double DELTA = 1.0E-9;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testRecordAggregatesRuns() {
+        System.out.println("recordAggregatesRuns");
+        IngestModuleProfiler profiler = new IngestModuleProfiler();
+        profiler.record("Module", "text/plain", 1000000, 100, 50);
+        profiler.record("Module", "text/plain", 1000000, 100, -1);
+        profiler.record("Module", "text/plain", 3000000, 100, 50);
+        List<IngestModuleProfiler.Snapshot> snapshots = profiler.getSnapshots();
+        assertEquals(1, snapshots.size());
+        IngestModuleProfiler.Snapshot snapshot = snapshots.get(0);
+        assertEquals(3, snapshot.getRuns());
+        assertEquals(5000000, snapshot.getTotalNanos());
+        assertEquals(3000000, snapshot.getMaxNanos());
+        assertEquals(300, snapshot.getBytes());
+        assertEquals(100, snapshot.getAllocatedBytes()); // unknown allocations are not counted
+        assertEquals(5.0 / 3, snapshot.getMeanMillis(), DELTA);
+    }
+
+    @Test
+    public void testRecordSeparatesModulesAndContentTypes() {
+        System.out.println("recordSeparatesModulesAndContentTypes");
+        IngestModuleProfiler profiler = new IngestModuleProfiler();
+        profiler.record("A", "text/plain", 1000, 1, 0);
+        profiler.record("A", "image/jpeg", 1000, 1, 0);
+        profiler.record("B", "text/plain", 1000, 1, 0);
+        profiler.record("B", null, 1000, 1, 0);
+        assertEquals(4, profiler.getSnapshots().size());
+        boolean foundDataSource = false;
+        for (IngestModuleProfiler.Snapshot snapshot : profiler.getSnapshots()) {
+            if (snapshot.getModuleName().equals("B") && snapshot.getContentType().equals(IngestModuleProfiler.DATA_SOURCE_CONTENT_TYPE)) {
+                foundDataSource = true;
+            }
+        }
+        assertTrue(foundDataSource);
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        System.out.println("histogramBuckets");
+        IngestModuleProfiler profiler = new IngestModuleProfiler();
+        profiler.record("Module", "", 500, 0, 0); // under a microsecond
+        profiler.record("Module", "", 1000, 0, 0); // 1 us
+        profiler.record("Module", "", 2000, 0, 0); // 2 us
+        profiler.record("Module", "", 3999, 0, 0); // 3 us
+        profiler.record("Module", "", 1000000, 0, 0); // 1000 us
+        profiler.record("Module", "", Long.MAX_VALUE / 2, 0, 0); // beyond the last bucket
+        IngestModuleProfiler.Snapshot snapshot = profiler.getSnapshots().get(0);
+        assertEquals(2, snapshot.getHistogramBucket(0));
+        assertEquals(2, snapshot.getHistogramBucket(1));
+        assertEquals(1, snapshot.getHistogramBucket(9));
+        assertEquals(1, snapshot.getHistogramBucket(IngestModuleProfiler.HISTOGRAM_BUCKETS - 1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        System.out.println("percentiles");
+        IngestModuleProfiler profiler = new IngestModuleProfiler();
+        for (int i = 0; i < 95; ++i) {
+            profiler.record("Module", "", 10000, 0, 0); // 10 us, bucket 3
+        }
+        for (int i = 0; i < 5; ++i) {
+            profiler.record("Module", "", 1000000000, 0, 0); // 1 s, bucket 19
+        }
+        IngestModuleProfiler.Snapshot snapshot = profiler.getSnapshots().get(0);
+        assertEquals(0.016, snapshot.getPercentileMillis(0.50), DELTA);
+        assertEquals(0.016, snapshot.getPercentileMillis(0.95), DELTA);
+        // the upper bound of the bucket is capped by the maximum
+        assertEquals(1000.0, snapshot.getPercentileMillis(0.99), DELTA);
+    }
+
+    @Test
+    public void testMerge() {
+        System.out.println("merge");
+        IngestModuleProfiler first = new IngestModuleProfiler();
+        first.record("Module", "text/plain", 1000000, 10, 5);
+        first.record("Other", "text/plain", 1000000, 10, 5);
+        IngestModuleProfiler second = new IngestModuleProfiler();
+        second.record("Module", "text/plain", 2000000, 20, 5);
+        List<IngestModuleProfiler.Snapshot> snapshots = first.getSnapshots();
+        snapshots.addAll(second.getSnapshots());
+        List<IngestModuleProfiler.Snapshot> merged = IngestModuleProfiler.merge(snapshots);
+        assertEquals(2, merged.size());
+        for (IngestModuleProfiler.Snapshot snapshot : merged) {
+            if (snapshot.getModuleName().equals("Module")) {
+                assertEquals(2, snapshot.getRuns());
+                assertEquals(3000000, snapshot.getTotalNanos());
+                assertEquals(2000000, snapshot.getMaxNanos());
+                assertEquals(30, snapshot.getBytes());
+                assertEquals(10, snapshot.getAllocatedBytes());
+                assertEquals(2, snapshot.getHistogramBucket(9) + snapshot.getHistogramBucket(10));
+            } else {
+                assertEquals(1, snapshot.getRuns());
+            }
+        }
+    }
+
+    @Test
+    public void testWriteCsv() throws IOException {
+        System.out.println("writeCsv");
+        IngestModuleProfiler profiler = new IngestModuleProfiler();
+        profiler.record("Hash Lookup, \"fast\"", "text/plain", 2000000, 100, 64);
+        Path path = tempFolder.newFile("profile.csv").toPath();
+        profiler.writeCsv(path);
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        List<String> header = Arrays.asList(lines.get(0).split(","));
+        assertEquals(11 + IngestModuleProfiler.HISTOGRAM_BUCKETS, header.size());
+        assertEquals("module", header.get(0));
+        assertEquals("lt_2_us", header.get(11));
+        assertTrue(lines.get(1).startsWith("\"Hash Lookup, \"\"fast\"\"\",text/plain,1,2,2.000,"));
+        assertTrue(lines.get(1).contains(",100,64,"));
+    }
+}
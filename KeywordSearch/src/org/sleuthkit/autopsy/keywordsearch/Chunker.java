@@ -21,8 +21,7 @@
 import java.io.IOException;
 import java.io.PushbackReader;
 import java.io.Reader;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.CharBuffer;
 import java.text.Normalizer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -40,9 +39,8 @@
 @NotThreadSafe
 class Chunker implements Iterator<Chunk>, Iterable<Chunk> {
 
-    //local references to standard encodings
-    private static final Charset UTF_16 = StandardCharsets.UTF_16;
-    private static final Charset UTF_8 = StandardCharsets.UTF_8;
+    /** The character that invalid code point sequences are replaced with. */
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
 
     //Chunking algorithm paramaters-------------------------------------//
     /** the maximum size of a chunk, including the window. */
@@ -65,6 +63,12 @@ class Chunker implements Iterator<Chunk>, Iterable<Chunk> {
     private final PushbackReader reader;
     /** The local buffer of characters read from the Reader. */
     private final char[] tempChunkBuf = new char[READ_CHARS_BUFFER_SIZE];
+    /** The sanitized text of the characters last read from the Reader, reused
+     * for every read. */
+    private final StringBuilder sanitizedSegment = new StringBuilder(READ_CHARS_BUFFER_SIZE);
+    /** The buffer used to push the window back onto the Reader, reused for
+     * every chunk. The window is never longer in chars than in UTF-8 bytes. */
+    private final char[] windowBuf = new char[MAX_TOTAL_CHUNK_SIZE];
 
     /** the size in bytes of the chunk (so far). */
     private int chunkSizeBytes = 0;
@@ -115,43 +119,55 @@ public boolean hasNext() {
     }
 
     /**
-     * Sanitize the given StringBuilder by replacing non-UTF-8 characters with
-     * caret '^'
+     * Sanitize the given characters into the reused sanitized segment buffer:
+     * normalize them (NFKC), replace invalid code point sequences (unpaired
+     * surrogates) with the replacement character U+FFFD, and replace
+     * characters that are not valid in Solr with caret '^'. This is done in
+     * one pass, without copying text that is already normalized.
      *
-     * @param sb the StringBuilder to sanitize
+     * @param chars  The buffer holding the characters.
+     * @param length The number of characters in the buffer.
      *
-     * //JMTODO: use Charsequence.chars() or codePoints() and then a mapping
-     * function?
+     * @return The size in bytes of the UTF-8 encoding of the sanitized text.
      */
-    private static StringBuilder sanitizeToUTF8(StringBuilder sb) {
-        final int length = sb.length();
-        for (int i = 0; i < length; i++) {
-            if (TextUtil.isValidSolrUTF8(sb.charAt(i)) == false) {
-                sb.replace(i, i + 1, "^");
+    private int sanitize(char[] chars, int length) {
+        CharSequence text = CharBuffer.wrap(chars, 0, length);
+        if (Normalizer.isNormalized(text, Normalizer.Form.NFKC) == false) {
+            text = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        }
+        sanitizedSegment.setLength(0);
+        int sizeBytes = 0;
+        final int textLength = text.length();
+        for (int i = 0; i < textLength; i++) {
+            char ch = text.charAt(i);
+            if (Character.isHighSurrogate(ch) && i + 1 < textLength && Character.isLowSurrogate(text.charAt(i + 1))) {
+                sanitizedSegment.append(ch).append(text.charAt(++i));
+                sizeBytes += 4;
+                continue;
+            }
+            if (Character.isSurrogate(ch)) {
+                ch = REPLACEMENT_CHARACTER;
+            } else if (TextUtil.isValidSolrUTF8(ch) == false) {
+                ch = '^';
             }
+            sanitizedSegment.append(ch);
+            sizeBytes += utf8Length(ch);
         }
-        return sb;
+        return sizeBytes;
     }
 
     /**
-     * Cleanup invalid codepoint sequences by replacing them with the default
-     * replacement character: U+FFFD / �.
-     *
-     * @param s The string to cleanup.
-     *
-     * @return A StringBuilder with the same content as s but where all invalid
-     *         code     *         points have been replaced.
+     * Get the size in bytes of the UTF-8 encoding of a char that is not a
+     * surrogate.
      */
-    private static StringBuilder replaceInvalidUTF16(String s) {
-        /* encode the string to UTF-16 which does the replcement, see
-         * Charset.encode(), then decode back to a StringBuilder. */
-        return new StringBuilder(UTF_16.decode(UTF_16.encode(s)));
-    }
-
-    private static StringBuilder sanitize(String s) {
-        String normStr = Normalizer.normalize(s, Normalizer.Form.NFKC);
-        return sanitizeToUTF8(replaceInvalidUTF16(normStr));
-
+    private static int utf8Length(char ch) {
+        if (ch < 0x80) {
+            return 1;
+        } else if (ch < 0x800) {
+            return 2;
+        } else {
+            return 3;
+        }
     }
 
     @Override
@@ -163,15 +179,13 @@ public Chunk next() {
 
         chunkSizeBytes = 0;
         int baseChunkSizeChars = 0;
-        StringBuilder currentChunk = new StringBuilder();
-        StringBuilder currentWindow = new StringBuilder();
+        StringBuilder currentChunk = new StringBuilder(MAX_TOTAL_CHUNK_SIZE);
 
         try {
-            currentChunk.append(readBaseChunk());
+            readBaseChunk(currentChunk);
             baseChunkSizeChars = currentChunk.length(); //save the base chunk length
-            currentWindow.append(readWindow());
-                //add the window text to the current chunk.
-        currentChunk.append(currentWindow);
+            //add the window text to the current chunk.
+            readWindow(currentChunk);
             if (endOfReaderReached) {
                 /* if we have reached the end of the content,we won't make
                  * another overlapping chunk, so the length of the base chunk
@@ -179,7 +193,9 @@ public Chunk next() {
                 baseChunkSizeChars = currentChunk.length();
             } else {
                 /* otherwise we will make another chunk, so unread the window */
-                reader.unread(currentWindow.toString().toCharArray());
+                int windowLength = currentChunk.length() - baseChunkSizeChars;
+                currentChunk.getChars(baseChunkSizeChars, currentChunk.length(), windowBuf, 0);
+                reader.unread(windowBuf, 0, windowLength);
             }
         } catch (Exception ioEx) {
             /* Save the exception, which will cause hasNext() to return false,
@@ -194,31 +210,31 @@ public Chunk next() {
     /**
      * Read the base chunk from the reader, attempting to break at whitespace.
      *
+     * @param currentChunk The chunk to append the base chunk to.
+     *
      * @throws IOException if there is a problem reading from the reader.
      */
-    private StringBuilder readBaseChunk() throws IOException {
-        StringBuilder currentChunk = new StringBuilder();
+    private void readBaseChunk(StringBuilder currentChunk) throws IOException {
         //read the chunk until the minimum base chunk size
         readHelper(MINIMUM_BASE_CHUNK_SIZE, currentChunk);
 
         //keep reading until the maximum base chunk size or white space is reached.
         readToWhiteSpaceHelper(MAXIMUM_BASE_CHUNK_SIZE, currentChunk);
-        return currentChunk;
     }
 
     /**
      * Read the window from the reader, attempting to break at whitespace.
      *
+     * @param currentChunk The chunk to append the window to.
+     *
      * @throws IOException if there is a problem reading from the reader.
      */
-    private StringBuilder readWindow() throws IOException {
-        StringBuilder currentWindow = new StringBuilder();
+    private void readWindow(StringBuilder currentChunk) throws IOException {
         //read the window, leaving some room to look for white space to break at.
-        readHelper(MAX_TOTAL_CHUNK_SIZE - WHITE_SPACE_BUFFER_SIZE, currentWindow);
+        readHelper(MAX_TOTAL_CHUNK_SIZE - WHITE_SPACE_BUFFER_SIZE, currentChunk);
 
         //keep reading until the max chunk size, or until whitespace is reached.
-        readToWhiteSpaceHelper(MAX_TOTAL_CHUNK_SIZE, currentWindow);
-        return currentWindow;
+        readToWhiteSpaceHelper(MAX_TOTAL_CHUNK_SIZE, currentChunk);
     }
 
     /**
@@ -243,20 +259,27 @@ private void readHelper(int maxBytes, StringBuilder currentSegment) throws IOExc
                 //if the last char might be part of a surroate pair, unread it.
                 final char lastChar = tempChunkBuf[charsRead - 1];
                 if (Character.isHighSurrogate(lastChar)) {
-                    charsRead--;
-                    reader.unread(lastChar);
+                    if (charsRead > 1) {
+                        charsRead--;
+                        reader.unread(lastChar);
+                    } else {
+                        /* Unreading the only char read would read it again
+                         * forever if it is the last char, so read the char
+                         * after it instead, if there is one. */
+                        int nextChar = reader.read();
+                        if (-1 != nextChar) {
+                            tempChunkBuf[charsRead++] = (char) nextChar;
+                        }
+                    }
                 }
 
-                //cleanup any invalid utf-16 sequences
-                StringBuilder chunkSegment = sanitize(new String(tempChunkBuf, 0, charsRead));
-
-                //get the length in utf8 bytes of the read chars
-                int segmentSize = chunkSegment.toString().getBytes(UTF_8).length;
+                //cleanup any invalid utf-16 sequences, and get the length in utf8 bytes of the read chars
+                int segmentSize = sanitize(tempChunkBuf, charsRead);
 
                 //if it will not put us past maxBytes
                 if (chunkSizeBytes + segmentSize < maxBytes) {
                     //add it to the chunk
-                    currentSegment.append(chunkSegment);
+                    currentSegment.append(sanitizedSegment);
                     chunkSizeBytes += segmentSize;
                 } else {
                     //unread it, and break out of read loop.
@@ -290,7 +313,7 @@ private void readToWhiteSpaceHelper(int maxBytes, StringBuilder currentChunk) th
             } else {
                 //if the last charcter might be part of a surroate pair, read another char
                 final char ch = tempChunkBuf[0];
-                String chunkSegment;
+                int segmentLength;
                 if (Character.isHighSurrogate(ch)) {
                     //read another char into the buffer.
                     charsRead = reader.read(tempChunkBuf, 1, 1);
@@ -300,20 +323,20 @@ private void readToWhiteSpaceHelper(int maxBytes, StringBuilder currentChunk) th
                         return;
                     } else {
                         //try to use the pair together.
-                        chunkSegment = new String(tempChunkBuf, 0, 2);
+                        segmentLength = 2;
                     }
                 } else {
                     //one char
-                    chunkSegment = new String(tempChunkBuf, 0, 1);
+                    segmentLength = 1;
                 }
 
                 //cleanup any invalid utf-16 sequences
-                StringBuilder sanitizedChunkSegment = sanitize(chunkSegment);
+                int segmentSize = sanitize(tempChunkBuf, segmentLength);
                 //check for whitespace.
-                whitespaceFound = Character.isWhitespace(sanitizedChunkSegment.codePointAt(0));
+                whitespaceFound = Character.isWhitespace(sanitizedSegment.codePointAt(0));
                 //add read chars to the chunk and update the length.
-                currentChunk.append(sanitizedChunkSegment);
-                chunkSizeBytes += sanitizedChunkSegment.toString().getBytes(UTF_8).length;
+                currentChunk.append(sanitizedSegment);
+                chunkSizeBytes += segmentSize;
             }
         }
     }
@@ -18,10 +18,14 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import java.io.InputStream;
 import java.io.Reader;
 import java.util.Arrays;
 import java.util.List;
+import org.sleuthkit.autopsy.ingest.FileContentCache;
+import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.ReadContentInputStream;
 
 /**
  * Common methods for utilities that extract text and content and divide into
@@ -97,6 +101,33 @@ abstract class ContentTextExtractor implements TextExtractor<Content> {
     @Override
     public abstract Reader getReader(Content source) throws TextExtractorException;
 
+    /**
+     * Gets the version of the text produced by the extractor, which must
+     * change whenever the extractor could produce different text for the same
+     * content. Used to key cached extracted text.
+     *
+     * @return The version.
+     */
+    String getVersion() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Opens a stream for reading the content to extract text from. The content
+     * of files is read through the file ingest content cache, so that a file
+     * that has already been read by another ingest module is not read again.
+     *
+     * @param content The content.
+     *
+     * @return The stream.
+     */
+    static InputStream openStream(Content content) {
+        if (content instanceof AbstractFile) {
+            return FileContentCache.openStream((AbstractFile) content);
+        }
+        return new ReadContentInputStream(content);
+    }
+
     @Override
     public long getID(Content source) {
         return source.getId();
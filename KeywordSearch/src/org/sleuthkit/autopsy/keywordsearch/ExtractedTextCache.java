@@ -0,0 +1,270 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Content;
+
+/**
+ * A content addressed cache of extracted text, keyed by the MD5 hash of the
+ * content and the version of the extractor. Files with the same content, such
+ * as templates and common documents, are extracted once, and the other copies
+ * are indexed from the cached text.
+ *
+ * The text is stored compressed, in a folder per extractor version, in the
+ * case or in a shared folder set in the keyword search options. Text is only
+ * added to the cache when the whole of it was read without errors. Files
+ * without an MD5 hash are not cached.
+ *
+ * Most files are unique, so writing the text of every file would cost more
+ * than the cache saves. The text of a file is only added to the cache when a
+ * file with the same MD5 hash was seen before in this session, or is probably
+ * seen, since the hashes are remembered in a Bloom filter.
+ */
+@ThreadSafe
+final class ExtractedTextCache {
+
+    private static final Logger logger = Logger.getLogger(ExtractedTextCache.class.getName());
+    private static final String KWS_OUTPUT_FOLDER_NAME = "keywordsearch"; //NON-NLS
+    private static final String CACHE_FOLDER_NAME = "ExtractedTextCache"; //NON-NLS
+    private static final String CACHE_FILE_EXTENSION = ".txt.gz"; //NON-NLS
+    private static final int EXPECTED_HASH_COUNT = 5000000;
+    private static final double HASH_FALSE_POSITIVE_RATE = 0.01;
+    @GuardedBy("seenHashes")
+    private static final BloomFilter<CharSequence> seenHashes = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.US_ASCII), EXPECTED_HASH_COUNT, HASH_FALSE_POSITIVE_RATE);
+    private final Path cacheFolder;
+
+    /**
+     * Gets the extracted text cache for a case, which is in the shared folder
+     * set in the keyword search options, if there is one, and in the module
+     * output folder of the case otherwise.
+     *
+     * @param theCase The case.
+     *
+     * @return The cache.
+     */
+    static ExtractedTextCache forCase(Case theCase) {
+        String sharedFolder = KeywordSearchSettings.getExtractedTextCacheFolder();
+        if (!sharedFolder.isEmpty()) {
+            return new ExtractedTextCache(Paths.get(sharedFolder));
+        }
+        return new ExtractedTextCache(Paths.get(theCase.getModuleDirectory(), KWS_OUTPUT_FOLDER_NAME, CACHE_FOLDER_NAME));
+    }
+
+    private ExtractedTextCache(Path cacheFolder) {
+        this.cacheFolder = cacheFolder;
+    }
+
+    /**
+     * Wraps a text extractor so that its text is read from and added to this
+     * cache.
+     *
+     * @param extractor The extractor.
+     *
+     * @return The caching extractor.
+     */
+    ContentTextExtractor wrap(ContentTextExtractor extractor) {
+        return new CachingTextExtractor(extractor);
+    }
+
+    /**
+     * Remembers the MD5 hash of some content, and queries whether it was
+     * seen before.
+     *
+     * @param md5Hash The MD5 hash of the content.
+     *
+     * @return True if the hash was probably seen before, false if it was not.
+     */
+    private static boolean markSeen(String md5Hash) {
+        synchronized (seenHashes) {
+            return !seenHashes.put(md5Hash);
+        }
+    }
+
+    /**
+     * Gets the path of the cached text for some content.
+     *
+     * @param version The version of the extractor.
+     * @param md5Hash The MD5 hash of the content.
+     *
+     * @return The path.
+     */
+    private Path getCachePath(String version, String md5Hash) {
+        return cacheFolder
+                .resolve(version.replaceAll("[^A-Za-z0-9.-]", "_")) //NON-NLS
+                .resolve(md5Hash.substring(0, 2))
+                .resolve(md5Hash + CACHE_FILE_EXTENSION);
+    }
+
+    /**
+     * A text extractor that reads the text of a file from the cache, if it is
+     * there, and otherwise extracts it and adds it to the cache.
+     */
+    private final class CachingTextExtractor extends ContentTextExtractor {
+
+        private final ContentTextExtractor extractor;
+
+        CachingTextExtractor(ContentTextExtractor extractor) {
+            this.extractor = extractor;
+        }
+
+        @Override
+        boolean isContentTypeSpecific() {
+            return extractor.isContentTypeSpecific();
+        }
+
+        @Override
+        boolean isSupported(Content file, String detectedFormat) {
+            return extractor.isSupported(file, detectedFormat);
+        }
+
+        @Override
+        public boolean isDisabled() {
+            return extractor.isDisabled();
+        }
+
+        @Override
+        public void logWarning(String msg, Exception ex) {
+            extractor.logWarning(msg, ex);
+        }
+
+        @Override
+        String getVersion() {
+            return extractor.getVersion();
+        }
+
+        @Override
+        public Reader getReader(Content source) throws TextExtractorException {
+            String md5Hash = (source instanceof AbstractFile) ? ((AbstractFile) source).getMd5Hash() : null;
+            if (null == md5Hash || md5Hash.length() < 2) {
+                return extractor.getReader(source);
+            }
+
+            Path cachePath = getCachePath(extractor.getVersion(), md5Hash);
+            if (Files.exists(cachePath)) {
+                try {
+                    return new InputStreamReader(new GZIPInputStream(Files.newInputStream(cachePath)), StandardCharsets.UTF_8);
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, String.format("Failed to read cached text %s, extracting text again", cachePath), ex); //NON-NLS
+                }
+            }
+
+            Reader reader = extractor.getReader(source);
+            if (!markSeen(md5Hash)) {
+                return reader;
+            }
+            try {
+                Files.createDirectories(cachePath.getParent());
+                Path tempPath = Files.createTempFile(cachePath.getParent(), md5Hash, null);
+                try {
+                    Writer cacheWriter = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(tempPath)), StandardCharsets.UTF_8);
+                    return new CachingReader(reader, cacheWriter, tempPath, cachePath);
+                } catch (IOException ex) {
+                    Files.deleteIfExists(tempPath);
+                    throw ex;
+                }
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, String.format("Failed to create cached text %s", cachePath), ex); //NON-NLS
+                return reader;
+            }
+        }
+    }
+
+    /**
+     * A reader that copies the text it reads to a temporary file, and moves
+     * the file into the cache when it is closed, if all of the text was read.
+     */
+    private static final class CachingReader extends Reader {
+
+        private final Reader reader;
+        private final Writer cacheWriter;
+        private final Path tempPath;
+        private final Path cachePath;
+        private boolean complete;
+        private boolean failed;
+
+        CachingReader(Reader reader, Writer cacheWriter, Path tempPath, Path cachePath) {
+            this.reader = reader;
+            this.cacheWriter = cacheWriter;
+            this.tempPath = tempPath;
+            this.cachePath = cachePath;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int charsRead;
+            try {
+                charsRead = reader.read(cbuf, off, len);
+            } catch (IOException ex) {
+                failed = true;
+                throw ex;
+            }
+            if (charsRead == -1) {
+                complete = true;
+            } else if (!failed) {
+                try {
+                    cacheWriter.write(cbuf, off, charsRead);
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, String.format("Failed to write cached text %s", tempPath), ex); //NON-NLS
+                    failed = true;
+                }
+            }
+            return charsRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                reader.close();
+            } finally {
+                try {
+                    cacheWriter.close();
+                    if (complete && !failed) {
+                        Files.move(tempPath, cachePath, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                } catch (IOException ex) {
+                    // Another thread may have cached the same text first.
+                    logger.log(Level.FINE, String.format("Did not cache text %s", cachePath), ex); //NON-NLS
+                } finally {
+                    Files.deleteIfExists(tempPath);
+                }
+            }
+        }
+    }
+
+}
@@ -19,6 +19,7 @@
 package org.sleuthkit.autopsy.keywordsearch;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.Arrays;
@@ -33,7 +34,6 @@
 import net.htmlparser.jericho.StartTagType;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.datamodel.Content;
-import org.sleuthkit.datamodel.ReadContentInputStream;
 
 /**
  * Extracts text from HTML content.
@@ -71,7 +71,7 @@ boolean isSupported(Content content, String detectedFormat) {
 
     @Override
     public Reader getReader(Content content) throws TextExtractorException {
-        ReadContentInputStream stream = new ReadContentInputStream(content);
+        InputStream stream = openStream(content);
 
         //Parse the stream with Jericho and put the results in a Reader
         try {
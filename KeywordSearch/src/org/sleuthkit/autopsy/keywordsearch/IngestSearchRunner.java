@@ -28,9 +28,12 @@
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -62,21 +65,44 @@ final class IngestSearchRunner {
     private IngestServices services = IngestServices.getInstance();
     private Ingester ingester = null;
     private long currentUpdateIntervalMs;
+    private volatile boolean nrtSearch = false;
+    private volatile boolean incrementalSearch = false;
+    private long previousIndexGeneration = Long.MIN_VALUE; // only used by the PeriodicSearchTask
     private volatile boolean periodicSearchTaskRunning = false;
     private Future<?> jobProcessingTaskFuture;
     private final ScheduledThreadPoolExecutor jobProcessingExecutor;
     private static final int NUM_SEARCH_SCHEDULING_THREADS = 1;
     private static final String SEARCH_SCHEDULER_THREAD_NAME = "periodic-search-scheduler-%d";
+    private static final String SEARCH_QUERY_THREAD_NAME = "keyword-search-query-%d";
 
     // maps a jobID to the search
     private Map<Long, SearchJobInfo> jobs = new ConcurrentHashMap<>();
 
     IngestSearchRunner() {
-        currentUpdateIntervalMs = ((long) KeywordSearchSettings.getUpdateFrequency().getTime()) * 60 * 1000;
+        currentUpdateIntervalMs = getDefaultUpdateIntervalMs();
         ingester = Ingester.getDefault();
         jobProcessingExecutor = new ScheduledThreadPoolExecutor(NUM_SEARCH_SCHEDULING_THREADS, new ThreadFactoryBuilder().setNameFormat(SEARCH_SCHEDULER_THREAD_NAME).build());
     }
 
+    /**
+     * Gets the filter that restricts a search for a keyword to the documents
+     * indexed in or after the first index generation not yet searched for it.
+     *
+     * @param finalRun            Whether this is the final search of a job,
+     *                            which searches all of the documents.
+     * @param nextIndexGeneration The first index generation not yet searched
+     *                            for the keyword, or null if the keyword has
+     *                            not been searched yet.
+     *
+     * @return The filter, or null if all of the documents are searched.
+     */
+    static KeywordQueryFilter getIndexGenerationFilter(boolean finalRun, Long nextIndexGeneration) {
+        if (finalRun || nextIndexGeneration == null) {
+            return null;
+        }
+        return new KeywordQueryFilter(KeywordQueryFilter.FilterType.INDEX_GENERATION, nextIndexGeneration);
+    }
+
     /**
      *
      * @return the singleton object
@@ -108,7 +134,10 @@ public synchronized void startJob(IngestJobContext jobContext, List<String> keyw
         if ((jobs.size() > 0) && (periodicSearchTaskRunning == false)) {
             // reset the default periodic search frequency to the user setting
             logger.log(Level.INFO, "Resetting periodic search time out to default value"); //NON-NLS
-            currentUpdateIntervalMs = ((long) KeywordSearchSettings.getUpdateFrequency().getTime()) * 60 * 1000;
+            nrtSearch = KeywordSearchSettings.getNrtSearch();
+            incrementalSearch = KeywordSearchSettings.getIncrementalSearch();
+            previousIndexGeneration = Long.MIN_VALUE;
+            currentUpdateIntervalMs = getDefaultUpdateIntervalMs();
             jobProcessingTaskFuture = jobProcessingExecutor.schedule(new PeriodicSearchTask(), currentUpdateIntervalMs, MILLISECONDS);
             periodicSearchTaskRunning = true;
         }
@@ -199,12 +228,38 @@ public synchronized void addKeywordListsToAllJobs(List<String> keywordListNames)
         }
     }
 
+    /**
+     * Gets the periodic search interval to start with. In near real time mode
+     * this is the near real time search interval, otherwise it is the update
+     * frequency chosen by the user.
+     *
+     * @return The interval in milliseconds.
+     */
+    private long getDefaultUpdateIntervalMs() {
+        if (nrtSearch) {
+            return ((long) KeywordSearchSettings.getNrtSearchIntervalSecs()) * 1000;
+        }
+        return ((long) KeywordSearchSettings.getUpdateFrequency().getTime()) * 60 * 1000;
+    }
+
     /**
      * Commits index and notifies listeners of index update
      */
     private void commit() {
         ingester.commit();
+        fireNumIndexedFilesChange();
+    }
 
+    /**
+     * Soft commits index, which does not block indexing while the index is
+     * flushed to disk, and notifies listeners of index update
+     */
+    private void softCommit() {
+        ingester.softCommit();
+        fireNumIndexedFilesChange();
+    }
+
+    private void fireNumIndexedFilesChange() {
         // Signal a potential change in number of text_ingested files
         try {
             final int numIndexedFiles = KeywordSearch.getServer().queryNumIndexedFiles();
@@ -263,7 +318,25 @@ public void run() {
                 return;
             }
 
-            commit();
+            /*
+             * In incremental mode, a new index generation is started before the
+             * commit. Once a keyword has been searched in this pass, the
+             * documents of the generations before the one started by the
+             * previous pass have been searched for it. The documents of the
+             * previous pass's generation are searched again in the next pass,
+             * in case some of them were still being added during this commit.
+             */
+            long searchedIndexGeneration = Long.MIN_VALUE;
+            if (incrementalSearch) {
+                searchedIndexGeneration = previousIndexGeneration;
+                previousIndexGeneration = ingester.startNewIndexGeneration();
+            }
+
+            if (nrtSearch) {
+                softCommit();
+            } else {
+                commit();
+            }
 
             logger.log(Level.INFO, "Starting periodic searches");
             final StopWatch stopWatch = new StopWatch();
@@ -282,7 +355,7 @@ public void run() {
                 if (!job.getKeywordListNames().isEmpty() && !job.isWorkerRunning()) {
                     // Spawn a search thread for each job
                     logger.log(Level.INFO, "Executing periodic search for search job {0}", job.getJobId());
-                    Searcher searcher = new Searcher(job);  // SwingWorker
+                    Searcher searcher = new Searcher(job, false, searchedIndexGeneration);  // SwingWorker
                     job.setCurrentSearcher(searcher); //save the ref
                     searcher.execute(); //start thread
                     job.setWorkerRunning(true);
@@ -315,6 +388,10 @@ public void run() {
         
         
         private void recalculateUpdateIntervalTime(long lastSerchTimeSec) {
+            if (nrtSearch) {
+                recalculateNrtUpdateIntervalTime(lastSerchTimeSec);
+                return;
+            }
             // If periodic search takes more than 1/4 of the current periodic search interval, then double the search interval
             if (lastSerchTimeSec * 1000 < currentUpdateIntervalMs / 4) {
                 return;
@@ -324,6 +401,28 @@ private void recalculateUpdateIntervalTime(long lastSerchTimeSec) {
             logger.log(Level.WARNING, "Last periodic search took {0} sec. Increasing search interval to {1} sec", new Object[]{lastSerchTimeSec, currentUpdateIntervalMs/1000});
             return;
         }
+
+        /**
+         * In near real time mode, the search interval backs off while searches
+         * are slow, but no further than the update frequency chosen by the
+         * user, and returns to the near real time interval when searches are
+         * fast again, so that searches do not keep drifting apart.
+         */
+        private void recalculateNrtUpdateIntervalTime(long lastSerchTimeSec) {
+            long minIntervalMs = ((long) KeywordSearchSettings.getNrtSearchIntervalSecs()) * 1000;
+            long maxIntervalMs = Math.max(minIntervalMs, ((long) KeywordSearchSettings.getUpdateFrequency().getTime()) * 60 * 1000);
+            long lastSearchTimeMs = lastSerchTimeSec * 1000;
+            long newIntervalMs = currentUpdateIntervalMs;
+            if (lastSearchTimeMs >= currentUpdateIntervalMs / 4) {
+                newIntervalMs = Math.min(currentUpdateIntervalMs * 2, maxIntervalMs);
+            } else if (lastSearchTimeMs < currentUpdateIntervalMs / 16) {
+                newIntervalMs = Math.max(currentUpdateIntervalMs / 2, minIntervalMs);
+            }
+            if (newIntervalMs != currentUpdateIntervalMs) {
+                currentUpdateIntervalMs = newIntervalMs;
+                logger.log(Level.INFO, "Last periodic search took {0} sec. Setting search interval to {1} sec", new Object[]{lastSerchTimeSec, currentUpdateIntervalMs / 1000});
+            }
+        }
     }
 
     /**
@@ -341,6 +440,9 @@ private class SearchJobInfo {
 
         // Map of keyword to the object ids that contain a hit
         private Map<Keyword, Set<Long>> currentResults; //guarded by SearchJobInfo.this
+
+        // Map of keyword to the first index generation not yet searched for it
+        private final Map<Keyword, Long> nextIndexGenerations = new HashMap<>(); //guarded by SearchJobInfo.this
         private IngestSearchRunner.Searcher currentSearcher;
         private AtomicLong moduleReferenceCount = new AtomicLong(0);
         private final Object finalSearchLock = new Object(); //used for a condition wait
@@ -385,6 +487,14 @@ private synchronized void addKeywordResults(Keyword k, Set<Long> resultsIDs) {
             currentResults.put(k, resultsIDs);
         }
 
+        private synchronized Long getNextIndexGeneration(Keyword k) {
+            return nextIndexGenerations.get(k);
+        }
+
+        private synchronized void setNextIndexGeneration(Keyword k, long indexGeneration) {
+            nextIndexGenerations.put(k, indexGeneration);
+        }
+
         private boolean isWorkerRunning() {
             return workerRunning;
         }
@@ -455,6 +565,8 @@ private final class Searcher extends SwingWorker<Object, Void> {
         private AggregateProgressHandle progressGroup;
         private final Logger logger = Logger.getLogger(IngestSearchRunner.Searcher.class.getName());
         private boolean finalRun = false;
+        private long searchedIndexGeneration = Long.MIN_VALUE;
+        private ExecutorService queryPool;
 
         Searcher(SearchJobInfo job) {
             this.job = job;
@@ -470,6 +582,22 @@ private final class Searcher extends SwingWorker<Object, Void> {
             this.finalRun = finalRun;
         }
 
+        /**
+         * Constructs a searcher for an incremental periodic search.
+         *
+         * @param job                     The search job.
+         * @param finalRun                Whether this is the final search.
+         * @param searchedIndexGeneration The index generation before which
+         *                                all documents will have been searched
+         *                                for a keyword once this searcher has
+         *                                searched for it, or Long.MIN_VALUE if
+         *                                the search is not incremental.
+         */
+        Searcher(SearchJobInfo job, boolean finalRun, long searchedIndexGeneration) {
+            this(job, finalRun);
+            this.searchedIndexGeneration = searchedIndexGeneration;
+        }
+
         @Override
         @Messages("SearchRunner.query.exception.msg=Error performing query:")
         protected Object doInBackground() throws Exception {
@@ -506,12 +634,26 @@ public boolean cancel() {
 
                 int keywordsSearched = 0;
 
+                /*
+                 * The queries are run by the query pool, up to a few keywords
+                 * ahead of the keyword whose results are being posted, and
+                 * the results are posted by this thread in keyword order.
+                 */
+                final int queryThreads = Math.min(KeywordSearchSettings.getQueryThreads(), Math.max(keywords.size(), 1));
+                final int maxQueriesAhead = 2 * queryThreads;
+                queryPool = Executors.newFixedThreadPool(queryThreads, new ThreadFactoryBuilder().setNameFormat(SEARCH_QUERY_THREAD_NAME).build());
+                List<Future<QueryResults>> queries = new ArrayList<>(keywords.size());
+
                 for (Keyword keyword : keywords) {
                     if (this.isCancelled() || this.job.getJobContext().fileIngestIsCancelled()) {
                         logger.log(Level.INFO, "Cancel detected, bailing before new keyword processed: {0}", keyword.getSearchTerm()); //NON-NLS
                         return null;
                     }
 
+                    while (queries.size() < keywords.size() && queries.size() <= keywordsSearched + maxQueriesAhead) {
+                        queries.add(queryPool.submit(createQuery(keywords.get(queries.size()))));
+                    }
+
                     final KeywordList keywordList = keywordToList.get(keyword);
 
                     //new subProgress will be active after the initial query
@@ -520,27 +662,23 @@ public boolean cancel() {
                         subProgresses[keywordsSearched - 1].finish();
                     }
 
-                    KeywordSearchQuery keywordSearchQuery = KeywordSearchUtil.getQueryForKeyword(keyword, keywordList);
-
-                    // Filtering
-                    //limit search to currently ingested data sources
-                    //set up a filter with 1 or more image ids OR'ed
-                    final KeywordQueryFilter dataSourceFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.DATA_SOURCE, job.getDataSourceId());
-                    keywordSearchQuery.addFilter(dataSourceFilter);
-
                     QueryResults queryResults;
 
-                    // Do the actual search
+                    // Wait for the actual search
                     try {
-                        queryResults = keywordSearchQuery.performQuery();
-                    } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
-                        logger.log(Level.SEVERE, "Error performing query: " + keyword.getSearchTerm(), ex); //NON-NLS
-                        MessageNotifyUtil.Notify.error(Bundle.SearchRunner_query_exception_msg() + keyword.getSearchTerm(), ex.getCause().getMessage());
+                        queryResults = queries.get(keywordsSearched).get();
+                        queries.set(keywordsSearched, null);
+                    } catch (ExecutionException ex) {
+                        if (!(ex.getCause() instanceof KeywordSearchModuleException || ex.getCause() instanceof NoOpenCoreException)) {
+                            throw ex;
+                        }
+                        logger.log(Level.SEVERE, "Error performing query: " + keyword.getSearchTerm(), ex.getCause()); //NON-NLS
+                        MessageNotifyUtil.Notify.error(Bundle.SearchRunner_query_exception_msg() + keyword.getSearchTerm(), ex.getCause().getCause().getMessage());
                         //no reason to continue with next query if recovery failed
                         //or wait for recovery to kick in and run again later
                         //likely case has closed and threads are being interrupted
                         return null;
-                    } catch (CancellationException e) {
+                    } catch (CancellationException | InterruptedException e) {
                         logger.log(Level.INFO, "Cancel detected, bailing during keyword query: {0}", keyword.getSearchTerm()); //NON-NLS
                         return null;
                     }
@@ -567,6 +705,10 @@ public boolean cancel() {
 
                     } //if has results
 
+                    if (searchedIndexGeneration != Long.MIN_VALUE && !this.isCancelled()) {
+                        job.setNextIndexGeneration(keyword, searchedIndexGeneration);
+                    }
+
                     //reset the status text before it goes away
                     subProgresses[keywordsSearched].progress("");
 
@@ -578,6 +720,10 @@ public boolean cancel() {
             catch (Exception ex) {
                 logger.log(Level.WARNING, "searcher exception occurred", ex); //NON-NLS
             } finally {
+                if (queryPool != null) {
+                    // cancels the queries that are still queued or running
+                    queryPool.shutdownNow();
+                }
                 try {
                     finalizeSearcher();
                     stopWatch.stop();
@@ -591,6 +737,33 @@ public boolean cancel() {
             return null;
         }
 
+        /**
+         * Creates the query for a keyword, restricted to the data source of
+         * the job and, for an incremental periodic search, to the documents
+         * not yet searched for the keyword.
+         *
+         * @param keyword The keyword.
+         *
+         * @return A task that performs the query.
+         */
+        private Callable<QueryResults> createQuery(Keyword keyword) {
+            KeywordSearchQuery keywordSearchQuery = KeywordSearchUtil.getQueryForKeyword(keyword, keywordToList.get(keyword));
+
+            // Filtering
+            //limit search to currently ingested data sources
+            //set up a filter with 1 or more image ids OR'ed
+            final KeywordQueryFilter dataSourceFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.DATA_SOURCE, job.getDataSourceId());
+            keywordSearchQuery.addFilter(dataSourceFilter);
+
+            // limit periodic searches to documents not yet searched for this keyword
+            final KeywordQueryFilter indexGenerationFilter = getIndexGenerationFilter(finalRun, job.getNextIndexGeneration(keyword));
+            if (indexGenerationFilter != null) {
+                keywordSearchQuery.addFilter(indexGenerationFilter);
+            }
+
+            return keywordSearchQuery::performQuery;
+        }
+
         /**
          * Sync-up the updated keywords from the currently used lists in the XML
          */
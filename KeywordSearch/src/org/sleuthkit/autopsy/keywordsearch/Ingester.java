@@ -21,6 +21,10 @@
 import java.io.BufferedReader;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrInputDocument;
@@ -58,6 +62,15 @@ class Ingester {
     private static final SolrFieldsVisitor SOLR_FIELDS_VISITOR = new SolrFieldsVisitor();
     private static Ingester instance;
     private static final int SINGLE_READ_CHARS = 512;
+    private final Set<SolrDocumentBatcher> batchers = ConcurrentHashMap.newKeySet();
+    private volatile long lastHardCommitTime = System.nanoTime();
+    /*
+     * The index generation is stamped on every document, so that periodic
+     * searches can be restricted to the documents indexed since the previous
+     * search. It starts from the wall clock time so that generations keep
+     * increasing when a case is reopened.
+     */
+    private final AtomicLong indexGeneration = new AtomicLong(System.currentTimeMillis());
 
     private Ingester() {
     }
@@ -81,6 +94,40 @@ protected void finalize() throws Throwable {
         }
     }
 
+    /**
+     * Creates a batcher that a caller can pass to the indexing methods to have
+     * its documents sent to Solr in batches from background threads, rather
+     * than one at a time on the calling thread. When batching, a failure to
+     * index a document is not reported by the indexing methods, but can be
+     * checked with the batcher after flush() or commit(), which send the
+     * documents of all of the open batchers. The batcher must be closed with
+     * closeBatcher().
+     *
+     * @return The batcher.
+     */
+    SolrDocumentBatcher createBatcher() {
+        SolrDocumentBatcher batcher = new SolrDocumentBatcher(solrServer);
+        batchers.add(batcher);
+        return batcher;
+    }
+
+    /**
+     * Sends the documents buffered by a batcher and stops its sender threads.
+     *
+     * @param batcher The batcher.
+     */
+    void closeBatcher(SolrDocumentBatcher batcher) {
+        try {
+            batcher.flush();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Interrupted while sending documents to the index", ex); //NON-NLS
+        } finally {
+            batchers.remove(batcher);
+            batcher.shutDown();
+        }
+    }
+
     /**
      * Sends the metadata (name, MAC times, image id, etc) for the given file to
      * Solr to be added to the index. commit() should be called once you're done
@@ -92,7 +139,23 @@ protected void finalize() throws Throwable {
      *                           file, but the Solr server is probably fine.
      */
     void indexMetaDataOnly(AbstractFile file) throws IngesterException {
-        indexChunk("", file.getName(), getContentFields(file));
+        indexMetaDataOnly(file, null);
+    }
+
+    /**
+     * Sends the metadata (name, MAC times, image id, etc) for the given file to
+     * Solr to be added to the index. commit() should be called once you're done
+     * indexing.
+     *
+     * @param file    File to index.
+     * @param batcher The batcher to send the document with, or null to send
+     *                it on the calling thread.
+     *
+     * @throws IngesterException if there was an error processing a specific
+     *                           file, but the Solr server is probably fine.
+     */
+    void indexMetaDataOnly(AbstractFile file, SolrDocumentBatcher batcher) throws IngesterException {
+        indexChunk("", file.getId(), file.getName(), getContentFields(file), batcher);
     }
 
     /**
@@ -106,7 +169,7 @@ void indexMetaDataOnly(AbstractFile file) throws IngesterException {
      *                           artifact, but the Solr server is probably fine.
      */
     void indexMetaDataOnly(BlackboardArtifact artifact) throws IngesterException {
-        indexChunk("", new ArtifactTextExtractor().getName(artifact), getContentFields(artifact));
+        indexChunk("", artifact.getArtifactID(), new ArtifactTextExtractor().getName(artifact), getContentFields(artifact), null);
     }
 
     /**
@@ -142,6 +205,28 @@ private Map<String, String> getContentFields(SleuthkitVisitableItem item) {
      */
     // TODO (JIRA-3118): Cancelled text indexing does not propagate cancellation to clients 
     < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extractor, T source, IngestJobContext context) throws Ingester.IngesterException {
+        return indexText(extractor, source, context, null);
+    }
+
+    /**
+     * Use the given TextExtractor to extract text from the given source. The
+     * text will be chunked and each chunk passed to Solr to add to the index.
+     *
+     * @param <T>       A subclass of SleuthkitVisibleItem.
+     * @param extractor The TextExtractor that will be used to extract text from
+     *                  the given source.
+     * @param source    The source from which text will be extracted, chunked,
+     *                  and indexed.
+     * @param context   The ingest job context that can be used to cancel this
+     *                  process.
+     * @param batcher   The batcher to send the chunks with, or null to send
+     *                  them on the calling thread.
+     *
+     * @return True if indexing was completed, false otherwise.
+     *
+     * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException
+     */
+    < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extractor, T source, IngestJobContext context, SolrDocumentBatcher batcher) throws Ingester.IngesterException {
         final long sourceID = extractor.getID(source);
         final String sourceName = extractor.getName(source);
 
@@ -169,7 +254,7 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
                 fields.put(Server.Schema.CHUNK_SIZE.toString(), String.valueOf(chunk.getBaseChunkLength()));
                 try {
                     //add the chunk text to Solr index
-                    indexChunk(chunk.toString(), sourceName, fields);
+                    indexChunk(chunk.toString(), sourceID, sourceName, fields, batcher);
                     numChunks++;
                 } catch (Ingester.IngesterException ingEx) {
                     extractor.logWarning("Ingester had a problem with extracted string from file '" //NON-NLS
@@ -195,7 +280,7 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
                 fields.put(Server.Schema.ID.toString(), Long.toString(sourceID));
                 //"parent" docs don't have chunk_size
                 fields.remove(Server.Schema.CHUNK_SIZE.toString());
-                indexChunk(null, sourceName, fields);
+                indexChunk(null, sourceID, sourceName, fields, batcher);
             }
         }
         return true;
@@ -208,13 +293,16 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
      * /update handler e.g. with XMLUpdateRequestHandler (deprecated in SOlr
      * 4.0.0), see if possible to stream with UpdateRequestHandler
      *
-     * @param chunk  The chunk content as a string
+     * @param chunk    The chunk content as a string
+     * @param sourceID The object id of the file, or the artifact id of the
+     *                 artifact.
      * @param fields
-     * @param size
+     * @param batcher  The batcher to send the chunk with, or null to send it
+     *                 on the calling thread. Only file chunks are batched.
      *
      * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException
      */
-    private void indexChunk(String chunk, String sourceName, Map<String, String> fields) throws IngesterException {
+    private void indexChunk(String chunk, long sourceID, String sourceName, Map<String, String> fields, SolrDocumentBatcher batcher) throws IngesterException {
         if (fields.get(Server.Schema.IMAGE_ID.toString()) == null) {
             //JMTODO: actually if the we couldn't get the image id it is set to -1,
             // but does this really mean we don't want to index it?
@@ -234,6 +322,19 @@ private void indexChunk(String chunk, String sourceName, Map<String, String> fie
         //add the content to the SolrInputDocument
         //JMTODO: can we just add it to the field map before passing that in?
         updateDoc.addField(Server.Schema.CONTENT.toString(), chunk);
+        updateDoc.addField(Server.Schema.INDEX_GENERATION.toString(), indexGeneration.get());
+
+        if (null != batcher) {
+            try {
+                batcher.add(sourceID, updateDoc, (null != chunk) ? chunk.length() : 0);
+                uncommitedIngests = true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IngesterException(
+                        NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), ex);
+            }
+            return;
+        }
 
         try {
             //TODO: consider timeout thread, or vary socket timeout based on size of indexed content
@@ -254,12 +355,91 @@ private void indexChunk(String chunk, String sourceName, Map<String, String> fie
      * searches)
      */
     void commit() {
+        try {
+            hardCommit();
+        } catch (IngesterException ex) {
+            logger.log(Level.WARNING, "Error commiting index", ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Waits for any documents that are being sent to Solr in batches to be
+     * sent, and then tells Solr to commit, so that the indexed documents are
+     * durable.
+     *
+     * @throws IngesterException If the documents could not be sent or the
+     *                           index could not be committed.
+     */
+    void hardCommit() throws IngesterException {
+        try {
+            flushBatchers();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IngesterException("Interrupted while sending documents to the index", ex); //NON-NLS
+        }
         try {
             solrServer.commit();
             uncommitedIngests = false;
+            lastHardCommitTime = System.nanoTime();
         } catch (NoOpenCoreException | SolrServerException ex) {
-            logger.log(Level.WARNING, "Error commiting index", ex); //NON-NLS
+            throw new IngesterException("Error commiting index", ex); //NON-NLS
+        }
+    }
 
+    /**
+     * Tells Solr to soft commit, which makes ingested files appear in searches
+     * without waiting for the index to be flushed to disk. If the hard commit
+     * interval has passed since the last hard commit, the index is also hard
+     * committed, without opening a new searcher, so that it is durable.
+     */
+    void softCommit() {
+        flush();
+        try {
+            solrServer.softCommit();
+            long now = System.nanoTime();
+            if (now - lastHardCommitTime >= TimeUnit.SECONDS.toNanos(KeywordSearchSettings.getHardCommitIntervalSecs())) {
+                solrServer.commitWithoutNewSearcher();
+                uncommitedIngests = false;
+                lastHardCommitTime = now;
+            }
+        } catch (NoOpenCoreException | SolrServerException ex) {
+            logger.log(Level.WARNING, "Error soft commiting index", ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Starts a new index generation. Documents created after this call are
+     * stamped with the new generation or a later one, documents created
+     * before it with an earlier one.
+     *
+     * @return The new generation.
+     */
+    long startNewIndexGeneration() {
+        return indexGeneration.updateAndGet((generation) -> Math.max(generation + 1, System.currentTimeMillis()));
+    }
+
+    /**
+     * Waits for any documents that are being sent to Solr in batches to be
+     * sent.
+     */
+    void flush() {
+        try {
+            flushBatchers();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Interrupted while sending documents to the index", ex); //NON-NLS
+        }
+    }
+
+    /**
+     * Sends the documents buffered by all of the open batchers and waits for
+     * them to be sent.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    private void flushBatchers() throws InterruptedException {
+        for (SolrDocumentBatcher batcher : batchers) {
+            batcher.flush();
         }
     }
 
@@ -25,13 +25,15 @@
 /**
  *
  * Filter to restrict query only specific files, chunks, images Single filter
- * supports multiple ids per file/chunk/image, that act as OR filter
+ * supports multiple ids per file/chunk/image, that act as OR filter. An index
+ * generation filter restricts the query to documents indexed in or after the
+ * given generation.
  */
 class KeywordQueryFilter {
 
     public static enum FilterType {
 
-        FILE, CHUNK, DATA_SOURCE
+        FILE, CHUNK, DATA_SOURCE, INDEX_GENERATION
     };
     private Set<Long> idFilters;
     private FilterType filterType;
@@ -66,6 +68,11 @@ public String toString() {
                 sb.append(" "); //OR
             }
             long idVal = it.next();
+            if (filterType == FilterType.INDEX_GENERATION) {
+                sb.append(Server.Schema.INDEX_GENERATION.toString());
+                sb.append(":[").append(idVal).append(" TO *]"); //NON-NLS
+                continue;
+            }
             if (filterType == FilterType.DATA_SOURCE) {
                 id = Server.Schema.IMAGE_ID.toString();
             } else {
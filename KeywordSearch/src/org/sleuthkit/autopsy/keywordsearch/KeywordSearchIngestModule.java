@@ -22,6 +22,7 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import org.openide.util.NbBundle;
@@ -111,6 +112,8 @@ private enum IngestStatus {
         SKIPPED_ERROR_IO    ///< File was skipped because of IO issues reading it
     };
     private static final Map<Long, Map<Long, IngestStatus>> ingestStatus = new HashMap<>(); //guarded by itself
+    private static final Map<Long, SolrDocumentBatcher> batchersForIngestJobs = new ConcurrentHashMap<>();
+    private SolrDocumentBatcher batcher;
 
     /**
      * Records the ingest status for a given file for a given ingest job. Used
@@ -239,6 +242,12 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
             }
         }
 
+        // the module instances of a job share a batcher, so that batching is
+        // scoped to the job rather than to every user of the ingester
+        if (KeywordSearchSettings.getBatchIndexing()) {
+            batcher = batchersForIngestJobs.computeIfAbsent(jobId, (id) -> ingester.createBatcher());
+        }
+
         //initialize extractors
         stringExtractor = new StringsTextExtractor();
         stringExtractor.setScripts(KeywordSearchSettings.getStringExtractScripts());
@@ -249,7 +258,11 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
         textExtractors = new ArrayList<>();
         //order matters, more specific extractors first
         textExtractors.add(new HtmlTextExtractor());
-        textExtractors.add(new TikaTextExtractor());
+        ContentTextExtractor tikaExtractor = new TikaTextExtractor();
+        if (KeywordSearchSettings.getExtractedTextCache()) {
+            tikaExtractor = ExtractedTextCache.forCase(openCase).wrap(tikaExtractor);
+        }
+        textExtractors.add(tikaExtractor);
 
         indexer = new Indexer();
         initialized = true;
@@ -312,6 +325,9 @@ public void shutDown() {
         if (context.fileIngestIsCancelled()) {
             logger.log(Level.INFO, "Keyword search ingest module instance {0} stopping search job due to ingest cancellation", instanceNum); //NON-NLS
             IngestSearchRunner.getInstance().stopJob(jobId);
+            if (refCounter.decrementAndGet(jobId) == 0) {
+                closeBatcher();
+            }
             cleanup();
             return;
         }
@@ -321,6 +337,7 @@ public void shutDown() {
 
         // We only need to post the summary msg from the last module per job
         if (refCounter.decrementAndGet(jobId) == 0) {
+            closeBatcher();
             try {
                 final int numIndexedFiles = KeywordSearch.getServer().queryNumIndexedFiles();
                 logger.log(Level.INFO, "Indexed files count: {0}", numIndexedFiles); //NON-NLS
@@ -338,6 +355,18 @@ public void shutDown() {
         cleanup();
     }
 
+    /**
+     * Sends the documents buffered by the batcher of the ingest job, if it
+     * has one, and stops its sender threads. Called by the last module
+     * instance of the job to shut down.
+     */
+    private void closeBatcher() {
+        SolrDocumentBatcher jobBatcher = batchersForIngestJobs.remove(jobId);
+        if (null != jobBatcher) {
+            ingester.closeBatcher(jobBatcher);
+        }
+    }
+
     /**
      * Common cleanup code when module stops or final searcher completes
      */
@@ -365,6 +394,12 @@ private void postIndexSummary() {
             if (ingestStatusForJob == null) {
                 return;
             }
+            // Documents sent in batches can fail after the file was processed
+            for (Map.Entry<Long, IngestStatus> entry : ingestStatusForJob.entrySet()) {
+                if (null != batcher && batcher.removeFileFailure(entry.getKey())) {
+                    entry.setValue(IngestStatus.SKIPPED_ERROR_INDEXING);
+                }
+            }
             for (IngestStatus s : ingestStatusForJob.values()) {
                 switch (s) {
                     case TEXT_INGESTED:
@@ -450,7 +485,7 @@ private boolean extractTextAndIndex(AbstractFile aFile, String detectedFormat) t
 
             //logger.log(Level.INFO, "Extractor: " + fileExtract + ", file: " + aFile.getName());
             //divide into chunks and index
-            return Ingester.getDefault().indexText(extractor, aFile, context);
+            return Ingester.getDefault().indexText(extractor, aFile, context, batcher);
         }
 
         /**
@@ -466,7 +501,7 @@ private boolean extractStringsAndIndex(AbstractFile aFile) {
                 if (context.fileIngestIsCancelled()) {
                     return true;
                 }
-                if (Ingester.getDefault().indexText(stringExtractor, aFile, KeywordSearchIngestModule.this.context)) {
+                if (Ingester.getDefault().indexText(stringExtractor, aFile, KeywordSearchIngestModule.this.context, batcher)) {
                     putIngestStatus(jobId, aFile.getId(), IngestStatus.STRINGS_INGESTED);
                     return true;
                 } else {
@@ -510,7 +545,7 @@ private void indexFile(AbstractFile aFile, boolean indexContent) {
                     if (context.fileIngestIsCancelled()) {
                         return;
                     }
-                    ingester.indexMetaDataOnly(aFile);
+                    ingester.indexMetaDataOnly(aFile, batcher);
                     putIngestStatus(jobId, aFile.getId(), IngestStatus.METADATA_INGESTED);
                 } catch (IngesterException ex) {
                     putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_INDEXING);
@@ -531,7 +566,7 @@ private void indexFile(AbstractFile aFile, boolean indexContent) {
                     if (context.fileIngestIsCancelled()) {
                         return;
                     }
-                    ingester.indexMetaDataOnly(aFile);
+                    ingester.indexMetaDataOnly(aFile, batcher);
                     putIngestStatus(jobId, aFile.getId(), IngestStatus.METADATA_INGESTED);
                 } catch (IngesterException ex) {
                     putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_INDEXING);
@@ -574,7 +609,7 @@ private void indexFile(AbstractFile aFile, boolean indexContent) {
                 //Carved Files should be the only type of unallocated files capable of a txt extension and 
                 //should be ignored by the TextFileExtractor because they may contain more than one text encoding
                 try {
-                    if (Ingester.getDefault().indexText(txtFileExtractor, aFile, context)) {
+                    if (Ingester.getDefault().indexText(txtFileExtractor, aFile, context, batcher)) {
                         putIngestStatus(jobId, aFile.getId(), IngestStatus.TEXT_INGESTED);
                         wasTextAdded = true;
                     }
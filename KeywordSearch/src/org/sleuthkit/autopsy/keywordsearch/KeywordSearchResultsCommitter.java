@@ -0,0 +1,40 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import org.openide.util.lookup.ServiceProvider;
+import org.sleuthkit.autopsy.ingest.IngestResultsCommitter;
+
+/**
+ * Sends any content waiting to be indexed to the keyword search text index
+ * and commits the index, so that ingest jobs can record the files indexed so
+ * far as analyzed.
+ */
+@ServiceProvider(service = IngestResultsCommitter.class)
+public class KeywordSearchResultsCommitter implements IngestResultsCommitter {
+
+    @Override
+    public void commitResults() throws IngestResultsCommitterException {
+        try {
+            Ingester.getDefault().hardCommit();
+        } catch (Ingester.IngesterException ex) {
+            throw new IngestResultsCommitterException("Failed to commit the text index", ex); //NON-NLS
+        }
+    }
+}
@@ -24,6 +24,7 @@
 import java.util.Map;
 import java.util.logging.Level;
 import org.openide.util.NbBundle;
+import org.sleuthkit.autopsy.core.UserPreferences;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.ModuleSettings;
 import org.sleuthkit.autopsy.coreutils.StringExtract;
@@ -41,6 +42,26 @@ class KeywordSearchSettings {
     static final boolean DEFAULT_SHOW_SNIPPETS = true;    
     static final String OCR_ENABLED = "ocrEnabled"; //NON-NLS
     static final boolean OCR_ENABLED_DEFAULT = false; // NON-NLS
+    static final String BATCH_INDEXING = "batchIndexing"; //NON-NLS
+    static final boolean DEFAULT_BATCH_INDEXING = true;
+    static final String NRT_SEARCH = "nrtSearch"; //NON-NLS
+    static final boolean DEFAULT_NRT_SEARCH = true;
+    static final String NRT_SEARCH_INTERVAL_SECS = "nrtSearchIntervalSecs"; //NON-NLS
+    static final int DEFAULT_NRT_SEARCH_INTERVAL_SECS = 15;
+    static final String HARD_COMMIT_INTERVAL_SECS = "hardCommitIntervalSecs"; //NON-NLS
+    static final int DEFAULT_HARD_COMMIT_INTERVAL_SECS = 300;
+    static final String INCREMENTAL_SEARCH = "incrementalSearch"; //NON-NLS
+    static final boolean DEFAULT_INCREMENTAL_SEARCH = true;
+    static final String QUERY_THREADS = "queryThreads"; //NON-NLS
+    static final int DEFAULT_QUERY_THREADS = 4;
+    static final String SOLR_MAX_HEAP_MB = "solrMaxHeapMb"; //NON-NLS
+    static final String LAST_INDEX_SIZE_MB = "lastIndexSizeMb"; //NON-NLS
+    static final String EXTRACTION_THREADS = "extractionThreads"; //NON-NLS
+    static final String OUT_OF_PROCESS_EXTRACTION = "outOfProcessExtraction"; //NON-NLS
+    static final boolean DEFAULT_OUT_OF_PROCESS_EXTRACTION = false;
+    static final String EXTRACTED_TEXT_CACHE = "extractedTextCache"; //NON-NLS
+    static final boolean DEFAULT_EXTRACTED_TEXT_CACHE = false;
+    static final String EXTRACTED_TEXT_CACHE_FOLDER = "extractedTextCacheFolder"; //NON-NLS
     private static boolean skipKnown = true;
     private static final Logger logger = Logger.getLogger(KeywordSearchSettings.class.getName());
     private static UpdateFrequency UpdateFreq = UpdateFrequency.DEFAULT;
@@ -164,6 +185,275 @@ static boolean getShowSnippets() {
         }
     }
 
+    /**
+     * Save the setting for sending text to the index in batches from
+     * background threads.
+     *
+     * @param batchIndexing Should text be indexed in batches?
+     */
+    static void setBatchIndexing(boolean batchIndexing) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, BATCH_INDEXING, (batchIndexing ? "true" : "false")); //NON-NLS
+    }
+
+    /**
+     * Get the setting for sending text to the index in batches from
+     * background threads.
+     *
+     * @return Is text indexed in batches?
+     */
+    static boolean getBatchIndexing() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, BATCH_INDEXING)) {
+            return ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, BATCH_INDEXING).equals("true"); //NON-NLS
+        } else {
+            return DEFAULT_BATCH_INDEXING;
+        }
+    }
+
+    /**
+     * Save the setting for near real time periodic searches, which soft
+     * commit the index before each search instead of hard committing it.
+     *
+     * @param nrtSearch Should periodic searches be near real time?
+     */
+    static void setNrtSearch(boolean nrtSearch) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, NRT_SEARCH, (nrtSearch ? "true" : "false")); //NON-NLS
+    }
+
+    /**
+     * Get the setting for near real time periodic searches.
+     *
+     * @return Are periodic searches near real time?
+     */
+    static boolean getNrtSearch() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, NRT_SEARCH)) {
+            return ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, NRT_SEARCH).equals("true"); //NON-NLS
+        } else {
+            return DEFAULT_NRT_SEARCH;
+        }
+    }
+
+    /**
+     * Save the setting for incremental periodic searches, which only search
+     * the documents indexed since the previous periodic search for a keyword.
+     *
+     * @param incrementalSearch Should periodic searches be incremental?
+     */
+    static void setIncrementalSearch(boolean incrementalSearch) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, INCREMENTAL_SEARCH, (incrementalSearch ? "true" : "false")); //NON-NLS
+    }
+
+    /**
+     * Get the setting for incremental periodic searches.
+     *
+     * @return Are periodic searches incremental?
+     */
+    static boolean getIncrementalSearch() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, INCREMENTAL_SEARCH)) {
+            return ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, INCREMENTAL_SEARCH).equals("true"); //NON-NLS
+        } else {
+            return DEFAULT_INCREMENTAL_SEARCH;
+        }
+    }
+
+    /**
+     * Save the interval between near real time periodic searches.
+     *
+     * @param seconds The interval in seconds.
+     */
+    static void setNrtSearchIntervalSecs(int seconds) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, NRT_SEARCH_INTERVAL_SECS, Integer.toString(seconds));
+    }
+
+    /**
+     * Get the interval between near real time periodic searches.
+     *
+     * @return The interval in seconds.
+     */
+    static int getNrtSearchIntervalSecs() {
+        return getPositiveIntSetting(NRT_SEARCH_INTERVAL_SECS, DEFAULT_NRT_SEARCH_INTERVAL_SECS);
+    }
+
+    /**
+     * Save the maximum interval between hard commits of the index when
+     * periodic searches are near real time.
+     *
+     * @param seconds The interval in seconds.
+     */
+    static void setHardCommitIntervalSecs(int seconds) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, HARD_COMMIT_INTERVAL_SECS, Integer.toString(seconds));
+    }
+
+    /**
+     * Get the maximum interval between hard commits of the index when
+     * periodic searches are near real time.
+     *
+     * @return The interval in seconds.
+     */
+    static int getHardCommitIntervalSecs() {
+        return getPositiveIntSetting(HARD_COMMIT_INTERVAL_SECS, DEFAULT_HARD_COMMIT_INTERVAL_SECS);
+    }
+
+    /**
+     * Save the number of keyword queries an ingest keyword search runs at the
+     * same time.
+     *
+     * @param threads The number of queries.
+     */
+    static void setQueryThreads(int threads) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, QUERY_THREADS, Integer.toString(threads));
+    }
+
+    /**
+     * Get the number of keyword queries an ingest keyword search runs at the
+     * same time.
+     *
+     * @return The number of queries.
+     */
+    static int getQueryThreads() {
+        return getPositiveIntSetting(QUERY_THREADS, DEFAULT_QUERY_THREADS);
+    }
+
+    /**
+     * Save the maximum heap size of the local Solr server, overriding the
+     * size chosen from the resources of the host. Zero restores the chosen
+     * size.
+     *
+     * @param heapMb The heap size in MB.
+     */
+    static void setSolrMaxHeapMb(int heapMb) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, SOLR_MAX_HEAP_MB, Integer.toString(heapMb));
+    }
+
+    /**
+     * Get the maximum heap size of the local Solr server set by the user.
+     *
+     * @return The heap size in MB, or zero if the size is to be chosen from
+     *         the resources of the host.
+     */
+    static int getSolrMaxHeapMb() {
+        return getPositiveIntSetting(SOLR_MAX_HEAP_MB, 0);
+    }
+
+    /**
+     * Save the size on disk of the index of the single-user case opened most
+     * recently.
+     *
+     * @param sizeMb The size in MB.
+     */
+    static void setLastIndexSizeMb(long sizeMb) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, LAST_INDEX_SIZE_MB, Long.toString(sizeMb));
+    }
+
+    /**
+     * Get the size on disk of the index of the single-user case opened most
+     * recently.
+     *
+     * @return The size in MB, or zero if no case has been opened.
+     */
+    static long getLastIndexSizeMb() {
+        return getPositiveIntSetting(LAST_INDEX_SIZE_MB, 0);
+    }
+
+    /**
+     * Save the maximum number of Tika text extractions that run at the same
+     * time.
+     *
+     * @param threads The number of extractions.
+     */
+    static void setExtractionThreads(int threads) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, EXTRACTION_THREADS, Integer.toString(threads));
+    }
+
+    /**
+     * Get the maximum number of Tika text extractions that run at the same
+     * time. Defaults to the number of file ingest threads.
+     *
+     * @return The number of extractions.
+     */
+    static int getExtractionThreads() {
+        return getPositiveIntSetting(EXTRACTION_THREADS, UserPreferences.numberOfFileIngestThreads());
+    }
+
+    /**
+     * Save the setting for running Tika text extraction in separate worker
+     * processes.
+     *
+     * @param outOfProcess Whether or not to use worker processes.
+     */
+    static void setOutOfProcessExtraction(boolean outOfProcess) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, OUT_OF_PROCESS_EXTRACTION, (outOfProcess ? "true" : "false")); //NON-NLS
+    }
+
+    /**
+     * Get the setting for running Tika text extraction in separate worker
+     * processes.
+     *
+     * @return Does Tika run in worker processes?
+     */
+    static boolean getOutOfProcessExtraction() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, OUT_OF_PROCESS_EXTRACTION)) {
+            return ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, OUT_OF_PROCESS_EXTRACTION).equals("true"); //NON-NLS
+        } else {
+            return DEFAULT_OUT_OF_PROCESS_EXTRACTION;
+        }
+    }
+
+    /**
+     * Save the setting for caching extracted text by file hash.
+     *
+     * @param useCache Whether or not to cache extracted text.
+     */
+    static void setExtractedTextCache(boolean useCache) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, EXTRACTED_TEXT_CACHE, (useCache ? "true" : "false")); //NON-NLS
+    }
+
+    /**
+     * Get the setting for caching extracted text by file hash.
+     *
+     * @return Is extracted text cached?
+     */
+    static boolean getExtractedTextCache() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, EXTRACTED_TEXT_CACHE)) {
+            return ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, EXTRACTED_TEXT_CACHE).equals("true"); //NON-NLS
+        } else {
+            return DEFAULT_EXTRACTED_TEXT_CACHE;
+        }
+    }
+
+    /**
+     * Save the folder for cached extracted text shared by all cases.
+     *
+     * @param folder The folder, or an empty string to cache text in the case.
+     */
+    static void setExtractedTextCacheFolder(String folder) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, EXTRACTED_TEXT_CACHE_FOLDER, folder);
+    }
+
+    /**
+     * Get the folder for cached extracted text shared by all cases.
+     *
+     * @return The folder, or an empty string if text is cached in the case.
+     */
+    static String getExtractedTextCacheFolder() {
+        String folder = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, EXTRACTED_TEXT_CACHE_FOLDER);
+        return (folder != null) ? folder : "";
+    }
+
+    private static int getPositiveIntSetting(String key, int defaultValue) {
+        String value = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, key);
+        if (value != null) {
+            try {
+                int intValue = Integer.parseInt(value);
+                if (intValue > 0) {
+                    return intValue;
+                }
+            } catch (NumberFormatException ex) {
+                logger.log(Level.WARNING, String.format("Invalid value %s for %s, using default", value, key), ex); //NON-NLS
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * gets the currently set scripts to use
      *
@@ -194,6 +194,7 @@ public QueryResults performQuery() throws NoOpenCoreException {
         SolrDocumentList resultList;
         boolean allResultsProcessed = false;
         QueryResults results = new QueryResults(this);
+        final Pattern pattern = Pattern.compile(keywordString);
 
         while (!allResultsProcessed) {
             try {
@@ -203,7 +204,7 @@ public QueryResults performQuery() throws NoOpenCoreException {
 
                 for (SolrDocument resultDoc : resultList) {
                     try {
-                        List<KeywordHit> keywordHits = createKeywordHits(resultDoc);
+                        List<KeywordHit> keywordHits = createKeywordHits(resultDoc, pattern);
                         for (KeywordHit hit : keywordHits) {
                             Keyword keywordInstance = new Keyword(hit.getHit(), true, true, originalKeyword.getListName(), originalKeyword.getOriginalTerm());
                             List<KeywordHit> hitsForKeyword = results.getResults(keywordInstance);
@@ -232,7 +233,18 @@ public QueryResults performQuery() throws NoOpenCoreException {
         return results;
     }
 
-    private List<KeywordHit> createKeywordHits(SolrDocument solrDoc) throws TskCoreException {
+    /**
+     * Creates the keyword hits for the matches of the regular expression in
+     * the content of a Solr document.
+     *
+     * @param solrDoc The Solr document.
+     * @param pattern The compiled regular expression.
+     *
+     * @return The hits.
+     *
+     * @throws TskCoreException If the regular expression matcher fails.
+     */
+    private List<KeywordHit> createKeywordHits(SolrDocument solrDoc, Pattern pattern) throws TskCoreException {
 
         final HashMap<String, String> keywordsFoundInThisDocument = new HashMap<>();
 
@@ -242,7 +254,6 @@ private List<KeywordHit> createKeywordHits(SolrDocument solrDoc) throws TskCoreE
 
         final Collection<Object> content_str = solrDoc.getFieldValues(Server.Schema.CONTENT_STR.toString());
 
-        final Pattern pattern = Pattern.compile(keywordString);
         try {
             for (Object content_obj : content_str) {
                 String content = (String) content_obj;
@@ -42,15 +42,21 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import javax.swing.AbstractAction;
+import org.apache.commons.io.FileUtils;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.BinaryRequestWriter;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.impl.XMLResponseParser;
+import org.apache.solr.client.solrj.request.AbstractUpdateRequest;
 import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.CoreAdminResponse;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.TermsResponse;
@@ -168,6 +174,13 @@ public String toString() {
             public String toString() {
                 return "chunk_size"; //NON-NLS
             }
+        },
+        // uses the *_tl dynamic field, so older indexes accept it without a schema change
+        INDEX_GENERATION {
+            @Override
+            public String toString() {
+                return "index_generation_tl"; //NON-NLS
+            }
         }
     };
 
@@ -182,7 +195,9 @@ public String toString() {
     private String javaPath = "java";
     public static final Charset DEFAULT_INDEXED_TEXT_CHARSET = Charset.forName("UTF-8"); ///< default Charset to index text as
     private Process curSolrProcess = null;
-    private static final int MAX_SOLR_MEM_MB = 512; //TODO set dynamically based on avail. system resources
+    private volatile SolrJvmSettings solrJvmSettings = SolrJvmSettings.getDefault();
+    private static final long SOLR_STARTUP_TIMEOUT_SECS = 10;
+    private static final long SOLR_STARTUP_POLL_INTERVAL_MS = 250;
     static final String PROPERTIES_FILE = KeywordSearchSettings.MODULE_NAME;
     static final String PROPERTIES_CURRENT_SERVER_PORT = "IndexingServerPort"; //NON-NLS
     static final String PROPERTIES_CURRENT_STOP_PORT = "IndexingServerStopPort"; //NON-NLS
@@ -362,10 +377,9 @@ public void run() {
      * @throws IOException
      */
     private Process runSolrCommand(List<String> solrArguments) throws IOException {
-        final String MAX_SOLR_MEM_MB_PAR = "-Xmx" + Integer.toString(MAX_SOLR_MEM_MB) + "m"; //NON-NLS
         List<String> commandLine = new ArrayList<>();
         commandLine.add(javaPath);
-        commandLine.add(MAX_SOLR_MEM_MB_PAR);
+        commandLine.addAll(solrJvmSettings.getJvmArguments());
         commandLine.add("-DSTOP.PORT=" + currentSolrStopPort); //NON-NLS
         commandLine.add("-Djetty.port=" + currentSolrServerPort); //NON-NLS
         commandLine.add("-DSTOP.KEY=" + KEY); //NON-NLS
@@ -464,18 +478,16 @@ void start() throws KeywordSearchModuleException, SolrServerNoPortException {
 
         if (isPortAvailable(currentSolrServerPort)) {
             logger.log(Level.INFO, "Port [{0}] available, starting Solr", currentSolrServerPort); //NON-NLS
+            solrJvmSettings = SolrJvmSettings.forHost();
+            logger.log(Level.INFO, "Solr JVM settings: {0}", solrJvmSettings); //NON-NLS
             try {
                 curSolrProcess = runSolrCommand(new ArrayList<>(
                         Arrays.asList("-Dbootstrap_confdir=../solr/configsets/AutopsyConfig/conf", //NON-NLS
                                 "-Dcollection.configName=AutopsyConfig"))); //NON-NLS
 
-                try {
-                    //block for 10 seconds, give time to fully start the process
-                    //so if it's restarted solr operations can be resumed seamlessly
-                    Thread.sleep(10 * 1000);
-                } catch (InterruptedException ex) {
-                    logger.log(Level.WARNING, "Timer interrupted"); //NON-NLS
-                }
+                //block until the server responds, for at most 10 seconds, to give time to fully start the process
+                //so if it's restarted solr operations can be resumed seamlessly
+                waitForSolrToStart();
 
                 final List<Long> pids = this.getSolrPIDs();
                 logger.log(Level.INFO, "New Solr process PID: {0}", pids); //NON-NLS
@@ -491,6 +503,39 @@ void start() throws KeywordSearchModuleException, SolrServerNoPortException {
         }
     }
 
+    /**
+     * Waits for a newly started local Solr server to respond to a core-status
+     * request, giving up after SOLR_STARTUP_TIMEOUT_SECS or if the Solr process
+     * exits.
+     */
+    private void waitForSolrToStart() {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SOLR_STARTUP_TIMEOUT_SECS);
+        try {
+            while (System.nanoTime() < deadline) {
+                Thread.sleep(SOLR_STARTUP_POLL_INTERVAL_MS);
+                if (curSolrProcess != null && !curSolrProcess.isAlive()) {
+                    logger.log(Level.SEVERE, "Solr process exited with code {0} while starting", curSolrProcess.exitValue()); //NON-NLS
+                    return;
+                }
+                /*
+                 * Poll with a status request rather than isRunning(), which
+                 * first checks the port by binding it, and so can race the
+                 * server that is starting to listen on it.
+                 */
+                try {
+                    connectToSolrServer(localSolrServer);
+                    logger.log(Level.INFO, "Solr server is running"); //NON-NLS
+                    return;
+                } catch (SolrServerException | SolrException | IOException ex) {
+                    logger.log(Level.FINE, "Solr server is not ready yet", ex); //NON-NLS
+                }
+            }
+            logger.log(Level.WARNING, "Solr server did not respond within {0} seconds of starting", SOLR_STARTUP_TIMEOUT_SECS); //NON-NLS
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, "Timer interrupted"); //NON-NLS
+        }
+    }
+
     /**
      * Checks to see if a specific port is available.
      *
@@ -718,6 +763,29 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException, NoO
         }
     }
 
+    /**
+     * Adds a batch of documents to the current core in a single request.
+     *
+     * @param docs The documents.
+     *
+     * @throws KeywordSearchModuleException If there is a problem adding the
+     *                                      documents.
+     * @throws NoOpenCoreException          If there is no open core.
+     */
+    void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            TimingMetric metric = HealthMonitor.getTimingMetric("Solr: Index chunk batch");
+            currentCore.addDocuments(docs);
+            HealthMonitor.submitTimingMetric(metric);
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
     /**
      * ** end single-case specific methods ***
      */
@@ -834,6 +902,10 @@ private Core openCore(Case theCase, Index index) throws KeywordSearchModuleExcep
                 throw new KeywordSearchModuleException(NbBundle.getMessage(this.getClass(), "Server.openCore.exception.noIndexDir.msg"));
             }
 
+            if (theCase.getCaseType() == CaseType.SINGLE_USER_CASE) {
+                recordIndexSize(index);
+            }
+
             return new Core(coreName, theCase.getCaseType(), index);
 
         } catch (Exception ex) {
@@ -841,6 +913,27 @@ private Core openCore(Case theCase, Index index) throws KeywordSearchModuleExcep
         }
     }
     
+    /**
+     * Records the size on disk of the index of a single-user case, so that
+     * the heap of the local Solr server can be sized for it the next time the
+     * server is started.
+     *
+     * @param index The index.
+     */
+    private static void recordIndexSize(Index index) {
+        long indexSizeBytes = FileUtils.sizeOfDirectory(new File(index.getIndexPath()));
+        KeywordSearchSettings.setLastIndexSizeMb(indexSizeBytes / (1024 * 1024));
+    }
+
+    /**
+     * Gets the JVM settings the local Solr server was last started with.
+     *
+     * @return The settings.
+     */
+    SolrJvmSettings getSolrJvmSettings() {
+        return solrJvmSettings;
+    }
+
     /**
      * Get the host and port for a multiuser case.
      * If the file solrserver.txt exists, then use the values from that file.
@@ -991,6 +1084,45 @@ void commit() throws SolrServerException, NoOpenCoreException {
         }
     }
 
+    /**
+     * Soft commits the current core, making the documents added since the
+     * last commit visible to searches without flushing the index to disk.
+     *
+     * @throws SolrServerException If there is a problem committing.
+     * @throws NoOpenCoreException If there is no open core.
+     */
+    void softCommit() throws SolrServerException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            currentCore.softCommit();
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hard commits the current core without opening a new searcher, flushing
+     * the index to disk. Used with soft commits, which have already made the
+     * documents visible to searches.
+     *
+     * @throws SolrServerException If there is a problem committing.
+     * @throws NoOpenCoreException If there is no open core.
+     */
+    void commitWithoutNewSearcher() throws SolrServerException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            currentCore.commitWithoutNewSearcher();
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
     NamedList<Object> request(SolrRequest request) throws SolrServerException, NoOpenCoreException {
         currentCoreLock.readLock().lock();
         try {
@@ -1405,7 +1537,14 @@ private Core(String name, CaseType caseType, Index index) {
             // allowCompression defaults to false.
             // Server side must support gzip or deflate for this to have any effect.
             solrCore.setAllowCompression(true);
-            solrCore.setParser(new XMLResponseParser()); // binary parser is used by default
+            if (caseType == CaseType.SINGLE_USER_CASE) {
+                // The local server is the Solr version SolrJ was built for, so
+                // use the compact binary format in both directions.
+                solrCore.setParser(new BinaryResponseParser());
+                solrCore.setRequestWriter(new BinaryRequestWriter());
+            } else {
+                solrCore.setParser(new XMLResponseParser()); // binary parser is used by default
+            }
 
         }
 
@@ -1456,6 +1595,27 @@ private void commit() throws SolrServerException {
             }
         }
 
+        private void softCommit() throws SolrServerException {
+            try {
+                solrCore.commit(false, true, true);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not soft commit index. ", e); //NON-NLS
+                throw new SolrServerException(NbBundle.getMessage(this.getClass(), "Server.commit.exception.msg"), e);
+            }
+        }
+
+        private void commitWithoutNewSearcher() throws SolrServerException {
+            try {
+                UpdateRequest request = new UpdateRequest();
+                request.setAction(AbstractUpdateRequest.ACTION.COMMIT, true, false);
+                request.setParam("openSearcher", "false"); //NON-NLS
+                request.process(solrCore);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not commit index. ", e); //NON-NLS
+                throw new SolrServerException(NbBundle.getMessage(this.getClass(), "Server.commit.exception.msg"), e);
+            }
+        }
+
         void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
             try {
                 solrCore.add(doc);
@@ -1470,6 +1630,16 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
             }
         }
 
+        void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException {
+            try {
+                solrCore.add(docs);
+            } catch (SolrServerException | IOException ex) {
+                logger.log(Level.SEVERE, "Could not add batch of " + docs.size() + " documents to index via update handler", ex); //NON-NLS
+                throw new KeywordSearchModuleException(
+                        NbBundle.getMessage(this.getClass(), "Server.addDocs.exception.msg", docs.size()), ex); //NON-NLS
+            }
+        }
+
         /**
          * get the text from the content field for the given file
          *
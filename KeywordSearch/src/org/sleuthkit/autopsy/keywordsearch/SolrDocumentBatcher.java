@@ -0,0 +1,214 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.solr.common.SolrInputDocument;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Buffers Solr documents and sends them to the current core in multi-document
+ * requests from a small pool of sender threads, so that the threads adding
+ * documents do not wait on a round trip to Solr for each chunk. The number of
+ * batches that are queued or being sent is bounded, and a thread adding a
+ * document blocks when the bound is reached, so that text extraction cannot
+ * get arbitrarily far ahead of indexing. The bound is fair, so that a flush
+ * waiting for the batches in flight is not starved by threads adding more.
+ *
+ * A batcher is created by Ingester for each caller that wants its documents
+ * batched, e.g., for each ingest job, and is flushed by every commit.
+ *
+ * If a batch fails, its documents are sent again one at a time to find the
+ * ones Solr rejects, and the ids of the files those documents are for are
+ * recorded, so that the failures can be reported per file. Only the documents
+ * for files are batched; artifacts are indexed on the calling thread.
+ */
+@ThreadSafe
+final class SolrDocumentBatcher {
+
+    private static final Logger logger = Logger.getLogger(SolrDocumentBatcher.class.getName());
+    private static final int MAX_BATCH_DOCUMENTS = 64;
+    private static final int MAX_BATCH_CHARS = 2 * 1024 * 1024;
+    private static final int SENDER_THREADS = 2;
+    private static final int MAX_PENDING_BATCHES = 2 * SENDER_THREADS;
+    private static final String SENDER_THREAD_NAME = "solr-batch-indexer-%d"; //NON-NLS
+    private final Server server;
+    private final ExecutorService senderPool;
+    private final Semaphore pendingBatches = new Semaphore(MAX_PENDING_BATCHES, true);
+    private final Set<Long> failedFileIds = ConcurrentHashMap.newKeySet();
+    @GuardedBy("this")
+    private Batch currentBatch = new Batch();
+
+    /**
+     * Constructs an object that buffers Solr documents and sends them to the
+     * current core in multi-document requests.
+     *
+     * @param server The Solr server.
+     */
+    SolrDocumentBatcher(Server server) {
+        this.server = server;
+        this.senderPool = Executors.newFixedThreadPool(SENDER_THREADS, new ThreadFactoryBuilder().setNameFormat(SENDER_THREAD_NAME).setDaemon(true).build());
+    }
+
+    /**
+     * Adds a document to the current batch, sending the batch if it is full.
+     *
+     * @param fileId The object id of the file the document is for.
+     * @param doc    The document.
+     * @param chars  The number of characters of text in the document.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     *                              for a batch to be sent.
+     */
+    void add(long fileId, SolrInputDocument doc, int chars) throws InterruptedException {
+        Batch fullBatch = null;
+        synchronized (this) {
+            currentBatch.add(fileId, doc, chars);
+            if (currentBatch.isFull()) {
+                fullBatch = currentBatch;
+                currentBatch = new Batch();
+            }
+        }
+        if (null != fullBatch) {
+            submit(fullBatch);
+        }
+    }
+
+    /**
+     * Sends the current batch and waits for all of the batches that have been
+     * submitted to be sent. Called before a commit, so that the commit
+     * includes all of the documents added so far.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    void flush() throws InterruptedException {
+        Batch batch;
+        synchronized (this) {
+            batch = currentBatch;
+            currentBatch = new Batch();
+        }
+        if (!batch.isEmpty()) {
+            submit(batch);
+        }
+        pendingBatches.acquire(MAX_PENDING_BATCHES);
+        pendingBatches.release(MAX_PENDING_BATCHES);
+    }
+
+    /**
+     * Stops the sender threads once the batches that have been submitted are
+     * sent. Documents added after this call are not sent.
+     */
+    void shutDown() {
+        senderPool.shutdown();
+    }
+
+    /**
+     * Checks whether Solr rejected any of the documents for a file, and
+     * forgets the failure.
+     *
+     * @param fileId The object id of the file.
+     *
+     * @return True if a document for the file could not be indexed.
+     */
+    boolean removeFileFailure(long fileId) {
+        return failedFileIds.remove(fileId);
+    }
+
+    /**
+     * Queues a batch for sending, blocking while the maximum number of
+     * batches are already queued or being sent.
+     *
+     * @param batch The batch.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    private void submit(Batch batch) throws InterruptedException {
+        pendingBatches.acquire();
+        try {
+            senderPool.submit(() -> {
+                try {
+                    send(batch);
+                } finally {
+                    pendingBatches.release();
+                }
+            });
+        } catch (RuntimeException ex) {
+            pendingBatches.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Sends a batch of documents to Solr, falling back to sending them one at
+     * a time if the batch is rejected.
+     *
+     * @param batch The batch.
+     */
+    private void send(Batch batch) {
+        try {
+            server.addDocuments(batch.docs);
+            return;
+        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+            logger.log(Level.WARNING, String.format("Failed to index batch of %d documents, retrying them one at a time", batch.docs.size()), ex); //NON-NLS
+        }
+        for (int i = 0; i < batch.docs.size(); ++i) {
+            try {
+                server.addDocument(batch.docs.get(i));
+            } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+                logger.log(Level.SEVERE, String.format("Failed to index document for object id %d", batch.fileIds.get(i)), ex); //NON-NLS
+                failedFileIds.add(batch.fileIds.get(i));
+            }
+        }
+    }
+
+    /**
+     * A batch of documents and the ids of their files.
+     */
+    private static final class Batch {
+
+        private final List<SolrInputDocument> docs = new ArrayList<>();
+        private final List<Long> fileIds = new ArrayList<>();
+        private int chars;
+
+        void add(long fileId, SolrInputDocument doc, int docChars) {
+            docs.add(doc);
+            fileIds.add(fileId);
+            chars += docChars;
+        }
+
+        boolean isFull() {
+            return docs.size() >= MAX_BATCH_DOCUMENTS || chars >= MAX_BATCH_CHARS;
+        }
+
+        boolean isEmpty() {
+            return docs.isEmpty();
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.concurrent.Immutable;
+import org.sleuthkit.autopsy.core.UserPreferences;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+
+/**
+ * The heap size, garbage collector, and cache sizes for the local Solr server
+ * JVM, chosen from the physical memory of the host, the heap of this JVM, the
+ * number of file ingest threads, and the size of the most recently opened
+ * index.
+ *
+ * Half of the memory not used by this JVM is left to the operating system,
+ * which caches the memory-mapped index files. The heap grows with the number
+ * of ingest threads feeding the server and with the size of the index, and is
+ * capped where the JVM would lose compressed object pointers. The server runs
+ * on the same JRE as Autopsy, so on a 32-bit JRE the heap is capped at what a
+ * 32-bit JVM can reserve, and the G1 collector is not used.
+ */
+@Immutable
+final class SolrJvmSettings {
+
+    private static final long BYTES_PER_MB = 1024L * 1024;
+    private static final long MIN_HEAP_MB = 512;
+    private static final long MAX_HEAP_MB = 31 * 1024; // larger heaps disable compressed object pointers
+    private static final long MAX_32_BIT_HEAP_MB = 1024; // larger heaps may not fit in a 32-bit address space
+    private static final long HEAP_MB_PER_INGEST_THREAD = 256;
+    private static final long INDEX_MB_PER_HEAP_MB = 10;
+    private static final long G1_MIN_HEAP_MB = 2048;
+    private static final int G1_MAX_PAUSE_MILLIS = 250;
+    private static final int MIN_DOCUMENT_CACHE_SIZE = 32;
+    private static final int MAX_DOCUMENT_CACHE_SIZE = 1024;
+    private static final int MIN_QUERY_RESULT_CACHE_SIZE = 512;
+    private static final int MAX_QUERY_RESULT_CACHE_SIZE = 4096;
+    static final String DOCUMENT_CACHE_SIZE_PROPERTY = "autopsy.solr.documentCache.size"; //NON-NLS
+    static final String QUERY_RESULT_CACHE_SIZE_PROPERTY = "autopsy.solr.queryResultCache.size"; //NON-NLS
+    private final long heapMb;
+    private final boolean useG1;
+    private final int documentCacheSize;
+    private final int queryResultCacheSize;
+
+    /**
+     * Gets the settings used before the host has been examined, which are
+     * the fixed settings of earlier versions.
+     *
+     * @return The settings.
+     */
+    static SolrJvmSettings getDefault() {
+        return new SolrJvmSettings(MIN_HEAP_MB, false);
+    }
+
+    /**
+     * Chooses the settings for this host. A heap size set by the user in the
+     * keyword search options overrides the calculated one.
+     *
+     * @return The settings.
+     */
+    static SolrJvmSettings forHost() {
+        boolean is64BitJvm = PlatformUtil.is64BitJVM();
+        long userHeapMb = KeywordSearchSettings.getSolrMaxHeapMb();
+        if (userHeapMb > 0) {
+            return forHeap(userHeapMb, is64BitJvm);
+        }
+        return forHeap(calculateHeapMb(getPhysicalMemoryMb(),
+                Runtime.getRuntime().maxMemory() / BYTES_PER_MB,
+                UserPreferences.numberOfFileIngestThreads(),
+                KeywordSearchSettings.getLastIndexSizeMb(),
+                is64BitJvm), is64BitJvm);
+    }
+
+    /**
+     * Creates the settings for a heap size, capped for a 32-bit JVM.
+     *
+     * @param heapMb     The heap size in MB.
+     * @param is64BitJvm Whether the server runs on a 64-bit JVM.
+     *
+     * @return The settings.
+     */
+    static SolrJvmSettings forHeap(long heapMb, boolean is64BitJvm) {
+        if (is64BitJvm) {
+            return new SolrJvmSettings(heapMb, true);
+        }
+        return new SolrJvmSettings(Math.min(heapMb, MAX_32_BIT_HEAP_MB), false);
+    }
+
+    /**
+     * Calculates the heap size for the Solr server.
+     *
+     * @param physicalMemoryMb The physical memory of the host, zero if
+     *                         unknown.
+     * @param clientHeapMb     The maximum heap size of this JVM.
+     * @param ingestThreads    The number of file ingest threads.
+     * @param indexSizeMb      The size of the index on disk.
+     * @param is64BitJvm       Whether the server runs on a 64-bit JVM.
+     *
+     * @return The heap size in MB.
+     */
+    static long calculateHeapMb(long physicalMemoryMb, long clientHeapMb, int ingestThreads, long indexSizeMb, boolean is64BitJvm) {
+        long desiredMb = MIN_HEAP_MB + HEAP_MB_PER_INGEST_THREAD * ingestThreads + indexSizeMb / INDEX_MB_PER_HEAP_MB;
+        long budgetMb = (physicalMemoryMb - clientHeapMb) / 2;
+        long maxHeapMb = is64BitJvm ? MAX_HEAP_MB : MAX_32_BIT_HEAP_MB;
+        return Math.max(MIN_HEAP_MB, Math.min(Math.min(desiredMb, budgetMb), maxHeapMb));
+    }
+
+    private static long getPhysicalMemoryMb() {
+        OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+        if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) osBean).getTotalPhysicalMemorySize() / BYTES_PER_MB;
+        }
+        return 0;
+    }
+
+    private SolrJvmSettings(long heapMb, boolean allowG1) {
+        this.heapMb = heapMb;
+        this.useG1 = allowG1 && heapMb >= G1_MIN_HEAP_MB;
+        this.documentCacheSize = (int) Math.max(MIN_DOCUMENT_CACHE_SIZE, Math.min(heapMb / 16, MAX_DOCUMENT_CACHE_SIZE));
+        this.queryResultCacheSize = (int) Math.max(MIN_QUERY_RESULT_CACHE_SIZE, Math.min(heapMb / 2, MAX_QUERY_RESULT_CACHE_SIZE));
+    }
+
+    /**
+     * Gets the maximum heap size.
+     *
+     * @return The heap size in MB.
+     */
+    long getHeapMb() {
+        return heapMb;
+    }
+
+    /**
+     * Gets the JVM arguments for the Solr server, including the system
+     * properties the Autopsy Solr configuration reads its cache sizes from.
+     *
+     * @return The arguments.
+     */
+    List<String> getJvmArguments() {
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-Xmx" + heapMb + "m"); //NON-NLS
+        if (useG1) {
+            arguments.add("-XX:+UseG1GC"); //NON-NLS
+            arguments.add("-XX:MaxGCPauseMillis=" + G1_MAX_PAUSE_MILLIS); //NON-NLS
+        }
+        arguments.add("-D" + DOCUMENT_CACHE_SIZE_PROPERTY + "=" + documentCacheSize); //NON-NLS
+        arguments.add("-D" + QUERY_RESULT_CACHE_SIZE_PROPERTY + "=" + queryResultCacheSize); //NON-NLS
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("heap=%dMB, G1=%b, documentCache=%d, queryResultCache=%d", heapMb, useG1, documentCacheSize, queryResultCacheSize); //NON-NLS
+    }
+
+}
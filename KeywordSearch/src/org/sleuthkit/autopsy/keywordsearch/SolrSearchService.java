@@ -225,6 +225,15 @@ public void deleteTextIndex(CaseMetadata metadata) throws KeywordSearchServiceEx
                 "SolrSearchService.exceptionMessage.noCurrentSolrCore"));
     }
 
+    @Override
+    public void commit() throws KeywordSearchServiceException {
+        try {
+            Ingester.getDefault().hardCommit();
+        } catch (Ingester.IngesterException ex) {
+            throw new KeywordSearchServiceException("Failed to commit the text index", ex); //NON-NLS
+        }
+    }
+
     @Override
     public void close() throws IOException {
     }
@@ -406,6 +415,9 @@ public void closeCaseResources(CaseContext context) throws AutopsyServiceExcepti
             logger.log(Level.SEVERE, "Unexpected interrupt while waiting for BlackboardResultWriters to terminate", ex);
         }
 
+        // Send any documents still buffered for the core before closing it
+        Ingester.getDefault().flush();
+
         try {
             KeywordSearch.getServer().closeCore();
         } catch (KeywordSearchModuleException ex) {
@@ -0,0 +1,530 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.tika.fork.ForkParser;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+
+/**
+ * Runs Tika text extractions for all of the Tika text extractors on a shared,
+ * bounded pool of worker threads. The number of extractions that run at the
+ * same time is limited overall, and more tightly for the formats whose parsers
+ * use the most memory. Each extraction has a timeout, after which its worker
+ * is interrupted and the text read so far is all the caller gets. The time
+ * that the worker spends waiting for the caller to read the text does not
+ * count against the timeout, so a slow reader does not time out a parser that
+ * is making progress.
+ *
+ * A parser that is stuck in a loop that does not check for interruption
+ * cannot be stopped inside this JVM, so its worker is abandoned and no longer
+ * counts against the limits. Since abandoned workers still use memory and
+ * processor time, new extractions are refused while too many of them have not
+ * stopped. If out of process extraction is enabled, the parsers run in Tika
+ * fork parser worker processes instead, and a timed out worker process is
+ * killed, so that a pathological file can neither exhaust the memory of the
+ * ingest JVM nor hold on to a worker. Closing a fork parser does not stop a
+ * worker process that is stuck, so each worker process is started with a
+ * marker argument of its own, by which it is found and killed.
+ *
+ * The limits and the extraction mode are read when the service is first used.
+ */
+@ThreadSafe
+final class TextExtractionService {
+
+    private static final Logger logger = Logger.getLogger(TextExtractionService.class.getName());
+    private static final String EXTRACTION_THREAD_NAME = "text-extraction-%d"; //NON-NLS
+    private static final String WATCHDOG_THREAD_NAME = "text-extraction-watchdog-%d"; //NON-NLS
+    private static final int PIPE_SIZE = 64 * 1024;
+    private static final int WORKER_PROCESS_HEAP_MB = 512;
+    private static final String WORKER_PROCESS_MARKER_PROPERTY = "autopsy.textExtractionWorker"; //NON-NLS
+    private static final int MAX_ABANDONED_EXTRACTIONS = 8;
+    @GuardedBy("TextExtractionService.class")
+    private static TextExtractionService instance;
+    private final Parser parser = new AutoDetectParser();
+    private final ExecutorService extractionPool;
+    private final ScheduledExecutorService watchdog;
+    private final Semaphore extractionPermits;
+    private final Map<FormatGroup, Semaphore> formatPermits = new EnumMap<>(FormatGroup.class);
+    private final boolean outOfProcess;
+    private final Queue<WorkerProcess> idleWorkerProcesses = new ConcurrentLinkedQueue<>();
+    private final AtomicLong workerProcessCount = new AtomicLong();
+    private final AtomicInteger abandonedWorkers = new AtomicInteger();
+
+    /**
+     * Groups of formats whose parsers are expensive enough to need a limit of
+     * their own on the number of extractions that run at the same time.
+     */
+    private enum FormatGroup {
+        PDF,
+        OFFICE,
+        IMAGE
+    }
+
+    /**
+     * Gets the text extraction service.
+     *
+     * @return The service.
+     */
+    static synchronized TextExtractionService getInstance() {
+        if (null == instance) {
+            instance = new TextExtractionService();
+        }
+        return instance;
+    }
+
+    private TextExtractionService() {
+        int maxExtractions = KeywordSearchSettings.getExtractionThreads();
+        this.extractionPermits = new Semaphore(maxExtractions, true);
+        for (FormatGroup group : FormatGroup.values()) {
+            formatPermits.put(group, new Semaphore(Math.max(1, maxExtractions / 2), true));
+        }
+        this.outOfProcess = KeywordSearchSettings.getOutOfProcessExtraction();
+
+        /*
+         * The pool is not bounded itself, since abandoned workers must not
+         * reduce the number of extractions that can run. The permits bound
+         * the number of workers that are doing useful work.
+         */
+        this.extractionPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat(EXTRACTION_THREAD_NAME).setDaemon(true).build());
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat(WATCHDOG_THREAD_NAME).setDaemon(true).build());
+        logger.log(Level.INFO, "Text extraction service started, maximum extractions = {0}, out of process = {1}", new Object[]{maxExtractions, outOfProcess}); //NON-NLS
+    }
+
+    /**
+     * Starts extracting the text of a stream. The extraction runs on a worker
+     * while the caller reads the text from the returned reader, which the
+     * caller must close.
+     *
+     * @param stream      The stream, which is closed when the extraction is
+     *                    done.
+     * @param mimeType    The MIME type of the stream, may be null.
+     * @param metadata    The metadata object that the extraction fills in.
+     * @param context     The parse context.
+     * @param timeoutSecs The time the parser may run, not counting the time
+     *                    it waits for the text to be read, after which the
+     *                    extraction is stopped.
+     *
+     * @return The extraction, a reader for the extracted text.
+     *
+     * @throws InterruptedException       If the thread is interrupted while
+     *                                    waiting for an extraction to finish.
+     * @throws ExtractionRefusedException If too many timed out extractions
+     *                                    have not stopped yet.
+     */
+    Extraction extract(InputStream stream, String mimeType, Metadata metadata, ParseContext context, long timeoutSecs) throws InterruptedException, ExtractionRefusedException {
+        if (abandonedWorkers.get() >= MAX_ABANDONED_EXTRACTIONS) {
+            throw new ExtractionRefusedException(String.format("Text extraction refused, %d timed out extractions have not stopped", abandonedWorkers.get())); //NON-NLS
+        }
+        Semaphore formatPermit = formatPermits.get(getFormatGroup(mimeType));
+        if (null != formatPermit) {
+            formatPermit.acquire();
+        }
+        try {
+            extractionPermits.acquire();
+        } catch (InterruptedException ex) {
+            if (null != formatPermit) {
+                formatPermit.release();
+            }
+            throw ex;
+        }
+        Extraction extraction;
+        try {
+            extraction = new Extraction(formatPermit);
+            if (!outOfProcess) {
+                context.set(Parser.class, parser);
+            }
+            extraction.start(stream, metadata, context, timeoutSecs);
+        } catch (IOException | RuntimeException ex) {
+            if (null != formatPermit) {
+                formatPermit.release();
+            }
+            extractionPermits.release();
+            throw new IllegalStateException("Failed to start text extraction", ex); //NON-NLS
+        }
+        return extraction;
+    }
+
+    /**
+     * Gets the group of a format with its own limit on the number of
+     * extractions.
+     *
+     * @param mimeType The MIME type, may be null.
+     *
+     * @return The group, or null if the format has no limit of its own.
+     */
+    private static FormatGroup getFormatGroup(String mimeType) {
+        if (null == mimeType) {
+            return null;
+        }
+        if (mimeType.equals("application/pdf")) { //NON-NLS
+            return FormatGroup.PDF;
+        }
+        if (mimeType.equals("application/msword") //NON-NLS
+                || mimeType.startsWith("application/vnd.ms-") //NON-NLS
+                || mimeType.startsWith("application/vnd.openxmlformats-officedocument.") //NON-NLS
+                || mimeType.startsWith("application/vnd.oasis.opendocument.")) { //NON-NLS
+            return FormatGroup.OFFICE;
+        }
+        if (mimeType.startsWith("image/")) { //NON-NLS
+            return FormatGroup.IMAGE;
+        }
+        return null;
+    }
+
+    /**
+     * Gets an idle worker process, or creates one.
+     *
+     * @return The worker process.
+     */
+    private WorkerProcess takeWorkerProcess() {
+        WorkerProcess workerProcess = idleWorkerProcesses.poll();
+        if (null == workerProcess) {
+            workerProcess = new WorkerProcess(PlatformUtil.getPID() + "-" + workerProcessCount.incrementAndGet());
+        }
+        return workerProcess;
+    }
+
+    /**
+     * A Tika fork parser with a single worker process, and the marker
+     * argument that the process is started with.
+     */
+    private static final class WorkerProcess {
+
+        private final ForkParser parser;
+        private final String marker;
+
+        WorkerProcess(String id) {
+            this.marker = "-D" + WORKER_PROCESS_MARKER_PROPERTY + "=" + id; //NON-NLS
+            this.parser = new ForkParser(TextExtractionService.class.getClassLoader(), new AutoDetectParser());
+            this.parser.setPoolSize(1);
+            this.parser.setJavaCommand(Arrays.asList(
+                    Paths.get(System.getProperty("java.home"), "bin", "java").toString(), //NON-NLS
+                    "-Xmx" + WORKER_PROCESS_HEAP_MB + "m", //NON-NLS
+                    this.marker));
+        }
+
+        /**
+         * Closes the fork parser after a failed extraction.
+         */
+        void close() {
+            parser.close();
+        }
+
+        /**
+         * Kills the worker process, which may be stuck, and closes the fork
+         * parser.
+         */
+        void kill() {
+            long[] pids = PlatformUtil.getJavaPIDs("Args.*.eq=" + marker); //NON-NLS
+            if (null != pids) {
+                for (long pid : pids) {
+                    logger.log(Level.INFO, "Killing timed out text extraction worker process, PID: {0}", pid); //NON-NLS
+                    PlatformUtil.killProcess(pid);
+                }
+            }
+            parser.close();
+        }
+    }
+
+    /**
+     * The exception thrown when a text extraction is refused because too many
+     * timed out extractions have not stopped yet.
+     */
+    static final class ExtractionRefusedException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        ExtractionRefusedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A running text extraction, and a reader for its text. Reading past the
+     * end of the text throws an IOException if the extraction failed or timed
+     * out.
+     */
+    @ThreadSafe
+    final class Extraction extends Reader {
+
+        private final Semaphore formatPermit;
+        private final PipedReader pipeReader = new PipedReader(PIPE_SIZE);
+        private final PipedWriter pipeWriter;
+        private final Writer textWriter = new TextWriter();
+        @GuardedBy("this")
+        private long timeoutNanos;
+        @GuardedBy("this")
+        private long startNanos;
+        /*
+         * The time spent writing to the pipe, mostly waiting for the reader
+         * to make room, and the start of the write in progress, or zero.
+         * These are only changed by the worker.
+         */
+        private volatile long writingNanos;
+        private volatile long writeStartNanos;
+        @GuardedBy("this")
+        private boolean finished;
+        @GuardedBy("this")
+        private boolean timedOut;
+        @GuardedBy("this")
+        private boolean permitsReleased;
+        @GuardedBy("this")
+        private WorkerProcess workerProcess;
+        @GuardedBy("this")
+        private boolean workerProcessKilled;
+        @GuardedBy("this")
+        private Future<?> task;
+        @GuardedBy("this")
+        private ScheduledFuture<?> timeoutTask;
+        private volatile Throwable failure;
+
+        private Extraction(Semaphore formatPermit) throws IOException {
+            this.formatPermit = formatPermit;
+            this.pipeWriter = new PipedWriter(pipeReader);
+        }
+
+        private synchronized void start(InputStream stream, Metadata metadata, ParseContext context, long timeoutSecs) {
+            timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSecs);
+            startNanos = System.nanoTime();
+            task = extractionPool.submit(() -> run(stream, metadata, context));
+            timeoutTask = watchdog.schedule(this::timeOut, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Parses the stream, writing its text to the pipe. Runs on a worker.
+         */
+        private void run(InputStream stream, Metadata metadata, ParseContext context) {
+            WorkerProcess process = null;
+            try {
+                Parser extractionParser = parser;
+                if (outOfProcess) {
+                    process = takeWorkerProcess();
+                    synchronized (this) {
+                        if (timedOut) {
+                            return;
+                        }
+                        workerProcess = process;
+                    }
+                    extractionParser = process.parser;
+                }
+                extractionParser.parse(stream, new BodyContentHandler(textWriter), metadata, context);
+            } catch (Throwable ex) { // Catch-all exception firewall
+                failure = ex;
+            } finally {
+                try {
+                    stream.close();
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, "Failed to close text extraction input stream", ex); //NON-NLS
+                }
+                try {
+                    pipeWriter.close();
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, "Failed to close text extraction pipe", ex); //NON-NLS
+                }
+                finish(process);
+            }
+        }
+
+        private synchronized void finish(WorkerProcess process) {
+            finished = true;
+            if (null != timeoutTask) {
+                timeoutTask.cancel(false);
+            }
+            if (null != process) {
+                if (process != workerProcess) {
+                    // Timed out before the worker process was used.
+                    idleWorkerProcesses.add(process);
+                } else if (!workerProcessKilled) {
+                    if (null != failure) {
+                        process.close();
+                    } else {
+                        idleWorkerProcesses.add(process);
+                    }
+                }
+            }
+            if (permitsReleased) {
+                abandonedWorkers.decrementAndGet();
+            } else {
+                releasePermits();
+            }
+        }
+
+        /**
+         * Stops the extraction when it has run for too long, not counting the
+         * time spent waiting for the reader, or checks again when it will
+         * have. Runs on the watchdog thread.
+         */
+        private synchronized void timeOut() {
+            if (finished) {
+                return;
+            }
+            long now = System.nanoTime();
+            long writeStart = writeStartNanos;
+            long runningNanos = now - startNanos - writingNanos - (0 != writeStart ? now - writeStart : 0);
+            if (runningNanos < timeoutNanos) {
+                timeoutTask = watchdog.schedule(this::timeOut, timeoutNanos - runningNanos, TimeUnit.NANOSECONDS);
+                return;
+            }
+            timedOut = true;
+            stop();
+            releasePermits();
+            int abandoned = abandonedWorkers.incrementAndGet();
+            logger.log(Level.WARNING, "Text extraction timed out, {0} extraction worker(s) not yet stopped", abandoned); //NON-NLS
+            if (abandoned == MAX_ABANDONED_EXTRACTIONS) {
+                logger.log(Level.SEVERE, "Refusing text extractions until some of the {0} timed out extraction workers stop", abandoned); //NON-NLS
+            }
+        }
+
+        /**
+         * Interrupts the worker, kills the worker process if there is one,
+         * and ends the text in the pipe.
+         */
+        @GuardedBy("this")
+        private void stop() {
+            if (null != task) {
+                task.cancel(true);
+            }
+            if (null != workerProcess && !workerProcessKilled) {
+                workerProcessKilled = true;
+                workerProcess.kill();
+            }
+            try {
+                pipeWriter.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Failed to close text extraction pipe", ex); //NON-NLS
+            }
+        }
+
+        @GuardedBy("this")
+        private void releasePermits() {
+            permitsReleased = true;
+            extractionPermits.release();
+            if (null != formatPermit) {
+                formatPermit.release();
+            }
+        }
+
+        /**
+         * Queries whether or not the extraction timed out.
+         *
+         * @return True or false.
+         */
+        synchronized boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * Gets the exception thrown by the parser, if there was one.
+         *
+         * @return The exception, or null.
+         */
+        Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * Writes the text to the pipe for the parser, timing the writes, which
+         * block while the pipe is full.
+         */
+        private final class TextWriter extends Writer {
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                writeStartNanos = start;
+                try {
+                    pipeWriter.write(cbuf, off, len);
+                } finally {
+                    /*
+                     * Add the time before clearing the start, so that the
+                     * watchdog can only count the write twice, and not miss it.
+                     */
+                    writingNanos += System.nanoTime() - start;
+                    writeStartNanos = 0;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                pipeWriter.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                pipeWriter.close();
+            }
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int charsRead = pipeReader.read(cbuf, off, len);
+            if (charsRead == -1) {
+                if (isTimedOut()) {
+                    throw new IOException("Text extraction timed out"); //NON-NLS
+                }
+                if (null != failure) {
+                    throw new IOException("Text extraction failed", failure); //NON-NLS
+                }
+            }
+            return charsRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            pipeReader.close();
+            synchronized (this) {
+                if (!finished) {
+                    stop();
+                }
+            }
+        }
+    }
+
+}
@@ -26,7 +26,6 @@
 import org.apache.tika.parser.txt.CharsetMatch;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.datamodel.Content;
-import org.sleuthkit.datamodel.ReadContentInputStream;
 
 /**
  * Extract text from .txt files
@@ -55,7 +54,7 @@ boolean isSupported(Content file, String detectedFormat) {
     public Reader getReader(Content source) throws TextExtractorException {
         CharsetDetector detector = new CharsetDetector();
         //wrap stream in a BufferedInputStream so that it supports the mark/reset methods necessary for the CharsetDetector
-        InputStream stream = new BufferedInputStream(new ReadContentInputStream(source));
+        InputStream stream = new BufferedInputStream(openStream(source));
         try {
             detector.setText(stream);
         } catch (IOException ex) {
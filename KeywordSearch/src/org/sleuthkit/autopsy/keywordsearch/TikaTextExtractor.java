@@ -21,24 +21,17 @@
 import com.google.common.io.CharSource;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PushbackReader;
 import java.io.Reader;
 import java.nio.file.Paths;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.tika.Tika;
 import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.Parser;
-import org.apache.tika.parser.ParsingReader;
 import org.apache.tika.parser.microsoft.OfficeParserConfig;
 import org.apache.tika.parser.ocr.TesseractOCRConfig;
 import org.apache.tika.parser.pdf.PDFParserConfig;
@@ -46,20 +39,18 @@
 import org.openide.modules.InstalledFileLocator;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.Content;
-import org.sleuthkit.datamodel.ReadContentInputStream;
 
 /**
- * Extracts text from Tika supported content. Protects against Tika
- * parser hangs (for unexpected/corrupt content) using a timeout mechanism.
+ * Extracts text from Tika supported content. The parsing is done by the shared
+ * text extraction service, which protects against Tika parser hangs (for
+ * unexpected/corrupt content) using a timeout mechanism.
  */
 class TikaTextExtractor extends ContentTextExtractor {
 
     static final private Logger logger = Logger.getLogger(TikaTextExtractor.class.getName());
-    private final ExecutorService tikaParseExecutor = Executors.newSingleThreadExecutor();
 
-    private final AutoDetectParser parser = new AutoDetectParser();
-    
     private static final String TESSERACT_DIR_NAME = "Tesseract-OCR"; //NON-NLS
     private static final String TESSERACT_EXECUTABLE = "tesseract.exe"; //NON-NLS
     private static final File TESSERACT_PATH = locateTesseractExecutable();
@@ -77,11 +68,10 @@ public void logWarning(final String msg, Exception ex) {
 
     @Override
     public Reader getReader(Content content) throws TextExtractorException {
-        ReadContentInputStream stream = new ReadContentInputStream(content);
+        InputStream stream = openStream(content);
 
         Metadata metadata = new Metadata();
         ParseContext parseContext = new ParseContext();
-        parseContext.set(Parser.class, parser);
 
         // Use the more memory efficient Tika SAX parsers for DOCX and
         // PPTX files (it already uses SAX for XLSX).
@@ -114,35 +104,50 @@ public Reader getReader(Content content) throws TextExtractorException {
             parseContext.set(TesseractOCRConfig.class, ocrConfig);
         }
 
-        //Parse the file in a task, a convenient way to have a timeout...
-        final Future<Reader> future = tikaParseExecutor.submit(() -> new ParsingReader(parser, stream, metadata, parseContext));
+        String mimeType = (content instanceof AbstractFile) ? ((AbstractFile) content).getMIMEType() : null;
+        TextExtractionService.Extraction extraction = null;
         try {
-            final Reader tikaReader = future.get(getTimeout(content.getSize()), TimeUnit.SECONDS);
+            //Parse the file on the shared extraction service, which stops the parse if it times out
+            extraction = TextExtractionService.getInstance().extract(stream, mimeType, metadata, parseContext, getTimeout(content.getSize()));
 
             //check if the reader is empty
-            PushbackReader pushbackReader = new PushbackReader(tikaReader);
+            PushbackReader pushbackReader = new PushbackReader(extraction);
             int read = pushbackReader.read();
             if (read == -1) {
+                extraction.close();
                 throw new TextExtractorException("Unable to extract text: Tika returned empty reader for " + content);
             }
             pushbackReader.unread(read);
 
             //concatenate parsed content and meta data into a single reader.
-            CharSource metaDataCharSource = getMetaDataCharSource(metadata);
-            return CharSource.concat(new ReaderCharSource(pushbackReader), metaDataCharSource).openStream();
-        } catch (TimeoutException te) {
-            final String msg = NbBundle.getMessage(this.getClass(), "AbstractFileTikaTextExtract.index.tikaParseTimeout.text", content.getId(), content.getName());
-            logWarning(msg, te);
-            throw new TextExtractorException(msg, te);
+            return CharSource.concat(new ReaderCharSource(pushbackReader), getMetaDataCharSource(metadata)).openStream();
         } catch (TextExtractorException ex) {
             throw ex;
         } catch (Exception ex) {
-            KeywordSearch.getTikaLogger().log(Level.WARNING, "Exception: Unable to Tika parse the content" + content.getId() + ": " + content.getName(), ex.getCause()); //NON-NLS
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            closeQuietly(extraction);
+            if (null != extraction && extraction.isTimedOut()) {
+                final String msg = NbBundle.getMessage(this.getClass(), "AbstractFileTikaTextExtract.index.tikaParseTimeout.text", content.getId(), content.getName());
+                logWarning(msg, ex);
+                throw new TextExtractorException(msg, ex);
+            }
+            Throwable cause = (null != extraction && null != extraction.getFailure()) ? extraction.getFailure() : ex.getCause();
+            KeywordSearch.getTikaLogger().log(Level.WARNING, "Exception: Unable to Tika parse the content" + content.getId() + ": " + content.getName(), cause); //NON-NLS
             final String msg = NbBundle.getMessage(this.getClass(), "AbstractFileTikaTextExtract.index.exception.tikaParse.msg", content.getId(), content.getName());
             logWarning(msg, ex);
             throw new TextExtractorException(msg, ex);
-        } finally {
-            future.cancel(true);
+        }
+    }
+
+    private static void closeQuietly(Reader reader) {
+        if (null != reader) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Failed to close Tika reader", ex); //NON-NLS
+            }
         }
     }
 
@@ -171,19 +176,32 @@ private static File locateTesseractExecutable() {
 
     /**
      * Gets a CharSource that wraps a formated representation of the given
-     * Metadata.
+     * Metadata. The representation is made when the CharSource is opened, so
+     * that it includes the metadata found after the body text was read.
      *
      * @param metadata The Metadata to wrap as a CharSource
      *
      * @return A CharSource for the given MetaData
      */
     static private CharSource getMetaDataCharSource(Metadata metadata) {
-        return CharSource.wrap(
-                new StringBuilder("\n\n------------------------------METADATA------------------------------\n\n")
-                        .append(Stream.of(metadata.names()).sorted()
-                                .map(key -> key + ": " + metadata.get(key))
-                                .collect(Collectors.joining("\n"))
-                        ));
+        return new CharSource() {
+            @Override
+            public Reader openStream() throws IOException {
+                return CharSource.wrap(
+                        new StringBuilder("\n\n------------------------------METADATA------------------------------\n\n")
+                                .append(Stream.of(metadata.names()).sorted()
+                                        .map(key -> key + ": " + metadata.get(key))
+                                        .collect(Collectors.joining("\n"))
+                                )).openStream();
+            }
+        };
+    }
+
+    @Override
+    String getVersion() {
+        // OCR adds the text of images to the extracted text.
+        boolean ocr = TESSERACT_PATH != null && KeywordSearchSettings.getOcrOption() && PlatformUtil.isWindowsOS();
+        return getClass().getSimpleName() + "-" + Tika.getString() + (ocr ? "-ocr" : ""); //NON-NLS
     }
 
     @Override
@@ -0,0 +1,129 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ChunkerTest {
+
+    private static final int MAX_TOTAL_CHUNK_SIZE = 32760;
+
+    @Test
+    public void testUnpairedSurrogatesAreReplaced() {
+        System.out.println("unpairedSurrogatesAreReplaced");
+        List<Chunker.Chunk> chunks = chunk("a\uD800b\uDC00c\uD83D\uDE00");
+        assertEquals(1, chunks.size());
+        assertEquals("a\uFFFDb\uFFFDc\uD83D\uDE00", chunks.get(0).toString());
+        assertEquals(13, chunks.get(0).getChunkSizeBytes());
+    }
+
+    @Test
+    public void testUnpairedHighSurrogateAtEnd() {
+        System.out.println("unpairedHighSurrogateAtEnd");
+        List<Chunker.Chunk> chunks = chunk("ab\uD800");
+        assertEquals(1, chunks.size());
+        assertEquals("ab\uFFFD", chunks.get(0).toString());
+        assertEquals(5, chunks.get(0).getChunkSizeBytes());
+    }
+
+    @Test
+    public void testInvalidSolrCharsAreReplaced() {
+        System.out.println("invalidSolrCharsAreReplaced");
+        List<Chunker.Chunk> chunks = chunk("a\u0000b\uFFFEc\td");
+        assertEquals(1, chunks.size());
+        assertEquals("a^b^c\td", chunks.get(0).toString());
+    }
+
+    @Test
+    public void testNfkcExpansion() {
+        System.out.println("nfkcExpansion");
+        List<Chunker.Chunk> chunks = chunk("\uFB01le \u2460 \uFDFA");
+        assertEquals(1, chunks.size());
+        String expected = Normalizer.normalize("\uFB01le \u2460 \uFDFA", Normalizer.Form.NFKC);
+        assertTrue(expected.startsWith("file 1 "));
+        assertEquals(expected, chunks.get(0).toString());
+        assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, chunks.get(0).getChunkSizeBytes());
+    }
+
+    @Test
+    public void testChunkBoundaryWithoutWhitespace() {
+        System.out.println("chunkBoundaryWithoutWhitespace");
+        String text = repeat("a", 100000);
+        List<Chunker.Chunk> chunks = chunk(text);
+        assertTrue(chunks.size() > 1);
+        for (Chunker.Chunk chunk : chunks.subList(0, chunks.size() - 1)) {
+            assertEquals(MAX_TOTAL_CHUNK_SIZE, chunk.getChunkSizeBytes());
+            assertEquals(MAX_TOTAL_CHUNK_SIZE, chunk.toString().length());
+        }
+        assertEquals(text, joinBaseChunks(chunks));
+    }
+
+    @Test
+    public void testChunkBoundaryWithMultiByteChars() {
+        System.out.println("chunkBoundaryWithMultiByteChars");
+        String text = repeat("\u00E9t\u00E9 \u4E2D\u6587 \uD83D\uDE00 \uFB01 ", 20000);
+        String expected = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        List<Chunker.Chunk> chunks = chunk(text);
+        assertTrue(chunks.size() > 1);
+        for (Chunker.Chunk chunk : chunks) {
+            int sizeBytes = chunk.toString().getBytes(StandardCharsets.UTF_8).length;
+            assertEquals(sizeBytes, chunk.getChunkSizeBytes());
+            assertTrue(sizeBytes <= MAX_TOTAL_CHUNK_SIZE);
+        }
+        assertEquals(expected, joinBaseChunks(chunks));
+    }
+
+    private static List<Chunker.Chunk> chunk(String text) {
+        Chunker chunker = new Chunker(new StringReader(text));
+        List<Chunker.Chunk> chunks = new ArrayList<>();
+        for (Chunker.Chunk chunk : chunker) {
+            chunks.add(chunk);
+        }
+        assertFalse(chunker.hasException());
+        return chunks;
+    }
+
+    /**
+     * Joins the base chunks, which together are the whole text without the
+     * overlapping windows.
+     */
+    private static String joinBaseChunks(List<Chunker.Chunk> chunks) {
+        StringBuilder text = new StringBuilder();
+        for (Chunker.Chunk chunk : chunks) {
+            text.append(chunk.toString(), 0, chunk.getBaseChunkLength());
+        }
+        return text.toString();
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder repeated = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) {
+            repeated.append(text);
+        }
+        return repeated.toString();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class IngestSearchRunnerTest {
+
+    private static final Pattern GENERATION_RANGE = Pattern.compile("(\\w+):\\[(\\d+) TO \\*\\]");
+    private static final List<Long> DOCUMENT_GENERATIONS = Arrays.asList(100L, 101L, 102L, 103L);
+
+    @Test
+    public void testFirstPeriodicSearchSeesAllDocuments() {
+        System.out.println("firstPeriodicSearchSeesAllDocuments");
+        assertNull(IngestSearchRunner.getIndexGenerationFilter(false, null));
+    }
+
+    @Test
+    public void testFinalSearchSeesAllDocuments() {
+        System.out.println("finalSearchSeesAllDocuments");
+        assertNull(IngestSearchRunner.getIndexGenerationFilter(true, 102L));
+    }
+
+    @Test
+    public void testPeriodicSearchSeesOnlyNewerGenerations() {
+        System.out.println("periodicSearchSeesOnlyNewerGenerations");
+        KeywordQueryFilter filter = IngestSearchRunner.getIndexGenerationFilter(false, 102L);
+        assertEquals(KeywordQueryFilter.FilterType.INDEX_GENERATION, filter.getFilterType());
+        assertEquals(Arrays.asList(102L, 103L), getMatchingGenerations(filter));
+    }
+
+    @Test
+    public void testFilterUsesIndexGenerationField() {
+        System.out.println("filterUsesIndexGenerationField");
+        KeywordQueryFilter filter = IngestSearchRunner.getIndexGenerationFilter(false, 101L);
+        String query = filter.toString();
+        assertTrue(query.startsWith(Server.Schema.INDEX_GENERATION.toString() + ":"));
+        assertEquals(1, filter.getIdFilters().size());
+        assertEquals(Arrays.asList(101L, 102L, 103L), getMatchingGenerations(filter));
+    }
+
+    /**
+     * Gets the generations of the documents that the filter query matches,
+     * evaluating its range the way Solr does.
+     */
+    private static List<Long> getMatchingGenerations(KeywordQueryFilter filter) {
+        Matcher matcher = GENERATION_RANGE.matcher(filter.toString());
+        assertTrue(matcher.matches());
+        assertEquals(Server.Schema.INDEX_GENERATION.toString(), matcher.group(1));
+        long lowerBound = Long.parseLong(matcher.group(2));
+        List<Long> matching = new ArrayList<>();
+        for (long generation : DOCUMENT_GENERATIONS) {
+            if (generation >= lowerBound) {
+                matching.add(generation);
+            }
+        }
+        return matching;
+    }
+}
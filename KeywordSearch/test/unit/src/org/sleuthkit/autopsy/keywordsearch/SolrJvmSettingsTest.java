@@ -0,0 +1,93 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SolrJvmSettingsTest {
+
+    @Test
+    public void testHeapGrowsWithThreadsAndIndexSize() {
+        System.out.println("heapGrowsWithThreadsAndIndexSize");
+        // 512 MB base + 256 MB per ingest thread + 1 MB per 10 MB of index
+        assertEquals(3560, SolrJvmSettings.calculateHeapMb(16384, 4096, 8, 10000, true));
+        assertEquals(768, SolrJvmSettings.calculateHeapMb(16384, 4096, 1, 0, true));
+    }
+
+    @Test
+    public void testHeapLimitedByFreeMemory() {
+        System.out.println("heapLimitedByFreeMemory");
+        // half of the memory not used by the client JVM
+        assertEquals(1024, SolrJvmSettings.calculateHeapMb(6144, 4096, 8, 10000, true));
+    }
+
+    @Test
+    public void testHeapNeverBelowMinimum() {
+        System.out.println("heapNeverBelowMinimum");
+        assertEquals(512, SolrJvmSettings.calculateHeapMb(4096, 3584, 8, 10000, true));
+        assertEquals(512, SolrJvmSettings.calculateHeapMb(2048, 3072, 8, 10000, true));
+        // unknown physical memory
+        assertEquals(512, SolrJvmSettings.calculateHeapMb(0, 4096, 8, 10000, true));
+    }
+
+    @Test
+    public void testHeapCappedForCompressedOops() {
+        System.out.println("heapCappedForCompressedOops");
+        assertEquals(31 * 1024, SolrJvmSettings.calculateHeapMb(1024 * 1024, 8192, 64, 1000000, true));
+    }
+
+    @Test
+    public void testHeapCappedFor32BitJvm() {
+        System.out.println("heapCappedFor32BitJvm");
+        assertEquals(1024, SolrJvmSettings.calculateHeapMb(65536, 1024, 8, 100000, false));
+        assertEquals(768, SolrJvmSettings.calculateHeapMb(65536, 1024, 1, 0, false));
+    }
+
+    @Test
+    public void testUserHeapCappedFor32BitJvm() {
+        System.out.println("userHeapCappedFor32BitJvm");
+        SolrJvmSettings settings = SolrJvmSettings.forHeap(8192, false);
+        assertEquals(1024, settings.getHeapMb());
+        assertTrue(settings.getJvmArguments().contains("-Xmx1024m"));
+        assertFalse(settings.getJvmArguments().contains("-XX:+UseG1GC"));
+    }
+
+    @Test
+    public void testG1UsedForLargeHeapOn64BitJvm() {
+        System.out.println("g1UsedForLargeHeapOn64BitJvm");
+        SolrJvmSettings settings = SolrJvmSettings.forHeap(8192, true);
+        assertEquals(8192, settings.getHeapMb());
+        assertTrue(settings.getJvmArguments().contains("-XX:+UseG1GC"));
+    }
+
+    @Test
+    public void testDefaultJvmArguments() {
+        System.out.println("defaultJvmArguments");
+        SolrJvmSettings settings = SolrJvmSettings.getDefault();
+        assertEquals(512, settings.getHeapMb());
+        assertEquals(Arrays.asList("-Xmx512m",
+                "-D" + SolrJvmSettings.DOCUMENT_CACHE_SIZE_PROPERTY + "=32",
+                "-D" + SolrJvmSettings.QUERY_RESULT_CACHE_SIZE_PROPERTY + "=512"),
+                settings.getJvmArguments());
+    }
+}